@@ -79,6 +79,8 @@ public class StartParameter {
     private boolean noOpt;
     private boolean colorOutput = true;
     private boolean profile;
+    private int parallelThreadCount;
+    private File planExportFile;
 
     /**
      * Creates a {@code StartParameter} with default values. This is roughly equivalent to running Gradle on the
@@ -115,6 +117,8 @@ public class StartParameter {
         startParameter.dryRun = dryRun;
         startParameter.noOpt = noOpt;
         startParameter.profile = profile;
+        startParameter.parallelThreadCount = parallelThreadCount;
+        startParameter.planExportFile = planExportFile;
         return startParameter;
     }
 
@@ -132,6 +136,7 @@ public class StartParameter {
         startParameter.logLevel = logLevel;
         startParameter.colorOutput = colorOutput;
         startParameter.profile = profile;
+        startParameter.parallelThreadCount = parallelThreadCount;
         return startParameter;
     }
 
@@ -517,6 +522,43 @@ public class StartParameter {
         return profile;
     }
 
+    /**
+     * Specifies the number of worker threads to use to execute tasks. A value of 0 or 1 means that tasks are executed
+     * one at a time on the build thread.
+     *
+     * @param parallelThreadCount the number of worker threads.
+     */
+    public void setParallelThreadCount(int parallelThreadCount) {
+        this.parallelThreadCount = parallelThreadCount;
+    }
+
+    /**
+     * Returns the number of worker threads to use to execute tasks.
+     *
+     * @return the number of worker threads. A value of 0 or 1 means tasks are executed serially.
+     */
+    public int getParallelThreadCount() {
+        return parallelThreadCount;
+    }
+
+    /**
+     * Specifies a file to write the task execution plan to, in Graphviz DOT format.
+     *
+     * @param planExportFile the file. May be null.
+     */
+    public void setPlanExportFile(File planExportFile) {
+        this.planExportFile = planExportFile;
+    }
+
+    /**
+     * Returns the file to write the task execution plan to.
+     *
+     * @return the file, or null if the plan should not be written.
+     */
+    public File getPlanExportFile() {
+        return planExportFile;
+    }
+
     @Override
     public String toString() {
         return "StartParameter{" +
@@ -539,6 +581,8 @@ public class StartParameter {
                 ", dryRun=" + dryRun +
                 ", noOpt=" + noOpt +
                 ", profile=" + profile +
+                ", parallelThreadCount=" + parallelThreadCount +
+                ", planExportFile=" + planExportFile +
                 '}';
     }
 }
\ No newline at end of file
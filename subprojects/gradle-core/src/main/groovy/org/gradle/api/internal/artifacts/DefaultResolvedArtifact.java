@@ -37,6 +37,10 @@ public class DefaultResolvedArtifact implements ResolvedArtifact {
         this.resolvedEngine = resolvedEngine;
     }
 
+    public Artifact getArtifact() {
+        return artifact;
+    }
+
     public ResolvedDependency getResolvedDependency() {
         return resolvedDependency;
     }
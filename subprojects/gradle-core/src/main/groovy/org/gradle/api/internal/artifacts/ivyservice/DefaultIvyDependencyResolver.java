@@ -41,23 +41,64 @@ public class DefaultIvyDependencyResolver implements IvyDependencyResolver {
     private static Logger logger = LoggerFactory.getLogger(DefaultIvyDependencyResolver.class);
 
     private IvyReportConverter ivyReportTranslator;
+    private final ResolvedConfigurationCache resolvedConfigurationCache;
+    private final ParallelArtifactFetcher artifactFetcher;
+    private final Object ivyLock = new Object();
 
     public DefaultIvyDependencyResolver(IvyReportConverter ivyReportTranslator) {
+        this(ivyReportTranslator, null);
+    }
+
+    public DefaultIvyDependencyResolver(IvyReportConverter ivyReportTranslator,
+                                        ResolvedConfigurationCache resolvedConfigurationCache) {
+        this(ivyReportTranslator, resolvedConfigurationCache, null);
+    }
+
+    public DefaultIvyDependencyResolver(IvyReportConverter ivyReportTranslator,
+                                        ResolvedConfigurationCache resolvedConfigurationCache,
+                                        ParallelArtifactFetcher artifactFetcher) {
         this.ivyReportTranslator = ivyReportTranslator;
+        this.resolvedConfigurationCache = resolvedConfigurationCache;
+        this.artifactFetcher = artifactFetcher;
         Message.setDefaultLogger(new IvyLoggingAdaper());
     }
 
     public ResolvedConfiguration resolve(Configuration configuration, Ivy ivy, ModuleDescriptor moduleDescriptor) {
         Clock clock = new Clock();
+        String cacheKey = null;
+        if (resolvedConfigurationCache != null) {
+            cacheKey = resolvedConfigurationCache.getKey(configuration, ivy, moduleDescriptor);
+            IvyConversionResult cachedResult = cacheKey == null ? null : resolvedConfigurationCache.load(cacheKey,
+                    configuration, ivy);
+            if (cachedResult != null) {
+                logger.debug("Timing: Loading cached resolve result for {} took {}", configuration, clock.getTime());
+                return new ResolvedConfigurationImpl(cachedResult, configuration, ivy);
+            }
+        }
         ResolveOptions resolveOptions = createResolveOptions(configuration);
         ResolveReport resolveReport;
-        try {
-            resolveReport = ivy.resolve(moduleDescriptor, resolveOptions);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        // Tasks which are executed in parallel can resolve configurations concurrently. The whole of ivy.resolve()
+        // must be serialised, not just the calls to the resolvers. The resolvers and the repository cache manager are
+        // shared by all Ivy instances and keep unsynchronised in-memory caches, and ivy.resolve() writes the resolved
+        // descriptor of the module to a file in the resolution cache which is shared by all configurations of the
+        // module
+        Clock lockClock = new Clock();
+        synchronized (ivyLock) {
+            logger.debug("Timing: Waiting to resolve {} took {}", configuration, lockClock.getTime());
+            try {
+                resolveReport = ivy.resolve(moduleDescriptor, resolveOptions);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
         }
         logger.debug("Timing: Ivy resolve took {}", clock.getTime());
-        return new ResolvedConfigurationImpl(resolveReport, configuration);
+        ResolvedConfigurationImpl resolvedConfiguration = new ResolvedConfigurationImpl(resolveReport, configuration,
+                ivy);
+        if (cacheKey != null && !resolvedConfiguration.hasError()) {
+            resolvedConfigurationCache.store(cacheKey, configuration, ivy, resolveReport,
+                    resolvedConfiguration.conversionResult);
+        }
+        return resolvedConfiguration;
     }
 
     private ResolveOptions createResolveOptions(Configuration configuration) {
@@ -69,13 +110,14 @@ public class DefaultIvyDependencyResolver implements IvyDependencyResolver {
 
     class ResolvedConfigurationImpl implements ResolvedConfiguration {
         private final Configuration configuration;
+        private final Ivy ivy;
         private boolean hasError;
         private List<String> problemMessages;
         private IvyConversionResult conversionResult;
         private final CachingDirectedGraphWalker<ResolvedDependency, ResolvedArtifact> walker
                 = new CachingDirectedGraphWalker<ResolvedDependency, ResolvedArtifact>(new ResolvedDependencyArtifactsGraph());
 
-        public ResolvedConfigurationImpl(ResolveReport resolveReport, Configuration configuration) {
+        public ResolvedConfigurationImpl(ResolveReport resolveReport, Configuration configuration, Ivy ivy) {
             this.hasError = resolveReport.hasError();
             if (this.hasError) {
                 this.problemMessages = resolveReport.getAllProblemMessages();
@@ -85,6 +127,13 @@ public class DefaultIvyDependencyResolver implements IvyDependencyResolver {
                     configuration);
             }
             this.configuration = configuration;
+            this.ivy = ivy;
+        }
+
+        public ResolvedConfigurationImpl(IvyConversionResult conversionResult, Configuration configuration, Ivy ivy) {
+            this.conversionResult = conversionResult;
+            this.configuration = configuration;
+            this.ivy = ivy;
         }
 
         public boolean hasError() {
@@ -118,6 +167,10 @@ public class DefaultIvyDependencyResolver implements IvyDependencyResolver {
 
             artifacts.addAll(walker.findValues());
 
+            if (artifactFetcher != null) {
+                artifactFetcher.fetch(ivy, artifacts, ivyLock);
+            }
+
             Set<File> files = new LinkedHashSet<File>();
             for (ResolvedArtifact artifact : artifacts) {
                 File depFile = artifact.getFile();
@@ -38,6 +38,10 @@ import java.io.File;
 import java.util.*;
 
 /**
+ * Converts resolvers to {@link IvySettings}. The resolvers and the Ivy cache manager are shared by all settings
+ * which this converter creates, so conversions are serialised when tasks which are executed in parallel resolve
+ * configurations concurrently.
+ *
  * @author Hans Dockter
  */
 public class DefaultSettingsConverter implements SettingsConverter {
@@ -56,7 +60,7 @@ public class DefaultSettingsConverter implements SettingsConverter {
         return getLengthText(evt.isTotalLengthSet() ? evt.getTotalLength() : null);
     }
 
-    private static String getLengthText(Long bytes) {
+    static String getLengthText(Long bytes) {
         if (bytes == null) {
             return "unknown size";
         }
@@ -69,7 +73,7 @@ public class DefaultSettingsConverter implements SettingsConverter {
         }
     }
 
-    public IvySettings convertForPublish(List<DependencyResolver> publishResolvers, File gradleUserHome, DependencyResolver internalRepository) {
+    public synchronized IvySettings convertForPublish(List<DependencyResolver> publishResolvers, File gradleUserHome, DependencyResolver internalRepository) {
         if (ivySettings != null) {
             return ivySettings;
         }
@@ -85,7 +89,7 @@ public class DefaultSettingsConverter implements SettingsConverter {
         return ivySettings;
     }
 
-    public IvySettings convertForResolve(List<DependencyResolver> dependencyResolvers,
+    public synchronized IvySettings convertForResolve(List<DependencyResolver> dependencyResolvers,
                                File gradleUserHome, DependencyResolver internalRepository, Map clientModuleRegistry) {
         if (ivySettings != null) {
             return ivySettings;
@@ -178,27 +182,44 @@ public class DefaultSettingsConverter implements SettingsConverter {
         this.ivySettings = ivySettings;
     }
 
+    /**
+     * Logs the progress of the transfers of the resolvers. Tasks which are executed in parallel can resolve
+     * configurations on several threads, so the state of a transfer is kept per thread.
+     */
     private class ProgressLoggingTransferListener implements TransferListener {
-        private ProgressLogger logger;
-        private long total;
+        private final ThreadLocal<Transfer> transfer = new ThreadLocal<Transfer>();
 
         public void transferProgress(TransferEvent evt) {
             if (evt.getResource().isLocal()) {
                 return;
             }
             if (evt.getEventType() == TransferEvent.TRANSFER_STARTED) {
-                total = 0;
                 DefaultSettingsConverter.logger.lifecycle("Download " + evt.getResource().getName());
-                logger = progressLoggerFactory.start(DefaultSettingsConverter.class.getName());
+                transfer.set(new Transfer(progressLoggerFactory.start(DefaultSettingsConverter.class.getName())));
+            }
+            Transfer current = transfer.get();
+            if (current == null) {
+                return;
             }
             if (evt.getEventType() == TransferEvent.TRANSFER_PROGRESS) {
-                total += evt.getLength();
-                logger.progress(String.format("%s/%s downloaded", getLengthText(total), getLengthText(evt)));
+                current.total += evt.getLength();
+                current.logger.progress(String.format("%s/%s downloaded", getLengthText(current.total),
+                        getLengthText(evt)));
             }
             if (evt.getEventType() == TransferEvent.TRANSFER_COMPLETED
                     || evt.getEventType() == TransferEvent.TRANSFER_ERROR) {
-                logger.completed();
+                current.logger.completed();
+                transfer.remove();
             }
         }
     }
+
+    private static class Transfer {
+        private final ProgressLogger logger;
+        private long total;
+
+        private Transfer(ProgressLogger logger) {
+            this.logger = logger;
+        }
+    }
 }
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.artifacts.ivyservice;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.ivy.Ivy;
+import org.apache.ivy.core.cache.ArtifactOrigin;
+import org.apache.ivy.core.cache.DefaultRepositoryCacheManager;
+import org.apache.ivy.core.cache.RepositoryCacheManager;
+import org.apache.ivy.core.module.descriptor.Artifact;
+import org.apache.ivy.plugins.repository.url.URLRepository;
+import org.apache.ivy.plugins.resolver.ChainResolver;
+import org.apache.ivy.plugins.resolver.DependencyResolver;
+import org.apache.ivy.plugins.resolver.RepositoryResolver;
+import org.apache.ivy.util.url.URLHandler;
+import org.apache.ivy.util.url.URLHandlerRegistry;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.internal.artifacts.DefaultResolvedArtifact;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.logging.ProgressLogger;
+import org.gradle.logging.ProgressLoggerFactory;
+import org.gradle.messaging.concurrent.ExecutorFactory;
+import org.gradle.messaging.concurrent.StoppableExecutor;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Downloads the artifacts of a resolved configuration into the Ivy cache using several threads, before the files of
+ * the artifacts are requested one at a time. Artifacts are located using the user's resolvers, then copied from their
+ * location, with a limit on the number of downloads in progress in total and from each repository host. Each artifact
+ * is written to a temporary file next to its location in the cache and then renamed, so that the cache never contains
+ * a partially written artifact.
+ *
+ * <p>Remote artifacts are only downloaded here when their resolver uses a {@link URLRepository}, and are downloaded
+ * using Ivy's default {@link URLHandler}, as the repository does. So the credentials, proxy settings and request
+ * headers which Ivy uses apply to these downloads too. The resolvers are not thread-safe, so the artifacts are still
+ * located one at a time while holding the resolver lock. Only the downloads themselves run concurrently.</p>
+ *
+ * <p>This is an optimisation only. An artifact which cannot be located or downloaded here is left for Ivy to download
+ * when its file is requested, which reports any failure as before.</p>
+ */
+public class ParallelArtifactFetcher {
+    public static final int DEFAULT_MAX_DOWNLOADS = 8;
+    public static final int DEFAULT_MAX_DOWNLOADS_PER_REPOSITORY = 4;
+    private static final Logger LOGGER = Logging.getLogger(ParallelArtifactFetcher.class);
+
+    private final ExecutorFactory executorFactory;
+    private final ProgressLoggerFactory progressLoggerFactory;
+    private final int maxDownloads;
+    private final int maxDownloadsPerRepository;
+    private final Map<String, Semaphore> repositoryPermits = new HashMap<String, Semaphore>();
+
+    public ParallelArtifactFetcher(ExecutorFactory executorFactory, ProgressLoggerFactory progressLoggerFactory,
+                                   int maxDownloads, int maxDownloadsPerRepository) {
+        if (maxDownloads < 1 || maxDownloadsPerRepository < 1) {
+            throw new IllegalArgumentException(String.format("Cannot use %s downloads with %s per repository.",
+                    maxDownloads, maxDownloadsPerRepository));
+        }
+        this.executorFactory = executorFactory;
+        this.progressLoggerFactory = progressLoggerFactory;
+        this.maxDownloads = maxDownloads;
+        this.maxDownloadsPerRepository = maxDownloadsPerRepository;
+    }
+
+    /**
+     * Downloads those of the given artifacts which are not in the Ivy cache yet. Blocks until all downloads have
+     * completed.
+     *
+     * @param ivy The Ivy instance which the artifacts were resolved with.
+     * @param artifacts The artifacts to download.
+     * @param resolverLock The lock to hold while using the resolvers of the Ivy instance, which are not thread-safe.
+     */
+    public void fetch(Ivy ivy, Collection<? extends ResolvedArtifact> artifacts, Object resolverLock) {
+        RepositoryCacheManager defaultCacheManager = ivy.getSettings().getDefaultRepositoryCacheManager();
+        DependencyResolver resolver = ivy.getSettings().getResolver(SettingsConverter.CHAIN_RESOLVER_NAME);
+        if (!(defaultCacheManager instanceof DefaultRepositoryCacheManager) || resolver == null) {
+            return;
+        }
+
+        Set<Artifact> candidates = new LinkedHashSet<Artifact>();
+        for (ResolvedArtifact resolvedArtifact : artifacts) {
+            if (!(resolvedArtifact instanceof DefaultResolvedArtifact)) {
+                continue;
+            }
+            Artifact artifact = ((DefaultResolvedArtifact) resolvedArtifact).getArtifact();
+            // Locating an artifact can be expensive, so skip those which are already in the shared cache
+            if (!((DefaultRepositoryCacheManager) defaultCacheManager).getArchiveFileInCache(artifact).exists()) {
+                candidates.add(artifact);
+            }
+        }
+        if (candidates.size() < 2) {
+            // Nothing to gain from a single download
+            return;
+        }
+
+        final Queue<Download> queue = new ConcurrentLinkedQueue<Download>();
+        synchronized (resolverLock) {
+            for (Artifact artifact : candidates) {
+                Download download = createDownload(resolver, artifact);
+                if (download != null) {
+                    queue.add(download);
+                } else {
+                    LOGGER.debug("Leaving download of {} to Ivy.", artifact);
+                }
+            }
+        }
+        int count = queue.size();
+        if (count < 2) {
+            return;
+        }
+
+        final DownloadProgress progress = new DownloadProgress(count);
+        StoppableExecutor executor = executorFactory.create("Artifact download");
+        try {
+            for (int i = 0; i < maxDownloads && i < count; i++) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        Download download;
+                        while ((download = queue.poll()) != null) {
+                            download.run(progress);
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.stop();
+            progress.completed();
+        }
+    }
+
+    /**
+     * Returns the download for the given artifact, or null when the artifact should be left for Ivy to download.
+     */
+    private Download createDownload(DependencyResolver resolver, Artifact artifact) {
+        Location location = locate(resolver, artifact);
+        if (location == null) {
+            return null;
+        }
+        RepositoryCacheManager cacheManager = location.resolver.getRepositoryCacheManager();
+        if (!(cacheManager instanceof DefaultRepositoryCacheManager)
+                || ((DefaultRepositoryCacheManager) cacheManager).isUseOrigin()) {
+            // The artifact is used where it is, so there is nothing to download
+            return null;
+        }
+        if (!location.origin.isLocal() && !(location.resolver instanceof RepositoryResolver
+                && ((RepositoryResolver) location.resolver).getRepository() instanceof URLRepository)) {
+            // The repository may download in some other way, for example with its own credentials
+            LOGGER.info("Leaving download of {} to Ivy, as {} does not use a URL repository.", artifact,
+                    location.resolver.getName());
+            return null;
+        }
+        String repository = getRepository(location.origin);
+        if (repository == null) {
+            return null;
+        }
+        File cacheFile = ((DefaultRepositoryCacheManager) cacheManager).getArchiveFileInCache(artifact,
+                location.origin);
+        if (cacheFile.exists()) {
+            return null;
+        }
+        return new Download(artifact, location.origin, repository, cacheFile);
+    }
+
+    /**
+     * Finds the resolver which Ivy will download the given artifact with. Like Ivy, uses the first resolver of a
+     * chain which can locate the artifact.
+     */
+    private Location locate(DependencyResolver resolver, Artifact artifact) {
+        if (resolver instanceof ChainResolver) {
+            for (Object child : ((ChainResolver) resolver).getResolvers()) {
+                Location location = locate((DependencyResolver) child, artifact);
+                if (location != null) {
+                    return location;
+                }
+            }
+            return null;
+        }
+        ArtifactOrigin origin = resolver.locate(artifact);
+        if (origin == null || ArtifactOrigin.isUnknown(origin)) {
+            return null;
+        }
+        return new Location(resolver, origin);
+    }
+
+    private Semaphore getPermits(String repository) {
+        synchronized (repositoryPermits) {
+            Semaphore permits = repositoryPermits.get(repository);
+            if (permits == null) {
+                permits = new Semaphore(maxDownloadsPerRepository);
+                repositoryPermits.put(repository, permits);
+            }
+            return permits;
+        }
+    }
+
+    /**
+     * Returns the repository which the given origin belongs to, or null when the origin cannot be downloaded.
+     */
+    static String getRepository(ArtifactOrigin origin) {
+        if (origin.isLocal()) {
+            return "local";
+        }
+        try {
+            URL url = new URL(origin.getLocation());
+            if (!url.getProtocol().equals("http") && !url.getProtocol().equals("https")) {
+                return null;
+            }
+            return url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class Location {
+        private final DependencyResolver resolver;
+        private final ArtifactOrigin origin;
+
+        private Location(DependencyResolver resolver, ArtifactOrigin origin) {
+            this.resolver = resolver;
+            this.origin = origin;
+        }
+    }
+
+    private class Download {
+        private final Artifact artifact;
+        private final ArtifactOrigin origin;
+        private final String repository;
+        private final File cacheFile;
+
+        private Download(Artifact artifact, ArtifactOrigin origin, String repository, File cacheFile) {
+            this.artifact = artifact;
+            this.origin = origin;
+            this.repository = repository;
+            this.cacheFile = cacheFile;
+        }
+
+        void run(DownloadProgress progress) {
+            try {
+                Semaphore permits = getPermits(repository);
+                permits.acquire();
+                try {
+                    progress.bytesDownloaded(download());
+                } finally {
+                    permits.release();
+                }
+            } catch (Exception e) {
+                LOGGER.info("Could not download {} concurrently, leaving the download to Ivy: {}", artifact,
+                        e.getMessage());
+                LOGGER.debug(String.format("Could not download %s.", artifact), e);
+            } finally {
+                progress.artifactCompleted();
+            }
+        }
+
+        private long download() throws IOException {
+            if (cacheFile.exists()) {
+                return 0;
+            }
+            if (!origin.isLocal()) {
+                LOGGER.lifecycle("Download " + origin.getLocation());
+            }
+            cacheFile.getParentFile().mkdirs();
+            File tempFile = File.createTempFile(cacheFile.getName() + "-", ".part", cacheFile.getParentFile());
+            try {
+                if (origin.isLocal()) {
+                    copy(new FileInputStream(origin.getLocation()), tempFile);
+                } else {
+                    URL url = new URL(origin.getLocation());
+                    copy(openStream(url), tempFile);
+                    verifyChecksum(url, tempFile);
+                }
+                if (!tempFile.renameTo(cacheFile) && !cacheFile.exists()) {
+                    throw new IOException(String.format("Could not move %s to %s.", tempFile, cacheFile));
+                }
+                return cacheFile.length();
+            } finally {
+                tempFile.delete();
+            }
+        }
+
+        private void verifyChecksum(URL url, File file) throws IOException {
+            URL checksumUrl = new URL(url.toString() + ".sha1");
+            if (!URLHandlerRegistry.getDefault().isReachable(checksumUrl)) {
+                // No checksum published
+                return;
+            }
+            String expected = IOUtils.toString(openStream(checksumUrl)).trim();
+            // The checksum file may also contain the file name
+            expected = expected.split("\\s+")[0].toLowerCase();
+            String actual = sha1(file);
+            if (!actual.equals(expected)) {
+                throw new IOException(String.format("Invalid SHA-1 checksum for %s: expected %s but was %s.", url,
+                        expected, actual));
+            }
+        }
+    }
+
+    /**
+     * Opens the given URL using the same handler as Ivy's URL repositories, which applies the credentials registered
+     * with Ivy and fails for an unsuccessful HTTP response.
+     */
+    private static InputStream openStream(URL url) throws IOException {
+        return URLHandlerRegistry.getDefault().openStream(url);
+    }
+
+    private static void copy(InputStream instr, File destination) throws IOException {
+        try {
+            OutputStream outstr = new FileOutputStream(destination);
+            try {
+                IOUtils.copyLarge(instr, outstr);
+            } finally {
+                outstr.close();
+            }
+        } finally {
+            instr.close();
+        }
+    }
+
+    private static String sha1(File file) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+        InputStream instr = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int nread;
+            while ((nread = instr.read(buffer)) >= 0) {
+                messageDigest.update(buffer, 0, nread);
+            }
+        } finally {
+            instr.close();
+        }
+        String hash = new BigInteger(1, messageDigest.digest()).toString(16);
+        while (hash.length() < 40) {
+            hash = "0" + hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Reports the progress of all downloads through a single progress logger.
+     */
+    private class DownloadProgress {
+        private final ProgressLogger logger;
+        private final int total;
+        private int completed;
+        private long bytes;
+
+        private DownloadProgress(int total) {
+            this.total = total;
+            logger = progressLoggerFactory.start(ParallelArtifactFetcher.class.getName(),
+                    String.format("Download %s artifacts", total));
+        }
+
+        synchronized void bytesDownloaded(long length) {
+            bytes += length;
+        }
+
+        synchronized void artifactCompleted() {
+            completed++;
+            logger.progress(String.format("%s/%s artifacts, %s downloaded", completed, total,
+                    DefaultSettingsConverter.getLengthText(bytes)));
+        }
+
+        synchronized void completed() {
+            logger.completed();
+        }
+    }
+}
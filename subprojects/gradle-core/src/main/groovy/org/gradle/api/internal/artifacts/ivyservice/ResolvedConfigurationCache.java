@@ -0,0 +1,260 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.artifacts.ivyservice;
+
+import org.apache.ivy.Ivy;
+import org.apache.ivy.core.cache.DefaultRepositoryCacheManager;
+import org.apache.ivy.core.cache.RepositoryCacheManager;
+import org.apache.ivy.core.module.descriptor.ModuleDescriptor;
+import org.apache.ivy.core.module.id.ModuleRevisionId;
+import org.apache.ivy.core.report.ResolveReport;
+import org.apache.ivy.core.resolve.IvyNode;
+import org.apache.ivy.core.resolve.IvyNodeCallers;
+import org.apache.ivy.plugins.resolver.AbstractPatternsBasedResolver;
+import org.apache.ivy.plugins.resolver.ChainResolver;
+import org.apache.ivy.plugins.resolver.DependencyResolver;
+import org.apache.ivy.plugins.version.VersionMatcher;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.*;
+import org.gradle.cache.CacheRepository;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.util.HashUtil;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * A persistent cache of the resolved dependency graphs of configurations, so that a configuration whose dependencies
+ * have not changed since a previous build can be resolved without invoking Ivy.
+ *
+ * <p>An entry is keyed by a fingerprint of the module descriptor, the dependencies of the configuration and the
+ * resolver settings, and is discarded when any module descriptor which it was resolved from has changed in the Ivy
+ * cache. Configurations with dynamic or changing dependencies are never cached, as their graph can change without any
+ * change to the build.</p>
+ */
+public class ResolvedConfigurationCache {
+    private final CacheRepository cacheRepository;
+    private PersistentIndexedCache<String, ResolvedConfigurationSnapshot> cache;
+
+    public ResolvedConfigurationCache(CacheRepository cacheRepository) {
+        this.cacheRepository = cacheRepository;
+    }
+
+    /**
+     * Calculates the key for resolving the given configuration.
+     *
+     * @return The key, or null when the configuration cannot be cached.
+     */
+    public String getKey(Configuration configuration, Ivy ivy, ModuleDescriptor moduleDescriptor) {
+        Fingerprint fingerprint = new Fingerprint(ivy.getSettings().getVersionMatcher());
+        fingerprint.append("module", moduleDescriptor.getModuleRevisionId(), moduleDescriptor.getStatus());
+        fingerprint.append("cache", ivy.getSettings().getDefaultCache());
+        fingerprint.resolver(ivy.getSettings().getResolver(SettingsConverter.CHAIN_RESOLVER_NAME));
+        fingerprint.configurations(configuration.getHierarchy());
+        return fingerprint.isCacheable() ? HashUtil.createHash(fingerprint.toString()) : null;
+    }
+
+    /**
+     * Loads the resolved dependency graph for the given configuration.
+     *
+     * @return The graph, or null when there is no up-to-date graph for the given key.
+     */
+    public IvyConversionResult load(String key, Configuration configuration, Ivy ivy) {
+        ResolvedConfigurationSnapshot snapshot = get(key);
+        if (snapshot == null) {
+            return null;
+        }
+        if (!snapshot.isUpToDate()) {
+            remove(key);
+            return null;
+        }
+        return snapshot.restore(getDependencies(configuration), ivy.getResolveEngine());
+    }
+
+    /**
+     * Stores the resolved dependency graph for the given configuration, unless the graph contains dynamic or changing
+     * modules.
+     */
+    public void store(String key, Configuration configuration, Ivy ivy, ResolveReport resolveReport,
+                      IvyConversionResult result) {
+        VersionMatcher versionMatcher = ivy.getSettings().getVersionMatcher();
+        RepositoryCacheManager cacheManager = ivy.getSettings().getDefaultRepositoryCacheManager();
+        List<File> metaDataFiles = new ArrayList<File>();
+        for (Object node : resolveReport.getDependencies()) {
+            IvyNode ivyNode = (IvyNode) node;
+            for (IvyNodeCallers.Caller caller : ivyNode.getAllCallers()) {
+                ModuleRevisionId requested = caller.getDependencyDescriptor().getDependencyRevisionId();
+                if (isChanging(versionMatcher, requested)) {
+                    return;
+                }
+            }
+            if (cacheManager instanceof DefaultRepositoryCacheManager) {
+                File ivyFile = ((DefaultRepositoryCacheManager) cacheManager).getIvyFileInCache(ivyNode.getId());
+                if (ivyFile.isFile()) {
+                    metaDataFiles.add(ivyFile);
+                }
+            }
+        }
+        put(key, ResolvedConfigurationSnapshot.create(result, getDependencies(configuration), metaDataFiles));
+    }
+
+    private List<ModuleDependency> getDependencies(Configuration configuration) {
+        return new ArrayList<ModuleDependency>(configuration.getAllDependencies(ModuleDependency.class));
+    }
+
+    private static boolean isChanging(VersionMatcher versionMatcher, ModuleRevisionId id) {
+        return id.getRevision() == null || id.getRevision().endsWith("SNAPSHOT") || versionMatcher.isDynamic(id);
+    }
+
+    private synchronized ResolvedConfigurationSnapshot get(String key) {
+        return getCache().get(key);
+    }
+
+    private synchronized void put(String key, ResolvedConfigurationSnapshot snapshot) {
+        getCache().put(key, snapshot);
+    }
+
+    private synchronized void remove(String key) {
+        getCache().remove(key);
+    }
+
+    private PersistentIndexedCache<String, ResolvedConfigurationSnapshot> getCache() {
+        if (cache == null) {
+            cache = cacheRepository.cache("resolvedConfigurations").open().openIndexedCache();
+        }
+        return cache;
+    }
+
+    /**
+     * Builds a description of everything which can affect the result of resolving a configuration.
+     */
+    private static class Fingerprint {
+        private final StringBuilder text = new StringBuilder();
+        private final VersionMatcher versionMatcher;
+        private final Set<Object> visited = new HashSet<Object>();
+        private boolean cacheable = true;
+
+        private Fingerprint(VersionMatcher versionMatcher) {
+            this.versionMatcher = versionMatcher;
+        }
+
+        public boolean isCacheable() {
+            return cacheable;
+        }
+
+        void append(String type, Object... values) {
+            text.append(type);
+            for (Object value : values) {
+                text.append('|').append(value);
+            }
+            text.append('\n');
+        }
+
+        void resolver(DependencyResolver resolver) {
+            if (resolver == null) {
+                return;
+            }
+            append("resolver", resolver.getClass().getName(), resolver.getName());
+            if (resolver instanceof AbstractPatternsBasedResolver) {
+                AbstractPatternsBasedResolver patternsBasedResolver = (AbstractPatternsBasedResolver) resolver;
+                append("patterns", patternsBasedResolver.getIvyPatterns(), patternsBasedResolver.getArtifactPatterns(),
+                        patternsBasedResolver.isM2compatible());
+            }
+            if (resolver instanceof ChainResolver) {
+                for (Object child : ((ChainResolver) resolver).getResolvers()) {
+                    resolver((DependencyResolver) child);
+                }
+                append("end");
+            }
+        }
+
+        void configurations(Collection<Configuration> configurations) {
+            for (Configuration configuration : configurations) {
+                List<String> extendsFrom = new ArrayList<String>();
+                for (Configuration superConfiguration : configuration.getExtendsFrom()) {
+                    extendsFrom.add(superConfiguration.getName());
+                }
+                Collections.sort(extendsFrom);
+                append("configuration", configuration.getName(), configuration.isTransitive(),
+                        configuration.isVisible(), extendsFrom);
+                excludeRules(configuration.getExcludeRules());
+                for (Dependency dependency : configuration.getDependencies()) {
+                    dependency(dependency);
+                }
+            }
+        }
+
+        void dependency(Dependency dependency) {
+            append("dependency", dependency.getClass().getName(), dependency.getGroup(), dependency.getName(),
+                    dependency.getVersion());
+            if (dependency instanceof ModuleDependency) {
+                ModuleDependency moduleDependency = (ModuleDependency) dependency;
+                append("module", moduleDependency.getConfiguration(), moduleDependency.isTransitive());
+                excludeRules(moduleDependency.getExcludeRules());
+                for (DependencyArtifact artifact : moduleDependency.getArtifacts()) {
+                    append("artifact", artifact.getName(), artifact.getType(), artifact.getExtension(),
+                            artifact.getClassifier(), artifact.getUrl());
+                }
+            }
+            if (dependency instanceof ExternalDependency) {
+                append("force", ((ExternalDependency) dependency).isForce());
+                if (dependency.getVersion() == null || isChanging(versionMatcher, ModuleRevisionId.newInstance(
+                        String.valueOf(dependency.getGroup()), dependency.getName(), dependency.getVersion()))) {
+                    cacheable = false;
+                }
+            }
+            if (dependency instanceof ExternalModuleDependency && ((ExternalModuleDependency) dependency).isChanging()) {
+                cacheable = false;
+            }
+            if (dependency instanceof ClientModule) {
+                for (ModuleDependency child : ((ClientModule) dependency).getDependencies()) {
+                    dependency(child);
+                }
+                append("end");
+            }
+            if (dependency instanceof ProjectDependency) {
+                project(((ProjectDependency) dependency).getDependencyProject());
+            }
+        }
+
+        void project(Project project) {
+            append("project", project.getPath(), project.getGroup(), project.getName(), project.getVersion(),
+                    project.getStatus());
+            if (!visited.add(project.getPath())) {
+                return;
+            }
+            // The module descriptor of the project is built from all of its configurations
+            configurations(project.getConfigurations().getAll());
+            for (Configuration configuration : project.getConfigurations().getAll()) {
+                for (PublishArtifact artifact : configuration.getArtifacts()) {
+                    append("publish", configuration.getName(), artifact.getName(), artifact.getType(),
+                            artifact.getExtension(), artifact.getClassifier(), artifact.getFile());
+                }
+            }
+        }
+
+        void excludeRules(Set<ExcludeRule> excludeRules) {
+            for (ExcludeRule excludeRule : excludeRules) {
+                append("exclude", new TreeMap<String, String>(excludeRule.getExcludeArgs()));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.artifacts.ivyservice;
+
+import org.apache.ivy.core.module.descriptor.Artifact;
+import org.apache.ivy.core.module.descriptor.DefaultArtifact;
+import org.apache.ivy.core.module.id.ModuleRevisionId;
+import org.apache.ivy.core.resolve.ResolveEngine;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.ModuleDependency;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.ResolvedDependency;
+import org.gradle.api.internal.artifacts.DefaultResolvedArtifact;
+import org.gradle.api.internal.artifacts.DefaultResolvedDependency;
+
+import java.io.File;
+import java.io.Serializable;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * A serializable copy of the resolved dependency graph of a configuration, which can be stored in a persistent cache
+ * and converted back into an {@link IvyConversionResult} in a later build. The first level dependencies of the graph
+ * are stored by their position in the dependencies of the configuration. Also records the timestamps of the module
+ * descriptors in the Ivy cache which the graph was resolved from.
+ */
+class ResolvedConfigurationSnapshot implements Serializable {
+    private final List<NodeSnapshot> nodes = new ArrayList<NodeSnapshot>();
+    private final List<ArtifactSnapshot> artifacts = new ArrayList<ArtifactSnapshot>();
+    private final List<int[]> firstLevelDependencies = new ArrayList<int[]>();
+    private final int[] resolvedArtifacts;
+    private final int root;
+    private final Map<String, Long> metaDataFiles;
+
+    private ResolvedConfigurationSnapshot(IvyConversionResult result, List<ModuleDependency> dependencies,
+                                          Map<String, Long> metaDataFiles) {
+        this.metaDataFiles = metaDataFiles;
+        Map<ResolvedDependency, Integer> nodeIds = new HashMap<ResolvedDependency, Integer>();
+        Map<ResolvedArtifact, Integer> artifactIds = new IdentityHashMap<ResolvedArtifact, Integer>();
+        root = addNode(result.getRoot(), nodeIds, artifactIds);
+        for (ModuleDependency dependency : dependencies) {
+            firstLevelDependencies.add(nodeIds(result.getFirstLevelResolvedDependencies().get(dependency), nodeIds,
+                    artifactIds));
+        }
+        resolvedArtifacts = new int[result.getResolvedArtifacts().size()];
+        int i = 0;
+        for (ResolvedArtifact artifact : result.getResolvedArtifacts()) {
+            resolvedArtifacts[i++] = addArtifact(artifact, nodeIds, artifactIds);
+        }
+    }
+
+    /**
+     * Creates a snapshot of the given result.
+     *
+     * @param result The result to copy.
+     * @param dependencies The first level module dependencies of the configuration, in the order used to look them
+     * up when the snapshot is restored.
+     * @param metaDataFiles The module descriptor files in the Ivy cache which the result depends on.
+     */
+    public static ResolvedConfigurationSnapshot create(IvyConversionResult result, List<ModuleDependency> dependencies,
+                                                       Collection<File> metaDataFiles) {
+        Map<String, Long> timestamps = new LinkedHashMap<String, Long>();
+        for (File file : metaDataFiles) {
+            timestamps.put(file.getAbsolutePath(), file.lastModified());
+        }
+        return new ResolvedConfigurationSnapshot(result, dependencies, timestamps);
+    }
+
+    /**
+     * Returns true if none of the module descriptors which this snapshot was resolved from have changed or been
+     * removed from the Ivy cache.
+     */
+    public boolean isUpToDate() {
+        for (Map.Entry<String, Long> entry : metaDataFiles.entrySet()) {
+            if (new File(entry.getKey()).lastModified() != entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts this snapshot back into a resolved dependency graph.
+     *
+     * @param dependencies The first level module dependencies of the configuration, in the same order as used to
+     * create this snapshot.
+     * @param resolveEngine The engine to use to download the artifacts of the graph.
+     */
+    public IvyConversionResult restore(List<ModuleDependency> dependencies, ResolveEngine resolveEngine) {
+        List<DefaultResolvedDependency> resolvedDependencies = new ArrayList<DefaultResolvedDependency>(nodes.size());
+        for (NodeSnapshot node : nodes) {
+            resolvedDependencies.add(new DefaultResolvedDependency(node.name, node.group, node.module, node.version,
+                    node.configuration, new LinkedHashSet<ResolvedArtifact>()));
+        }
+        List<DefaultResolvedArtifact> resolvedArtifacts = new ArrayList<DefaultResolvedArtifact>(artifacts.size());
+        for (ArtifactSnapshot artifact : artifacts) {
+            DefaultResolvedArtifact resolvedArtifact = new DefaultResolvedArtifact(artifact.toArtifact(), resolveEngine);
+            if (artifact.resolvedDependency >= 0) {
+                resolvedArtifact.setResolvedDependency(resolvedDependencies.get(artifact.resolvedDependency));
+            }
+            resolvedArtifacts.add(resolvedArtifact);
+        }
+
+        for (int i = 0; i < nodes.size(); i++) {
+            NodeSnapshot node = nodes.get(i);
+            DefaultResolvedDependency resolvedDependency = resolvedDependencies.get(i);
+            for (int artifact : node.moduleArtifacts) {
+                resolvedDependency.getModuleArtifacts().add(resolvedArtifacts.get(artifact));
+            }
+            for (int child : node.children) {
+                resolvedDependency.getChildren().add(resolvedDependencies.get(child));
+            }
+            for (int parent : node.parents) {
+                resolvedDependency.getParents().add(resolvedDependencies.get(parent));
+            }
+            for (Map.Entry<Integer, int[]> entry : node.parentArtifacts.entrySet()) {
+                Set<ResolvedArtifact> parentArtifacts = new LinkedHashSet<ResolvedArtifact>();
+                for (int artifact : entry.getValue()) {
+                    parentArtifacts.add(resolvedArtifacts.get(artifact));
+                }
+                resolvedDependency.addParentSpecificArtifacts(resolvedDependencies.get(entry.getKey()), parentArtifacts);
+            }
+        }
+
+        Map<Dependency, Set<ResolvedDependency>> firstLevel = new LinkedHashMap<Dependency, Set<ResolvedDependency>>();
+        for (int i = 0; i < dependencies.size(); i++) {
+            Set<ResolvedDependency> resolved = new LinkedHashSet<ResolvedDependency>();
+            for (int node : firstLevelDependencies.get(i)) {
+                resolved.add(resolvedDependencies.get(node));
+            }
+            firstLevel.put(dependencies.get(i), resolved);
+        }
+
+        Set<ResolvedArtifact> allArtifacts = new LinkedHashSet<ResolvedArtifact>();
+        for (int artifact : this.resolvedArtifacts) {
+            allArtifacts.add(resolvedArtifacts.get(artifact));
+        }
+        return new DefaultIvyConversionResult(resolvedDependencies.get(root), firstLevel, allArtifacts);
+    }
+
+    private int[] nodeIds(Collection<ResolvedDependency> dependencies, Map<ResolvedDependency, Integer> nodeIds,
+                          Map<ResolvedArtifact, Integer> artifactIds) {
+        if (dependencies == null) {
+            return new int[0];
+        }
+        int[] ids = new int[dependencies.size()];
+        int i = 0;
+        for (ResolvedDependency dependency : dependencies) {
+            ids[i++] = addNode(dependency, nodeIds, artifactIds);
+        }
+        return ids;
+    }
+
+    private int[] artifactIds(Collection<ResolvedArtifact> artifacts, Map<ResolvedDependency, Integer> nodeIds,
+                              Map<ResolvedArtifact, Integer> artifactIds) {
+        int[] ids = new int[artifacts.size()];
+        int i = 0;
+        for (ResolvedArtifact artifact : artifacts) {
+            ids[i++] = addArtifact(artifact, nodeIds, artifactIds);
+        }
+        return ids;
+    }
+
+    private int addNode(ResolvedDependency dependency, Map<ResolvedDependency, Integer> nodeIds,
+                        Map<ResolvedArtifact, Integer> artifactIds) {
+        Integer id = nodeIds.get(dependency);
+        if (id != null) {
+            return id;
+        }
+        NodeSnapshot node = new NodeSnapshot(dependency);
+        id = nodes.size();
+        nodes.add(node);
+        nodeIds.put(dependency, id);
+
+        node.moduleArtifacts = artifactIds(dependency.getModuleArtifacts(), nodeIds, artifactIds);
+        node.children = nodeIds(dependency.getChildren(), nodeIds, artifactIds);
+        node.parents = nodeIds(dependency.getParents(), nodeIds, artifactIds);
+        for (ResolvedDependency parent : dependency.getParents()) {
+            Set<ResolvedArtifact> parentArtifacts = dependency.getParentArtifacts(parent);
+            if (!parentArtifacts.isEmpty()) {
+                node.parentArtifacts.put(addNode(parent, nodeIds, artifactIds), artifactIds(parentArtifacts, nodeIds,
+                        artifactIds));
+            }
+        }
+        return id;
+    }
+
+    private int addArtifact(ResolvedArtifact artifact, Map<ResolvedDependency, Integer> nodeIds,
+                            Map<ResolvedArtifact, Integer> artifactIds) {
+        Integer id = artifactIds.get(artifact);
+        if (id != null) {
+            return id;
+        }
+        id = artifacts.size();
+        ArtifactSnapshot snapshot = new ArtifactSnapshot(((DefaultResolvedArtifact) artifact).getArtifact());
+        artifacts.add(snapshot);
+        artifactIds.put(artifact, id);
+        if (artifact.getResolvedDependency() != null) {
+            snapshot.resolvedDependency = addNode(artifact.getResolvedDependency(), nodeIds, artifactIds);
+        }
+        return id;
+    }
+
+    private static class NodeSnapshot implements Serializable {
+        private final String name;
+        private final String group;
+        private final String module;
+        private final String version;
+        private final String configuration;
+        private int[] moduleArtifacts;
+        private int[] children;
+        private int[] parents;
+        private final Map<Integer, int[]> parentArtifacts = new LinkedHashMap<Integer, int[]>();
+
+        private NodeSnapshot(ResolvedDependency dependency) {
+            name = dependency.getName();
+            group = dependency.getModuleGroup();
+            module = dependency.getModuleName();
+            version = dependency.getModuleVersion();
+            configuration = dependency.getConfiguration();
+        }
+    }
+
+    private static class ArtifactSnapshot implements Serializable {
+        private final String organisation;
+        private final String module;
+        private final String branch;
+        private final String revision;
+        private final Map<String, String> moduleAttributes;
+        private final long publicationDate;
+        private final String name;
+        private final String type;
+        private final String extension;
+        private final String url;
+        private final Map<String, String> attributes;
+        private int resolvedDependency = -1;
+
+        private ArtifactSnapshot(Artifact artifact) {
+            ModuleRevisionId id = artifact.getModuleRevisionId();
+            organisation = id.getOrganisation();
+            module = id.getName();
+            branch = id.getBranch();
+            revision = id.getRevision();
+            moduleAttributes = new HashMap<String, String>(id.getExtraAttributes());
+            publicationDate = artifact.getPublicationDate() == null ? 0 : artifact.getPublicationDate().getTime();
+            name = artifact.getName();
+            type = artifact.getType();
+            extension = artifact.getExt();
+            url = artifact.getUrl() == null ? null : artifact.getUrl().toString();
+            attributes = new HashMap<String, String>(artifact.getExtraAttributes());
+        }
+
+        Artifact toArtifact() {
+            ModuleRevisionId id = ModuleRevisionId.newInstance(organisation, module, branch, revision, moduleAttributes);
+            Date date = publicationDate == 0 ? null : new Date(publicationDate);
+            try {
+                return new DefaultArtifact(id, date, name, type, extension, url == null ? null : new URL(url), attributes);
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
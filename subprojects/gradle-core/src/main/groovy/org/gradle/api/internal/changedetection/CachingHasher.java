@@ -20,11 +20,22 @@ import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.Serializer;
 
 import java.io.*;
+import java.util.*;
 
+/**
+ * A {@link Hasher} which caches the hash of each file, keyed by the file's length and timestamp. The cached entries
+ * are kept in an in-memory index for the lifetime of the build. Entries are loaded from the persistent cache in batches
+ * as files are hashed, and changed entries are written back in a single batch when this hasher is closed at the end of
+ * the build. This hasher can be used by multiple threads concurrently: access to the index is serialised, but files are
+ * hashed concurrently.
+ */
 public class CachingHasher implements Hasher {
     private final PersistentIndexedCache<File, FileInfo> cache;
     private final Hasher hasher;
-    private long timestamp;
+    private final Object lock = new Object();
+    // Contains a null value for those files which have no entry in the persistent cache
+    private final Map<File, FileInfo> index = new HashMap<File, FileInfo>();
+    private final Map<File, FileInfo> changed = new HashMap<File, FileInfo>();
 
     public CachingHasher(Hasher hasher, CacheRepository cacheRepository) {
         this.hasher = hasher;
@@ -32,17 +43,80 @@ public class CachingHasher implements Hasher {
     }
 
     public byte[] hash(File file) {
-        FileInfo info = cache.get(file);
+        return hashAll(Collections.singletonList(file)).get(file);
+    }
+
+    public Map<File, byte[]> hashAll(Collection<File> files) {
+        Map<File, FileInfo> cachedInfo = lookup(files);
+
+        Map<File, byte[]> hashes = new LinkedHashMap<File, byte[]>();
+        Map<File, FileInfo> staleInfo = new LinkedHashMap<File, FileInfo>();
+        for (File file : files) {
+            FileInfo info = cachedInfo.get(file);
+            long length = file.length();
+            long timestamp = file.lastModified();
+            if (info != null && length == info.length && timestamp == info.timestamp) {
+                hashes.put(file, info.hash);
+            } else {
+                hashes.put(file, null);
+                staleInfo.put(file, new FileInfo(null, length, timestamp));
+            }
+        }
+        if (staleInfo.isEmpty()) {
+            return hashes;
+        }
 
-        long length = file.length();
-        timestamp = file.lastModified();
-        if (info != null && length == info.length && timestamp == info.timestamp) {
-            return info.hash;
+        Map<File, byte[]> newHashes = hasher.hashAll(staleInfo.keySet());
+        synchronized (lock) {
+            for (Map.Entry<File, FileInfo> entry : staleInfo.entrySet()) {
+                File file = entry.getKey();
+                byte[] hash = newHashes.get(file);
+                FileInfo info = new FileInfo(hash, entry.getValue().length, entry.getValue().timestamp);
+                index.put(file, info);
+                changed.put(file, info);
+                hashes.put(file, hash);
+            }
         }
+        return hashes;
+    }
+
+    private Map<File, FileInfo> lookup(Collection<File> files) {
+        synchronized (lock) {
+            List<File> missing = new ArrayList<File>();
+            for (File file : files) {
+                if (!index.containsKey(file)) {
+                    missing.add(file);
+                }
+            }
+            if (!missing.isEmpty()) {
+                Map<File, FileInfo> loaded = cache.getAll(missing);
+                for (File file : missing) {
+                    index.put(file, loaded.get(file));
+                }
+            }
+
+            Map<File, FileInfo> result = new HashMap<File, FileInfo>();
+            for (File file : files) {
+                result.put(file, index.get(file));
+            }
+            return result;
+        }
+    }
 
-        byte[] hash = hasher.hash(file);
-        cache.put(file, new FileInfo(hash, length, timestamp));
-        return hash;
+    /**
+     * Writes the changed entries back to the persistent cache, and discards the in-memory index.
+     */
+    public void close() {
+        synchronized (lock) {
+            try {
+                if (!changed.isEmpty()) {
+                    cache.putAll(changed);
+                }
+            } finally {
+                changed.clear();
+                index.clear();
+            }
+        }
     }
 
     public static class FileInfo implements Serializable {
@@ -18,89 +18,339 @@ package org.gradle.api.internal.changedetection;
 
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.internal.file.SimpleFileCollection;
+import org.gradle.cache.Serializer;
+import org.gradle.messaging.concurrent.ExecutorFactory;
+import org.gradle.messaging.concurrent.StoppableExecutor;
 import org.gradle.util.ChangeListener;
 import org.gradle.util.NoOpChangeListener;
 
-import java.io.File;
-import java.io.Serializable;
-import java.math.BigInteger;
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Snapshots the type and content hash of each file in a collection. Files are passed to the {@link Hasher} in batches.
+ * When constructed with an {@link ExecutorFactory}, large collections are hashed using several worker threads. The
+ * resulting snapshot is the same as when the files are hashed serially.
+ *
+ * <p>A snapshot holds its entries sorted by path, with each path stored as the suffix which follows the prefix it
+ * shares with the previous path. The types and hashes of the entries are packed into arrays, so that a snapshot
+ * contains a small, fixed number of objects regardless of the number of files. Snapshots are compared by walking the
+ * entries of both snapshots in order.</p>
+ */
 public class DefaultFileSnapshotter implements FileSnapshotter {
+    static final int PARALLEL_THRESHOLD = 64;
+    static final int BATCH_SIZE = 32;
+    private static final byte FILE = 1;
+    private static final byte DIR = 2;
+    private static final byte MISSING = 3;
     private final Hasher hasher;
+    private final ExecutorFactory executorFactory;
+    private final int workerCount;
 
     public DefaultFileSnapshotter(Hasher hasher) {
+        this(hasher, null, 1);
+    }
+
+    public DefaultFileSnapshotter(Hasher hasher, ExecutorFactory executorFactory, int workerCount) {
         this.hasher = hasher;
+        this.executorFactory = executorFactory;
+        this.workerCount = workerCount;
     }
 
     public FileCollectionSnapshot snapshot() {
-        return new FileCollectionSnapshotImpl(new HashMap<String, FileSnapshot>());
+        return new SnapshotBuilder(0).build();
+    }
+
+    public Serializer<FileCollectionSnapshot> getSerializer() {
+        return new SnapshotSerializer();
     }
 
     public FileCollectionSnapshot snapshot(FileCollection sourceFiles) {
-        Map<String, FileSnapshot> snapshots = new HashMap<String, FileSnapshot>();
+        List<File> files = new ArrayList<File>();
         for (File file : sourceFiles.getAsFileTree()) {
+            files.add(file);
+        }
+
+        byte[] types = new byte[files.size()];
+        byte[][] hashes = new byte[files.size()][];
+        if (executorFactory != null && workerCount > 1 && files.size() >= PARALLEL_THRESHOLD) {
+            snapshotParallel(files, types, hashes);
+        } else {
+            snapshot(files, 0, types.length, types, hashes);
+        }
+
+        final String[] paths = new String[files.size()];
+        Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = files.get(i).getAbsolutePath();
+            order[i] = i;
+        }
+        // A stable sort, so that the last of any duplicate paths is used
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer index1, Integer index2) {
+                return paths[index1].compareTo(paths[index2]);
+            }
+        });
+
+        SnapshotBuilder builder = new SnapshotBuilder(paths.length);
+        for (int i = 0; i < order.length; i++) {
+            int index = order[i];
+            if (i + 1 < order.length && paths[order[i + 1]].equals(paths[index])) {
+                continue;
+            }
+            byte[] hash = hashes[index];
+            builder.add(paths[index], types[index], hash, 0, hash == null ? 0 : hash.length);
+        }
+        return builder.build();
+    }
+
+    private void snapshotParallel(final List<File> files, final byte[] types, final byte[][] hashes) {
+        final AtomicInteger next = new AtomicInteger();
+        StoppableExecutor executor = executorFactory.create("File hasher");
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        for (int start = next.getAndAdd(BATCH_SIZE); start < types.length; start = next.getAndAdd(BATCH_SIZE)) {
+                            snapshot(files, start, Math.min(start + BATCH_SIZE, types.length), types, hashes);
+                        }
+                    }
+                });
+            }
+        } finally {
+            // Rethrows the first failure from the workers
+            executor.stop();
+        }
+    }
+
+    private void snapshot(List<File> files, int start, int end, byte[] types, byte[][] hashes) {
+        List<File> regularFiles = new ArrayList<File>();
+        for (int i = start; i < end; i++) {
+            File file = files.get(i);
             if (file.isFile()) {
-                snapshots.put(file.getAbsolutePath(), new FileHashSnapshot(hasher.hash(file)));
+                types[i] = FILE;
+                regularFiles.add(file);
             } else if (file.isDirectory()) {
-                snapshots.put(file.getAbsolutePath(), new DirSnapshot());
+                types[i] = DIR;
             } else {
-                snapshots.put(file.getAbsolutePath(), new MissingFileSnapshot());
+                types[i] = MISSING;
             }
         }
-        return new FileCollectionSnapshotImpl(snapshots);
-    }
+        if (regularFiles.isEmpty()) {
+            return;
+        }
 
-    private interface FileSnapshot extends Serializable {
-        boolean isUpToDate(FileSnapshot snapshot);
+        Map<File, byte[]> fileHashes = hasher.hashAll(regularFiles);
+        for (int i = start; i < end; i++) {
+            if (types[i] == FILE) {
+                hashes[i] = fileHashes.get(files.get(i));
+            }
+        }
     }
 
-    private static class FileHashSnapshot implements FileSnapshot {
-        private final byte[] hash;
+    /**
+     * A list of sorted paths, where each path is stored as the length of the prefix it shares with the previous path,
+     * followed by the remaining characters.
+     */
+    private static class PathTable {
+        private static final int MAX_PREFIX_LENGTH = 0xFFFF;
+        private final int[] prefixLengths;
+        private final int[] suffixStarts;
+        private final char[] suffixes;
 
-        public FileHashSnapshot(byte[] hash) {
-            this.hash = hash;
+        private PathTable(int[] prefixLengths, int[] suffixStarts, char[] suffixes) {
+            this.prefixLengths = prefixLengths;
+            this.suffixStarts = suffixStarts;
+            this.suffixes = suffixes;
         }
 
-        public boolean isUpToDate(FileSnapshot snapshot) {
-            if (!(snapshot instanceof FileHashSnapshot)) {
-                return false;
+        public static PathTable of(List<String> paths) {
+            int[] prefixLengths = new int[paths.size()];
+            int[] suffixStarts = new int[paths.size() + 1];
+            int suffixLength = 0;
+            String previous = "";
+            for (int i = 0; i < prefixLengths.length; i++) {
+                String path = paths.get(i);
+                int prefixLength = commonPrefixLength(previous, path);
+                prefixLengths[i] = prefixLength;
+                suffixStarts[i] = suffixLength;
+                suffixLength += path.length() - prefixLength;
+                previous = path;
+            }
+            suffixStarts[prefixLengths.length] = suffixLength;
+
+            char[] suffixes = new char[suffixLength];
+            for (int i = 0; i < prefixLengths.length; i++) {
+                String path = paths.get(i);
+                path.getChars(prefixLengths[i], path.length(), suffixes, suffixStarts[i]);
             }
+            return new PathTable(prefixLengths, suffixStarts, suffixes);
+        }
 
-            FileHashSnapshot other = (FileHashSnapshot) snapshot;
-            return Arrays.equals(hash, other.hash);
+        private static int commonPrefixLength(String path1, String path2) {
+            int maxLength = Math.min(MAX_PREFIX_LENGTH, Math.min(path1.length(), path2.length()));
+            int length = 0;
+            while (length < maxLength && path1.charAt(length) == path2.charAt(length)) {
+                length++;
+            }
+            return length;
         }
 
-        @Override
-        public String toString() {
-            return new BigInteger(1, hash).toString(16);
+        public int size() {
+            return prefixLengths.length;
+        }
+
+        /**
+         * Returns the paths of this table, in order.
+         */
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private char[] buffer = new char[256];
+                private int index;
+
+                public boolean hasNext() {
+                    return index < prefixLengths.length;
+                }
+
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int prefixLength = prefixLengths[index];
+                    int suffixLength = suffixStarts[index + 1] - suffixStarts[index];
+                    int length = prefixLength + suffixLength;
+                    if (length > buffer.length) {
+                        char[] newBuffer = new char[Math.max(length, buffer.length * 2)];
+                        System.arraycopy(buffer, 0, newBuffer, 0, prefixLength);
+                        buffer = newBuffer;
+                    }
+                    System.arraycopy(suffixes, suffixStarts[index], buffer, prefixLength, suffixLength);
+                    index++;
+                    return new String(buffer, 0, length);
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        public void write(DataOutput output) throws IOException {
+            for (int i = 0; i < prefixLengths.length; i++) {
+                output.writeShort(prefixLengths[i]);
+                output.writeUTF(new String(suffixes, suffixStarts[i], suffixStarts[i + 1] - suffixStarts[i]));
+            }
+        }
+
+        public static PathTable read(DataInput input, int count) throws IOException {
+            int[] prefixLengths = new int[count];
+            int[] suffixStarts = new int[count + 1];
+            StringBuilder suffixes = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                prefixLengths[i] = input.readUnsignedShort();
+                suffixStarts[i] = suffixes.length();
+                suffixes.append(input.readUTF());
+            }
+            suffixStarts[count] = suffixes.length();
+            char[] suffixChars = new char[suffixes.length()];
+            suffixes.getChars(0, suffixChars.length, suffixChars, 0);
+            return new PathTable(prefixLengths, suffixStarts, suffixChars);
         }
     }
 
-    private static class DirSnapshot implements FileSnapshot {
-        public boolean isUpToDate(FileSnapshot snapshot) {
-            return snapshot instanceof DirSnapshot;
+    /**
+     * Builds a snapshot from entries which are added in path order.
+     */
+    private static class SnapshotBuilder {
+        private final List<String> paths;
+        private byte[] types;
+        private byte[] hashes = new byte[0];
+        private int hashLength = -1;
+
+        private SnapshotBuilder(int expectedSize) {
+            paths = new ArrayList<String>(expectedSize);
+            types = new byte[expectedSize];
+        }
+
+        public void add(String path, byte type, byte[] hash, int hashOffset, int length) {
+            int index = paths.size();
+            if (type == FILE && hashLength < 0) {
+                hashLength = length;
+                hashes = new byte[types.length * hashLength];
+            }
+            if (type == FILE && length != hashLength) {
+                throw new IllegalArgumentException(String.format(
+                        "Cannot add a hash of %s bytes to a snapshot containing hashes of %s bytes.", length,
+                        hashLength));
+            }
+            if (index == types.length) {
+                int capacity = Math.max(16, types.length * 2);
+                types = copyOf(types, capacity);
+                hashes = copyOf(hashes, capacity * Math.max(0, hashLength));
+            }
+            paths.add(path);
+            types[index] = type;
+            if (type == FILE) {
+                System.arraycopy(hash, hashOffset, hashes, index * hashLength, hashLength);
+            }
+        }
+
+        public FileCollectionSnapshotImpl build() {
+            int count = paths.size();
+            int length = Math.max(0, hashLength);
+            return new FileCollectionSnapshotImpl(PathTable.of(paths), copyOf(types, count), copyOf(hashes,
+                    count * length), length);
+        }
+
+        private static byte[] copyOf(byte[] array, int length) {
+            if (array.length == length) {
+                return array;
+            }
+            byte[] copy = new byte[length];
+            System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+            return copy;
         }
     }
 
-    private static class MissingFileSnapshot implements FileSnapshot {
-        public boolean isUpToDate(FileSnapshot snapshot) {
-            return snapshot instanceof MissingFileSnapshot;
+    /**
+     * An entry of a snapshot, identified by its index in the snapshot.
+     */
+    private static class Entry {
+        private final String path;
+        private final int index;
+        private final boolean removed;
+
+        private Entry(String path, int index, boolean removed) {
+            this.path = path;
+            this.index = index;
+            this.removed = removed;
         }
     }
 
     private static class FileCollectionSnapshotImpl implements FileCollectionSnapshot {
-        private final Map<String, FileSnapshot> snapshots;
+        private transient PathTable paths;
+        private transient byte[] types;
+        private transient byte[] hashes;
+        private transient int hashLength;
 
-        public FileCollectionSnapshotImpl(Map<String, FileSnapshot> snapshots) {
-            this.snapshots = snapshots;
+        public FileCollectionSnapshotImpl(PathTable paths, byte[] types, byte[] hashes, int hashLength) {
+            this.paths = paths;
+            this.types = types;
+            this.hashes = hashes;
+            this.hashLength = hashLength;
+        }
+
+        private FileCollectionSnapshotImpl() {
         }
 
         public FileCollection getFiles() {
             List<File> files = new ArrayList<File>();
-            for (Map.Entry<String, FileSnapshot> entry : snapshots.entrySet()) {
-                if (entry.getValue() instanceof FileHashSnapshot) {
-                    files.add(new File(entry.getKey()));
+            Iterator<String> iterator = paths.iterator();
+            for (int i = 0; iterator.hasNext(); i++) {
+                String path = iterator.next();
+                if (types[i] == FILE) {
+                    files.add(new File(path));
                 }
             }
             return new SimpleFileCollection(files);
@@ -108,35 +358,74 @@ public class DefaultFileSnapshotter implements FileSnapshotter {
 
         public void changesSince(FileCollectionSnapshot oldSnapshot, final ChangeListener<File> listener) {
             FileCollectionSnapshotImpl other = (FileCollectionSnapshotImpl) oldSnapshot;
-            diff(snapshots, other.snapshots, new ChangeListener<Map.Entry<String, FileSnapshot>>() {
-                public void added(Map.Entry<String, FileSnapshot> element) {
-                    listener.added(new File(element.getKey()));
+            diff(other, new ChangeListener<Entry>() {
+                public void added(Entry element) {
+                    listener.added(new File(element.path));
                 }
 
-                public void removed(Map.Entry<String, FileSnapshot> element) {
-                    listener.removed(new File(element.getKey()));
+                public void removed(Entry element) {
+                    listener.removed(new File(element.path));
                 }
 
-                public void changed(Map.Entry<String, FileSnapshot> element) {
-                    listener.changed(new File(element.getKey()));
+                public void changed(Entry element) {
+                    listener.changed(new File(element.path));
                 }
             });
         }
 
-        private void diff(Map<String, FileSnapshot> snapshots, Map<String, FileSnapshot> oldSnapshots,
-                          ChangeListener<Map.Entry<String, FileSnapshot>> listener) {
-            Map<String, FileSnapshot> otherSnapshots = new HashMap<String, FileSnapshot>(oldSnapshots);
-            for (Map.Entry<String, FileSnapshot> entry : snapshots.entrySet()) {
-                FileSnapshot otherFile = otherSnapshots.remove(entry.getKey());
-                if (otherFile == null) {
-                    listener.added(entry);
-                } else if (!entry.getValue().isUpToDate(otherFile)) {
-                    listener.changed(entry);
+        /**
+         * Walks the entries of this snapshot and the given old snapshot in path order. Added and changed entries refer
+         * to this snapshot, removed entries refer to the old snapshot.
+         */
+        private void diff(FileCollectionSnapshotImpl oldSnapshot, ChangeListener<Entry> listener) {
+            Iterator<String> newPaths = paths.iterator();
+            Iterator<String> oldPaths = oldSnapshot.paths.iterator();
+            String newPath = newPaths.hasNext() ? newPaths.next() : null;
+            String oldPath = oldPaths.hasNext() ? oldPaths.next() : null;
+            int newIndex = 0;
+            int oldIndex = 0;
+            while (newPath != null || oldPath != null) {
+                int comparison = newPath == null ? 1 : oldPath == null ? -1 : newPath.compareTo(oldPath);
+                if (comparison < 0) {
+                    listener.added(new Entry(newPath, newIndex, false));
+                } else if (comparison > 0) {
+                    listener.removed(new Entry(oldPath, oldIndex, true));
+                } else if (!isUpToDate(newIndex, oldSnapshot, oldIndex)) {
+                    listener.changed(new Entry(newPath, newIndex, false));
+                }
+                if (comparison <= 0) {
+                    newPath = newPaths.hasNext() ? newPaths.next() : null;
+                    newIndex++;
+                }
+                if (comparison >= 0) {
+                    oldPath = oldPaths.hasNext() ? oldPaths.next() : null;
+                    oldIndex++;
                 }
             }
-            for (Map.Entry<String, FileSnapshot> entry : otherSnapshots.entrySet()) {
-                listener.removed(entry);
+        }
+
+        private boolean isUpToDate(int index, FileCollectionSnapshotImpl oldSnapshot, int oldIndex) {
+            if (types[index] != oldSnapshot.types[oldIndex]) {
+                return false;
+            }
+            if (types[index] != FILE) {
+                return true;
+            }
+            if (hashLength != oldSnapshot.hashLength) {
+                return false;
+            }
+            int offset = index * hashLength;
+            int oldOffset = oldIndex * hashLength;
+            for (int i = 0; i < hashLength; i++) {
+                if (hashes[offset + i] != oldSnapshot.hashes[oldOffset + i]) {
+                    return false;
+                }
             }
+            return true;
+        }
+
+        private void addTo(SnapshotBuilder builder, String path, int index) {
+            builder.add(path, types[index], hashes, index * hashLength, hashLength);
         }
 
         public Diff changesSince(final FileCollectionSnapshot oldSnapshot) {
@@ -148,11 +437,108 @@ public class DefaultFileSnapshotter implements FileSnapshotter {
 
                 public FileCollectionSnapshot applyTo(FileCollectionSnapshot snapshot, final ChangeListener<Merge> listener) {
                     FileCollectionSnapshotImpl target = (FileCollectionSnapshotImpl) snapshot;
-                    final Map<String, FileSnapshot> newSnapshots = new HashMap<String, FileSnapshot>(target.snapshots);
-                    diff(snapshots, other.snapshots, new MapMergeChangeListener<String, FileSnapshot>(listener, newSnapshots));
-                    return new FileCollectionSnapshotImpl(newSnapshots);
+                    final List<Entry> updates = new ArrayList<Entry>();
+                    diff(other, new ChangeListener<Entry>() {
+                        public void added(Entry element) {
+                            DefaultMerge merge = new DefaultMerge();
+                            listener.added(merge);
+                            if (!merge.isIgnore()) {
+                                updates.add(element);
+                            }
+                        }
+
+                        public void removed(Entry element) {
+                            DefaultMerge merge = new DefaultMerge();
+                            listener.removed(merge);
+                            if (!merge.isIgnore()) {
+                                updates.add(element);
+                            }
+                        }
+
+                        public void changed(Entry element) {
+                            DefaultMerge merge = new DefaultMerge();
+                            listener.changed(merge);
+                            if (!merge.isIgnore()) {
+                                updates.add(element);
+                            }
+                        }
+                    });
+                    return merge(target, updates);
                 }
             };
         }
+
+        /**
+         * Applies the given updates, which are sorted by path, to the given snapshot.
+         */
+        private FileCollectionSnapshotImpl merge(FileCollectionSnapshotImpl target, List<Entry> updates) {
+            SnapshotBuilder builder = new SnapshotBuilder(target.paths.size() + updates.size());
+            Iterator<String> targetPaths = target.paths.iterator();
+            Iterator<Entry> updateEntries = updates.iterator();
+            String targetPath = targetPaths.hasNext() ? targetPaths.next() : null;
+            Entry update = updateEntries.hasNext() ? updateEntries.next() : null;
+            int targetIndex = 0;
+            while (targetPath != null || update != null) {
+                int comparison = targetPath == null ? 1 : update == null ? -1 : targetPath.compareTo(update.path);
+                if (comparison < 0) {
+                    target.addTo(builder, targetPath, targetIndex);
+                } else if (!update.removed) {
+                    addTo(builder, update.path, update.index);
+                }
+                if (comparison <= 0) {
+                    targetPath = targetPaths.hasNext() ? targetPaths.next() : null;
+                    targetIndex++;
+                }
+                if (comparison >= 0) {
+                    update = updateEntries.hasNext() ? updateEntries.next() : null;
+                }
+            }
+            return builder.build();
+        }
+
+        private void write(DataOutput output) throws IOException {
+            output.writeInt(types.length);
+            output.writeInt(hashLength);
+            paths.write(output);
+            output.write(types);
+            output.write(hashes);
+        }
+
+        private void read(DataInput input) throws IOException {
+            int count = input.readInt();
+            hashLength = input.readInt();
+            paths = PathTable.read(input, count);
+            types = new byte[count];
+            input.readFully(types);
+            hashes = new byte[count * hashLength];
+            input.readFully(hashes);
+        }
+
+        private void writeObject(ObjectOutputStream output) throws IOException {
+            output.defaultWriteObject();
+            write(output);
+        }
+
+        private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+            input.defaultReadObject();
+            read(input);
+        }
+    }
+
+    /**
+     * Writes the entries of a snapshot directly, without using Java serialization.
+     */
+    private static class SnapshotSerializer implements Serializer<FileCollectionSnapshot> {
+        public FileCollectionSnapshot read(InputStream instr) throws Exception {
+            FileCollectionSnapshotImpl snapshot = new FileCollectionSnapshotImpl();
+            snapshot.read(new DataInputStream(instr));
+            return snapshot;
+        }
+
+        public void write(OutputStream outstr, FileCollectionSnapshot value) throws Exception {
+            DataOutputStream output = new DataOutputStream(outstr);
+            ((FileCollectionSnapshotImpl) value).write(output);
+            output.flush();
+        }
     }
 }
@@ -18,9 +18,20 @@ package org.gradle.api.internal.changedetection;
 import org.gradle.util.HashUtil;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class DefaultHasher implements Hasher {
     public byte[] hash(File file) {
         return HashUtil.createHash(file);
     }
+
+    public Map<File, byte[]> hashAll(Collection<File> files) {
+        Map<File, byte[]> hashes = new LinkedHashMap<File, byte[]>();
+        for (File file : files) {
+            hashes.put(file, hash(file));
+        }
+        return hashes;
+    }
 }
\ No newline at end of file
@@ -24,11 +24,11 @@ import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.Serializer;
 import org.gradle.util.ChangeListener;
 import org.gradle.util.DiffUtil;
 
-import java.io.File;
-import java.io.Serializable;
+import java.io.*;
 import java.util.*;
 
 import static java.util.Collections.*;
@@ -56,7 +56,8 @@ public class DefaultTaskArtifactStateRepository implements TaskArtifactStateRepo
     }
 
     private void loadTasks(TaskInternal task) {
-        taskHistoryCache = repository.cache("taskArtifacts").forObject(task.getProject().getGradle()).open().openIndexedCache();
+        taskHistoryCache = repository.cache("taskArtifacts").forObject(task.getProject().getGradle()).open().openIndexedCache(
+                new TaskHistorySerializer(inputFilesSnapshotter.getSerializer(), outputFilesSnapshotter.getSerializer()));
     }
 
     private static Set<String> outputFiles(TaskInternal task) {
@@ -75,7 +76,7 @@ public class DefaultTaskArtifactStateRepository implements TaskArtifactStateRepo
         FileCollection getPreviousOutputFiles();
     }
 
-    private static class TaskHistory implements Serializable {
+    private static class TaskHistory {
         private static final int MAX_HISTORY_ENTRIES = 3;
         private final List<TaskConfiguration> configurations = new ArrayList<TaskConfiguration>();
 
@@ -259,7 +260,7 @@ public class DefaultTaskArtifactStateRepository implements TaskArtifactStateRepo
         }
     }
 
-    private static class TaskConfiguration implements Serializable {
+    private static class TaskConfiguration {
         private final String taskClass;
         private Set<String> outputFiles;
         private Map<String, Object> inputProperties;
@@ -272,6 +273,88 @@ public class DefaultTaskArtifactStateRepository implements TaskArtifactStateRepo
             this.inputProperties = new HashMap<String, Object>(task.getInputs().getProperties());
             this.inputFilesSnapshot = inputFilesSnapshot;
         }
+
+        private TaskConfiguration(String taskClass) {
+            this.taskClass = taskClass;
+        }
+    }
+
+    /**
+     * Writes a task history directly, using the serializers of the snapshotters for the file snapshots. Only the input
+     * properties, which may have any serializable type, are written using Java serialization. Each history starts with
+     * a format version, and histories written in any other format are discarded.
+     */
+    private static class TaskHistorySerializer implements Serializer<TaskHistory> {
+        private static final int FORMAT_VERSION = 1;
+        private final Serializer<FileCollectionSnapshot> inputFilesSnapshotSerializer;
+        private final Serializer<FileCollectionSnapshot> outputFilesSnapshotSerializer;
+
+        public TaskHistorySerializer(Serializer<FileCollectionSnapshot> inputFilesSnapshotSerializer,
+                                     Serializer<FileCollectionSnapshot> outputFilesSnapshotSerializer) {
+            this.inputFilesSnapshotSerializer = inputFilesSnapshotSerializer;
+            this.outputFilesSnapshotSerializer = outputFilesSnapshotSerializer;
+        }
+
+        public TaskHistory read(InputStream instr) throws Exception {
+            DataInputStream input = new DataInputStream(instr);
+            if (input.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            TaskHistory history = new TaskHistory();
+            int configurationCount = input.readInt();
+            for (int i = 0; i < configurationCount; i++) {
+                TaskConfiguration configuration = new TaskConfiguration(input.readUTF());
+                int outputFileCount = input.readInt();
+                configuration.outputFiles = new HashSet<String>(outputFileCount);
+                for (int j = 0; j < outputFileCount; j++) {
+                    configuration.outputFiles.add(input.readUTF());
+                }
+                try {
+                    configuration.inputProperties = readInputProperties(input);
+                } catch (ClassNotFoundException e) {
+                    // The type of an input property is no longer available, so the history can't be used
+                    return null;
+                }
+                configuration.inputFilesSnapshot = inputFilesSnapshotSerializer.read(input);
+                configuration.outputFilesSnapshot = outputFilesSnapshotSerializer.read(input);
+                history.configurations.add(configuration);
+            }
+            return history;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, Object> readInputProperties(DataInputStream input) throws IOException, ClassNotFoundException {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            return (Map<String, Object>) objectInput.readObject();
+        }
+
+        public void write(OutputStream outstr, TaskHistory value) throws Exception {
+            DataOutputStream output = new DataOutputStream(outstr);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(value.configurations.size());
+            for (TaskConfiguration configuration : value.configurations) {
+                output.writeUTF(configuration.taskClass);
+                output.writeInt(configuration.outputFiles.size());
+                for (String outputFile : configuration.outputFiles) {
+                    output.writeUTF(outputFile);
+                }
+                writeInputProperties(output, configuration.inputProperties);
+                inputFilesSnapshotSerializer.write(output, configuration.inputFilesSnapshot);
+                outputFilesSnapshotSerializer.write(output, configuration.outputFilesSnapshot);
+            }
+            output.flush();
+        }
+
+        private void writeInputProperties(DataOutputStream output, Map<String, Object> inputProperties) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objectOutput = new ObjectOutputStream(bytes);
+            objectOutput.writeObject(inputProperties);
+            objectOutput.close();
+            output.writeInt(bytes.size());
+            bytes.writeTo(output);
+        }
     }
 
     private class TaskArtifactStateImpl implements TaskArtifactState {
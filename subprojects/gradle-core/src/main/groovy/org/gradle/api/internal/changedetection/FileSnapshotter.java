@@ -16,6 +16,7 @@
 package org.gradle.api.internal.changedetection;
 
 import org.gradle.api.file.FileCollection;
+import org.gradle.cache.Serializer;
 
 public interface FileSnapshotter {
     /**
@@ -32,4 +33,11 @@ public interface FileSnapshotter {
      * @return The snapshot.
      */
     FileCollectionSnapshot snapshot(FileCollection files);
+
+    /**
+     * Returns a serializer which can write and read the snapshots created by this snapshotter.
+     *
+     * @return The serializer.
+     */
+    Serializer<FileCollectionSnapshot> getSerializer();
 }
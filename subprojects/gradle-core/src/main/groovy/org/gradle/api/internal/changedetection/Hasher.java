@@ -16,7 +16,16 @@
 package org.gradle.api.internal.changedetection;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.Map;
 
 public interface Hasher {
     byte[] hash(File file);
+
+    /**
+     * Calculates the hash of each of the given files.
+     *
+     * @return The hash of each file, in the same order as the given files.
+     */
+    Map<File, byte[]> hashAll(Collection<File> files);
 }
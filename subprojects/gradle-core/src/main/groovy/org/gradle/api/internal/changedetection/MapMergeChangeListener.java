@@ -52,16 +52,4 @@ class MapMergeChangeListener<K, V> implements ChangeListener<Map.Entry<K, V>> {
             newSnapshots.put(element.getKey(), element.getValue());
         }
     }
-
-    private static class DefaultMerge implements FileCollectionSnapshot.Merge {
-        private boolean ignore;
-
-        public boolean isIgnore() {
-            return ignore;
-        }
-
-        public void ignore() {
-            ignore = true;
-        }
-    }
 }
@@ -19,12 +19,13 @@ package org.gradle.api.internal.changedetection;
 import org.gradle.api.file.FileCollection;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.Serializer;
 import org.gradle.util.ChangeListener;
 import org.gradle.util.DiffUtil;
 import org.gradle.util.IdGenerator;
 import org.gradle.util.NoOpChangeListener;
 
-import java.io.File;
+import java.io.*;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -48,13 +49,17 @@ public class OutputFilesSnapshotter implements FileSnapshotter {
                                   CacheRepository cacheRepository) {
         this.snapshotter = snapshotter;
         this.idGenerator = idGenerator;
-        dirIdentiferCache = cacheRepository.cache("outputFileStates").open().openIndexedCache();
+        dirIdentiferCache = cacheRepository.cache("outputFileStates").open().openIndexedCache(new DirIdSerializer());
     }
 
     public FileCollectionSnapshot snapshot() {
         return new OutputFilesSnapshot(new HashMap<String, Long>(), snapshotter.snapshot());
     }
 
+    public Serializer<FileCollectionSnapshot> getSerializer() {
+        return new OutputFilesSnapshotSerializer(snapshotter.getSerializer());
+    }
+
     public FileCollectionSnapshot snapshot(FileCollection files) {
         Map<String, Long> snapshotDirIds = new HashMap<String, Long>();
         for (File file : files) {
@@ -74,6 +79,60 @@ public class OutputFilesSnapshotter implements FileSnapshotter {
         return new OutputFilesSnapshot(snapshotDirIds, snapshotter.snapshot(files));
     }
 
+    /**
+     * Writes each id as 8 bytes, which is small enough for the cache to store inline in its index.
+     */
+    private static class DirIdSerializer implements Serializer<Long> {
+        public Long read(InputStream instr) throws Exception {
+            return new DataInputStream(instr).readLong();
+        }
+
+        public void write(OutputStream outstr, Long value) throws Exception {
+            DataOutputStream output = new DataOutputStream(outstr);
+            output.writeLong(value);
+            output.flush();
+        }
+    }
+
+    /**
+     * Writes the id of each root file, followed by the snapshot of the files, which is written using the serializer of
+     * the wrapped snapshotter.
+     */
+    private static class OutputFilesSnapshotSerializer implements Serializer<FileCollectionSnapshot> {
+        private final Serializer<FileCollectionSnapshot> filesSnapshotSerializer;
+
+        public OutputFilesSnapshotSerializer(Serializer<FileCollectionSnapshot> filesSnapshotSerializer) {
+            this.filesSnapshotSerializer = filesSnapshotSerializer;
+        }
+
+        public FileCollectionSnapshot read(InputStream instr) throws Exception {
+            DataInputStream input = new DataInputStream(instr);
+            int count = input.readInt();
+            Map<String, Long> rootFileIds = new HashMap<String, Long>(count);
+            for (int i = 0; i < count; i++) {
+                String path = input.readUTF();
+                Long id = input.readBoolean() ? input.readLong() : null;
+                rootFileIds.put(path, id);
+            }
+            return new OutputFilesSnapshot(rootFileIds, filesSnapshotSerializer.read(input));
+        }
+
+        public void write(OutputStream outstr, FileCollectionSnapshot value) throws Exception {
+            OutputFilesSnapshot snapshot = (OutputFilesSnapshot) value;
+            DataOutputStream output = new DataOutputStream(outstr);
+            output.writeInt(snapshot.rootFileIds.size());
+            for (Map.Entry<String, Long> entry : snapshot.rootFileIds.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeBoolean(entry.getValue() != null);
+                if (entry.getValue() != null) {
+                    output.writeLong(entry.getValue());
+                }
+            }
+            output.flush();
+            filesSnapshotSerializer.write(output, snapshot.filesSnapshot);
+        }
+    }
+
     private static class OutputFilesSnapshot implements FileCollectionSnapshot {
         private final Map<String, Long> rootFileIds;
         private final FileCollectionSnapshot filesSnapshot;
@@ -57,7 +57,10 @@ public abstract class AbstractFileTreeElement implements FileTreeElement {
                 return false;
             }
 
-            target.getParentFile().mkdirs();
+            File parentDir = target.getParentFile();
+            if (!parentDir.isDirectory()) {
+                parentDir.mkdirs();
+            }
 
             if (isDirectory()) {
                 target.mkdirs();
@@ -71,12 +74,20 @@ public abstract class AbstractFileTreeElement implements FileTreeElement {
         }
     }
 
-    private void copyFile(File target) throws IOException {
-        FileOutputStream outputStream = new FileOutputStream(target);
+    /**
+     * Copies the content of this element to the given file. Subclasses can override this to copy more efficiently.
+     */
+    protected void copyFile(File target) throws IOException {
+        InputStream inputStream = open();
         try {
-            copyTo(outputStream);
+            FileOutputStream outputStream = new FileOutputStream(target);
+            try {
+                IOUtils.copyLarge(inputStream, outputStream);
+            } finally {
+                outputStream.close();
+            }
         } finally {
-            outputStream.close();
+            inputStream.close();
         }
     }
 
@@ -39,7 +39,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * visited before any child directory is visited.
  *
  * A file or directory will only be visited if it matches all includes and no
- * excludes.
+ * excludes. When the spec is a {@link PathMatchingSpec}, each file or directory is
+ * matched using the match state of its parent directory.
  *
  * @author Steve Appling
  */
@@ -73,7 +74,7 @@ public class DefaultDirectoryWalker implements DirectoryWalker {
             if (root.isFile()) {
                 processSingleFile(root, stopFlag);
             } else {
-               walkDir(root, new RelativePath(false), stopFlag);
+               walkDir(root, new RelativePath(false), getRootState(), stopFlag);
             }
         } else {
             logger.info("file or directory '"+startFile.toString()+"', not found");
@@ -88,39 +89,71 @@ public class DefaultDirectoryWalker implements DirectoryWalker {
         }
     }
 
-    private void walkDir(File file, RelativePath path, AtomicBoolean stopFlag) {
-        File[] children = file.listFiles();
-        if (children == null) {
-            if (file.isDirectory() && !file.canRead()) {
-                throw new GradleException(String.format("Could not list contents of directory '%s' as it is not readable.", file));
-            }
-            // else, might be a link which points to nothing, or has been removed while we're visiting, or ...
-            throw new GradleException(String.format("Could not list contents of '%s'.", file));
-        }
+    private PathMatchingSpec.MatchState getRootState() {
+        return spec instanceof PathMatchingSpec ? ((PathMatchingSpec) spec).getRootState() : null;
+    }
+
+    /**
+     * Lists the contents of the given directory.
+     */
+    protected DirectoryListing list(File dir) {
+        return new DirectoryListing(dir);
+    }
+
+    /**
+     * Called with the child directories of a directory, in the order they are about to be walked.
+     */
+    protected void walking(List<File> dirs) {
+    }
+
+    private void walkDir(File file, RelativePath path, PathMatchingSpec.MatchState state, AtomicBoolean stopFlag) {
+        DirectoryListing listing = list(file);
+        File[] children = listing.children;
         List<FileVisitDetailsImpl> dirs = new ArrayList<FileVisitDetailsImpl>();
+        List<PathMatchingSpec.MatchState> dirStates = new ArrayList<PathMatchingSpec.MatchState>();
         for (int i = 0; !stopFlag.get() && i < children.length; i++) {
             File child = children[i];
-            boolean isFile = child.isFile();
+            boolean isFile = listing.isFile[i];
             RelativePath childPath = path.append(isFile, child.getName());
             FileVisitDetailsImpl details = new FileVisitDetailsImpl(child, childPath, stopFlag);
-            if (isAllowed(details)) {
+            PathMatchingSpec.MatchState childState = null;
+            boolean allowed;
+            if (state == null) {
+                allowed = isAllowed(details);
+            } else if (isFile) {
+                allowed = state.isSatisfiedBy(details);
+            } else {
+                childState = state.getChildState(details);
+                allowed = childState != null;
+            }
+            if (allowed) {
                 if (isFile) {
                     visitor.visitFile(details);
                 } else {
                     dirs.add(details);
+                    dirStates.add(childState);
                 }
             }
         }
 
+        if (!stopFlag.get() && !dirs.isEmpty()) {
+            List<File> dirFiles = new ArrayList<File>(dirs.size());
+            for (FileVisitDetailsImpl dir : dirs) {
+                dirFiles.add(dir.getFile());
+            }
+            walking(dirFiles);
+        }
+
         // now handle dirs
         for (int i = 0; !stopFlag.get() && i < dirs.size(); i++) {
             FileVisitDetailsImpl dir = dirs.get(i);
+            PathMatchingSpec.MatchState dirState = dirStates.get(i);
             if (depthFirst) {
-                walkDir(dir.getFile(), dir.getRelativePath(), stopFlag);
+                walkDir(dir.getFile(), dir.getRelativePath(), dirState, stopFlag);
                 visitor.visitDir(dir);
             } else {
                 visitor.visitDir(dir);
-                walkDir(dir.getFile(), dir.getRelativePath(), stopFlag);
+                walkDir(dir.getFile(), dir.getRelativePath(), dirState, stopFlag);
             }
         }
     }
@@ -134,6 +167,30 @@ public class DefaultDirectoryWalker implements DirectoryWalker {
         return this;
     }
 
+    /**
+     * The contents of a directory, along with whether each child is a file.
+     */
+    protected static class DirectoryListing {
+        private final File[] children;
+        private final boolean[] isFile;
+
+        public DirectoryListing(File dir) {
+            File[] children = dir.listFiles();
+            if (children == null) {
+                if (dir.isDirectory() && !dir.canRead()) {
+                    throw new GradleException(String.format("Could not list contents of directory '%s' as it is not readable.", dir));
+                }
+                // else, might be a link which points to nothing, or has been removed while we're visiting, or ...
+                throw new GradleException(String.format("Could not list contents of '%s'.", dir));
+            }
+            this.children = children;
+            isFile = new boolean[children.length];
+            for (int i = 0; i < children.length; i++) {
+                isFile[i] = children[i].isFile();
+            }
+        }
+    }
+
     private static class FileVisitDetailsImpl extends DefaultFileTreeElement implements FileVisitDetails {
         private final AtomicBoolean stop;
 
@@ -19,9 +19,17 @@ import org.gradle.api.file.RelativePath;
 import org.gradle.util.GFileUtils;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 
-public class DefaultFileTreeElement extends AbstractFileTreeElement {
+public class DefaultFileTreeElement extends AbstractFileTreeElement implements BackingFileSource {
+    /**
+     * The maximum number of bytes to transfer in one call, as some platforms fail to transfer large regions at once.
+     */
+    private static final long MAX_TRANSFER_SIZE = 64 * 1024 * 1024;
     private final File file;
     private final RelativePath relativePath;
 
@@ -54,6 +62,40 @@ public class DefaultFileTreeElement extends AbstractFileTreeElement {
         return GFileUtils.openInputStream(file);
     }
 
+    public File getBackingFile() {
+        return file;
+    }
+
+    /**
+     * Copies the file using {@link FileChannel#transferTo}, so that the operating system can copy the content without
+     * passing it through a buffer on the heap.
+     */
+    @Override
+    protected void copyFile(File target) throws IOException {
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileOutputStream outputStream = new FileOutputStream(target);
+            try {
+                FileChannel source = inputStream.getChannel();
+                FileChannel destination = outputStream.getChannel();
+                long size = source.size();
+                long position = 0;
+                while (position < size) {
+                    long count = source.transferTo(position, Math.min(size - position, MAX_TRANSFER_SIZE), destination);
+                    if (count == 0) {
+                        // The file has been truncated since we started
+                        break;
+                    }
+                    position += count;
+                }
+            } finally {
+                outputStream.close();
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
     public RelativePath getRelativePath() {
         return relativePath;
     }
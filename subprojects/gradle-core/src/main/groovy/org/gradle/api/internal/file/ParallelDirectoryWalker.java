@@ -0,0 +1,137 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file;
+
+import org.gradle.api.file.FileVisitor;
+import org.gradle.messaging.concurrent.ExecutorFactory;
+import org.gradle.messaging.concurrent.StoppableExecutor;
+import org.gradle.util.UncheckedException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A {@link DefaultDirectoryWalker} which uses several worker threads to list directories, and determine the type of
+ * their children, ahead of the walk. This hides the latency of file system operations, for example on network
+ * mounted file systems.
+ *
+ * <p>The visitor is notified from the thread which calls {@link #start(java.io.File)}, in exactly the same order as
+ * for {@link DefaultDirectoryWalker}, so it does not need to be thread-safe, and {@code stopVisiting()} behaves the
+ * same way. Only directories which are about to be walked are listed, and the directory which will be walked next is
+ * listed first.</p>
+ *
+ * <p>A walker can only be used by one thread at a time.</p>
+ */
+public class ParallelDirectoryWalker extends DefaultDirectoryWalker {
+    private final ExecutorFactory executorFactory;
+    private final int workerCount;
+    private final Map<File, FutureTask<DirectoryListing>> listings = new HashMap<File, FutureTask<DirectoryListing>>();
+    private final LinkedList<FutureTask<DirectoryListing>> queue = new LinkedList<FutureTask<DirectoryListing>>();
+    private boolean finished;
+
+    public ParallelDirectoryWalker(FileVisitor visitor, ExecutorFactory executorFactory, int workerCount) {
+        super(visitor);
+        this.executorFactory = executorFactory;
+        this.workerCount = workerCount;
+    }
+
+    @Override
+    public void start(File startFile) {
+        synchronized (queue) {
+            finished = false;
+        }
+        StoppableExecutor executor = executorFactory.create("Directory walker");
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        for (FutureTask<DirectoryListing> listing = take(); listing != null; listing = take()) {
+                            listing.run();
+                        }
+                    }
+                });
+            }
+            super.start(startFile);
+        } finally {
+            synchronized (queue) {
+                // Discards the listings which are no longer required, for example when the visitor stops the walk
+                finished = true;
+                queue.clear();
+                queue.notifyAll();
+            }
+            listings.clear();
+            executor.stop();
+        }
+    }
+
+    private FutureTask<DirectoryListing> take() {
+        synchronized (queue) {
+            while (queue.isEmpty() && !finished) {
+                try {
+                    queue.wait();
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+            return finished ? null : queue.removeFirst();
+        }
+    }
+
+    @Override
+    protected void walking(List<File> dirs) {
+        List<FutureTask<DirectoryListing>> tasks = new ArrayList<FutureTask<DirectoryListing>>(dirs.size());
+        for (final File dir : dirs) {
+            FutureTask<DirectoryListing> listing = new FutureTask<DirectoryListing>(new Callable<DirectoryListing>() {
+                public DirectoryListing call() {
+                    return new DirectoryListing(dir);
+                }
+            });
+            listings.put(dir, listing);
+            tasks.add(listing);
+        }
+        synchronized (queue) {
+            // The walk is depth first over directories, so the most recently queued directories are needed first
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                queue.addFirst(tasks.get(i));
+            }
+            queue.notifyAll();
+        }
+    }
+
+    @Override
+    protected DirectoryListing list(File dir) {
+        FutureTask<DirectoryListing> listing = listings.remove(dir);
+        if (listing == null) {
+            return super.list(dir);
+        }
+        // Lists the directory in this thread, unless a worker has already started listing it
+        listing.run();
+        try {
+            return listing.get();
+        } catch (ExecutionException e) {
+            throw UncheckedException.asUncheckedException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new UncheckedException(e);
+        }
+    }
+}
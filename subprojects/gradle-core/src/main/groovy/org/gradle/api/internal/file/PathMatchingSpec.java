@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file;
+
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.specs.Spec;
+
+/**
+ * A {@link Spec} for the elements of a file tree which can be evaluated one directory level at a time, so that a
+ * directory walker can match each element using the state of its parent directory, and does not need to visit the
+ * contents of a directory which is not satisfied by the spec.
+ */
+public interface PathMatchingSpec extends Spec<FileTreeElement> {
+    /**
+     * Returns the state for the root directory of a tree.
+     */
+    MatchState getRootState();
+
+    interface MatchState {
+        /**
+         * Returns true when the given child of the directory of this state is satisfied by the spec.
+         */
+        boolean isSatisfiedBy(FileTreeElement child);
+
+        /**
+         * Returns the state for the given child directory of the directory of this state, or null when the child is
+         * not satisfied by the spec.
+         */
+        MatchState getChildState(FileTreeElement child);
+    }
+}
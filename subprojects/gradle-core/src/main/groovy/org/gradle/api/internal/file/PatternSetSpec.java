@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file;
+
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.pattern.CompiledPatternMatcher;
+import org.gradle.api.specs.Spec;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The spec for a {@link org.gradle.api.tasks.util.PatternSet}. An element is satisfied when it matches any include
+ * pattern or include spec, and does not match any exclude pattern or exclude spec. When there are no includes, every
+ * element which is not excluded is satisfied.
+ */
+public class PatternSetSpec implements PathMatchingSpec {
+    private final CompiledPatternMatcher includeMatcher;
+    private final List<Spec<FileTreeElement>> includeSpecs;
+    private final CompiledPatternMatcher excludeMatcher;
+    private final List<Spec<FileTreeElement>> excludeSpecs;
+    private final boolean hasIncludes;
+
+    public PatternSetSpec(boolean caseSensitive, Collection<String> includes,
+                          Collection<? extends Spec<FileTreeElement>> includeSpecs, Collection<String> excludes,
+                          Collection<? extends Spec<FileTreeElement>> excludeSpecs) {
+        includeMatcher = includes.isEmpty() ? null : new CompiledPatternMatcher(true, caseSensitive, includes);
+        excludeMatcher = excludes.isEmpty() ? null : new CompiledPatternMatcher(false, caseSensitive, excludes);
+        this.includeSpecs = new ArrayList<Spec<FileTreeElement>>(includeSpecs);
+        this.excludeSpecs = new ArrayList<Spec<FileTreeElement>>(excludeSpecs);
+        hasIncludes = includeMatcher != null || !this.includeSpecs.isEmpty();
+    }
+
+    public boolean isSatisfiedBy(FileTreeElement element) {
+        RelativePath path = element.getRelativePath();
+        boolean included = !hasIncludes || includeMatcher != null && includeMatcher.isSatisfiedBy(path)
+                || anySatisfied(includeSpecs, element);
+        return included && !(excludeMatcher != null && excludeMatcher.isSatisfiedBy(path)
+                || anySatisfied(excludeSpecs, element));
+    }
+
+    public MatchState getRootState() {
+        return new PatternSetMatchState(includeMatcher == null ? null : includeMatcher.getStartState(),
+                excludeMatcher == null ? null : excludeMatcher.getStartState());
+    }
+
+    private static boolean anySatisfied(List<Spec<FileTreeElement>> specs, FileTreeElement element) {
+        for (Spec<FileTreeElement> spec : specs) {
+            if (spec.isSatisfiedBy(element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class PatternSetMatchState implements MatchState {
+        private final CompiledPatternMatcher.State includeState;
+        private final CompiledPatternMatcher.State excludeState;
+
+        private PatternSetMatchState(CompiledPatternMatcher.State includeState,
+                                     CompiledPatternMatcher.State excludeState) {
+            this.includeState = includeState;
+            this.excludeState = excludeState;
+        }
+
+        public boolean isSatisfiedBy(FileTreeElement child) {
+            RelativePath path = child.getRelativePath();
+            String name = path.getLastName();
+            boolean isFile = path.isFile();
+            boolean included = !hasIncludes || includeState != null && includeState.isSatisfiedBy(name, isFile)
+                    || anySatisfied(includeSpecs, child);
+            return included && !(excludeState != null && excludeState.isSatisfiedBy(name, isFile)
+                    || anySatisfied(excludeSpecs, child));
+        }
+
+        public MatchState getChildState(FileTreeElement child) {
+            RelativePath path = child.getRelativePath();
+            String name = path.getLastName();
+            boolean isFile = path.isFile();
+
+            CompiledPatternMatcher.State childIncludeState = null;
+            boolean included = !hasIncludes;
+            if (includeState != null) {
+                childIncludeState = includeState.step(name);
+                included |= childIncludeState.isSatisfiedBy(isFile);
+            }
+            if (!included && !anySatisfied(includeSpecs, child)) {
+                return null;
+            }
+
+            CompiledPatternMatcher.State childExcludeState = null;
+            if (excludeState != null) {
+                childExcludeState = excludeState.step(name);
+                if (childExcludeState.isSatisfiedBy(isFile)) {
+                    return null;
+                }
+            }
+            if (anySatisfied(excludeSpecs, child)) {
+                return null;
+            }
+            return new PatternSetMatchState(childIncludeState, childExcludeState);
+        }
+    }
+}
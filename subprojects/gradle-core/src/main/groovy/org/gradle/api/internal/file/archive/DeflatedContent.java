@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file.archive;
+
+import java.io.OutputStream;
+
+/**
+ * The deflated content of a ZIP entry, which can be copied into another ZIP file without inflating it and deflating it
+ * again.
+ */
+public interface DeflatedContent {
+    /**
+     * Returns the CRC-32 of the uncompressed content.
+     */
+    long getCrc();
+
+    /**
+     * Returns the size of the uncompressed content.
+     */
+    long getSize();
+
+    /**
+     * Returns the size of the deflated content.
+     */
+    long getCompressedSize();
+
+    /**
+     * Copies the raw deflated content to the given stream.
+     */
+    void copyTo(OutputStream outstr);
+}
@@ -0,0 +1,620 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file.archive;
+
+import org.gradle.messaging.concurrent.ExecutorFactory;
+import org.gradle.messaging.concurrent.StoppableExecutor;
+import org.gradle.util.UncheckedException;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes a ZIP file, deflating the content of the entries using several worker threads. The content of each entry is
+ * buffered and deflated by a worker, while the entries are written to the file in the order they were added. The
+ * resulting file is the same as when the entries are deflated serially. Content which is already deflated is written
+ * as is, and an entry too large to buffer is deflated and written by the calling thread.
+ *
+ * <p>When asked to reuse the entries of the previous ZIP file, the new file is written next to the previous file and
+ * replaces it when complete. A buffered entry whose name and content match an entry of the previous file is not
+ * deflated again. Instead, the deflated content of the previous entry is copied to the new file. The content is only
+ * compared, by inflating the previous entry, when the size and CRC-32 of the entries match.</p>
+ *
+ * <p>Entry names are encoded using the platform's default encoding, as for Ant's {@code ZipOutputStream}.</p>
+ */
+public class ParallelZipWriter {
+    static final int MAX_BUFFERED_ENTRY_SIZE = 4 * 1024 * 1024;
+    static final long MAX_PENDING_SIZE = 64 * 1024 * 1024;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int UNIX_PLATFORM = 3;
+    private final File zipFile;
+    private final File outputFile;
+    private final ZipCentralDirectory previousEntries;
+    private final OutputStream outstr;
+    private final StoppableExecutor executor;
+    private final Semaphore workers;
+    private final int maxPendingEntries;
+    private final String encoding;
+    private final int nameFlags;
+    private final LinkedList<FutureTask<Entry>> pending = new LinkedList<FutureTask<Entry>>();
+    private final List<Entry> written = new ArrayList<Entry>();
+    private final byte[] header = new byte[46];
+    private long pendingSize;
+    private long offset;
+    private EntryOutputStream current;
+    private boolean closed;
+
+    /**
+     * Creates a writer which deflates entries using the given number of worker threads. When {@code executorFactory}
+     * is null, the entries are deflated by the calling thread.
+     */
+    public ParallelZipWriter(File zipFile, ExecutorFactory executorFactory, int workerCount) throws IOException {
+        this(zipFile, false, executorFactory, workerCount);
+    }
+
+    /**
+     * Creates a writer which deflates entries using the given number of worker threads, and which reuses the deflated
+     * content of unchanged entries when {@code reusePreviousEntries} is true and the ZIP file already exists.
+     */
+    public ParallelZipWriter(File zipFile, boolean reusePreviousEntries, ExecutorFactory executorFactory,
+                             int workerCount) throws IOException {
+        this.zipFile = zipFile;
+        ZipCentralDirectory previousEntries = null;
+        if (reusePreviousEntries && zipFile.isFile()) {
+            previousEntries = new ZipCentralDirectory(zipFile);
+            try {
+                previousEntries.read();
+            } catch (IOException e) {
+                // Not a usable ZIP file, so overwrite it
+                previousEntries.close();
+                previousEntries = null;
+            }
+        }
+        this.previousEntries = previousEntries;
+        outputFile = previousEntries == null ? zipFile : new File(zipFile.getParentFile(), zipFile.getName() + ".tmp");
+        outstr = new BufferedOutputStream(new FileOutputStream(outputFile), 64 * 1024);
+        if (executorFactory != null && workerCount > 1) {
+            executor = executorFactory.create(String.format("Deflate ZIP '%s'", zipFile));
+            workers = new Semaphore(workerCount);
+            maxPendingEntries = workerCount * 4;
+        } else {
+            executor = null;
+            workers = null;
+            maxPendingEntries = 1;
+        }
+        encoding = Charset.defaultCharset().name();
+        nameFlags = Charset.defaultCharset().name().equals("UTF-8") ? UTF8_FLAG : 0;
+    }
+
+    public File getZipFile() {
+        return zipFile;
+    }
+
+    /**
+     * Adds a directory entry. The name should end with a '/'.
+     */
+    public void putDirectory(String name, long lastModified, int unixMode) throws IOException {
+        closeCurrent();
+        Entry entry = new Entry(name, lastModified, unixMode, true);
+        entry.method = ZipEntry.STORED;
+        entry.data = new byte[0];
+        add(entry, completed(entry), 0);
+    }
+
+    /**
+     * Adds a file entry whose content is already deflated.
+     */
+    public void putDeflatedFile(String name, long lastModified, int unixMode, DeflatedContent content) throws IOException {
+        closeCurrent();
+        Entry entry = new Entry(name, lastModified, unixMode, false);
+        entry.crc = content.getCrc();
+        entry.size = content.getSize();
+        entry.compressedSize = content.getCompressedSize();
+        if (content.getCompressedSize() > MAX_BUFFERED_ENTRY_SIZE) {
+            writePending(0);
+            writeLocalHeader(entry);
+            CountingOutputStream counter = new CountingOutputStream(outstr);
+            content.copyTo(counter);
+            offset += counter.count;
+            written.add(entry);
+        } else {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) content.getCompressedSize());
+            content.copyTo(buffer);
+            entry.data = buffer.toByteArray();
+            add(entry, completed(entry), entry.data.length);
+        }
+    }
+
+    /**
+     * Adds a file entry, and returns a stream to write the content of the entry to. The entry is complete when the
+     * next entry is added, or when this writer is closed.
+     */
+    public OutputStream putFile(String name, long lastModified, int unixMode) throws IOException {
+        closeCurrent();
+        current = new EntryOutputStream(new Entry(name, lastModified, unixMode, false));
+        return current;
+    }
+
+    /**
+     * Writes the remaining entries and the central directory, and closes the file.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        boolean complete = false;
+        try {
+            closeCurrent();
+            writePending(0);
+            writeCentralDirectory();
+            complete = true;
+        } finally {
+            release(complete);
+        }
+    }
+
+    /**
+     * Closes the file without completing it.
+     */
+    public void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+        release(false);
+    }
+
+    private void release(boolean complete) throws IOException {
+        closed = true;
+        current = null;
+        pending.clear();
+        try {
+            if (executor != null) {
+                executor.stop();
+            }
+        } finally {
+            try {
+                outstr.close();
+            } finally {
+                if (previousEntries != null) {
+                    previousEntries.close();
+                    replacePreviousFile(complete);
+                }
+            }
+        }
+    }
+
+    private void replacePreviousFile(boolean complete) throws IOException {
+        if (!complete) {
+            outputFile.delete();
+            return;
+        }
+        if (!zipFile.delete() || !outputFile.renameTo(zipFile)) {
+            throw new IOException(String.format("Could not replace ZIP '%s' with '%s'.", zipFile, outputFile));
+        }
+    }
+
+    private void closeCurrent() throws IOException {
+        if (closed) {
+            throw new IllegalStateException(String.format("ZIP '%s' has already been closed.", zipFile));
+        }
+        if (current != null) {
+            EntryOutputStream entryStream = current;
+            current = null;
+            entryStream.finish();
+        }
+    }
+
+    private void add(Entry entry, FutureTask<Entry> task, long bufferedSize) throws IOException {
+        entry.bufferedSize = bufferedSize;
+        pending.add(task);
+        pendingSize += bufferedSize;
+        writePending(maxPendingEntries);
+    }
+
+    private FutureTask<Entry> completed(Entry entry) {
+        FutureTask<Entry> task = new FutureTask<Entry>(new CompletedEntry(entry));
+        task.run();
+        return task;
+    }
+
+    private FutureTask<Entry> submit(final Entry entry, final byte[] data, final int length) {
+        FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+            public Entry call() {
+                try {
+                    deflateContent(entry, data, length);
+                    return entry;
+                } finally {
+                    if (workers != null) {
+                        workers.release();
+                    }
+                }
+            }
+        });
+        if (executor == null) {
+            task.run();
+        } else {
+            // Deflate at most workerCount entries at the same time
+            workers.acquireUninterruptibly();
+            executor.execute(task);
+        }
+        return task;
+    }
+
+    private void deflateContent(Entry entry, byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        if (previousEntries != null) {
+            DeflatedContent previous = previousEntries.getDeflatedContent(entry.path);
+            if (previous != null && previous.getSize() == length && previous.getCrc() == crc.getValue()) {
+                byte[] compressed = readDeflatedContent(previous);
+                if (inflatesTo(compressed, data, length)) {
+                    entry.method = ZipEntry.DEFLATED;
+                    entry.crc = previous.getCrc();
+                    entry.size = length;
+                    entry.data = compressed;
+                    entry.compressedSize = compressed.length;
+                    return;
+                }
+            }
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[Math.min(length + 64, 64 * 1024)];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                compressed.write(buffer, 0, count);
+            }
+            entry.method = ZipEntry.DEFLATED;
+            entry.crc = crc.getValue();
+            entry.size = length;
+            entry.data = compressed.toByteArray();
+            entry.compressedSize = entry.data.length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] readDeflatedContent(DeflatedContent content) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) content.getCompressedSize());
+        content.copyTo(buffer);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Returns true when the given deflated content inflates to exactly the given content. A matching size and CRC-32
+     * does not guarantee this, and inflating is much cheaper than deflating.
+     */
+    private static boolean inflatesTo(byte[] compressed, byte[] data, int length) {
+        Inflater inflater = new Inflater(true);
+        try {
+            // An extra byte, as the inflater may need one more byte than the deflated content when there is no header
+            byte[] input = new byte[compressed.length + 1];
+            System.arraycopy(compressed, 0, input, 0, compressed.length);
+            inflater.setInput(input);
+            byte[] buffer = new byte[Math.min(length + 1, 64 * 1024)];
+            int pos = 0;
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return false;
+                }
+                if (pos + count > length) {
+                    return false;
+                }
+                for (int i = 0; i < count; i++) {
+                    if (buffer[i] != data[pos + i]) {
+                        return false;
+                    }
+                }
+                pos += count;
+            }
+            return pos == length;
+        } catch (DataFormatException e) {
+            return false;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Writes completed entries from the head of the queue, then waits for and writes entries until at most the given
+     * number of entries is pending and the pending content fits in memory.
+     */
+    private void writePending(int maxPending) throws IOException {
+        while (!pending.isEmpty()) {
+            FutureTask<Entry> head = pending.getFirst();
+            if (!head.isDone() && pending.size() <= maxPending && pendingSize <= MAX_PENDING_SIZE) {
+                break;
+            }
+            pending.removeFirst();
+            Entry entry;
+            try {
+                entry = head.get();
+            } catch (InterruptedException e) {
+                throw UncheckedException.asUncheckedException(e);
+            } catch (ExecutionException e) {
+                throw UncheckedException.asUncheckedException(e.getCause());
+            }
+            pendingSize -= entry.bufferedSize;
+            writeLocalHeader(entry);
+            outstr.write(entry.data);
+            offset += entry.data.length;
+            entry.data = null;
+            written.add(entry);
+        }
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        entry.offset = offset;
+        writeInt(0, LOCAL_HEADER_SIGNATURE);
+        writeShort(4, entry.getVersionNeeded());
+        writeShort(6, entry.flags);
+        writeShort(8, entry.method);
+        writeInt(10, entry.dosTime);
+        if ((entry.flags & DATA_DESCRIPTOR_FLAG) != 0) {
+            writeInt(14, 0);
+            writeInt(18, 0);
+            writeInt(22, 0);
+        } else {
+            writeInt(14, (int) entry.crc);
+            writeInt(18, (int) entry.compressedSize);
+            writeInt(22, (int) entry.size);
+        }
+        writeShort(26, entry.name.length);
+        writeShort(28, 0);
+        outstr.write(header, 0, 30);
+        outstr.write(entry.name);
+        offset += 30 + entry.name.length;
+    }
+
+    private void writeDataDescriptor(Entry entry) throws IOException {
+        writeInt(0, DATA_DESCRIPTOR_SIGNATURE);
+        writeInt(4, (int) entry.crc);
+        writeInt(8, (int) entry.compressedSize);
+        writeInt(12, (int) entry.size);
+        outstr.write(header, 0, 16);
+        offset += 16;
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long start = offset;
+        for (Entry entry : written) {
+            writeInt(0, CENTRAL_DIRECTORY_SIGNATURE);
+            writeShort(4, UNIX_PLATFORM << 8 | 20);
+            writeShort(6, entry.getVersionNeeded());
+            writeShort(8, entry.flags);
+            writeShort(10, entry.method);
+            writeInt(12, entry.dosTime);
+            writeInt(16, (int) entry.crc);
+            writeInt(20, (int) entry.compressedSize);
+            writeInt(24, (int) entry.size);
+            writeShort(28, entry.name.length);
+            writeShort(30, 0);
+            writeShort(32, 0);
+            writeShort(34, 0);
+            writeShort(36, 0);
+            writeInt(38, entry.externalAttributes);
+            writeInt(42, (int) entry.offset);
+            outstr.write(header, 0, 46);
+            outstr.write(entry.name);
+            offset += 46 + entry.name.length;
+        }
+        writeInt(0, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        writeShort(4, 0);
+        writeShort(6, 0);
+        writeShort(8, written.size());
+        writeShort(10, written.size());
+        writeInt(12, (int) (offset - start));
+        writeInt(16, (int) start);
+        writeShort(20, 0);
+        outstr.write(header, 0, 22);
+    }
+
+    private void writeShort(int pos, int value) {
+        header[pos] = (byte) value;
+        header[pos + 1] = (byte) (value >> 8);
+    }
+
+    private void writeInt(int pos, int value) {
+        writeShort(pos, value);
+        writeShort(pos + 2, value >> 16);
+    }
+
+    private static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return 1 << 21 | 1 << 16;
+        }
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private class Entry {
+        private final String path;
+        private final byte[] name;
+        private final int dosTime;
+        private final int externalAttributes;
+        private int flags = nameFlags;
+        private int method = ZipEntry.DEFLATED;
+        private long crc;
+        private long size;
+        private long compressedSize;
+        private long offset;
+        private long bufferedSize;
+        private byte[] data;
+
+        private Entry(String name, long lastModified, int unixMode, boolean directory) throws IOException {
+            this.path = name;
+            this.name = name.getBytes(encoding);
+            dosTime = toDosTime(lastModified);
+            // Same attributes as Ant's ZipEntry.setUnixMode()
+            externalAttributes = unixMode << 16 | ((unixMode & 0200) == 0 ? 1 : 0) | (directory ? 0x10 : 0);
+        }
+
+        int getVersionNeeded() {
+            return method == ZipEntry.DEFLATED || (flags & DATA_DESCRIPTOR_FLAG) != 0 ? 20 : 10;
+        }
+    }
+
+    private static class CompletedEntry implements Callable<Entry> {
+        private final Entry entry;
+
+        private CompletedEntry(Entry entry) {
+            this.entry = entry;
+        }
+
+        public Entry call() {
+            return entry;
+        }
+    }
+
+    /**
+     * Buffers the content of an entry, and switches to deflating the content directly to the file once the content
+     * is too large to buffer.
+     */
+    private class EntryOutputStream extends OutputStream {
+        private final Entry entry;
+        private byte[] buffer = new byte[8192];
+        private int count;
+        private Deflater deflater;
+        private CRC32 crc;
+        private byte[] deflateBuffer;
+
+        private EntryOutputStream(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            if (current != this) {
+                throw new IllegalStateException(String.format("Cannot write to ZIP '%s' as the entry is closed.", zipFile));
+            }
+            if (deflater == null && count + len > MAX_BUFFERED_ENTRY_SIZE) {
+                startDeflating();
+            }
+            if (deflater != null) {
+                crc.update(bytes, off, len);
+                deflater.setInput(bytes, off, len);
+                while (!deflater.needsInput()) {
+                    writeDeflated();
+                }
+                return;
+            }
+            if (count + len > buffer.length) {
+                byte[] newBuffer = new byte[Math.max(buffer.length * 2, count + len)];
+                System.arraycopy(buffer, 0, newBuffer, 0, count);
+                buffer = newBuffer;
+            }
+            System.arraycopy(bytes, off, buffer, count, len);
+            count += len;
+        }
+
+        @Override
+        public void close() {
+            // The entry is finished when the next entry is added
+        }
+
+        private void startDeflating() throws IOException {
+            writePending(0);
+            entry.flags |= DATA_DESCRIPTOR_FLAG;
+            writeLocalHeader(entry);
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            crc = new CRC32();
+            deflateBuffer = new byte[64 * 1024];
+            byte[] buffered = buffer;
+            int bufferedCount = count;
+            buffer = null;
+            count = 0;
+            write(buffered, 0, bufferedCount);
+        }
+
+        private void writeDeflated() throws IOException {
+            int deflated = deflater.deflate(deflateBuffer);
+            outstr.write(deflateBuffer, 0, deflated);
+            offset += deflated;
+        }
+
+        void finish() throws IOException {
+            if (deflater == null) {
+                add(entry, submit(entry, buffer, count), count);
+                buffer = null;
+                return;
+            }
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    writeDeflated();
+                }
+                entry.crc = crc.getValue();
+                entry.size = deflater.getBytesRead();
+                entry.compressedSize = deflater.getBytesWritten();
+            } finally {
+                deflater.end();
+            }
+            writeDataDescriptor(entry);
+            written.add(entry);
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream outstr) {
+            super(outstr);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
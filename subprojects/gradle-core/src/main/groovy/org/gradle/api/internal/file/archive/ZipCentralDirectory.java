@@ -0,0 +1,219 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file.archive;
+
+import org.gradle.api.UncheckedIOException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Provides access to the deflated content of the entries of a ZIP file, using the central directory of the file to
+ * locate the entries. The central directory is read the first time the content of an entry is requested.
+ */
+class ZipCentralDirectory {
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+    private static final int CENTRAL_DIRECTORY_HEADER_LENGTH = 46;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+    private static final int ENCRYPTED_FLAG = 1;
+    private static final long MAX_SIZE = 0xffffffffL;
+    private final File zipFile;
+    private RandomAccessFile file;
+    private Map<String, Entry> entries;
+
+    ZipCentralDirectory(File zipFile) {
+        this.zipFile = zipFile;
+    }
+
+    /**
+     * Returns the deflated content of the given entry, or null when the content is not available in deflated form.
+     */
+    public DeflatedContent getDeflatedContent(ZipEntry zipEntry) {
+        if (zipEntry.isDirectory() || zipEntry.getMethod() != ZipEntry.DEFLATED) {
+            return null;
+        }
+        DeflatedContent content = getDeflatedContent(zipEntry.getName());
+        if (content == null || zipEntry.getCrc() != -1 && zipEntry.getCrc() != content.getCrc()) {
+            return null;
+        }
+        return content;
+    }
+
+    /**
+     * Returns the deflated content of the entry with the given name, or null when there is no such entry or its content
+     * is not available in deflated form. Can be called from several threads. The content itself should be copied by
+     * one thread only.
+     */
+    public synchronized DeflatedContent getDeflatedContent(String name) {
+        try {
+            read();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return entries.get(name);
+    }
+
+    /**
+     * Reads the central directory, if not already read.
+     */
+    public synchronized void read() throws IOException {
+        if (entries == null) {
+            if (file == null) {
+                file = new RandomAccessFile(zipFile, "r");
+            }
+            entries = readEntries();
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+
+    private Map<String, Entry> readEntries() throws IOException {
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+
+        int tailLength = (int) Math.min(file.length(), END_OF_CENTRAL_DIRECTORY_LENGTH + MAX_COMMENT_LENGTH);
+        byte[] tail = new byte[tailLength];
+        file.seek(file.length() - tailLength);
+        file.readFully(tail);
+        int end = tailLength - END_OF_CENTRAL_DIRECTORY_LENGTH;
+        while (end >= 0 && readInt(tail, end) != END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+            end--;
+        }
+        if (end < 0) {
+            throw new ZipException(String.format("Could not find the central directory of %s.", zipFile));
+        }
+        long directoryLength = readUnsignedInt(tail, end + 12);
+        long directoryOffset = readUnsignedInt(tail, end + 16);
+        if (directoryLength == MAX_SIZE || directoryOffset == MAX_SIZE) {
+            // A ZIP64 file: use the inflated content instead
+            return entries;
+        }
+
+        if (directoryOffset + directoryLength > file.length()) {
+            throw new ZipException(String.format("Could not read the central directory of %s.", zipFile));
+        }
+        byte[] directory = new byte[(int) directoryLength];
+        file.seek(directoryOffset);
+        file.readFully(directory);
+        int pos = 0;
+        while (pos + CENTRAL_DIRECTORY_HEADER_LENGTH <= directory.length
+                && readInt(directory, pos) == CENTRAL_DIRECTORY_SIGNATURE) {
+            int flags = readShort(directory, pos + 8);
+            int method = readShort(directory, pos + 10);
+            long crc = readUnsignedInt(directory, pos + 16);
+            long compressedSize = readUnsignedInt(directory, pos + 20);
+            long size = readUnsignedInt(directory, pos + 24);
+            int nameLength = readShort(directory, pos + 28);
+            int extraLength = readShort(directory, pos + 30);
+            int commentLength = readShort(directory, pos + 32);
+            long offset = readUnsignedInt(directory, pos + 42);
+            // ZipInputStream decodes names as UTF-8, so do the same here
+            String name = new String(directory, pos + CENTRAL_DIRECTORY_HEADER_LENGTH, nameLength, "UTF-8");
+            pos += CENTRAL_DIRECTORY_HEADER_LENGTH + nameLength + extraLength + commentLength;
+
+            if (entries.containsKey(name)) {
+                // Cannot tell which of the entries is being visited
+                entries.put(name, null);
+            } else if (method == ZipEntry.DEFLATED && (flags & ENCRYPTED_FLAG) == 0 && compressedSize != MAX_SIZE
+                    && size != MAX_SIZE && offset != MAX_SIZE) {
+                entries.put(name, new Entry(crc, size, compressedSize, offset));
+            } else {
+                entries.put(name, null);
+            }
+        }
+        return entries;
+    }
+
+    private static int readShort(byte[] buffer, int pos) {
+        return (buffer[pos] & 0xff) | (buffer[pos + 1] & 0xff) << 8;
+    }
+
+    private static int readInt(byte[] buffer, int pos) {
+        return readShort(buffer, pos) | readShort(buffer, pos + 2) << 16;
+    }
+
+    private static long readUnsignedInt(byte[] buffer, int pos) {
+        return readInt(buffer, pos) & 0xffffffffL;
+    }
+
+    private class Entry implements DeflatedContent {
+        private final long crc;
+        private final long size;
+        private final long compressedSize;
+        private final long offset;
+
+        private Entry(long crc, long size, long compressedSize, long offset) {
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.offset = offset;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public void copyTo(OutputStream outstr) {
+            // Entries may be copied by several threads, which share the file
+            synchronized (ZipCentralDirectory.this) {
+                try {
+                    byte[] header = new byte[LOCAL_HEADER_LENGTH];
+                    file.seek(offset);
+                    file.readFully(header);
+                    if (readInt(header, 0) != LOCAL_HEADER_SIGNATURE) {
+                        throw new ZipException(String.format("Could not find the local header of an entry in %s.",
+                                zipFile));
+                    }
+                    file.seek(offset + LOCAL_HEADER_LENGTH + readShort(header, 26) + readShort(header, 28));
+                    byte[] buffer = new byte[(int) Math.min(compressedSize, 64 * 1024)];
+                    long remaining = compressedSize;
+                    while (remaining > 0) {
+                        int nread = file.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+                        if (nread < 0) {
+                            throw new ZipException(String.format("Unexpected end of %s.", zipFile));
+                        }
+                        outstr.write(buffer, 0, nread);
+                        remaining -= nread;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
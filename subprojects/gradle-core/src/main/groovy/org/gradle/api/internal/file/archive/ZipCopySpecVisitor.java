@@ -15,7 +15,7 @@
  */
 package org.gradle.api.internal.file.archive;
 
-import org.apache.tools.zip.*;
+import org.apache.tools.zip.UnixStat;
 import org.gradle.api.GradleException;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.internal.file.copy.CopyAction;
@@ -23,20 +23,37 @@ import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.internal.file.copy.ArchiveCopyAction;
 import org.gradle.api.internal.file.copy.EmptyCopySpecVisitor;
 import org.gradle.api.internal.file.copy.ReadableCopySpec;
+import org.gradle.messaging.concurrent.ExecutorFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 
 public class ZipCopySpecVisitor extends EmptyCopySpecVisitor {
-    private ZipOutputStream zipOutStr;
+    private final ExecutorFactory executorFactory;
+    private final int workerCount;
+    private ParallelZipWriter zipWriter;
     private File zipFile;
     private ReadableCopySpec spec;
 
+    public ZipCopySpecVisitor() {
+        this(null, 1);
+    }
+
+    /**
+     * Creates a visitor which deflates the content of the ZIP file using the given number of worker threads.
+     */
+    public ZipCopySpecVisitor(ExecutorFactory executorFactory, int workerCount) {
+        this.executorFactory = executorFactory;
+        this.workerCount = workerCount;
+    }
+
     public void startVisit(CopyAction action) {
         ArchiveCopyAction archiveAction = (ArchiveCopyAction) action;
         zipFile = archiveAction.getArchivePath();
+        boolean incremental = action instanceof ZipCopyAction && ((ZipCopyAction) action).isIncremental();
         try {
-            zipOutStr = new ZipOutputStream(zipFile);
+            zipWriter = new ParallelZipWriter(zipFile, incremental, executorFactory, workerCount);
         } catch (Exception e) {
             throw new GradleException(String.format("Could not create ZIP '%s'.", zipFile), e);
         }
@@ -44,12 +61,12 @@ public class ZipCopySpecVisitor extends EmptyCopySpecVisitor {
 
     public void endVisit() {
         try {
-            zipOutStr.close();
+            zipWriter.close();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         } finally {
             spec = null;
-            zipOutStr = null;
+            zipWriter = null;
         }
     }
 
@@ -59,14 +76,18 @@ public class ZipCopySpecVisitor extends EmptyCopySpecVisitor {
 
     public void visitFile(FileVisitDetails fileDetails) {
         try {
-            ZipEntry archiveEntry = new ZipEntry(fileDetails.getRelativePath().getPathString());
-            archiveEntry.setMethod(ZipEntry.DEFLATED);
-            archiveEntry.setTime(fileDetails.getLastModified());
-            archiveEntry.setUnixMode(UnixStat.FILE_FLAG | spec.getFileMode());
-            zipOutStr.putNextEntry(archiveEntry);
-            fileDetails.copyTo(zipOutStr);
-            zipOutStr.closeEntry();
+            String name = fileDetails.getRelativePath().getPathString();
+            int mode = UnixStat.FILE_FLAG | spec.getFileMode();
+            DeflatedContent deflatedContent = fileDetails instanceof DeflatedContentSource
+                    ? ((DeflatedContentSource) fileDetails).getDeflatedContent() : null;
+            if (deflatedContent != null) {
+                zipWriter.putDeflatedFile(name, fileDetails.getLastModified(), mode, deflatedContent);
+            } else {
+                OutputStream outstr = zipWriter.putFile(name, fileDetails.getLastModified(), mode);
+                fileDetails.copyTo(outstr);
+            }
         } catch (Exception e) {
+            abort();
             throw new GradleException(String.format("Could not add %s to ZIP '%s'.", fileDetails, zipFile), e);
         }
     }
@@ -74,16 +95,23 @@ public class ZipCopySpecVisitor extends EmptyCopySpecVisitor {
     public void visitDir(FileVisitDetails dirDetails) {
         try {
             // Trailing slash in name indicates that entry is a directory
-            ZipEntry archiveEntry = new ZipEntry(dirDetails.getRelativePath().getPathString() + '/');
-            archiveEntry.setTime(dirDetails.getLastModified());
-            archiveEntry.setUnixMode(UnixStat.DIR_FLAG | spec.getDirMode());
-            zipOutStr.putNextEntry(archiveEntry);
-            zipOutStr.closeEntry();
+            zipWriter.putDirectory(dirDetails.getRelativePath().getPathString() + '/', dirDetails.getLastModified(),
+                    UnixStat.DIR_FLAG | spec.getDirMode());
         } catch (Exception e) {
+            abort();
             throw new GradleException(String.format("Could not add %s to ZIP '%s'.", dirDetails, zipFile), e);
         }
     }
 
+    private void abort() {
+        // The copy action does not end the visit on failure, so release the file and the workers here
+        try {
+            zipWriter.abort();
+        } catch (IOException e) {
+            // Ignore, as the original failure is more useful
+        }
+    }
+
     public boolean getDidWork() {
         return true;
     }
@@ -15,34 +15,57 @@
  */
 package org.gradle.api.internal.file.archive;
 
-import org.apache.tools.zip.ZipEntry;
 import org.apache.tools.zip.ZipFile;
-import org.gradle.api.UncheckedIOException;
-import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.GradleException;
-import org.gradle.api.internal.file.AbstractFileTree;
-import org.gradle.api.internal.file.AbstractFileTreeElement;
-import org.gradle.api.internal.file.DefaultConfigurableFileTree;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.UncheckedIOException;
 import org.gradle.api.file.FileTree;
 import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.file.FileVisitor;
 import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.AbstractFileTree;
+import org.gradle.api.internal.file.AbstractFileTreeElement;
+import org.gradle.api.internal.file.DefaultConfigurableFileTree;
+import org.gradle.util.GFileUtils;
 import org.gradle.util.HashUtil;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
 
+/**
+ * A file tree made up of the entries of a ZIP file. The entries are visited in the order they appear in the file,
+ * streamed directly from the local headers of the file, so visiting the tree does not read the central directory or
+ * seek within the file, and does not extract anything to disk unless a visitor asks for a {@link
+ * FileVisitDetails#getFile()}.
+ *
+ * <p>{@link ZipInputStream} cannot stream entries whose names are not UTF-8 encoded, or STORED entries followed by a
+ * data descriptor. When it meets such an entry, the remaining entries are visited using the central directory instead,
+ * with names decoded using the platform's default encoding.</p>
+ *
+ * <p>When the contents must be extracted, they are extracted to a directory named after the ZIP file's path and the
+ * hash of its content, so that a later build can reuse them for as long as the ZIP file does not change. The content is
+ * only hashed once something is extracted, and the directories of previous contents of the ZIP file are deleted at
+ * that point.</p>
+ */
 public class ZipFileTree extends AbstractFileTree {
     private final File zipFile;
     private final File tmpDir;
+    private File expandDir;
+    private long expandDirLength;
+    private long expandDirLastModified;
 
     public ZipFileTree(File zipFile, File tmpDir) {
         this.zipFile = zipFile;
-        String expandDirName = String.format("%s_%s", zipFile.getName(), HashUtil.createHash(zipFile.getAbsolutePath()));
-        this.tmpDir = new File(tmpDir, expandDirName);
+        this.tmpDir = tmpDir;
     }
 
     public String getDisplayName() {
@@ -51,8 +74,18 @@ public class ZipFileTree extends AbstractFileTree {
 
     @Override
     protected Collection<DefaultConfigurableFileTree> getAsFileTrees() {
-        visitAll();
-        return zipFile.exists() ? Collections.singleton(new DefaultConfigurableFileTree(tmpDir, null, null)) : Collections.<DefaultConfigurableFileTree>emptyList();
+        if (!zipFile.isFile()) {
+            // Fails when the ZIP file is a directory
+            visitAll();
+            return Collections.emptyList();
+        }
+        File expandDir = getExpandDir();
+        File marker = getCompleteMarker(expandDir);
+        if (!marker.isFile()) {
+            visitAll();
+            GFileUtils.touch(marker);
+        }
+        return Collections.singleton(new DefaultConfigurableFileTree(expandDir, null, null));
     }
 
     public FileTree visit(FileVisitor visitor) {
@@ -64,29 +97,34 @@ public class ZipFileTree extends AbstractFileTree {
         }
 
         AtomicBoolean stopFlag = new AtomicBoolean();
+        Expansion expansion = new Expansion();
+        Set<String> visited = new HashSet<String>();
 
         try {
-            ZipFile zip = new ZipFile(zipFile);
+            boolean streamed;
+            InputStream inputStream = new BufferedInputStream(new FileInputStream(zipFile));
+            ZipCentralDirectory centralDirectory = new ZipCentralDirectory(zipFile);
             try {
-                // The iteration order of zip.getEntries() is based on the hash of the zip entry. This isn't much use
-                // to us. So, collect the entries in a map and iterate over them in alphabetical order.
-                Map<String, ZipEntry> entriesByName = new TreeMap<String, ZipEntry>();
-                Enumeration entries = zip.getEntries();
-                while (entries.hasMoreElements()) {
-                    ZipEntry entry = (ZipEntry) entries.nextElement();
-                    entriesByName.put(entry.getName(), entry);
-                }
-                Iterator<ZipEntry> sortedEntries = entriesByName.values().iterator();
-                while (!stopFlag.get() && sortedEntries.hasNext()) {
-                    ZipEntry entry = sortedEntries.next();
+                checkSignature(inputStream);
+                NoCloseZipInputStream zip = new NoCloseZipInputStream(inputStream);
+                ZipEntry entry;
+                while (!stopFlag.get() && (entry = zip.getNextStreamableEntry()) != null) {
+                    visited.add(entry.getName());
+                    StreamedDetails details = new StreamedDetails(entry, zip, centralDirectory, expansion,
+                            stopFlag);
                     if (entry.isDirectory()) {
-                        visitor.visitDir(new DetailsImpl(entry, zip, stopFlag));
+                        visitor.visitDir(details);
                     } else {
-                        visitor.visitFile(new DetailsImpl(entry, zip, stopFlag));
+                        visitor.visitFile(details);
                     }
                 }
+                streamed = stopFlag.get() || !zip.isUnstreamable();
             } finally {
-                zip.close();
+                centralDirectory.close();
+                inputStream.close();
+            }
+            if (!streamed) {
+                visitCentralDirectory(visitor, visited, expansion, stopFlag);
             }
         } catch (Exception e) {
             throw new GradleException(String.format("Could not expand %s.", this), e);
@@ -95,15 +133,128 @@ public class ZipFileTree extends AbstractFileTree {
         return this;
     }
 
-    private class DetailsImpl extends AbstractFileTreeElement implements FileVisitDetails {
-        private final ZipEntry entry;
-        private final ZipFile zip;
+    /**
+     * Visits the entries which have not been visited yet, using the central directory of the ZIP file.
+     */
+    private void visitCentralDirectory(FileVisitor visitor, Set<String> visited, Expansion expansion,
+                                       AtomicBoolean stopFlag) throws IOException {
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            Enumeration entries = zip.getEntries();
+            while (!stopFlag.get() && entries.hasMoreElements()) {
+                org.apache.tools.zip.ZipEntry entry = (org.apache.tools.zip.ZipEntry) entries.nextElement();
+                if (visited.contains(entry.getName())) {
+                    continue;
+                }
+                ZipFileDetails details = new ZipFileDetails(entry, zip, expansion, stopFlag);
+                if (entry.isDirectory()) {
+                    visitor.visitDir(details);
+                } else {
+                    visitor.visitFile(details);
+                }
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Fails when the stream does not start with a local file header or, for an empty ZIP, with the end of central
+     * directory record. {@link ZipInputStream} silently treats anything else as a ZIP with no entries.
+     */
+    private void checkSignature(InputStream inputStream) throws IOException {
+        byte[] signature = new byte[4];
+        inputStream.mark(signature.length);
+        int count = 0;
+        while (count < signature.length) {
+            int nread = inputStream.read(signature, count, signature.length - count);
+            if (nread < 0) {
+                break;
+            }
+            count += nread;
+        }
+        inputStream.reset();
+        if (count != signature.length || signature[0] != 'P' || signature[1] != 'K' || !(signature[2] == 3
+                && signature[3] == 4 || signature[2] == 5 && signature[3] == 6)) {
+            throw new ZipException(String.format("%s is not a ZIP file.", zipFile));
+        }
+    }
+
+    private synchronized File getExpandDir() {
+        // Hashing the content is much cheaper than extracting it again, but only hash once for each change to the file
+        long length = zipFile.length();
+        long lastModified = zipFile.lastModified();
+        if (expandDir == null || length != expandDirLength || lastModified != expandDirLastModified) {
+            String prefix = String.format("%s_%s_", zipFile.getName(), HashUtil.createHash(
+                    zipFile.getAbsolutePath()));
+            String hash = new BigInteger(1, HashUtil.createHash(zipFile)).toString(16);
+            expandDir = new File(tmpDir, prefix + hash);
+            expandDirLength = length;
+            expandDirLastModified = lastModified;
+            deleteStaleExpandDirs(prefix);
+        }
+        return expandDir;
+    }
+
+    /**
+     * Deletes the directories which previous contents of the ZIP file were extracted to.
+     */
+    private void deleteStaleExpandDirs(String prefix) {
+        File[] files = tmpDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        String current = expandDir.getName();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(prefix) && !name.equals(current) && !name.equals(current + ".complete")) {
+                if (file.isDirectory()) {
+                    GFileUtils.deleteDirectory(file);
+                } else {
+                    GFileUtils.deleteQuietly(file);
+                }
+            }
+        }
+    }
+
+    private static File getCompleteMarker(File expandDir) {
+        return new File(expandDir.getParentFile(), expandDir.getName() + ".complete");
+    }
+
+    /**
+     * The directory which the entries visited by a visit are extracted to. It is only located when the first entry
+     * is extracted, as this means hashing the ZIP file.
+     */
+    private class Expansion {
+        private File dir;
+        private boolean complete;
+
+        public File getDir() {
+            if (dir == null) {
+                dir = getExpandDir();
+                complete = getCompleteMarker(dir).isFile();
+            }
+            return dir;
+        }
+
+        /**
+         * Returns true when all entries have already been extracted to the directory by a previous visit.
+         */
+        public boolean isComplete() {
+            getDir();
+            return complete;
+        }
+    }
+
+    private abstract class AbstractDetails extends AbstractFileTreeElement implements FileVisitDetails {
+        protected final ZipEntry entry;
+        protected final Expansion expansion;
         private final AtomicBoolean stopFlag;
-        private File file;
+        protected File file;
 
-        public DetailsImpl(ZipEntry entry, ZipFile zip, AtomicBoolean stopFlag) {
+        protected AbstractDetails(ZipEntry entry, Expansion expansion, AtomicBoolean stopFlag) {
             this.entry = entry;
-            this.zip = zip;
+            this.expansion = expansion;
             this.stopFlag = stopFlag;
         }
 
@@ -117,8 +268,10 @@ public class ZipFileTree extends AbstractFileTree {
 
         public File getFile() {
             if (file == null) {
-                file = new File(tmpDir, entry.getName());
-                copyTo(file);
+                file = new File(expansion.getDir(), entry.getName());
+                if (!expansion.isComplete()) {
+                    copyTo(file);
+                }
             }
             return file;
         }
@@ -132,19 +285,110 @@ public class ZipFileTree extends AbstractFileTree {
         }
 
         public long getSize() {
-            return entry.getSize();
+            long size = entry.getSize();
+            if (size < 0) {
+                // The size of an entry written with a data descriptor is not known until the entry has been read
+                size = getFile().length();
+            }
+            return size;
+        }
+
+        public RelativePath getRelativePath() {
+            return new RelativePath(!entry.isDirectory(), entry.getName().split("/"));
         }
+    }
+
+    private class StreamedDetails extends AbstractDetails implements DeflatedContentSource {
+        private final NoCloseZipInputStream zip;
+        private final ZipCentralDirectory centralDirectory;
+        private boolean read;
+
+        public StreamedDetails(ZipEntry entry, NoCloseZipInputStream zip, ZipCentralDirectory centralDirectory,
+                               Expansion expansion, AtomicBoolean stopFlag) {
+            super(entry, expansion, stopFlag);
+            this.zip = zip;
+            this.centralDirectory = centralDirectory;
+        }
+
+        public InputStream open() {
+            if (file != null && (read || expansion.isComplete())) {
+                return GFileUtils.openInputStream(file);
+            }
+            if (read || zip.getCurrent() != entry) {
+                throw new UnsupportedOperationException(String.format("The contents of %s has already been read.", this));
+            }
+            read = true;
+            return zip;
+        }
+
+        public DeflatedContent getDeflatedContent() {
+            return centralDirectory.getDeflatedContent(entry);
+        }
+    }
 
-        public InputStream open()  {
+    private class ZipFileDetails extends AbstractDetails {
+        private final ZipFile zip;
+
+        public ZipFileDetails(org.apache.tools.zip.ZipEntry entry, ZipFile zip, Expansion expansion,
+                              AtomicBoolean stopFlag) {
+            super(entry, expansion, stopFlag);
+            this.zip = zip;
+        }
+
+        public InputStream open() {
+            if (file != null && expansion.isComplete()) {
+                return GFileUtils.openInputStream(file);
+            }
             try {
-                return zip.getInputStream(entry);
+                return zip.getInputStream((org.apache.tools.zip.ZipEntry) entry);
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
         }
+    }
 
-        public RelativePath getRelativePath() {
-            return new RelativePath(!entry.isDirectory(), entry.getName().split("/"));
+    private static class NoCloseZipInputStream extends ZipInputStream {
+        private ZipEntry current;
+        private boolean unstreamable;
+
+        public NoCloseZipInputStream(InputStream is) {
+            super(is);
+        }
+
+        @Override
+        public ZipEntry getNextEntry() throws IOException {
+            current = super.getNextEntry();
+            return current;
+        }
+
+        /**
+         * Returns the next entry, or null when there are no more entries or the next entry cannot be streamed.
+         */
+        public ZipEntry getNextStreamableEntry() throws IOException {
+            try {
+                return getNextEntry();
+            } catch (IllegalArgumentException e) {
+                // The name of the entry is not UTF-8 encoded
+                unstreamable = true;
+            } catch (ZipException e) {
+                // Most likely a STORED entry with a data descriptor, whose size is only in the central directory.
+                // Anything else fails again when the central directory is read.
+                unstreamable = true;
+            }
+            current = null;
+            return null;
+        }
+
+        public boolean isUnstreamable() {
+            return unstreamable;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+
+        public ZipEntry getCurrent() {
+            return current;
         }
     }
 }
@@ -19,4 +19,10 @@ import java.io.File;
 
 public interface FileCopyAction extends CopyAction {
     File getDestinationDir();
+
+    boolean isUseHardLinks();
+
+    boolean isCompareContent();
+
+    int getCopyThreads();
 }
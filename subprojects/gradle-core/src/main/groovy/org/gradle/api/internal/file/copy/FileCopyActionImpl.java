@@ -15,6 +15,7 @@
  */
 package org.gradle.api.internal.file.copy;
 
+import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.file.CopySpec;
 import org.gradle.api.internal.file.FileResolver;
 
@@ -22,6 +23,9 @@ import java.io.File;
 
 public class FileCopyActionImpl extends CopyActionImpl implements FileCopyAction {
     private Object destDir;
+    private boolean useHardLinks;
+    private boolean compareContent;
+    private int copyThreads = 1;
 
     public FileCopyActionImpl(FileResolver resolver, CopySpecVisitor visitor) {
         super(resolver, visitor);
@@ -36,4 +40,31 @@ public class FileCopyActionImpl extends CopyActionImpl implements FileCopyAction
     public File getDestinationDir() {
         return destDir == null ? null : getResolver().resolve(destDir);
     }
+
+    public boolean isUseHardLinks() {
+        return useHardLinks;
+    }
+
+    public void setUseHardLinks(boolean useHardLinks) {
+        this.useHardLinks = useHardLinks;
+    }
+
+    public boolean isCompareContent() {
+        return compareContent;
+    }
+
+    public void setCompareContent(boolean compareContent) {
+        this.compareContent = compareContent;
+    }
+
+    public int getCopyThreads() {
+        return copyThreads;
+    }
+
+    public void setCopyThreads(int copyThreads) {
+        if (copyThreads < 1) {
+            throw new InvalidUserDataException(String.format("The number of copy threads must be at least 1, but was %s.", copyThreads));
+        }
+        this.copyThreads = copyThreads;
+    }
 }
@@ -15,39 +15,249 @@
  */
 package org.gradle.api.internal.file.copy;
 
+import org.apache.commons.io.output.NullOutputStream;
 import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.internal.file.BackingFileSource;
+import org.gradle.messaging.concurrent.ExecutorFactory;
+import org.gradle.messaging.concurrent.StoppableExecutor;
+import org.gradle.util.HashUtil;
+import org.gradle.util.PosixUtil;
+import org.gradle.util.UncheckedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
 
 /**
+ * Copies files into a destination directory. By default, a file is copied unless the destination file has the same
+ * timestamp as the source file. Optionally, a file is instead copied unless the destination file has the same size and
+ * content hash as the source file, and an unfiltered source file is hard linked into the destination directory rather
+ * than copied.
+ *
+ * <p>When created with an {@link ExecutorFactory} and the copy action specifies more than one copy thread, files are
+ * copied by that number of worker threads. Only files whose content is read unmodified from a file in the file system
+ * are copied by the workers. Other files, such as
+ * filtered files or files read from an archive, are copied while they are visited. All copies have completed once
+ * {@link #endVisit()} returns.</p>
+ *
  * @author Steve Appling
  */
 public class FileCopySpecVisitor extends EmptyCopySpecVisitor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileCopySpecVisitor.class);
+    private final ExecutorFactory executorFactory;
+    private int workerCount;
+    private final Set<File> copiedFiles = new HashSet<File>();
+    private StoppableExecutor executor;
+    private Semaphore workers;
     private File baseDestDir;
-    private boolean didWork;
+    private volatile boolean didWork;
+    private boolean useHardLinks;
+    private boolean compareContent;
+    private volatile boolean hardLinksSupported;
+    private long filesCopied;
+    private long bytesCopied;
+    private long filesLinked;
+    private long bytesLinked;
+    private long filesSkipped;
+    private long bytesSkipped;
+
+    public FileCopySpecVisitor() {
+        this(null);
+    }
+
+    /**
+     * Creates a visitor which copies files using worker threads created by the given factory, when the copy action
+     * specifies more than one copy thread. When {@code executorFactory} is null, files are copied as they are visited.
+     */
+    public FileCopySpecVisitor(ExecutorFactory executorFactory) {
+        this.executorFactory = executorFactory;
+    }
 
     public void startVisit(CopyAction action) {
-        baseDestDir = ((FileCopyAction) action).getDestinationDir();
+        FileCopyAction fileCopyAction = (FileCopyAction) action;
+        baseDestDir = fileCopyAction.getDestinationDir();
         if (baseDestDir == null) {
             throw new InvalidUserDataException("No copy destination directory has been specified, use 'into' to specify a target directory.");
         }
+        useHardLinks = fileCopyAction.isUseHardLinks();
+        compareContent = fileCopyAction.isCompareContent();
+        workerCount = fileCopyAction.getCopyThreads();
+        hardLinksSupported = true;
+        filesCopied = bytesCopied = filesLinked = bytesLinked = filesSkipped = bytesSkipped = 0;
+        if (executorFactory != null && workerCount > 1) {
+            executor = executorFactory.create(String.format("Copy to '%s'", baseDestDir));
+            workers = new Semaphore(workerCount);
+        }
     }
 
-    public void visitFile(FileVisitDetails source) {
-        File target = source.getRelativePath().getFile(baseDestDir);
-        copyFile(source, target);
+    public void visitFile(final FileVisitDetails source) {
+        final File target = source.getRelativePath().getFile(baseDestDir);
+        if (executor == null) {
+            copyFile(source, target);
+            return;
+        }
+
+        if (!copiedFiles.add(target)) {
+            // The file is copied more than once, so wait for the earlier copy, so that the last copy wins
+            workers.acquireUninterruptibly(workerCount);
+            workers.release(workerCount);
+        }
+        if (!(source instanceof BackingFileSource) || ((BackingFileSource) source).getBackingFile() == null) {
+            // The content is filtered or is only available while visited
+            copyFile(source, target);
+            return;
+        }
+
+        // Copy at most workerCount files at the same time
+        workers.acquireUninterruptibly();
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    copyFile(source, target);
+                } finally {
+                    workers.release();
+                }
+            }
+        });
+    }
+
+    public void endVisit() {
+        if (executor != null) {
+            try {
+                // Rethrows the first failure of the workers
+                executor.stop();
+            } finally {
+                executor = null;
+                workers = null;
+                copiedFiles.clear();
+            }
+        }
+        LOGGER.info("Copied {} files ({} bytes), linked {} files ({} bytes) and skipped {} unchanged files ({} bytes) into {}.",
+                new Object[]{filesCopied, bytesCopied, filesLinked, bytesLinked, filesSkipped, bytesSkipped, baseDestDir});
     }
 
     public boolean getDidWork() {
         return didWork;
     }
 
+    public synchronized long getFilesCopied() {
+        return filesCopied;
+    }
+
+    public synchronized long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    public synchronized long getFilesLinked() {
+        return filesLinked;
+    }
+
+    public synchronized long getBytesLinked() {
+        return bytesLinked;
+    }
+
+    public synchronized long getFilesSkipped() {
+        return filesSkipped;
+    }
+
+    public synchronized long getBytesSkipped() {
+        return bytesSkipped;
+    }
+
     void copyFile(FileTreeElement srcFile, File destFile) {
+        if (compareContent) {
+            if (hasSameContent(srcFile, destFile)) {
+                skipped(srcFile);
+                return;
+            }
+            // The content differs, so copy even when the timestamps are the same
+            destFile.delete();
+        }
+
+        File backingFile = useHardLinks && srcFile instanceof BackingFileSource
+                ? ((BackingFileSource) srcFile).getBackingFile() : null;
+        if (backingFile != null && backingFile.isFile() && (compareContent || !destFile.exists()
+                || destFile.lastModified() != srcFile.getLastModified()) && link(backingFile, destFile)) {
+            linked(srcFile);
+            return;
+        }
+
         boolean copied = srcFile.copyTo(destFile);
         if (copied) {
-            didWork = true;
+            copied(srcFile);
+        } else {
+            skipped(srcFile);
+        }
+    }
+
+    private synchronized void copied(FileTreeElement srcFile) {
+        didWork = true;
+        filesCopied++;
+        bytesCopied += srcFile.getSize();
+    }
+
+    private synchronized void linked(FileTreeElement srcFile) {
+        didWork = true;
+        filesLinked++;
+        bytesLinked += srcFile.getSize();
+    }
+
+    private synchronized void skipped(FileTreeElement srcFile) {
+        filesSkipped++;
+        bytesSkipped += srcFile.getSize();
+    }
+
+    private boolean hasSameContent(FileTreeElement srcFile, File destFile) {
+        if (!destFile.isFile() || destFile.length() != srcFile.getSize()) {
+            return false;
+        }
+        return Arrays.equals(hash(srcFile), HashUtil.createHash(destFile));
+    }
+
+    private byte[] hash(FileTreeElement element) {
+        File backingFile = element instanceof BackingFileSource ? ((BackingFileSource) element).getBackingFile() : null;
+        if (backingFile != null) {
+            return HashUtil.createHash(backingFile);
+        }
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw UncheckedException.asUncheckedException(e);
+        }
+        element.copyTo(new DigestOutputStream(new NullOutputStream(), messageDigest));
+        return messageDigest.digest();
+    }
+
+    private boolean link(File source, File target) {
+        if (!hardLinksSupported) {
+            return false;
+        }
+        target.getParentFile().mkdirs();
+        if (target.exists() && !target.delete()) {
+            return false;
+        }
+        try {
+            if (PosixUtil.current().link(source.getAbsolutePath(), target.getAbsolutePath()) == 0) {
+                return true;
+            }
+        } catch (RuntimeException e) {
+            // Not supported on this platform
+        } catch (LinkageError e) {
+            // Native library not available
         }
+        // Most likely the source and destination are on different file systems, so don't try again for this copy
+        LOGGER.debug("Could not hard link {} to {}, copying instead.", source, target);
+        hardLinksSupported = false;
+        return false;
     }
 }
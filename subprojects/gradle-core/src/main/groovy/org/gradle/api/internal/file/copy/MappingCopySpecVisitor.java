@@ -19,6 +19,9 @@ import groovy.lang.Closure;
 import org.gradle.api.Action;
 import org.gradle.api.file.*;
 import org.gradle.api.internal.file.AbstractFileTreeElement;
+import org.gradle.api.internal.file.BackingFileSource;
+import org.gradle.api.internal.file.archive.DeflatedContent;
+import org.gradle.api.internal.file.archive.DeflatedContentSource;
 
 import java.io.*;
 import java.util.Map;
@@ -50,7 +53,8 @@ public class MappingCopySpecVisitor extends DelegatingCopySpecVisitor {
         getVisitor().visitFile(details);
     }
 
-    private static class FileVisitDetailsImpl extends AbstractFileTreeElement implements FileVisitDetails, FileCopyDetails {
+    private static class FileVisitDetailsImpl extends AbstractFileTreeElement implements FileVisitDetails, FileCopyDetails, DeflatedContentSource,
+            BackingFileSource {
         private final FileVisitDetails fileDetails;
         private final ReadableCopySpec spec;
         private final FilterChain filterChain = new FilterChain();
@@ -121,6 +125,20 @@ public class MappingCopySpecVisitor extends DelegatingCopySpecVisitor {
             }
         }
 
+        public DeflatedContent getDeflatedContent() {
+            if (!filterChain.hasFilters() && fileDetails instanceof DeflatedContentSource) {
+                return ((DeflatedContentSource) fileDetails).getDeflatedContent();
+            }
+            return null;
+        }
+
+        public File getBackingFile() {
+            if (!filterChain.hasFilters() && fileDetails instanceof BackingFileSource) {
+                return ((BackingFileSource) fileDetails).getBackingFile();
+            }
+            return null;
+        }
+
         public RelativePath getRelativePath() {
             if (relativePath == null) {
                 RelativePath path = fileDetails.getRelativePath();
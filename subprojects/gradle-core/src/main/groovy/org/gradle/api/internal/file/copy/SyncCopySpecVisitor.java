@@ -37,6 +37,7 @@ public class SyncCopySpecVisitor extends DelegatingCopySpecVisitor {
 
     public void startVisit(CopyAction action) {
         baseDestDir = ((FileCopyAction) action).getDestinationDir();
+        visited.clear();
         getVisitor().startVisit(action);
     }
 
@@ -54,6 +55,9 @@ public class SyncCopySpecVisitor extends DelegatingCopySpecVisitor {
 
     @Override
     public void endVisit() {
+        // The delegate may still be copying files, so wait for it to finish before looking for extra files
+        getVisitor().endVisit();
+
         FileVisitor visitor = new FileVisitor() {
             public void visitDir(FileVisitDetails dirDetails) {
                 maybeDelete(dirDetails, true);
@@ -79,8 +83,6 @@ public class SyncCopySpecVisitor extends DelegatingCopySpecVisitor {
         DirectoryWalker walker = new DefaultDirectoryWalker(visitor).depthFirst();
         walker.start(baseDestDir);
         visited.clear();
-
-        getVisitor().endVisit();
     }
 
     @Override
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file.pattern;
+
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.specs.Spec;
+
+import java.util.*;
+
+/**
+ * Matches a {@link RelativePath} against a set of patterns, which are compiled into a single trie of pattern steps.
+ * Patterns which share a prefix share the nodes of the trie for that prefix, and literal steps are looked up by name
+ * rather than matched one at a time. The trie is evaluated as an NFA, one path segment at a time, so that the state
+ * reached for a directory can be used to match the children of the directory without evaluating the directory's
+ * segments again.
+ *
+ * <p>A path is satisfied by this matcher when it is satisfied by any of the patterns, using the same rules as Ant's
+ * {@code SelectorUtils.matchPath()}, where a '**' step matches zero or more segments. As for {@link
+ * PatternMatcherFactory}, a '**&#47;name' pattern only matches files. When {@code partialMatchDirs} is true, a
+ * directory is also satisfied when some path below it might be satisfied.</p>
+ *
+ * <p>Instances are immutable once constructed, and can be used by several threads.</p>
+ */
+public class CompiledPatternMatcher implements Spec<RelativePath> {
+    private final boolean partialMatchDirs;
+    private final boolean caseSensitive;
+    private final Node root = new Node(false);
+    private final State startState;
+
+    public CompiledPatternMatcher(boolean partialMatchDirs, boolean caseSensitive, Iterable<String> patterns) {
+        this.partialMatchDirs = partialMatchDirs;
+        this.caseSensitive = caseSensitive;
+        for (String pattern : patterns) {
+            add(pattern);
+        }
+        root.freeze();
+        startState = createState(Collections.singletonList(root));
+    }
+
+    private void add(String pattern) {
+        // trailing / or \ assumes **
+        if (pattern.endsWith("/") || pattern.endsWith("\\")) {
+            pattern = pattern + "**";
+        }
+        if (pattern.length() == 0) {
+            // Matches the empty path only
+            root.matchesFilesAndDirs = true;
+            return;
+        }
+
+        String[] parts = pattern.split("\\\\|/");
+        Node node = root;
+        for (String part : parts) {
+            if (part.equals("**")) {
+                if (!node.greedy) {
+                    node = node.greedyChild();
+                }
+            } else if (part.indexOf('*') < 0 && part.indexOf('?') < 0 && (caseSensitive || isAscii(part))) {
+                node = node.literalChild(foldCase(part));
+            } else {
+                node = node.wildcardChild(part, caseSensitive);
+            }
+        }
+
+        // The common '**/name' pattern only ever matches files
+        if (parts.length == 2 && parts[0].equals("**") && !parts[1].equals("**")) {
+            node.matchesFiles = true;
+        } else {
+            node.matchesFilesAndDirs = true;
+        }
+    }
+
+    public boolean isSatisfiedBy(RelativePath path) {
+        String[] segments = path.getSegments();
+        if (segments.length == 0) {
+            return startState.isSatisfiedBy(path.isFile());
+        }
+        State state = startState;
+        for (int i = 0; i < segments.length - 1 && !state.isDead(); i++) {
+            state = state.step(segments[i]);
+        }
+        return state.isSatisfiedBy(segments[segments.length - 1], path.isFile());
+    }
+
+    /**
+     * Returns the state for the root of a tree, before any segments have been matched.
+     */
+    public State getStartState() {
+        return startState;
+    }
+
+    private State createState(List<Node> nodes) {
+        // A '**' step can match zero segments, so a node with a '**' child is also at the '**' child
+        List<Node> closure = new ArrayList<Node>(nodes.size() + 1);
+        for (Node node : nodes) {
+            addNode(node, closure);
+            if (node.greedyChild != null) {
+                addNode(node.greedyChild, closure);
+            }
+        }
+        return new State(closure.toArray(new Node[closure.size()]));
+    }
+
+    private static void addNode(Node node, List<Node> nodes) {
+        // The lists are short, so a linear search is cheaper than a set
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) == node) {
+                return;
+            }
+        }
+        nodes.add(node);
+    }
+
+    private String foldCase(String segment) {
+        if (caseSensitive) {
+            return segment;
+        }
+        // Same folding as a case insensitive regular expression: ASCII characters only
+        StringBuilder builder = null;
+        for (int i = 0; i < segment.length(); i++) {
+            char ch = segment.charAt(i);
+            if (ch >= 'A' && ch <= 'Z') {
+                if (builder == null) {
+                    builder = new StringBuilder(segment);
+                }
+                builder.setCharAt(i, (char) (ch + ('a' - 'A')));
+            }
+        }
+        return builder == null ? segment : builder.toString();
+    }
+
+    private static boolean isAscii(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            if (segment.charAt(i) > 127) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The set of trie nodes reached after matching some path.
+     */
+    public class State {
+        private final Node[] nodes;
+        private final boolean matchesFiles;
+        private final boolean matchesDirs;
+        private State greedyState;
+
+        private State(Node[] nodes) {
+            this.nodes = nodes;
+            boolean matchesFiles = false;
+            boolean matchesDirs = false;
+            for (Node node : nodes) {
+                matchesDirs |= node.matchesFilesAndDirs;
+                matchesFiles |= node.matchesFilesAndDirs || node.matchesFiles;
+            }
+            this.matchesFiles = matchesFiles;
+            this.matchesDirs = matchesDirs;
+        }
+
+        /**
+         * Returns true when no path below the path of this state can be satisfied by any of the patterns.
+         */
+        public boolean isDead() {
+            return nodes.length == 0;
+        }
+
+        /**
+         * Returns true when the path of this state is satisfied by the matcher.
+         */
+        public boolean isSatisfiedBy(boolean isFile) {
+            if (isFile) {
+                return matchesFiles;
+            }
+            return matchesDirs || partialMatchDirs && nodes.length > 0;
+        }
+
+        /**
+         * Returns true when the given child of the path of this state is satisfied by the matcher. This is the same
+         * as {@code step(segment).isSatisfiedBy(isFile)}, but does not create the state for the child.
+         */
+        public boolean isSatisfiedBy(String segment, boolean isFile) {
+            if (nodes.length == 0) {
+                return false;
+            }
+            String key = null;
+            for (Node node : nodes) {
+                if (node.greedy && node.isSatisfiedBy(isFile)) {
+                    return true;
+                }
+                if (node.hasChildren) {
+                    if (key == null) {
+                        key = foldCase(segment);
+                    }
+                    if (node.hasMatchingChild(segment, key, isFile, partialMatchDirs)) {
+                        return true;
+                    }
+                }
+            }
+            if (!isFile && partialMatchDirs) {
+                // A greedy node always remains alive
+                for (Node node : nodes) {
+                    if (node.greedy) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the state for the given child of the path of this state.
+         */
+        public State step(String segment) {
+            if (nodes.length == 0) {
+                return this;
+            }
+            String key = null;
+            List<Node> next = null;
+            for (Node node : nodes) {
+                if (node.hasChildren) {
+                    if (key == null) {
+                        key = foldCase(segment);
+                    }
+                    next = node.addMatchingChildren(segment, key, next);
+                }
+            }
+            if (next == null) {
+                // Only the greedy nodes match, which is common
+                return getGreedyState();
+            }
+            for (Node node : nodes) {
+                if (node.greedy) {
+                    next.add(node);
+                }
+            }
+            return createState(next);
+        }
+
+        private State getGreedyState() {
+            State state = greedyState;
+            if (state == null) {
+                List<Node> greedyNodes = new ArrayList<Node>();
+                for (Node node : nodes) {
+                    if (node.greedy) {
+                        greedyNodes.add(node);
+                    }
+                }
+                state = greedyNodes.size() == nodes.length ? this : createState(greedyNodes);
+                // Benign race: the state is immutable, so at worst it is created more than once
+                greedyState = state;
+            }
+            return state;
+        }
+    }
+
+    private static class Node {
+        private static final Node[] NO_NODES = new Node[0];
+        private static final PatternStep[] NO_STEPS = new PatternStep[0];
+        private final boolean greedy;
+        private Map<String, Node> literalChildren;
+        private Map<String, Node> wildcardChildren;
+        private Map<String, PatternStep> wildcardSteps;
+        private Node[] wildcardNodes = NO_NODES;
+        private PatternStep[] wildcardStepArray = NO_STEPS;
+        private Node greedyChild;
+        private boolean hasChildren;
+        private boolean matchesFilesAndDirs;
+        private boolean matchesFiles;
+
+        private Node(boolean greedy) {
+            this.greedy = greedy;
+        }
+
+        Node greedyChild() {
+            if (greedyChild == null) {
+                greedyChild = new Node(true);
+            }
+            return greedyChild;
+        }
+
+        Node literalChild(String name) {
+            if (literalChildren == null) {
+                literalChildren = new HashMap<String, Node>();
+            }
+            Node child = literalChildren.get(name);
+            if (child == null) {
+                child = new Node(false);
+                literalChildren.put(name, child);
+            }
+            return child;
+        }
+
+        Node wildcardChild(String pattern, boolean caseSensitive) {
+            if (wildcardChildren == null) {
+                wildcardChildren = new LinkedHashMap<String, Node>();
+                wildcardSteps = new HashMap<String, PatternStep>();
+            }
+            Node child = wildcardChildren.get(pattern);
+            if (child == null) {
+                child = new Node(false);
+                wildcardChildren.put(pattern, child);
+                wildcardSteps.put(pattern, PatternStepFactory.getStep(pattern, false, caseSensitive));
+            }
+            return child;
+        }
+
+        /**
+         * Converts the children of this node and its descendants to arrays, which are cheaper to iterate.
+         */
+        void freeze() {
+            if (wildcardChildren != null) {
+                wildcardNodes = new Node[wildcardChildren.size()];
+                wildcardStepArray = new PatternStep[wildcardChildren.size()];
+                int i = 0;
+                for (Map.Entry<String, Node> entry : wildcardChildren.entrySet()) {
+                    wildcardNodes[i] = entry.getValue();
+                    wildcardStepArray[i] = wildcardSteps.get(entry.getKey());
+                    i++;
+                }
+                wildcardChildren = null;
+                wildcardSteps = null;
+            }
+            hasChildren = literalChildren != null || wildcardNodes.length > 0;
+            if (literalChildren != null) {
+                for (Node child : literalChildren.values()) {
+                    child.freeze();
+                }
+            }
+            for (Node child : wildcardNodes) {
+                child.freeze();
+            }
+            if (greedyChild != null) {
+                greedyChild.freeze();
+            }
+        }
+
+        boolean isSatisfiedBy(boolean isFile) {
+            if (matchesFilesAndDirs || isFile && matchesFiles) {
+                return true;
+            }
+            return greedyChild != null && greedyChild.matchesFilesAndDirs;
+        }
+
+        boolean hasMatchingChild(String segment, String key, boolean isFile, boolean partialMatchDirs) {
+            boolean anyChild = !isFile && partialMatchDirs;
+            if (literalChildren != null) {
+                Node child = literalChildren.get(key);
+                if (child != null && (anyChild || child.isSatisfiedBy(isFile))) {
+                    return true;
+                }
+            }
+            for (int i = 0; i < wildcardNodes.length; i++) {
+                Node child = wildcardNodes[i];
+                if ((anyChild || child.isSatisfiedBy(isFile)) && wildcardStepArray[i].matches(segment, isFile)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        List<Node> addMatchingChildren(String segment, String key, List<Node> next) {
+            if (literalChildren != null) {
+                Node child = literalChildren.get(key);
+                if (child != null) {
+                    next = add(child, next);
+                }
+            }
+            for (int i = 0; i < wildcardNodes.length; i++) {
+                if (wildcardStepArray[i].matches(segment, false)) {
+                    next = add(wildcardNodes[i], next);
+                }
+            }
+            return next;
+        }
+
+        private static List<Node> add(Node node, List<Node> nodes) {
+            if (nodes == null) {
+                nodes = new ArrayList<Node>(4);
+            }
+            nodes.add(node);
+            return nodes;
+        }
+    }
+}
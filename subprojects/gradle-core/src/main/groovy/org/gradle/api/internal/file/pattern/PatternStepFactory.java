@@ -19,6 +19,8 @@ public class PatternStepFactory {
     public static PatternStep getStep(String source, boolean isLast, boolean caseSensitive) {
         if (source.equals("**")) {
             return new GreedyPatternStep();
+        } else if (source.startsWith("*") && source.indexOf('*', 1) < 0 && source.indexOf('?') < 0) {
+            return new SuffixPatternStep(source.substring(1), caseSensitive);
         } else {
             return new RegExpPatternStep(source, caseSensitive);
         }
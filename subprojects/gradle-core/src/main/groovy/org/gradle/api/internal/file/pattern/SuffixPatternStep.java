@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file.pattern;
+
+/**
+ * A pattern step for the common '*suffix' pattern, such as '*.java', which matches without using a regular
+ * expression. Case insensitive matching only ignores the case of ASCII characters, the same as {@link
+ * RegExpPatternStep}.
+ */
+public class SuffixPatternStep implements PatternStep {
+    private final String suffix;
+    private final boolean caseSensitive;
+
+    public SuffixPatternStep(String suffix, boolean caseSensitive) {
+        this.suffix = suffix;
+        this.caseSensitive = caseSensitive;
+    }
+
+    public boolean matches(String candidate, boolean isFile) {
+        int offset = candidate.length() - suffix.length();
+        if (offset < 0) {
+            return false;
+        }
+        if (caseSensitive) {
+            return candidate.endsWith(suffix);
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            char ch1 = candidate.charAt(offset + i);
+            char ch2 = suffix.charAt(i);
+            if (ch1 != ch2 && toLowerCase(ch1) != toLowerCase(ch2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char toLowerCase(char ch) {
+        return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch;
+    }
+
+    public boolean isGreedy() {
+        return false;
+    }
+}
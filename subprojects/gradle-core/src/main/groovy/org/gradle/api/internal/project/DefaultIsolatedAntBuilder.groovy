@@ -54,32 +54,35 @@ class DefaultIsolatedAntBuilder implements IsolatedAntBuilder {
         normalisedClasspath.addAll(groovyClasspath as List)
         normalisedClasspath.addAll(libClasspath as List)
 
-        Map<String, Object> classloadersForPath = classloaders[normalisedClasspath]
         ClassLoader antLoader
         ClassLoader gradleLoader
-        if (!classloadersForPath) {
-            // Need tools.jar for compile tasks
-            List<File> fullClasspath = normalisedClasspath
-            File toolsJar = Jvm.current().toolsJar
-            if (toolsJar) {
-                fullClasspath += toolsJar
+        // Builders for different tasks may run concurrently, so share the class loaders between threads
+        synchronized (classloaders) {
+            Map<String, Object> classloadersForPath = classloaders[normalisedClasspath]
+            if (!classloadersForPath) {
+                // Need tools.jar for compile tasks
+                List<File> fullClasspath = normalisedClasspath
+                File toolsJar = Jvm.current().toolsJar
+                if (toolsJar) {
+                    fullClasspath += toolsJar
+                }
+
+                Closure converter = {File file -> file.toURI().toURL() }
+                URL[] classpathUrls = fullClasspath.collect(converter)
+                // Need gradle core to pick up ant logging adapter
+                URL[] gradleCoreUrls = classPathRegistry.getClassPathUrls("GRADLE_CORE")
+
+                FilteringClassLoader loggingLoader = new FilteringClassLoader(getClass().classLoader)
+                loggingLoader.allowPackage('org.slf4j')
+
+                antLoader = new URLClassLoader(classpathUrls, ClassLoader.systemClassLoader.parent)
+                gradleLoader = new URLClassLoader(gradleCoreUrls, new MultiParentClassLoader(antLoader, loggingLoader))
+
+                classloaders[normalisedClasspath] = [antLoader: antLoader, gradleLoader: gradleLoader]
+            } else {
+                antLoader = classloadersForPath.antLoader
+                gradleLoader = classloadersForPath.gradleLoader
             }
-
-            Closure converter = {File file -> file.toURI().toURL() }
-            URL[] classpathUrls = fullClasspath.collect(converter)
-            // Need gradle core to pick up ant logging adapter
-            URL[] gradleCoreUrls = classPathRegistry.getClassPathUrls("GRADLE_CORE")
-
-            FilteringClassLoader loggingLoader = new FilteringClassLoader(getClass().classLoader)
-            loggingLoader.allowPackage('org.slf4j')
-
-            antLoader = new URLClassLoader(classpathUrls, ClassLoader.systemClassLoader.parent)
-            gradleLoader = new URLClassLoader(gradleCoreUrls, new MultiParentClassLoader(antLoader, loggingLoader))
-
-            classloaders[normalisedClasspath] = [antLoader: antLoader, gradleLoader: gradleLoader]
-        } else {
-            antLoader = classloadersForPath.antLoader
-            gradleLoader = classloadersForPath.gradleLoader
         }
 
         ClassLoader originalLoader = Thread.currentThread().contextClassLoader
@@ -22,7 +22,10 @@ import org.gradle.util.UncheckedException;
 
 import java.lang.reflect.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A hierarchical {@link ServiceRegistry} implementation.
@@ -48,6 +51,9 @@ import java.util.List;
  *
  * <p>Service registries are arranged in a heirarchy. If a service of a given type cannot be located, the registry uses
  * its parent registry, if any, to locate the service.</p>
+ *
+ * <p>When the registry is closed, services are closed in the reverse order to which they were created, so that a
+ * service is closed before the services it uses.</p>
  */
 public class DefaultServiceRegistry implements ServiceRegistry {
     private final List<Service> services = new ArrayList<Service>();
@@ -106,7 +112,15 @@ public class DefaultServiceRegistry implements ServiceRegistry {
      */
     public void close() {
         try {
-            new CompositeStoppable(services).stop();
+            List<Service> closeOrder = new ArrayList<Service>(services);
+            Collections.sort(closeOrder, new Comparator<Service>() {
+                public int compare(Service service1, Service service2) {
+                    long order1 = service1.creationOrder;
+                    long order2 = service2.creationOrder;
+                    return order1 > order2 ? -1 : order1 == order2 ? 0 : 1;
+                }
+            });
+            new CompositeStoppable(closeOrder).stop();
         } finally {
             closed = true;
             services.clear();
@@ -185,9 +199,11 @@ public class DefaultServiceRegistry implements ServiceRegistry {
     }
 
     protected static abstract class Service implements Stoppable {
+        private static final AtomicLong NEXT_CREATION_ORDER = new AtomicLong();
         final Type serviceType;
         final Class serviceClass;
         Object service;
+        long creationOrder;
 
         Service(Type serviceType) {
             this.serviceType = serviceType;
@@ -206,6 +222,7 @@ public class DefaultServiceRegistry implements ServiceRegistry {
             if (service == null) {
                 service = create();
                 assert service != null;
+                creationOrder = NEXT_CREATION_ORDER.incrementAndGet();
             }
             return serviceType.cast(service);
         }
@@ -24,6 +24,8 @@ import org.gradle.api.internal.GradleDistributionLocator;
 import org.gradle.cache.AutoCloseCacheFactory;
 import org.gradle.cache.CacheFactory;
 import org.gradle.cache.DefaultCacheFactory;
+import org.gradle.groovy.scripts.CachingScriptCompilationHandler;
+import org.gradle.groovy.scripts.DefaultScriptCompilationHandler;
 import org.gradle.initialization.ClassLoaderFactory;
 import org.gradle.initialization.CommandLineConverter;
 import org.gradle.initialization.DefaultClassLoaderFactory;
@@ -56,6 +58,10 @@ public class GlobalServicesRegistry extends DefaultServiceRegistry {
         return new AutoCloseCacheFactory(new DefaultCacheFactory());
     }
 
+    protected CachingScriptCompilationHandler createScriptCompilationHandler() {
+        return new CachingScriptCompilationHandler(new DefaultScriptCompilationHandler());
+    }
+
     protected ClassLoaderFactory createClassLoaderFactory() {
         return new DefaultClassLoaderFactory(get(ClassPathRegistry.class));
     }
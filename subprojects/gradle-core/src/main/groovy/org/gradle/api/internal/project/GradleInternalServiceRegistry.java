@@ -24,8 +24,11 @@ import org.gradle.api.internal.artifacts.repositories.InternalRepository;
 import org.gradle.api.internal.plugins.DefaultPluginRegistry;
 import org.gradle.api.internal.plugins.PluginRegistry;
 import org.gradle.execution.DefaultTaskGraphExecuter;
+import org.gradle.execution.ParallelTaskPlanExecuter;
+import org.gradle.execution.TaskDurationHistory;
 import org.gradle.execution.TaskGraphExecuter;
 import org.gradle.listener.ListenerManager;
+import org.gradle.messaging.concurrent.ExecutorFactory;
 
 /**
  * Contains the services for a given {@link GradleInternal} instance.
@@ -51,6 +54,12 @@ public class GradleInternalServiceRegistry extends DefaultServiceRegistry implem
     }
 
     protected TaskGraphExecuter createTaskGraphExecuter() {
+        int threadCount = gradle.getStartParameter().getParallelThreadCount();
+        if (threadCount > 1) {
+            ParallelTaskPlanExecuter parallelExecuter = new ParallelTaskPlanExecuter(get(ExecutorFactory.class), threadCount,
+                    get(TaskDurationHistory.class));
+            return new DefaultTaskGraphExecuter(get(ListenerManager.class), parallelExecuter);
+        }
         return new DefaultTaskGraphExecuter(get(ListenerManager.class));
     }
 
@@ -45,11 +45,14 @@ import org.gradle.api.internal.tasks.DefaultTaskExecuter;
 import org.gradle.api.internal.tasks.ExecuteAtMostOnceTaskExecuter;
 import org.gradle.api.internal.tasks.SkipTaskExecuter;
 import org.gradle.api.internal.tasks.TaskExecuter;
+import org.gradle.api.internal.tasks.compile.JavaCompilerPool;
 import org.gradle.cache.AutoCloseCacheFactory;
 import org.gradle.cache.CacheFactory;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.DefaultCacheRepository;
 import org.gradle.configuration.*;
+import org.gradle.execution.PersistentTaskDurationHistory;
+import org.gradle.execution.TaskDurationHistory;
 import org.gradle.groovy.scripts.*;
 import org.gradle.initialization.*;
 import org.gradle.listener.ListenerManager;
@@ -146,6 +149,14 @@ public class TopLevelBuildServiceRegistry extends DefaultServiceRegistry impleme
                 startParameter.getCacheUsage(), get(CacheFactory.class));
     }
 
+    protected TaskDurationHistory createTaskDurationHistory() {
+        return new PersistentTaskDurationHistory(get(CacheRepository.class));
+    }
+
+    protected JavaCompilerPool createJavaCompilerPool() {
+        return new JavaCompilerPool();
+    }
+
     protected ModuleDescriptorFactory createModuleDescriptorFactory() {
         return new DefaultModuleDescriptorFactory();
     }
@@ -207,7 +218,13 @@ public class TopLevelBuildServiceRegistry extends DefaultServiceRegistry impleme
                 new DefaultIvyFactory(),
                 new SelfResolvingDependencyResolver(
                         new DefaultIvyDependencyResolver(
-                                new DefaultIvyReportConverter(dependencyDescriptorFactoryDelegate))),
+                                new DefaultIvyReportConverter(dependencyDescriptorFactoryDelegate),
+                                new ResolvedConfigurationCache(get(CacheRepository.class)),
+                                new ParallelArtifactFetcher(
+                                        get(ExecutorFactory.class),
+                                        get(ProgressLoggerFactory.class),
+                                        ParallelArtifactFetcher.DEFAULT_MAX_DOWNLOADS,
+                                        ParallelArtifactFetcher.DEFAULT_MAX_DOWNLOADS_PER_REPOSITORY))),
                 new DefaultIvyDependencyPublisher(new DefaultPublishOptionsFactory()),
                 get(ClassGenerator.class));
     }
@@ -246,12 +263,22 @@ public class TopLevelBuildServiceRegistry extends DefaultServiceRegistry impleme
                                 get(ClassGenerator.class))));
     }
 
+    protected Hasher createHasher() {
+        return new CachingHasher(
+                new DefaultHasher(),
+                get(CacheRepository.class));
+    }
+
+    protected FileSnapshotter createFileSnapshotter() {
+        return new DefaultFileSnapshotter(
+                get(Hasher.class),
+                get(ExecutorFactory.class),
+                Runtime.getRuntime().availableProcessors());
+    }
+
     protected TaskArtifactStateRepository createTaskArtifactStateRepository() {
         CacheRepository cacheRepository = get(CacheRepository.class);
-        FileSnapshotter fileSnapshotter = new DefaultFileSnapshotter(
-                new CachingHasher(
-                        new DefaultHasher(),
-                        cacheRepository));
+        FileSnapshotter fileSnapshotter = get(FileSnapshotter.class);
 
         FileSnapshotter outputFilesSnapshotter = new OutputFilesSnapshotter(fileSnapshotter, new RandomLongIdGenerator(), cacheRepository);
         return new ShortCircuitTaskArtifactStateRepository(
@@ -264,8 +291,7 @@ public class TopLevelBuildServiceRegistry extends DefaultServiceRegistry impleme
     protected ScriptCompilerFactory createScriptCompileFactory() {
         ScriptExecutionListener scriptExecutionListener = get(ListenerManager.class).getBroadcaster(ScriptExecutionListener.class);
         return new DefaultScriptCompilerFactory(
-                new CachingScriptCompilationHandler(
-                        new DefaultScriptCompilationHandler()),
+                get(ScriptCompilationHandler.class),
                 new DefaultScriptRunnerFactory(
                         scriptExecutionListener),
                 get(CacheRepository.class));
@@ -1,5 +1,5 @@
 /*
- * Copyright 2009 the original author or authors.
+ * Copyright 2010 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,23 +15,12 @@
  */
 package org.gradle.api.internal.tasks.compile;
 
-import org.apache.tools.ant.taskdefs.optional.depend.Depend;
-import org.apache.tools.ant.types.Path;
-import org.apache.tools.ant.BuildException;
-
-public class AntDepend extends Depend {
-    private Path src;
-
-    public Path createSrc() {
-        if (src == null) {
-            src = new Path(getProject());
-        }
-        return src.createPath();
-    }
-
-    @Override
-    public void execute() throws BuildException {
-        setSrcdir(src);
-        super.execute();
-    }
+/**
+ * Receives notifications about the compilations performed by a build.
+ */
+public interface CompilationListener {
+    /**
+     * Called when a compilation has finished, whether it succeeded or not.
+     */
+    void compilationFinished(CompilationStatistics statistics);
 }
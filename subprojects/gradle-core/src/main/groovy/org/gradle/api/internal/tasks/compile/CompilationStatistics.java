@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile;
+
+/**
+ * The timing and work done by a single compilation.
+ */
+public class CompilationStatistics {
+    private final String path;
+    private final boolean incremental;
+    private final int sourceFilesCompiled;
+    private final int compilerInvocations;
+    private final boolean warm;
+    private final long compileTime;
+    private final long totalTime;
+
+    public CompilationStatistics(String path, boolean incremental, int sourceFilesCompiled, int compilerInvocations,
+                                 boolean warm, long compileTime, long totalTime) {
+        this.path = path;
+        this.incremental = incremental;
+        this.sourceFilesCompiled = sourceFilesCompiled;
+        this.compilerInvocations = compilerInvocations;
+        this.warm = warm;
+        this.compileTime = compileTime;
+        this.totalTime = totalTime;
+    }
+
+    /**
+     * Returns the path of the task which performed the compilation.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns true if only some of the source files were considered for compilation.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public int getSourceFilesCompiled() {
+        return sourceFilesCompiled;
+    }
+
+    public int getCompilerInvocations() {
+        return compilerInvocations;
+    }
+
+    /**
+     * Returns true if the compilation used a compiler which had already been used by an earlier compilation.
+     */
+    public boolean isWarm() {
+        return warm;
+    }
+
+    /**
+     * Returns the time spent in the compiler, in milliseconds.
+     */
+    public long getCompileTime() {
+        return compileTime;
+    }
+
+    /**
+     * Returns the total time of the compilation, in milliseconds. This includes the time spent deciding which source
+     * files to compile, and analysing the compiled classes.
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "Timing: %s compiled %s source files in %s invocations, spending %sms of %sms in the %s compiler.", path, sourceFilesCompiled, compilerInvocations, compileTime, totalTime, warm ? "warm" : "cold");
+    }
+}
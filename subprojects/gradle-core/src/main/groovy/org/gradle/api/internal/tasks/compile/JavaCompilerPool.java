@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile;
+
+import org.gradle.messaging.concurrent.Stoppable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * A build scoped pool of warm file managers for the system Java compiler, which can be shared by the compilations of
+ * a build. A file manager keeps the jars it has opened, along with their indexes, for its lifetime, so that jars
+ * shared by several compilations are only opened and indexed once. A file manager is used by one compilation at a
+ * time, so several compilations can run concurrently.
+ *
+ * <p>A pooled file manager is discarded when one of the jars it has opened has changed since it was opened.</p>
+ */
+public class JavaCompilerPool implements Stoppable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JavaCompilerPool.class);
+    private final JavaCompiler compiler;
+    private final int maxIdle;
+    private final LinkedList<PooledFileManager> idle = new LinkedList<PooledFileManager>();
+    private boolean stopped;
+
+    public JavaCompilerPool() {
+        this(ToolProvider.getSystemJavaCompiler(), Runtime.getRuntime().availableProcessors());
+    }
+
+    public JavaCompilerPool(JavaCompiler compiler, int maxIdle) {
+        this.compiler = compiler;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Returns the system Java compiler, or null when it is not available, for example when running in a JRE.
+     */
+    public JavaCompiler getCompiler() {
+        return compiler;
+    }
+
+    /**
+     * Takes a file manager from this pool, creating a new one if there are no idle file managers which can be used
+     * with the given classpath. The file manager must be given back using {@link #release(PooledFileManager)}.
+     */
+    public PooledFileManager acquire(Charset charset, Iterable<File> classpath) {
+        Map<File, String> jars = getJarStates(classpath);
+        synchronized (this) {
+            for (Iterator<PooledFileManager> iterator = idle.iterator(); iterator.hasNext();) {
+                PooledFileManager candidate = iterator.next();
+                if (!candidate.isUpToDate(jars)) {
+                    LOGGER.debug("Discarding {} as its jars have changed.", candidate);
+                    iterator.remove();
+                    close(candidate);
+                } else if (equal(candidate.charset, charset)) {
+                    iterator.remove();
+                    candidate.jars.putAll(jars);
+                    candidate.warm = true;
+                    return candidate;
+                }
+            }
+        }
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, charset);
+        return new PooledFileManager(fileManager, charset, jars);
+    }
+
+    /**
+     * Gives back a file manager taken from this pool.
+     */
+    public void release(PooledFileManager fileManager) {
+        try {
+            fileManager.getFileManager().flush();
+        } catch (IOException e) {
+            LOGGER.debug(String.format("Could not flush %s.", fileManager), e);
+            close(fileManager);
+            return;
+        }
+        synchronized (this) {
+            if (!stopped && idle.size() < maxIdle) {
+                idle.addFirst(fileManager);
+                return;
+            }
+        }
+        close(fileManager);
+    }
+
+    /**
+     * Closes the idle file managers. File managers which are in use are closed when they are given back.
+     */
+    public void stop() {
+        List<PooledFileManager> closing;
+        synchronized (this) {
+            stopped = true;
+            closing = new ArrayList<PooledFileManager>(idle);
+            idle.clear();
+        }
+        for (PooledFileManager fileManager : closing) {
+            close(fileManager);
+        }
+    }
+
+    private void close(PooledFileManager fileManager) {
+        try {
+            fileManager.getFileManager().close();
+        } catch (IOException e) {
+            LOGGER.debug(String.format("Could not close %s.", fileManager), e);
+        }
+    }
+
+    private static boolean equal(Charset charset1, Charset charset2) {
+        return charset1 == null ? charset2 == null : charset1.equals(charset2);
+    }
+
+    private static Map<File, String> getJarStates(Iterable<File> classpath) {
+        Map<File, String> states = new HashMap<File, String>();
+        for (File file : classpath) {
+            if (file.isFile()) {
+                states.put(file, file.length() + ":" + file.lastModified());
+            }
+        }
+        return states;
+    }
+
+    /**
+     * A file manager which belongs to a {@link JavaCompilerPool}.
+     */
+    public static class PooledFileManager {
+        private final StandardJavaFileManager fileManager;
+        private final Charset charset;
+        private final Map<File, String> jars;
+        private boolean warm;
+
+        private PooledFileManager(StandardJavaFileManager fileManager, Charset charset, Map<File, String> jars) {
+            this.fileManager = fileManager;
+            this.charset = charset;
+            this.jars = jars;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("file manager for %s jars", jars.size());
+        }
+
+        public StandardJavaFileManager getFileManager() {
+            return fileManager;
+        }
+
+        /**
+         * Returns true if this file manager has been used by a previous compilation.
+         */
+        public boolean isWarm() {
+            return warm;
+        }
+
+        private boolean isUpToDate(Map<File, String> currentJars) {
+            for (Map.Entry<File, String> entry : currentJars.entrySet()) {
+                String state = jars.get(entry.getKey());
+                if (state != null && !state.equals(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
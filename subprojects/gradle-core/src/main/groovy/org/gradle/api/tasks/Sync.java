@@ -20,6 +20,7 @@ import org.gradle.api.internal.file.FileResolver;
 import org.gradle.api.internal.file.copy.FileCopyActionImpl;
 import org.gradle.api.internal.file.copy.FileCopySpecVisitor;
 import org.gradle.api.internal.file.copy.SyncCopySpecVisitor;
+import org.gradle.messaging.concurrent.ExecutorFactory;
 
 import java.io.File;
 
@@ -31,7 +32,8 @@ public class Sync extends AbstractCopyTask {
 
     public Sync() {
         FileResolver fileResolver = getServices().get(FileResolver.class);
-        action = new FileCopyActionImpl(fileResolver, new SyncCopySpecVisitor(new FileCopySpecVisitor()));
+        FileCopySpecVisitor visitor = new FileCopySpecVisitor(getServices().get(ExecutorFactory.class));
+        action = new FileCopyActionImpl(fileResolver, new SyncCopySpecVisitor(visitor));
     }
 
     @Override
@@ -43,4 +45,66 @@ public class Sync extends AbstractCopyTask {
     public File getDestinationDir() {
         return getCopyAction().getDestinationDir();
     }
+
+    /**
+     * Returns whether unfiltered files are hard linked into the destination directory rather than copied.
+     *
+     * @return true if files are hard linked.
+     */
+    public boolean isUseHardLinks() {
+        return getCopyAction().isUseHardLinks();
+    }
+
+    /**
+     * Specifies whether to hard link unfiltered files into the destination directory rather than copy them. A hard
+     * linked file shares its content with the source file, so a change to either file changes both of them. A file
+     * is copied instead when it cannot be hard linked, for example when the destination directory is on a different
+     * file system to the source file.
+     *
+     * @param useHardLinks true to hard link files.
+     */
+    public void setUseHardLinks(boolean useHardLinks) {
+        getCopyAction().setUseHardLinks(useHardLinks);
+    }
+
+    /**
+     * Returns whether a file is copied only when its content differs from the content of the destination file.
+     *
+     * @return true if the content of files is compared.
+     */
+    public boolean isCompareContent() {
+        return getCopyAction().isCompareContent();
+    }
+
+    /**
+     * Specifies whether to copy a file only when its content differs from the content of the destination file. When
+     * false, a file is copied unless the destination file has the same timestamp. When true, a file is copied unless
+     * the destination file has the same size and content hash, and the destination file is left untouched otherwise.
+     *
+     * @param compareContent true to compare the content of files.
+     */
+    public void setCompareContent(boolean compareContent) {
+        getCopyAction().setCompareContent(compareContent);
+    }
+
+    /**
+     * Returns the number of files which are copied at the same time.
+     *
+     * @return the number of copy threads.
+     */
+    public int getCopyThreads() {
+        return getCopyAction().getCopyThreads();
+    }
+
+    /**
+     * Specifies the number of files to copy at the same time. When 1, which is the default, files are copied one at
+     * a time as they are visited. When more than 1, unfiltered files are copied by that number of worker threads,
+     * which can be faster when copying many small files. Filtered files and files read from an archive are always
+     * copied as they are visited.
+     *
+     * @param copyThreads the number of copy threads. Must be at least 1.
+     */
+    public void setCopyThreads(int copyThreads) {
+        getCopyAction().setCopyThreads(copyThreads);
+    }
 }
@@ -16,9 +16,10 @@
 package org.gradle.api.tasks.bundling;
 
 import org.gradle.api.internal.file.FileResolver;
+import org.gradle.api.internal.file.archive.ZipCopyAction;
 import org.gradle.api.internal.file.archive.ZipCopySpecVisitor;
-import org.gradle.api.internal.file.copy.ArchiveCopyAction;
 import org.gradle.api.internal.file.copy.CopyActionImpl;
+import org.gradle.messaging.concurrent.ExecutorFactory;
 
 import java.io.File;
 
@@ -30,23 +31,49 @@ import java.io.File;
 public class Zip extends AbstractArchiveTask {
     public static final String ZIP_EXTENSION = "zip";
     private final CopyActionImpl action;
+    private boolean incremental;
 
     public Zip() {
         setExtension(ZIP_EXTENSION);
-        action = new ZipCopyAction(getServices().get(FileResolver.class));
+        action = new ZipCopyActionImpl(getServices().get(FileResolver.class), getServices().get(ExecutorFactory.class));
     }
 
     protected CopyActionImpl getCopyAction() {
         return action;
     }
 
-    private class ZipCopyAction extends CopyActionImpl implements ArchiveCopyAction {
-        public ZipCopyAction(FileResolver fileResolver) {
-            super(fileResolver, new ZipCopySpecVisitor());
+    /**
+     * Returns whether the entries of the previous archive are reused when the archive is generated again. The
+     * default is false.
+     *
+     * @return true if the entries of the previous archive are reused.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Specifies whether to reuse the entries of the previous archive when the archive is generated again. When true,
+     * an entry whose content is the same as the content of the entry with the same path in the previous archive is
+     * not compressed again. Instead, its compressed content is copied from the previous archive.
+     *
+     * @param incremental true to reuse the entries of the previous archive.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    private class ZipCopyActionImpl extends CopyActionImpl implements ZipCopyAction {
+        public ZipCopyActionImpl(FileResolver fileResolver, ExecutorFactory executorFactory) {
+            super(fileResolver, new ZipCopySpecVisitor(executorFactory, Runtime.getRuntime().availableProcessors()));
         }
 
         public File getArchivePath() {
             return Zip.this.getArchivePath();
         }
+
+        public boolean isIncremental() {
+            return Zip.this.isIncremental();
+        }
     }
 }
@@ -20,14 +20,10 @@ import org.gradle.api.tasks.AntBuilderAware
 import org.gradle.util.GUtil
 
 import org.gradle.api.specs.Spec
-import org.gradle.api.specs.Specs
-import org.gradle.api.internal.file.pattern.PatternMatcherFactory
 import org.gradle.api.specs.AndSpec
-import org.gradle.api.specs.NotSpec
-import org.gradle.api.specs.OrSpec
 import org.apache.tools.ant.DirectoryScanner
 import org.gradle.api.file.FileTreeElement
-import org.gradle.api.internal.file.RelativePathSpec
+import org.gradle.api.internal.file.PatternSetSpec
 
 /**
  * @author Hans Dockter
@@ -89,36 +85,7 @@ class PatternSet implements AntBuilderAware, PatternFilterable {
     }
     
     public Spec<FileTreeElement> getAsSpec() {
-        Spec<FileTreeElement> includeSpec = Specs.satisfyAll()
-
-        boolean hasIncludes = includes || includeSpecs
-        if (hasIncludes) {
-            List<Spec<FileTreeElement>> matchers = new ArrayList<Spec<FileTreeElement>>()
-            for (String include: includes) {
-                matchers.add(new RelativePathSpec(PatternMatcherFactory.getPatternMatcher(true, caseSensitive, include)))
-            }
-            matchers.addAll(includeSpecs)
-            includeSpec = new OrSpec<FileTreeElement>(matchers as Spec[])
-        }
-
-        Collection<String> allExcludes = excludes + GLOBAL_EXCLUDES
-        boolean hasExcludes = allExcludes || excludeSpecs
-        if (!hasExcludes) {
-            return includeSpec
-        }
-
-        List<Spec<FileTreeElement>> matchers = new ArrayList<Spec<FileTreeElement>>()
-        for (String exclude: allExcludes) {
-            matchers.add(new RelativePathSpec(PatternMatcherFactory.getPatternMatcher(false, caseSensitive, exclude)))
-        }
-        matchers.addAll(excludeSpecs)
-        Spec<FileTreeElement> excludeSpec = new NotSpec<FileTreeElement>(new OrSpec<FileTreeElement>(matchers as Spec[]))
-
-        if (!hasIncludes) {
-            return excludeSpec
-        }
-
-        return new AndSpec<FileTreeElement>([includeSpec, excludeSpec] as Spec[])
+        return new PatternSetSpec(caseSensitive, includes, includeSpecs, excludes + GLOBAL_EXCLUDES, excludeSpecs)
     }
 
     public Set<String> getIncludes() {
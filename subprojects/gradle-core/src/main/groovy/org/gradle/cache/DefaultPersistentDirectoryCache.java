@@ -19,6 +19,7 @@ import org.gradle.CacheUsage;
 import org.gradle.cache.btree.BTreePersistentIndexedCache;
 import org.gradle.util.GFileUtils;
 import org.gradle.util.GUtil;
+import org.gradle.util.OperatingSystem;
 
 import java.io.File;
 import java.util.Map;
@@ -74,9 +75,11 @@ public class DefaultPersistentDirectoryCache implements PersistentCache {
         valid = true;
     }
 
-    public <K, V> BTreePersistentIndexedCache<K, V> openIndexedCache(Serializer<V> serializer) {
+    public synchronized <K, V> BTreePersistentIndexedCache<K, V> openIndexedCache(Serializer<V> serializer) {
         if (indexedCache == null) {
-            indexedCache = new BTreePersistentIndexedCache<K,V>(this, serializer);
+            // Windows does not allow a mapped file to be deleted until the mapping has been garbage collected
+            indexedCache = new BTreePersistentIndexedCache<K,V>(this, serializer, (short) 512, 512,
+                    BTreePersistentIndexedCache.DEFAULT_COMMIT_INTERVAL, !OperatingSystem.current().isWindows());
         }
         return indexedCache;
     }
@@ -85,7 +88,7 @@ public class DefaultPersistentDirectoryCache implements PersistentCache {
         return openIndexedCache(new DefaultSerializer<V>());
     }
 
-    public <T> SimpleStateCache<T> openStateCache() {
+    public synchronized <T> SimpleStateCache<T> openStateCache() {
         if (stateCache == null) {
             stateCache = new SimpleStateCache<T>(this, new DefaultSerializer<T>());
         }
@@ -109,7 +112,7 @@ public class DefaultPersistentDirectoryCache implements PersistentCache {
         valid = true;
     }
 
-    public void close() {
+    public synchronized void close() {
         if (indexedCache != null) {
             indexedCache.close();
         }
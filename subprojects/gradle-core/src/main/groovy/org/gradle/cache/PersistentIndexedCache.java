@@ -15,6 +15,9 @@
  */
 package org.gradle.cache;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * A persistent store of objects of type V indexed by a key of type K.
  */
@@ -24,4 +27,17 @@ public interface PersistentIndexedCache<K, V> {
     void put(K key, V value);
 
     void remove(K key);
+
+    /**
+     * Looks up the values for the given keys.
+     *
+     * @return The entries which are present in this cache. Keys with no value are not included.
+     */
+    Map<K, V> getAll(Collection<? extends K> keys);
+
+    /**
+     * Adds or replaces the given entries. The entries are written as a single batch, which is cheaper than calling
+     * {@link #put(Object, Object)} for each entry.
+     */
+    void putAll(Map<? extends K, ? extends V> entries);
 }
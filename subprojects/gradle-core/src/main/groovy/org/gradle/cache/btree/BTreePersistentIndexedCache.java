@@ -19,32 +19,67 @@ import org.gradle.api.UncheckedIOException;
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.Serializer;
+import org.gradle.util.GFileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 // todo - stream serialised value to file
-// todo - handle hash collisions
 // todo - don't store null links to child blocks in leaf index blocks
 // todo - align block boundaries
-// todo - concurrency control
 // todo - remove the check-sum from each block
 // todo - merge small values into a single data block
 // todo - discard when file corrupt
-// todo - include data directly in index entry when serializer can guarantee small fixed sized data
 // todo - free list leaks disk space
 // todo - merge adjacent free blocks
 // todo - use more efficient lookup for free block with nearest size
+
+/**
+ * A {@link PersistentIndexedCache} which stores its entries in a btree.
+ *
+ * <p>Entries are indexed by a 64-bit hash of the key. Each data block holds the key of its entry, and data blocks for
+ * keys with the same hash are chained together, so a lookup always verifies the key. Values which serialise to at most
+ * 8 bytes are stored directly in the index entry, to avoid reading a data block. The key of an inlined value is not
+ * stored, as keys are often long file paths. Instead, the entry holds a second 64-bit hash of the key, which is
+ * independent of the first, and a lookup accepts the inlined value only when both hashes match.</p>
+ *
+ * <p>By default, each change is written to the cache file as it is made. Alternatively, the cache can be created with a
+ * commit interval, in which case changes are recorded in an append-only write-ahead log and applied to the btree in
+ * memory only. The log is forced to disk once for each group of changes. The btree is written to the cache file and
+ * forced to disk, and only then the log discarded, when the log grows large or when the cache is closed. If the process stops before then, the
+ * changes are recovered by replaying the log when the cache is next opened.</p>
+ *
+ * <p>The cache is thread-safe. Entries can be read concurrently by multiple threads, while changes are made by one
+ * thread at a time. The cache holds a lock on a lock file while it is open, so that the cache file is not used by
+ * multiple processes at the same time. If another process does not release the lock within a few seconds, the cache
+ * uses a temporary cache file instead, and the changes made by this process are discarded when the cache is
+ * closed.</p>
+ */
 public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache<K, V> {
+    /**
+     * The number of changes grouped into each commit of the write-ahead log, for caches which use a log.
+     */
+    public static final int DEFAULT_COMMIT_INTERVAL = 200;
+    static final long MAX_LOG_LENGTH = 4 * 1024 * 1024;
+    static final long LOCK_TIMEOUT = 5000;
+    static final int MAX_INLINE_VALUE_SIZE = Block.LONG_SIZE;
     private static final Logger LOGGER = LoggerFactory.getLogger(BTreePersistentIndexedCache.class);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private final File cacheFile;
+    private final File temporaryDir;
+    private CacheFileLock fileLock;
     private final PersistentCache backingCache;
     private final Serializer<V> serializer;
     private final short maxChildIndexEntries;
     private final int minIndexChildNodes;
     private final StateCheckBlockStore store;
+    private final WriteAheadLog log;
+    private final int commitInterval;
+    private int uncommittedChanges;
     private HeaderBlock header;
 
     public BTreePersistentIndexedCache(PersistentCache backingCache, Serializer<V> serializer) {
@@ -53,12 +88,49 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
 
     public BTreePersistentIndexedCache(PersistentCache backingCache, Serializer<V> serializer,
                                        short maxChildIndexEntries, int maxFreeListEntries) {
+        this(backingCache, serializer, maxChildIndexEntries, maxFreeListEntries, 0);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param commitInterval The number of changes to group into each commit of the write-ahead log. Use 0 to write
+     * each change directly to the cache file, without using a log.
+     */
+    public BTreePersistentIndexedCache(PersistentCache backingCache, Serializer<V> serializer,
+                                       short maxChildIndexEntries, int maxFreeListEntries, int commitInterval) {
+        this(backingCache, serializer, maxChildIndexEntries, maxFreeListEntries, commitInterval, false);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param commitInterval The number of changes to group into each commit of the write-ahead log. Use 0 to write
+     * each change directly to the cache file, without using a log.
+     * @param mapFile true to access the cache file through a memory mapping, false to use reads and writes.
+     */
+    public BTreePersistentIndexedCache(PersistentCache backingCache, Serializer<V> serializer,
+                                       short maxChildIndexEntries, int maxFreeListEntries, int commitInterval,
+                                       boolean mapFile) {
         this.backingCache = backingCache;
         this.serializer = serializer;
         this.maxChildIndexEntries = maxChildIndexEntries;
         this.minIndexChildNodes = maxChildIndexEntries / 2;
-        cacheFile = new File(backingCache.getBaseDir(), "cache.bin");
-        BlockStore cachingStore = new CachingBlockStore(new FileBackedBlockStore(cacheFile), IndexBlock.class, FreeListBlockStore.FreeListBlock.class);
+        this.commitInterval = commitInterval;
+        File baseDir = backingCache.getBaseDir();
+        fileLock = lock(new File(baseDir, "cache.lock"));
+        if (fileLock == null) {
+            temporaryDir = createTemporaryDir();
+            LOGGER.warn(String.format("Cache '%s' is in use by another process. Using temporary cache '%s' instead.",
+                    baseDir, temporaryDir));
+            baseDir = temporaryDir;
+        } else {
+            temporaryDir = null;
+        }
+        cacheFile = new File(baseDir, "cache.bin");
+        log = commitInterval > 0 ? new WriteAheadLog(new File(baseDir, "cache.log")) : null;
+        BlockStore fileStore = mapFile ? new MappedFileBlockStore(cacheFile) : new FileBackedBlockStore(cacheFile);
+        BlockStore cachingStore = new CachingBlockStore(fileStore, IndexBlock.class, FreeListBlockStore.FreeListBlock.class);
         store = new StateCheckBlockStore(new FreeListBlockStore(cachingStore, maxFreeListEntries));
         try {
             open();
@@ -72,12 +144,51 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
         return String.format("cache '%s'", cacheFile);
     }
 
+    private static CacheFileLock lock(File lockFile) {
+        try {
+            return CacheFileLock.lock(lockFile, LOCK_TIMEOUT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not lock %s.", lockFile), e);
+        }
+    }
+
+    private static File createTemporaryDir() {
+        try {
+            File dir = File.createTempFile("cache", "");
+            dir.delete();
+            dir.mkdirs();
+            return dir;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private void open() throws Exception {
         try {
             doOpen();
         } catch (CorruptedCacheException e) {
             rebuild();
         }
+        if (log != null) {
+            recover();
+        }
+    }
+
+    private void recover() throws Exception {
+        uncommittedChanges = 0;
+        int count = log.open(new WriteAheadLog.Replayer() {
+            public void put(String key, byte[] value) throws Exception {
+                doPut(key, value);
+            }
+
+            public void remove(String key) throws Exception {
+                doRemove(key);
+            }
+        });
+        if (count > 0) {
+            LOGGER.info(String.format("Recovered %s changes from %s.", count, log));
+            checkpoint();
+        }
     }
 
     private void doOpen() throws Exception {
@@ -112,13 +223,14 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
     public V get(K key) {
         try {
             try {
-                DataBlock block = header.getRoot().get(key);
-                if (block != null) {
-                    return block.getValue();
+                lock.readLock().lock();
+                try {
+                    return doGet(key);
+                } finally {
+                    lock.readLock().unlock();
                 }
-                return null;
             } catch (CorruptedCacheException e) {
-                rebuild();
+                rebuildAfterCorruption();
                 return null;
             }
         } catch (Exception e) {
@@ -126,45 +238,303 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
         }
     }
 
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        List<K> sortedKeys = inIndexOrder(keys);
+        Map<K, V> values = new HashMap<K, V>();
+        try {
+            try {
+                lock.readLock().lock();
+                try {
+                    for (K key : sortedKeys) {
+                        V value = doGet(key);
+                        if (value != null) {
+                            values.put(key, value);
+                        }
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+            } catch (CorruptedCacheException e) {
+                rebuildAfterCorruption();
+                values.clear();
+            }
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not read entries from %s.", this), e);
+        }
+        return values;
+    }
+
+    private V doGet(K key) throws Exception {
+        String keyString = key.toString();
+        Lookup lookup = header.getRoot().find(hash(keyString));
+        if (lookup.entry == null) {
+            return null;
+        }
+        if (lookup.entry.hasInlineValue(keyCheck(keyString))) {
+            return serializer.read(new ByteArrayInputStream(lookup.entry.inlineValue));
+        }
+        ChainLookup chainLookup = findInChain(lookup.entry, keyString);
+        if (chainLookup.block != null) {
+            return chainLookup.block.getValue();
+        }
+        return null;
+    }
+
     public void put(K key, V value) {
+        lock.writeLock().lock();
         try {
             String keyString = key.toString();
-            long hashCode = keyString.hashCode();
-            Lookup lookup = header.getRoot().find(hashCode);
-            boolean needNewBlock = true;
-            if (lookup.entry != null) {
-                DataBlock block = store.read(lookup.entry.dataBlock, DataBlock.class);
-                needNewBlock = !block.useNewValue(value);
-                if (needNewBlock) {
-                    store.remove(block);
+            byte[] serialisedValue = serialise(value);
+            if (log != null) {
+                log.put(keyString, serialisedValue);
+            }
+            doPut(keyString, serialisedValue);
+            changed(1);
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        List<K> sortedKeys = inIndexOrder(entries.keySet());
+        lock.writeLock().lock();
+        try {
+            for (K key : sortedKeys) {
+                try {
+                    String keyString = key.toString();
+                    byte[] serialisedValue = serialise(entries.get(key));
+                    if (log != null) {
+                        log.put(keyString, serialisedValue);
+                    }
+                    doPut(keyString, serialisedValue);
+                } catch (Exception e) {
+                    throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
                 }
             }
-            if (needNewBlock) {
-                DataBlock block = new DataBlock(keyString, value);
-                store.write(block);
-                lookup.indexBlock.put(hashCode, block.getPos());
+            try {
+                changed(entries.size());
+            } catch (Exception e) {
+                throw new UncheckedIOException(String.format("Could not flush %s.", this), e);
             }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private byte[] serialise(V value) throws Exception {
+        ByteArrayOutputStream outStr = new ByteArrayOutputStream();
+        serializer.write(outStr, value);
+        return outStr.toByteArray();
+    }
+
+    /**
+     * Called after the given number of changes have been made. Without a log, writes the changes to the cache file.
+     * With a log, commits the log once enough changes have been made, and checkpoints once the log grows large.
+     */
+    private void changed(int count) throws Exception {
+        if (log == null) {
             store.flush();
-        } catch (Exception e) {
-            throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
+            return;
+        }
+        uncommittedChanges += count;
+        if (uncommittedChanges >= commitInterval) {
+            log.commit();
+            uncommittedChanges = 0;
+        }
+        if (log.getLength() >= MAX_LOG_LENGTH) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Writes all changes to the cache file, and discards the write-ahead log. The cache file must be on disk before the
+     * log is discarded, otherwise committed changes are lost when the machine stops.
+     */
+    void checkpoint() throws Exception {
+        if (log != null) {
+            log.commit();
+        }
+        store.flush();
+        if (log != null) {
+            log.truncate();
         }
+        uncommittedChanges = 0;
+    }
+
+    /**
+     * Sorts the given keys in the order they appear in the index, so that a batch of lookups visits each index block
+     * once.
+     */
+    private List<K> inIndexOrder(Collection<? extends K> keys) {
+        List<K> sorted = new ArrayList<K>(keys);
+        Collections.sort(sorted, new Comparator<K>() {
+            public int compare(K key1, K key2) {
+                long hashCode1 = hash(key1.toString());
+                long hashCode2 = hash(key2.toString());
+                return hashCode1 < hashCode2 ? -1 : hashCode1 == hashCode2 ? 0 : 1;
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the given key, which is used to index the entry for the key.
+     */
+    long hash(String keyString) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < keyString.length(); i++) {
+            hash ^= keyString.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns a second hash of the given key, which is stored along with an inlined value to verify its key. Uses a
+     * different multiplier and mixes the bits after each character, so that it is independent of {@link #hash(String)}.
+     */
+    long keyCheck(String keyString) {
+        long hash = 0x9e3779b97f4a7c15L ^ keyString.length();
+        for (int i = 0; i < keyString.length(); i++) {
+            hash ^= keyString.charAt(i);
+            hash *= 0xc6a4a7935bd1e995L;
+            hash ^= hash >>> 47;
+        }
+        return hash;
+    }
+
+    private void doPut(String keyString, byte[] serialisedValue) throws Exception {
+        long hashCode = hash(keyString);
+        long keyCheck = keyCheck(keyString);
+        boolean inline = serialisedValue.length <= MAX_INLINE_VALUE_SIZE;
+        Lookup lookup = header.getRoot().find(hashCode);
+        IndexEntry entry = lookup.entry;
+
+        if (entry == null) {
+            entry = new IndexEntry(hashCode);
+            entry.childIndexBlock = new BlockPointer();
+            entry.dataBlock = new BlockPointer();
+            if (inline) {
+                entry.setInlineValue(keyCheck, serialisedValue);
+            } else {
+                entry.dataBlock = newDataBlock(keyString, serialisedValue, entry.dataBlock);
+            }
+            lookup.indexBlock.insert(entry);
+            return;
+        }
+
+        if (entry.hasInlineValue(keyCheck)) {
+            // The key is currently inlined
+            if (inline) {
+                entry.setInlineValue(keyCheck, serialisedValue);
+            } else {
+                entry.clearInlineValue();
+                entry.dataBlock = newDataBlock(keyString, serialisedValue, entry.dataBlock);
+            }
+            store.write(lookup.indexBlock);
+            return;
+        }
+
+        ChainLookup chainLookup = findInChain(entry, keyString);
+        if (inline && entry.inlineValue == null) {
+            if (chainLookup.block != null) {
+                unlink(lookup.indexBlock, entry, chainLookup);
+            }
+            entry.setInlineValue(keyCheck, serialisedValue);
+            store.write(lookup.indexBlock);
+            return;
+        }
+
+        if (chainLookup.block != null) {
+            if (chainLookup.block.useNewValue(serialisedValue)) {
+                return;
+            }
+            unlink(lookup.indexBlock, entry, chainLookup);
+        }
+        entry.dataBlock = newDataBlock(keyString, serialisedValue, entry.dataBlock);
+        store.write(lookup.indexBlock);
+    }
+
+    private BlockPointer newDataBlock(String keyString, byte[] serialisedValue, BlockPointer next) throws Exception {
+        DataBlock block = new DataBlock(keyString, serialisedValue, next);
+        store.write(block);
+        return block.getPos();
+    }
+
+    /**
+     * Locates the data block for the given key in the chain of data blocks for the given entry.
+     */
+    private ChainLookup findInChain(IndexEntry entry, String keyString) throws Exception {
+        DataBlock previous = null;
+        BlockPointer pos = entry.dataBlock;
+        while (!pos.isNull()) {
+            DataBlock block = store.read(pos, DataBlock.class);
+            if (block.key.equals(keyString)) {
+                return new ChainLookup(previous, block);
+            }
+            previous = block;
+            pos = block.nextInChain;
+        }
+        return new ChainLookup(previous, null);
+    }
+
+    /**
+     * Removes a data block from the chain of data blocks for the given entry, and discards it.
+     */
+    private void unlink(IndexBlock indexBlock, IndexEntry entry, ChainLookup chainLookup) throws Exception {
+        if (chainLookup.previous == null) {
+            entry.dataBlock = chainLookup.block.nextInChain;
+            store.write(indexBlock);
+        } else {
+            chainLookup.previous.nextInChain = chainLookup.block.nextInChain;
+            store.write(chainLookup.previous);
+        }
+        store.remove(chainLookup.block);
     }
 
     public void remove(K key) {
+        lock.writeLock().lock();
         try {
-            Lookup lookup = header.getRoot().find(key.toString());
-            if (lookup.entry == null) {
+            String keyString = key.toString();
+            if (!doRemove(keyString)) {
                 return;
             }
-            lookup.indexBlock.remove(lookup.entry);
-            DataBlock block = store.read(lookup.entry.dataBlock, DataBlock.class);
-            store.remove(block);
-            store.flush();
+            if (log != null) {
+                log.remove(keyString);
+            }
+            changed(1);
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Could not remove entry '%s' from %s.", key, this), e);
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
+    private boolean doRemove(String keyString) throws Exception {
+        Lookup lookup = header.getRoot().find(hash(keyString));
+        IndexEntry entry = lookup.entry;
+        if (entry == null) {
+            return false;
+        }
+        if (entry.hasInlineValue(keyCheck(keyString))) {
+            entry.clearInlineValue();
+        } else {
+            ChainLookup chainLookup = findInChain(entry, keyString);
+            if (chainLookup.block == null) {
+                return false;
+            }
+            unlink(lookup.indexBlock, entry, chainLookup);
+        }
+        if (entry.inlineValue == null && entry.dataBlock.isNull()) {
+            lookup.indexBlock.remove(entry);
+        } else {
+            store.write(lookup.indexBlock);
+        }
+        return true;
+    }
+
     private IndexBlock load(BlockPointer pos, IndexRoot root, IndexBlock parent, int index) {
         IndexBlock block = store.read(pos, IndexBlock.class);
         block.root = root;
@@ -174,39 +544,73 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
     }
 
     public void reset() {
-        close();
+        lock.writeLock().lock();
         try {
+            closeStore();
             open();
         } catch (Exception e) {
             throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
     public void close() {
+        lock.writeLock().lock();
         try {
-            store.close();
+            closeStore();
+            if (fileLock != null) {
+                fileLock.release();
+                fileLock = null;
+            }
+            if (temporaryDir != null) {
+                GFileUtils.deleteDirectory(temporaryDir);
+            }
         } catch (Exception e) {
             throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closeStore() throws Exception {
+        if (log != null && store.isOpen()) {
+            checkpoint();
+            log.close();
         }
+        store.close();
     }
 
     public boolean isOpen() {
         return store.isOpen();
     }
 
+    private void rebuildAfterCorruption() throws Exception {
+        lock.writeLock().lock();
+        try {
+            rebuild();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     private void rebuild() throws Exception {
         LOGGER.warn(String.format("%s is corrupt. Discarding.", this));
         store.clear();
-        close();
+        store.close();
         doOpen();
     }
 
     public void verify() {
+        lock.writeLock().lock();
         try {
+            checkpoint();
             doVerify();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Some problems were found when checking the integrity of %s.",
                     this), e);
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -215,7 +619,7 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
 
         HeaderBlock header = store.readFirst(HeaderBlock.class);
         blocks.add(header);
-        verifyTree(header.getRoot(), "", blocks, Long.MAX_VALUE, true);
+        verifyTree(header.getRoot(), "", blocks, null, true);
 
         Collections.sort(blocks, new Comparator<BlockPayload>() {
             public int compare(BlockPayload block, BlockPayload block1) {
@@ -232,7 +636,7 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
         }
     }
 
-    private void verifyTree(IndexBlock current, String prefix, Collection<BlockPayload> blocks, long maxValue,
+    private void verifyTree(IndexBlock current, String prefix, Collection<BlockPayload> blocks, Long maxValue,
                             boolean loadData) throws Exception {
         blocks.add(current);
 
@@ -248,12 +652,12 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
             throw new IOException(String.format("Mismatched leaf/tail-node in %s", current));
         }
 
-        long min = Long.MIN_VALUE;
+        Long min = null;
         for (IndexEntry entry : current.entries) {
             if (isLeaf ^ entry.childIndexBlock.isNull()) {
                 throw new IOException(String.format("Mismatched leaf/non-leaf entry in %s", current));
             }
-            if (entry.hashCode >= maxValue || entry.hashCode <= min) {
+            if ((maxValue != null && entry.hashCode >= maxValue) || (min != null && entry.hashCode <= min)) {
                 throw new IOException(String.format("Out-of-order key in %s", current));
             }
             min = entry.hashCode;
@@ -261,9 +665,19 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
                 IndexBlock child = store.read(entry.childIndexBlock, IndexBlock.class);
                 verifyTree(child, "   " + prefix, blocks, entry.hashCode, loadData);
             }
+            if (entry.inlineValue == null && entry.dataBlock.isNull()) {
+                throw new IOException(String.format("Empty entry found in %s", current));
+            }
             if (loadData) {
-                DataBlock block = store.read(entry.dataBlock, DataBlock.class);
-                blocks.add(block);
+                BlockPointer pos = entry.dataBlock;
+                while (!pos.isNull()) {
+                    DataBlock block = store.read(pos, DataBlock.class);
+                    if (hash(block.key) != entry.hashCode) {
+                        throw new IOException(String.format("Mismatched key found in %s", block));
+                    }
+                    blocks.add(block);
+                    pos = block.nextInChain;
+                }
             }
         }
         if (!current.tailPos.isNull()) {
@@ -306,7 +720,7 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
 
         @Override
         protected int getType() {
-            return 0x55;
+            return 0x56;
         }
 
         @Override
@@ -345,12 +759,12 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
 
         @Override
         protected int getType() {
-            return 0x77;
+            return 0x7a;
         }
 
         @Override
         protected int getSize() {
-            return Block.INT_SIZE + Block.LONG_SIZE + (3 * Block.LONG_SIZE) * maxChildIndexEntries;
+            return Block.INT_SIZE + Block.LONG_SIZE + IndexEntry.SIZE * maxChildIndexEntries;
         }
 
         public void read(DataInputStream instr) throws IOException {
@@ -361,6 +775,17 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
                 entry.hashCode = instr.readLong();
                 entry.dataBlock = new BlockPointer(instr.readLong());
                 entry.childIndexBlock = new BlockPointer(instr.readLong());
+                int inlineLength = instr.readByte();
+                if (inlineLength > MAX_INLINE_VALUE_SIZE) {
+                    throw blockCorruptedException();
+                }
+                byte[] inlineValue = new byte[MAX_INLINE_VALUE_SIZE];
+                instr.readFully(inlineValue);
+                entry.inlineKeyCheck = instr.readLong();
+                if (inlineLength >= 0) {
+                    entry.inlineValue = new byte[inlineLength];
+                    System.arraycopy(inlineValue, 0, entry.inlineValue, 0, inlineLength);
+                }
                 entries.add(entry);
             }
             tailPos = new BlockPointer(instr.readLong());
@@ -372,25 +797,26 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
                 outstr.writeLong(entry.hashCode);
                 outstr.writeLong(entry.dataBlock.getPos());
                 outstr.writeLong(entry.childIndexBlock.getPos());
+                byte[] inlineValue = new byte[MAX_INLINE_VALUE_SIZE];
+                if (entry.inlineValue == null) {
+                    outstr.writeByte(-1);
+                } else {
+                    outstr.writeByte(entry.inlineValue.length);
+                    System.arraycopy(entry.inlineValue, 0, inlineValue, 0, entry.inlineValue.length);
+                }
+                outstr.write(inlineValue);
+                outstr.writeLong(entry.inlineKeyCheck);
             }
             outstr.writeLong(tailPos.getPos());
         }
 
-        public void put(long hashCode, BlockPointer pos) throws Exception {
-            int index = Collections.binarySearch(entries, new IndexEntry(hashCode));
-            IndexEntry entry;
-            if (index >= 0) {
-                entry = entries.get(index);
-            } else {
-                assert tailPos.isNull();
-                entry = new IndexEntry();
-                entry.hashCode = hashCode;
-                entry.childIndexBlock = new BlockPointer();
-                index = -index - 1;
-                entries.add(index, entry);
-            }
-
-            entry.dataBlock = pos;
+        /**
+         * Adds a new entry to this leaf block.
+         */
+        public void insert(IndexEntry entry) throws Exception {
+            int index = Collections.binarySearch(entries, entry);
+            assert index < 0 && tailPos.isNull();
+            entries.add(-index - 1, entry);
             store.write(this);
 
             maybeSplit();
@@ -432,20 +858,7 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
             maybeSplit();
         }
 
-        public DataBlock get(K key) throws Exception {
-            Lookup lookup = find(key.toString());
-            if (lookup.entry == null) {
-                return null;
-            }
-
-            return store.read(lookup.entry.dataBlock, DataBlock.class);
-        }
-
-        public Lookup find(String keyString) throws Exception {
-            return find((long) keyString.hashCode());
-        }
-
-        private Lookup find(long hashCode) throws Exception {
+        public Lookup find(long hashCode) throws Exception {
             int index = Collections.binarySearch(entries, new IndexEntry(hashCode));
             if (index >= 0) {
                 return new Lookup(this, entries.get(index));
@@ -590,9 +1003,14 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
     }
 
     private static class IndexEntry implements Comparable<IndexEntry> {
+        static final int SIZE = 4 * Block.LONG_SIZE + 1 + MAX_INLINE_VALUE_SIZE;
         long hashCode;
+        // The first data block in the chain of data blocks for keys with this hash
         BlockPointer dataBlock;
         BlockPointer childIndexBlock;
+        // An inlined value, and the second hash of its key, for one of the keys with this hash
+        byte[] inlineValue;
+        long inlineKeyCheck;
 
         private IndexEntry() {
         }
@@ -601,6 +1019,20 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
             this.hashCode = hashCode;
         }
 
+        public boolean hasInlineValue(long keyCheck) {
+            return inlineValue != null && inlineKeyCheck == keyCheck;
+        }
+
+        public void setInlineValue(long keyCheck, byte[] value) {
+            inlineKeyCheck = keyCheck;
+            inlineValue = value;
+        }
+
+        public void clearInlineValue() {
+            inlineKeyCheck = 0;
+            inlineValue = null;
+        }
+
         public int compareTo(IndexEntry indexEntry) {
             if (hashCode > indexEntry.hashCode) {
                 return 1;
@@ -622,7 +1054,20 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
         }
     }
 
+    private class ChainLookup {
+        final DataBlock previous;
+        final DataBlock block;
+
+        private ChainLookup(DataBlock previous, DataBlock block) {
+            this.previous = previous;
+            this.block = block;
+        }
+    }
+
     private class DataBlock extends BlockPayload {
+        private String key;
+        private byte[] keyBytes;
+        private BlockPointer nextInChain;
         private int size;
         private byte[] serialisedValue;
         private V value;
@@ -630,18 +1075,14 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
         private DataBlock() {
         }
 
-        public DataBlock(String key, V value) throws Exception {
-            this.value = value;
-            setValue(value);
+        public DataBlock(String key, byte[] serialisedValue, BlockPointer nextInChain) throws Exception {
+            this.key = key;
+            this.keyBytes = key.getBytes("UTF-8");
+            this.nextInChain = nextInChain;
+            this.serialisedValue = serialisedValue;
             size = serialisedValue.length;
         }
 
-        public void setValue(V value) throws Exception {
-            ByteArrayOutputStream outStr = new ByteArrayOutputStream();
-            serializer.write(outStr, value);
-            this.serialisedValue = outStr.toByteArray();
-        }
-
         public V getValue() throws Exception {
             if (value == null) {
                 value = serializer.read(new ByteArrayInputStream(serialisedValue));
@@ -651,15 +1092,23 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
 
         @Override
         protected int getType() {
-            return 0x33;
+            return 0x34;
         }
 
         @Override
         protected int getSize() {
-            return 2 * Block.INT_SIZE + size;
+            return 3 * Block.INT_SIZE + Block.LONG_SIZE + keyBytes.length + size;
         }
 
         public void read(DataInputStream instr) throws Exception {
+            int keyLength = instr.readInt();
+            if (keyLength < 0) {
+                throw blockCorruptedException();
+            }
+            keyBytes = new byte[keyLength];
+            instr.readFully(keyBytes);
+            key = new String(keyBytes, "UTF-8");
+            nextInChain = new BlockPointer(instr.readLong());
             size = instr.readInt();
             int bytes = instr.readInt();
             serialisedValue = new byte[bytes];
@@ -667,15 +1116,19 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
         }
 
         public void write(DataOutputStream outstr) throws Exception {
+            outstr.writeInt(keyBytes.length);
+            outstr.write(keyBytes);
+            outstr.writeLong(nextInChain.getPos());
             outstr.writeInt(size);
             outstr.writeInt(serialisedValue.length);
             outstr.write(serialisedValue);
         }
 
-        public boolean useNewValue(V value) throws Exception {
-            setValue(value);
+        public boolean useNewValue(byte[] serialisedValue) throws Exception {
             boolean ok = serialisedValue.length <= size;
             if (ok) {
+                this.serialisedValue = serialisedValue;
+                value = null;
                 store.write(this);
             }
             return ok;
@@ -58,7 +58,7 @@ public interface BlockStore {
     void attach(BlockPayload block);
 
     /**
-     * Flushes any pending updates for this store.
+     * Flushes any pending updates for this store, and forces them to disk.
      */
     void flush();
 
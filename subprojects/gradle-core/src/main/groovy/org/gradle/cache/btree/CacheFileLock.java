@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.cache.btree;
+
+import org.gradle.util.UncheckedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An exclusive lock on a lock file, which prevents other processes from using the same cache. The operating system
+ * releases the lock if the process stops without releasing it.
+ *
+ * <p>Within a process, the lock is shared by all users of the cache, which are expected to coordinate their access
+ * with each other. The lock is released once each user has released it.</p>
+ */
+class CacheFileLock {
+    private static final long POLL_INTERVAL = 100;
+    private static final Map<File, CacheFileLock> HELD_LOCKS = new HashMap<File, CacheFileLock>();
+    private final File lockFile;
+    private final RandomAccessFile file;
+    private final FileLock lock;
+    private int references;
+
+    private CacheFileLock(File lockFile, RandomAccessFile file, FileLock lock) {
+        this.lockFile = lockFile;
+        this.file = file;
+        this.lock = lock;
+    }
+
+    /**
+     * Acquires the lock on the given file, waiting for another process to release it if required.
+     *
+     * @return The lock, or null if another process did not release the lock within the given timeout.
+     */
+    public static CacheFileLock lock(File lockFile, long timeoutMillis) throws IOException {
+        File canonicalFile = lockFile.getCanonicalFile();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            synchronized (HELD_LOCKS) {
+                CacheFileLock lock = HELD_LOCKS.get(canonicalFile);
+                if (lock == null) {
+                    lock = tryLock(canonicalFile);
+                }
+                if (lock != null) {
+                    lock.references++;
+                    return lock;
+                }
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return null;
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                throw new UncheckedException(e);
+            }
+        }
+    }
+
+    private static CacheFileLock tryLock(File lockFile) throws IOException {
+        lockFile.getParentFile().mkdirs();
+        RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+        FileLock lock = null;
+        try {
+            lock = file.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Locked by this process, but not through this class
+        } finally {
+            if (lock == null) {
+                file.close();
+            }
+        }
+        if (lock == null) {
+            return null;
+        }
+        CacheFileLock cacheFileLock = new CacheFileLock(lockFile, file, lock);
+        HELD_LOCKS.put(lockFile, cacheFileLock);
+        return cacheFileLock;
+    }
+
+    /**
+     * Releases this lock. The lock file is unlocked once all users in this process have released it.
+     */
+    public void release() throws IOException {
+        synchronized (HELD_LOCKS) {
+            assert references > 0;
+            references--;
+            if (references > 0) {
+                return;
+            }
+            HELD_LOCKS.remove(lockFile);
+            try {
+                lock.release();
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("lock file '%s'", lockFile);
+    }
+}
@@ -19,6 +19,11 @@ import org.apache.commons.collections.map.LRUMap;
 
 import java.util.*;
 
+/**
+ * A {@link BlockStore} which keeps recently used blocks of the given types in memory, and holds changed blocks in
+ * memory until the store is flushed. Blocks may be read concurrently by multiple threads, provided that no thread is
+ * changing the store at the same time.
+ */
 public class CachingBlockStore implements BlockStore {
     private final BlockStore store;
     private final Map<BlockPointer, BlockPayload> dirty = new LinkedHashMap<BlockPointer, BlockPayload>();
@@ -34,19 +39,19 @@ public class CachingBlockStore implements BlockStore {
         store.open(initAction, factory);
     }
 
-    public void close() {
+    public synchronized void close() {
         flush();
         indexBlockCache.clear();
         store.close();
     }
 
-    public void clear() {
+    public synchronized void clear() {
         dirty.clear();
         indexBlockCache.clear();
         store.clear();
     }
 
-    public void flush() {
+    public synchronized void flush() {
         Iterator<BlockPayload> iterator = dirty.values().iterator();
         while (iterator.hasNext()) {
             BlockPayload block = iterator.next();
@@ -60,7 +65,7 @@ public class CachingBlockStore implements BlockStore {
         store.attach(block);
     }
 
-    public void remove(BlockPayload block) {
+    public synchronized void remove(BlockPayload block) {
         dirty.remove(block.getPos());
         indexBlockCache.remove(block.getPos());
         store.remove(block);
@@ -73,26 +78,29 @@ public class CachingBlockStore implements BlockStore {
     }
 
     public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
-        T block = payloadType.cast(dirty.get(pos));
-        if (block != null) {
-            return block;
-        }
-        block = payloadType.cast(indexBlockCache.get(pos));
-        if (block != null) {
-            return block;
+        synchronized (this) {
+            T block = payloadType.cast(dirty.get(pos));
+            if (block != null) {
+                return block;
+            }
+            block = payloadType.cast(indexBlockCache.get(pos));
+            if (block != null) {
+                return block;
+            }
         }
-        block = store.read(pos, payloadType);
+        // Read outside the lock, so that concurrent reads of the backing store do not wait for each other
+        T block = store.read(pos, payloadType);
         maybeCache(block);
         return block;
     }
 
-    public void write(BlockPayload block) {
+    public synchronized void write(BlockPayload block) {
         store.attach(block);
         maybeCache(block);
         dirty.put(block.getPos(), block);
     }
 
-    private <T extends BlockPayload> void maybeCache(T block) {
+    private synchronized <T extends BlockPayload> void maybeCache(T block) {
         if (cachableTypes.contains(block.getClass())) {
             indexBlockCache.put(block.getPos(), block);
         }
@@ -18,6 +18,8 @@ package org.gradle.cache.btree;
 import org.gradle.api.UncheckedIOException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.zip.CRC32;
 
 public class FileBackedBlockStore implements BlockStore {
@@ -77,6 +79,11 @@ public class FileBackedBlockStore implements BlockStore {
     }
 
     public void flush() {
+        try {
+            file.getChannel().force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
@@ -201,10 +208,10 @@ public class FileBackedBlockStore implements BlockStore {
             if (pos + HEADER_SIZE >= file.length()) {
                 throw blockCorruptedException();
             }
-            file.seek(pos);
 
+            // Use positional reads rather than seeking, so that blocks can be read concurrently
             Crc32InputStream checkSumInputStream = new Crc32InputStream(new BufferedInputStream(
-                    new RandomAccessFileInputStream(file)));
+                    new FileChannelInputStream(file.getChannel(), pos)));
             DataInputStream inputStream = new DataInputStream(checkSumInputStream);
 
             BlockPayload payload = getPayload();
@@ -241,26 +248,29 @@ public class FileBackedBlockStore implements BlockStore {
         }
     }
 
-    private static class RandomAccessFileInputStream extends InputStream {
-        private final RandomAccessFile file;
+    private static class FileChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long pos;
 
-        private RandomAccessFileInputStream(RandomAccessFile file) {
-            this.file = file;
-        }
-
-        @Override
-        public int read(byte[] bytes) throws IOException {
-            return file.read(bytes);
+        private FileChannelInputStream(FileChannel channel, long pos) {
+            this.channel = channel;
+            this.pos = pos;
         }
 
         @Override
         public int read() throws IOException {
-            return file.read();
+            byte[] buffer = new byte[1];
+            int count = read(buffer, 0, 1);
+            return count < 0 ? -1 : buffer[0] & 0xFF;
         }
 
         @Override
         public int read(byte[] bytes, int offset, int length) throws IOException {
-            return file.read(bytes, offset, length);
+            int count = channel.read(ByteBuffer.wrap(bytes, offset, length), pos);
+            if (count > 0) {
+                pos += count;
+            }
+            return count;
         }
     }
 
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.cache.btree;
+
+import java.io.*;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the changes made to a cache since the cache was last checkpointed. Changes are buffered in
+ * memory, and written to the log file and forced to disk as a group when {@link #commit()} is called. Each record
+ * carries a checksum, so that a record which was only partly written when the process stopped is detected and
+ * discarded when the log is replayed.
+ */
+class WriteAheadLog {
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private final File logFile;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private RandomAccessFile file;
+    private long length;
+
+    WriteAheadLog(File logFile) {
+        this.logFile = logFile;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("log '%s'", logFile);
+    }
+
+    /**
+     * Opens this log, passing each complete record in the log to the given replayer.
+     *
+     * @return The number of records replayed.
+     */
+    public int open(Replayer replayer) throws Exception {
+        file = new RandomAccessFile(logFile, "rw");
+        length = 0;
+        int count = 0;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+        try {
+            byte[] record;
+            while ((record = readRecord(input)) != null) {
+                replay(record, replayer);
+                length += recordLength(record);
+                count++;
+            }
+        } finally {
+            input.close();
+        }
+
+        // Discard any partly written record at the end of the log
+        file.setLength(length);
+        return count;
+    }
+
+    private byte[] readRecord(DataInputStream input) throws IOException {
+        try {
+            int recordSize = input.readInt();
+            if (recordSize < 0 || length + recordLength(recordSize) > file.length()) {
+                return null;
+            }
+            byte[] record = new byte[recordSize];
+            input.readFully(record);
+            long checksum = input.readLong();
+            return checksum == checksum(record) ? record : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void replay(byte[] record, Replayer replayer) throws Exception {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = input.readByte();
+        String key = input.readUTF();
+        if (type == PUT) {
+            byte[] value = new byte[input.readInt()];
+            input.readFully(value);
+            replayer.put(key, value);
+        } else if (type == REMOVE) {
+            replayer.remove(key);
+        } else {
+            throw new CorruptedCacheException(String.format("Unexpected record type %s found in %s.", type, this));
+        }
+    }
+
+    public void put(String key, byte[] value) throws IOException {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(value.length + key.length() + 16);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        record.writeByte(PUT);
+        record.writeUTF(key);
+        record.writeInt(value.length);
+        record.write(value);
+        append(recordBytes.toByteArray());
+    }
+
+    public void remove(String key) throws IOException {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(key.length() + 8);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        record.writeByte(REMOVE);
+        record.writeUTF(key);
+        append(recordBytes.toByteArray());
+    }
+
+    private void append(byte[] record) throws IOException {
+        DataOutputStream output = new DataOutputStream(buffer);
+        output.writeInt(record.length);
+        output.write(record);
+        output.writeLong(checksum(record));
+    }
+
+    /**
+     * Writes the buffered records to the log file, and forces them to disk.
+     */
+    public void commit() throws IOException {
+        if (buffer.size() == 0) {
+            return;
+        }
+        file.seek(length);
+        file.write(buffer.toByteArray());
+        length += buffer.size();
+        buffer.reset();
+        file.getFD().sync();
+    }
+
+    /**
+     * Discards the contents of this log. Called once the changes in the log have been written to the cache.
+     */
+    public void truncate() throws IOException {
+        buffer.reset();
+        file.setLength(0);
+        length = 0;
+    }
+
+    /**
+     * Returns the length of this log, including records which have not been committed.
+     */
+    public long getLength() {
+        return length + buffer.size();
+    }
+
+    public void close() throws IOException {
+        buffer.reset();
+        file.close();
+    }
+
+    private static long recordLength(byte[] record) {
+        return recordLength(record.length);
+    }
+
+    private static long recordLength(int recordSize) {
+        return Block.INT_SIZE + recordSize + Block.LONG_SIZE;
+    }
+
+    private static long checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return crc.getValue();
+    }
+
+    interface Replayer {
+        void put(String key, byte[] value) throws Exception;
+
+        void remove(String key) throws Exception;
+    }
+}
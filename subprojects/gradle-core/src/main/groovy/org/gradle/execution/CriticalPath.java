@@ -0,0 +1,157 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution;
+
+import org.gradle.api.Task;
+
+import java.util.*;
+
+/**
+ * Calculates the critical path through a set of tasks, based on the durations of the tasks from previous builds.
+ * Tasks with no recorded duration are assumed to take the mean duration of the tasks which do have one.
+ */
+public class CriticalPath {
+    private final Map<Task, Long> durations = new HashMap<Task, Long>();
+    private final Map<Task, Long> remainingTimes = new HashMap<Task, Long>();
+    private final List<Task> path = new ArrayList<Task>();
+
+    /**
+     * @param plan The tasks, in an order where each task appears after its dependencies.
+     * @param dependencies The dependencies of each task. Dependencies which are not part of the plan are ignored.
+     * @param history The durations of the tasks.
+     */
+    public CriticalPath(List<? extends Task> plan, Map<Task, ? extends Collection<Task>> dependencies, TaskDurationHistory history) {
+        estimateDurations(plan, history);
+
+        Map<Task, List<Task>> dependents = new HashMap<Task, List<Task>>();
+        for (Task task : plan) {
+            Collection<Task> taskDependencies = dependencies.get(task);
+            if (taskDependencies == null) {
+                continue;
+            }
+            for (Task dependency : taskDependencies) {
+                if (!durations.containsKey(dependency)) {
+                    continue;
+                }
+                List<Task> dependentTasks = dependents.get(dependency);
+                if (dependentTasks == null) {
+                    dependentTasks = new ArrayList<Task>();
+                    dependents.put(dependency, dependentTasks);
+                }
+                dependentTasks.add(task);
+            }
+        }
+
+        // Walk the plan backwards, so that the remaining time of each dependent task is known before that of the task
+        Task start = null;
+        for (ListIterator<? extends Task> iterator = plan.listIterator(plan.size()); iterator.hasPrevious();) {
+            Task task = iterator.previous();
+            long longestDependent = 0;
+            List<Task> dependentTasks = dependents.get(task);
+            if (dependentTasks != null) {
+                for (Task dependent : dependentTasks) {
+                    longestDependent = Math.max(longestDependent, remainingTimes.get(dependent));
+                }
+            }
+            long remaining = durations.get(task) + longestDependent;
+            remainingTimes.put(task, remaining);
+            if (start == null || remaining >= remainingTimes.get(start)) {
+                start = task;
+            }
+        }
+
+        for (Task task = start; task != null;) {
+            path.add(task);
+            Task next = null;
+            List<Task> dependentTasks = dependents.get(task);
+            if (dependentTasks != null) {
+                for (Task dependent : dependentTasks) {
+                    if (next == null || remainingTimes.get(dependent) > remainingTimes.get(next)) {
+                        next = dependent;
+                    }
+                }
+            }
+            task = next;
+        }
+    }
+
+    private void estimateDurations(List<? extends Task> plan, TaskDurationHistory history) {
+        long total = 0;
+        int known = 0;
+        List<Task> unknown = new ArrayList<Task>();
+        for (Task task : plan) {
+            Long duration = history.getDuration(task);
+            if (duration == null) {
+                unknown.add(task);
+            } else {
+                durations.put(task, duration);
+                total += duration;
+                known++;
+            }
+        }
+        long estimate = known == 0 ? 0 : total / known;
+        for (Task task : unknown) {
+            durations.put(task, estimate);
+        }
+    }
+
+    /**
+     * Returns the estimated duration of the given task, in milliseconds.
+     */
+    public long getDuration(Task task) {
+        return durations.get(task);
+    }
+
+    /**
+     * Returns the estimated time from the start of the given task until all tasks which depend on it have completed,
+     * in milliseconds. This is the length of the longest path starting at the task.
+     */
+    public long getRemainingTime(Task task) {
+        return remainingTimes.get(task);
+    }
+
+    /**
+     * Returns the estimated minimum time required to execute the tasks, given an unlimited number of workers.
+     */
+    public long getTotalTime() {
+        return path.isEmpty() ? 0 : remainingTimes.get(path.get(0));
+    }
+
+    /**
+     * Returns the tasks on the critical path, in execution order.
+     */
+    public List<Task> getTasks() {
+        return path;
+    }
+
+    /**
+     * Returns a comparator which orders tasks longest remaining time first. Tasks with equal remaining time are
+     * ordered by the given comparator.
+     */
+    public Comparator<Task> longestPathFirst(final Comparator<Task> tieBreaker) {
+        return new Comparator<Task>() {
+            public int compare(Task task1, Task task2) {
+                long remaining1 = remainingTimes.get(task1);
+                long remaining2 = remainingTimes.get(task2);
+                if (remaining1 != remaining2) {
+                    return remaining1 > remaining2 ? -1 : 1;
+                }
+                return tieBreaker.compare(task1, task2);
+            }
+        };
+    }
+}
@@ -17,7 +17,7 @@
 package org.gradle.execution;
 
 import groovy.lang.Closure;
-import org.gradle.api.CircularReferenceException;
+import org.gradle.api.Action;
 import org.gradle.api.Task;
 import org.gradle.api.execution.TaskExecutionGraphListener;
 import org.gradle.api.execution.TaskExecutionListener;
@@ -42,12 +42,24 @@ public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
     private final ListenerBroadcast<TaskExecutionGraphListener> graphListeners;
     private final ListenerBroadcast<TaskExecutionListener> taskListeners;
     private final Set<Task> executionPlan = new LinkedHashSet<Task>();
+    private final Map<Task, Set<Task>> dependencies = new HashMap<Task, Set<Task>>();
+    private final List<Integer> batchBoundaries = new ArrayList<Integer>();
+    private final ParallelTaskPlanExecuter parallelExecuter;
     private boolean populated;
     private Spec<? super Task> filter = Specs.satisfyAll();
 
     public DefaultTaskGraphExecuter(ListenerManager listenerManager) {
+        this(listenerManager, null);
+    }
+
+    /**
+     * Creates an executer which uses the given executer to run independent tasks in parallel. Tasks are executed
+     * serially when {@code parallelExecuter} is null.
+     */
+    public DefaultTaskGraphExecuter(ListenerManager listenerManager, ParallelTaskPlanExecuter parallelExecuter) {
         graphListeners = listenerManager.createAnonymousBroadcaster(TaskExecutionGraphListener.class);
         taskListeners = listenerManager.createAnonymousBroadcaster(TaskExecutionListener.class);
+        this.parallelExecuter = parallelExecuter;
     }
 
     public void useFilter(Spec<? super Task> filter) {
@@ -64,6 +76,7 @@ public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
             sortedTasks.add(task);
         }
         fillDag(sortedTasks);
+        batchBoundaries.add(executionPlan.size());
         populated = true;
 
         logger.debug("Timing: Creating the DAG took " + clock.getTime());
@@ -75,10 +88,16 @@ public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
         graphListeners.getSource().graphPopulated(this);
 
         try {
-            doExecute(executionPlan);
+            if (parallelExecuter == null) {
+                doExecute(executionPlan);
+            } else {
+                doExecuteParallel();
+            }
             logger.debug("Timing: Executing the DAG took " + clock.getTime());
         } finally {
             executionPlan.clear();
+            dependencies.clear();
+            batchBoundaries.clear();
         }
     }
 
@@ -88,41 +107,24 @@ public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
     }
 
     private void fillDag(Collection<? extends Task> tasks) {
-        Set<Task> visiting = new HashSet<Task>();
-        List<Task> queue = new ArrayList<Task>();
-        queue.addAll(tasks);
-        CachingTaskDependencyResolveContext context = new CachingTaskDependencyResolveContext();
-
-        while (!queue.isEmpty()) {
-            Task task = queue.get(0);
-            if (!filter.isSatisfiedBy(task)) {
-                // Filtered - skip
-                queue.remove(0);
-                continue;
-            }
-            if (executionPlan.contains(task)) {
-                // Already in plan - skip
-                queue.remove(0);
-                continue;
+        final CachingTaskDependencyResolveContext context = new CachingTaskDependencyResolveContext();
+        TaskDependencyGraph graph = new TaskDependencyGraph(new TaskDependencyGraph.DependencyResolver() {
+            public Collection<? extends Task> getDependencies(Task task) {
+                return context.getDependencies(task);
             }
+        }, filter);
 
-            if (visiting.add(task)) {
-                // Have not seen this task before - add its dependencies to the head of the queue and leave this
-                // task in the queue
-                Set<Task> dependsOnTasks = new TreeSet<Task>(Collections.reverseOrder());
-                dependsOnTasks.addAll(context.getDependencies(task));
-                for (Task dependsOnTask : dependsOnTasks) {
-                    if (visiting.contains(dependsOnTask)) {
-                        throw new CircularReferenceException(String.format(
-                                "Circular dependency between tasks. Cycle includes [%s, %s].", task, dependsOnTask));
-                    }
-                    queue.add(0, dependsOnTask);
-                }
-            } else {
-                // Have visited this task's dependencies - add it to the end of the plan
-                queue.remove(0);
-                visiting.remove(task);
-                executionPlan.add(task);
+        int planSize = executionPlan.size();
+        graph.addToPlan(tasks, executionPlan);
+
+        if (parallelExecuter != null) {
+            Iterator<Task> iterator = executionPlan.iterator();
+            for (int i = 0; i < planSize; i++) {
+                iterator.next();
+            }
+            while (iterator.hasNext()) {
+                Task task = iterator.next();
+                dependencies.put(task, graph.getDependencies(task));
             }
         }
     }
@@ -161,12 +163,33 @@ public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
         }
     }
 
+    private void doExecuteParallel() {
+        // Tasks from a later call to addTasks() do not start until all tasks from earlier calls have completed
+        List<Task> plan = new ArrayList<Task>(executionPlan);
+        int start = 0;
+        for (Integer end : batchBoundaries) {
+            if (end > start) {
+                parallelExecuter.execute(plan.subList(start, end), dependencies, new Action<Task>() {
+                    public void execute(Task task) {
+                        executeTask(task);
+                    }
+                });
+            }
+            start = end;
+        }
+    }
+
     private void executeTask(Task task) {
-        taskListeners.getSource().beforeExecute(task);
+        // Listeners are not required to be thread-safe, so notifications are serialised across worker threads
+        synchronized (taskListeners) {
+            taskListeners.getSource().beforeExecute(task);
+        }
         try {
             ((TaskInternal) task).execute();
         } finally {
-            taskListeners.getSource().afterExecute(task, task.getState());
+            synchronized (taskListeners) {
+                taskListeners.getSource().afterExecute(task, task.getState());
+            }
         }
     }
 
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.messaging.concurrent.ExecutorFactory;
+import org.gradle.messaging.concurrent.StoppableExecutor;
+import org.gradle.util.UncheckedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Executes a set of tasks using a fixed number of worker threads. A task is handed to a worker once all of its
+ * dependencies have completed. When several tasks are ready, the task on the longest path through the remaining tasks
+ * is started first, based on the task durations from previous builds. When a task fails, no further tasks are started,
+ * the tasks which are already running are allowed to complete, and the first failure is rethrown to the caller.
+ */
+public class ParallelTaskPlanExecuter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelTaskPlanExecuter.class);
+
+    private final ExecutorFactory executorFactory;
+    private final int workerCount;
+    private final TaskDurationHistory durationHistory;
+
+    public ParallelTaskPlanExecuter(ExecutorFactory executorFactory, int workerCount) {
+        this(executorFactory, workerCount, new TaskDurationHistory() {
+            public Long getDuration(Task task) {
+                return null;
+            }
+        });
+    }
+
+    public ParallelTaskPlanExecuter(ExecutorFactory executorFactory, int workerCount, TaskDurationHistory durationHistory) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException(String.format("Cannot use %s worker threads.", workerCount));
+        }
+        this.executorFactory = executorFactory;
+        this.workerCount = workerCount;
+        this.durationHistory = durationHistory;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * Executes the given tasks.
+     *
+     * @param plan The tasks to execute, in an order where each task appears after its dependencies.
+     * @param dependencies The dependencies of each task. Dependencies which are not part of the plan are ignored.
+     * @param action The action to use to execute each task.
+     * @return The statistics for each worker.
+     */
+    public List<WorkerStatistics> execute(List<? extends Task> plan, Map<Task, ? extends Collection<Task>> dependencies,
+                                          Action<? super Task> action) {
+        CriticalPath criticalPath = new CriticalPath(plan, dependencies, durationHistory);
+        LOGGER.info(String.format("Estimated critical path: %s tasks, %sms.", criticalPath.getTasks().size(),
+                criticalPath.getTotalTime()));
+        Schedule schedule = new Schedule(plan, dependencies, criticalPath);
+        List<WorkerStatistics> statistics = new ArrayList<WorkerStatistics>();
+
+        StoppableExecutor executor = executorFactory.create("Task worker");
+        try {
+            for (int i = 1; i <= workerCount; i++) {
+                WorkerStatistics workerStatistics = new WorkerStatistics(i);
+                statistics.add(workerStatistics);
+                executor.execute(new Worker(schedule, action, workerStatistics));
+            }
+        } finally {
+            executor.stop();
+        }
+
+        for (WorkerStatistics workerStatistics : statistics) {
+            LOGGER.info(workerStatistics.toString());
+        }
+
+        schedule.rethrowFailure();
+        return statistics;
+    }
+
+    /**
+     * The utilisation of a single worker thread.
+     */
+    public static class WorkerStatistics {
+        private final int worker;
+        private int taskCount;
+        private long busyTime;
+        private long totalTime;
+
+        WorkerStatistics(int worker) {
+            this.worker = worker;
+        }
+
+        public int getWorker() {
+            return worker;
+        }
+
+        public int getTaskCount() {
+            return taskCount;
+        }
+
+        /**
+         * Returns the time spent executing tasks, in milliseconds.
+         */
+        public long getBusyTime() {
+            return busyTime;
+        }
+
+        /**
+         * Returns the time this worker was running, in milliseconds.
+         */
+        public long getTotalTime() {
+            return totalTime;
+        }
+
+        public double getUtilisation() {
+            return totalTime == 0 ? 0 : (double) busyTime / totalTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Timing: Task worker %s executed %s tasks, busy for %sms of %sms (%.0f%%).", worker,
+                    taskCount, busyTime, totalTime, getUtilisation() * 100);
+        }
+    }
+
+    private static class Worker implements Runnable {
+        private final Schedule schedule;
+        private final Action<? super Task> action;
+        private final WorkerStatistics statistics;
+
+        public Worker(Schedule schedule, Action<? super Task> action, WorkerStatistics statistics) {
+            this.schedule = schedule;
+            this.action = action;
+            this.statistics = statistics;
+        }
+
+        public void run() {
+            long start = System.currentTimeMillis();
+            try {
+                Task task;
+                while ((task = schedule.takeNext()) != null) {
+                    long taskStart = System.currentTimeMillis();
+                    Throwable failure = null;
+                    try {
+                        action.execute(task);
+                    } catch (Throwable t) {
+                        failure = t;
+                    }
+                    statistics.busyTime += System.currentTimeMillis() - taskStart;
+                    statistics.taskCount++;
+                    schedule.completed(task, failure);
+                }
+            } finally {
+                statistics.totalTime = System.currentTimeMillis() - start;
+            }
+        }
+    }
+
+    private static class Schedule {
+        private final Lock lock = new ReentrantLock();
+        private final Condition stateChanged = lock.newCondition();
+        private final Map<Task, Integer> waitingFor = new HashMap<Task, Integer>();
+        private final Map<Task, List<Task>> dependents = new HashMap<Task, List<Task>>();
+        private final Queue<Task> ready;
+        private int running;
+        private Throwable failure;
+
+        public Schedule(Collection<? extends Task> plan, Map<Task, ? extends Collection<Task>> dependencies,
+                        CriticalPath criticalPath) {
+            final Map<Task, Integer> planOrder = new HashMap<Task, Integer>();
+            for (Task task : plan) {
+                planOrder.put(task, planOrder.size());
+            }
+            ready = new PriorityQueue<Task>(Math.max(1, plan.size()), criticalPath.longestPathFirst(new Comparator<Task>() {
+                public int compare(Task task1, Task task2) {
+                    return planOrder.get(task1) - planOrder.get(task2);
+                }
+            }));
+
+            for (Task task : plan) {
+                int count = 0;
+                Collection<Task> taskDependencies = dependencies.get(task);
+                if (taskDependencies != null) {
+                    for (Task dependency : taskDependencies) {
+                        if (!planOrder.containsKey(dependency)) {
+                            continue;
+                        }
+                        List<Task> dependentTasks = dependents.get(dependency);
+                        if (dependentTasks == null) {
+                            dependentTasks = new ArrayList<Task>();
+                            dependents.put(dependency, dependentTasks);
+                        }
+                        dependentTasks.add(task);
+                        count++;
+                    }
+                }
+                if (count == 0) {
+                    ready.add(task);
+                } else {
+                    waitingFor.put(task, count);
+                }
+            }
+        }
+
+        /**
+         * Blocks until a task is ready to execute. Returns null when there are no more tasks to execute.
+         */
+        public Task takeNext() {
+            lock.lock();
+            try {
+                while (failure == null && ready.isEmpty() && running > 0) {
+                    stateChanged.await();
+                }
+                if (failure != null || ready.isEmpty()) {
+                    return null;
+                }
+                running++;
+                return ready.remove();
+            } catch (InterruptedException e) {
+                throw new UncheckedException(e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void completed(Task task, Throwable taskFailure) {
+            lock.lock();
+            try {
+                running--;
+                if (taskFailure != null) {
+                    if (failure == null) {
+                        failure = taskFailure;
+                    }
+                } else {
+                    List<Task> dependentTasks = dependents.remove(task);
+                    if (dependentTasks != null) {
+                        for (Task dependent : dependentTasks) {
+                            int count = waitingFor.get(dependent) - 1;
+                            if (count == 0) {
+                                waitingFor.remove(dependent);
+                                ready.add(dependent);
+                            } else {
+                                waitingFor.put(dependent, count);
+                            }
+                        }
+                    }
+                }
+                stateChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void rethrowFailure() {
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            if (failure != null) {
+                throw UncheckedException.asUncheckedException(failure);
+            }
+        }
+    }
+}
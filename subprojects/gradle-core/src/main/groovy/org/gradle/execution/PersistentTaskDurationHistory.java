@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution;
+
+import org.gradle.api.Task;
+import org.gradle.api.execution.TaskExecutionListener;
+import org.gradle.api.tasks.TaskState;
+import org.gradle.cache.CacheRepository;
+import org.gradle.cache.PersistentIndexedCache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link TaskDurationHistory} which records the duration of each task as it executes, and persists the durations
+ * across builds. Tasks which fail are not recorded.
+ */
+public class PersistentTaskDurationHistory implements TaskDurationHistory, TaskExecutionListener {
+    private final CacheRepository repository;
+    private final Map<Task, Long> startTimes = new HashMap<Task, Long>();
+    private PersistentIndexedCache<String, Long> durationCache;
+
+    public PersistentTaskDurationHistory(CacheRepository repository) {
+        this.repository = repository;
+    }
+
+    public Long getDuration(Task task) {
+        return getCache(task).get(task.getPath());
+    }
+
+    public void beforeExecute(Task task) {
+        startTimes.put(task, System.currentTimeMillis());
+    }
+
+    public void afterExecute(Task task, TaskState state) {
+        Long start = startTimes.remove(task);
+        if (start == null || state.getFailure() != null) {
+            return;
+        }
+        getCache(task).put(task.getPath(), System.currentTimeMillis() - start);
+    }
+
+    private PersistentIndexedCache<String, Long> getCache(Task task) {
+        if (durationCache == null) {
+            durationCache = repository.cache("taskDurations").forObject(task.getProject().getGradle()).open().openIndexedCache();
+        }
+        return durationCache;
+    }
+}
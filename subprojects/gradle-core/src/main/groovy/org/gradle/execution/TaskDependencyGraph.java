@@ -0,0 +1,204 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution;
+
+import org.gradle.api.CircularReferenceException;
+import org.gradle.api.Task;
+import org.gradle.api.specs.Spec;
+
+import java.util.*;
+
+/**
+ * <p>Builds an execution plan from a set of tasks and their dependencies. Each task is assigned an integer id when it
+ * is first reached, and its dependencies are held as an array of ids. The graph is traversed using an iterative
+ * depth-first search, with the dependencies of each task visited in task order.</p>
+ *
+ * <p>Tasks which are not accepted by the filter are ignored, along with their dependencies.</p>
+ */
+public class TaskDependencyGraph {
+    private static final byte NEW = 0;
+    private static final byte VISITING = 1;
+    private static final byte DONE = 2;
+    private static final byte FILTERED = 3;
+    private static final int[] NO_DEPENDENCIES = new int[0];
+
+    private final DependencyResolver resolver;
+    private final Spec<? super Task> filter;
+    private final Map<Task, Integer> ids = new HashMap<Task, Integer>();
+    private Task[] tasks = new Task[64];
+    private int[][] dependencies = new int[64][];
+    private byte[] states = new byte[64];
+    private int count;
+
+    public interface DependencyResolver {
+        Collection<? extends Task> getDependencies(Task task);
+    }
+
+    public TaskDependencyGraph(DependencyResolver resolver, Spec<? super Task> filter) {
+        this.resolver = resolver;
+        this.filter = filter;
+    }
+
+    /**
+     * Adds the given tasks and their dependencies to the end of the given plan, so that each task appears after its
+     * dependencies. Tasks which are already in the plan are not added again.
+     *
+     * @throws CircularReferenceException when the tasks contain a dependency cycle.
+     */
+    public void addToPlan(Iterable<? extends Task> roots, Set<Task> plan) {
+        int[] stack = new int[64];
+        int[] cursors = new int[64];
+
+        for (Task root : roots) {
+            int rootId = idOf(root);
+            if (!enter(rootId, plan)) {
+                continue;
+            }
+
+            int top = 0;
+            stack[0] = rootId;
+            cursors[0] = 0;
+            while (top >= 0) {
+                int id = stack[top];
+                int[] taskDependencies = dependencies[id];
+                if (cursors[top] == taskDependencies.length) {
+                    // Have visited all dependencies of this task - add it to the end of the plan
+                    states[id] = DONE;
+                    plan.add(tasks[id]);
+                    top--;
+                    continue;
+                }
+
+                int dependency = taskDependencies[cursors[top]++];
+                if (states[dependency] == VISITING) {
+                    throw new CircularReferenceException(String.format(
+                            "Circular dependency between tasks. Cycle includes [%s].", describeCycle(stack, top, dependency)));
+                }
+                if (!enter(dependency, plan)) {
+                    continue;
+                }
+                top++;
+                if (top == stack.length) {
+                    stack = grow(stack);
+                    cursors = grow(cursors);
+                }
+                stack[top] = dependency;
+                cursors[top] = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the dependencies of the given task which were added to the plan. Returns an empty set for a task which
+     * has not been visited.
+     */
+    public Set<Task> getDependencies(Task task) {
+        Integer id = ids.get(task);
+        if (id == null || dependencies[id] == null) {
+            return Collections.emptySet();
+        }
+        Set<Task> result = new LinkedHashSet<Task>();
+        for (int dependency : dependencies[id]) {
+            if (states[dependency] == DONE) {
+                result.add(tasks[dependency]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of tasks which have been reached, including those which were filtered.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Marks the given task as being visited, and resolves its dependencies. Returns false when the task does not need
+     * to be visited.
+     */
+    private boolean enter(int id, Set<Task> plan) {
+        if (states[id] != NEW) {
+            return false;
+        }
+        Task task = tasks[id];
+        if (plan.contains(task)) {
+            states[id] = DONE;
+            return false;
+        }
+        if (!filter.isSatisfiedBy(task)) {
+            states[id] = FILTERED;
+            return false;
+        }
+        states[id] = VISITING;
+
+        Collection<? extends Task> taskDependencies = resolver.getDependencies(task);
+        if (taskDependencies.isEmpty()) {
+            dependencies[id] = NO_DEPENDENCIES;
+            return true;
+        }
+        Task[] sorted = taskDependencies.toArray(new Task[taskDependencies.size()]);
+        Arrays.sort(sorted);
+        int[] dependencyIds = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            dependencyIds[i] = idOf(sorted[i]);
+        }
+        dependencies[id] = dependencyIds;
+        return true;
+    }
+
+    private int idOf(Task task) {
+        Integer id = ids.get(task);
+        if (id != null) {
+            return id;
+        }
+        if (count == tasks.length) {
+            int capacity = count * 2;
+            Task[] newTasks = new Task[capacity];
+            System.arraycopy(tasks, 0, newTasks, 0, count);
+            tasks = newTasks;
+            int[][] newDependencies = new int[capacity][];
+            System.arraycopy(dependencies, 0, newDependencies, 0, count);
+            dependencies = newDependencies;
+            byte[] newStates = new byte[capacity];
+            System.arraycopy(states, 0, newStates, 0, count);
+            states = newStates;
+        }
+        tasks[count] = task;
+        ids.put(task, count);
+        return count++;
+    }
+
+    private String describeCycle(int[] stack, int top, int dependency) {
+        int start = top;
+        while (stack[start] != dependency) {
+            start--;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = start; i <= top; i++) {
+            builder.append(tasks[stack[i]]).append(" -> ");
+        }
+        builder.append(tasks[dependency]);
+        return builder.toString();
+    }
+
+    private static int[] grow(int[] array) {
+        int[] newArray = new int[array.length * 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution;
+
+import org.gradle.api.Task;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.execution.TaskExecutionGraph;
+import org.gradle.api.execution.TaskExecutionGraphListener;
+import org.gradle.api.internal.tasks.CachingTaskDependencyResolveContext;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Writes the task execution plan to a file in Graphviz DOT format when the task graph is populated. Each node is
+ * labelled with the task's estimated duration, and the tasks on the critical path are highlighted.
+ */
+public class TaskPlanDotExporter implements TaskExecutionGraphListener {
+    private final File destination;
+    private final TaskDurationHistory durationHistory;
+
+    public TaskPlanDotExporter(File destination, TaskDurationHistory durationHistory) {
+        this.destination = destination;
+        this.durationHistory = durationHistory;
+    }
+
+    public void graphPopulated(TaskExecutionGraph graph) {
+        List<Task> plan = graph.getAllTasks();
+        Set<Task> planTasks = new HashSet<Task>(plan);
+        Map<Task, Set<Task>> dependencies = new HashMap<Task, Set<Task>>();
+        CachingTaskDependencyResolveContext context = new CachingTaskDependencyResolveContext();
+        for (Task task : plan) {
+            Set<Task> taskDependencies = new TreeSet<Task>(context.getDependencies(task));
+            taskDependencies.retainAll(planTasks);
+            dependencies.put(task, taskDependencies);
+        }
+
+        CriticalPath criticalPath = new CriticalPath(plan, dependencies, durationHistory);
+        try {
+            destination.getAbsoluteFile().getParentFile().mkdirs();
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(destination), "UTF-8"));
+            try {
+                write(plan, dependencies, criticalPath, writer);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void write(List<Task> plan, Map<Task, Set<Task>> dependencies, CriticalPath criticalPath, Writer writer) throws IOException {
+        Set<Task> critical = new HashSet<Task>(criticalPath.getTasks());
+        writer.write(String.format("digraph \"task execution plan\" {%n"));
+        writer.write(String.format("    // %s tasks, critical path %s tasks, estimated %sms%n", plan.size(),
+                critical.size(), criticalPath.getTotalTime()));
+        writer.write(String.format("    rankdir=LR;%n"));
+        writer.write(String.format("    node [shape=box];%n"));
+        for (Task task : plan) {
+            String label = String.format("%s\\n%sms (path %sms)", task.getPath(), criticalPath.getDuration(task),
+                    criticalPath.getRemainingTime(task));
+            writer.write(String.format("    %s [label=%s%s];%n", quote(task.getPath()), quote(label),
+                    critical.contains(task) ? ", style=filled, fillcolor=salmon" : ""));
+        }
+        for (Task task : plan) {
+            for (Task dependency : dependencies.get(task)) {
+                boolean criticalEdge = critical.contains(task) && critical.contains(dependency);
+                writer.write(String.format("    %s -> %s%s;%n", quote(dependency.getPath()), quote(task.getPath()),
+                        criticalEdge ? " [color=red]" : ""));
+            }
+        }
+        writer.write(String.format("}%n"));
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\\\"") + '"';
+    }
+}
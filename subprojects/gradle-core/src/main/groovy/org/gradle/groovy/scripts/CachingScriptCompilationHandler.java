@@ -16,13 +16,32 @@
 package org.gradle.groovy.scripts;
 
 import groovy.lang.Script;
+import org.gradle.util.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.lang.ref.WeakReference;
 import java.util.*;
 
+/**
+ * A {@link ScriptCompilationHandler} which keeps the classes it has loaded, so that a script which is used more than
+ * once with the same class loader is only loaded once. The classes are kept for as long as their parent class loader
+ * is in use, and so can be reused by later builds in the same process.
+ *
+ * <p>Also keeps some statistics about the scripts which have been compiled and loaded, which are logged at the end of
+ * each build.</p>
+ */
 public class CachingScriptCompilationHandler implements ScriptCompilationHandler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingScriptCompilationHandler.class);
     private final ScriptCompilationHandler handler;
-    private final Map<Collection<Object>, Class<?>> cachedClasses = new HashMap<Collection<Object>, Class<?>>();
+    // Values are weak, as a class strongly references its parent class loader
+    private final Map<ClassLoader, Map<List<Object>, WeakReference<Class<?>>>> cachedClasses
+            = new WeakHashMap<ClassLoader, Map<List<Object>, WeakReference<Class<?>>>>();
+    private int compiledScriptCount;
+    private long compileTime;
+    private int loadedClassCount;
+    private int cachedClassCount;
 
     public CachingScriptCompilationHandler(ScriptCompilationHandler handler) {
         this.handler = handler;
@@ -30,17 +49,81 @@ public class CachingScriptCompilationHandler implements ScriptCompilationHandler
 
     public void compileToDir(ScriptSource source, ClassLoader classLoader, File scriptCacheDir, Transformer transformer,
                              Class<? extends Script> scriptBaseClass) {
+        Clock clock = new Clock();
         handler.compileToDir(source, classLoader, scriptCacheDir, transformer, scriptBaseClass);
+        synchronized (this) {
+            compiledScriptCount++;
+            compileTime += clock.getTimeInMs();
+        }
     }
 
     public <T extends Script> Class<? extends T> loadFromDir(ScriptSource source, ClassLoader classLoader,
                                                              File scriptCacheDir, Class<T> scriptBaseClass) {
-        List<Object> key = Arrays.asList(source.getClassName(), classLoader, scriptCacheDir);
-        Class<?> c = cachedClasses.get(key);
-        if (c == null) {
-            c = handler.loadFromDir(source, classLoader, scriptCacheDir, scriptBaseClass);
-            cachedClasses.put(key, c);
+        List<Object> key = Arrays.<Object>asList(source.getClassName(), scriptCacheDir);
+        Class<?> c;
+        synchronized (this) {
+            Map<List<Object>, WeakReference<Class<?>>> classes = cachedClasses.get(classLoader);
+            if (classes == null) {
+                classes = new HashMap<List<Object>, WeakReference<Class<?>>>();
+                cachedClasses.put(classLoader, classes);
+            }
+            WeakReference<Class<?>> reference = classes.get(key);
+            c = reference == null ? null : reference.get();
+            if (c != null) {
+                cachedClassCount++;
+                return c.asSubclass(scriptBaseClass);
+            }
+        }
+
+        c = handler.loadFromDir(source, classLoader, scriptCacheDir, scriptBaseClass);
+
+        synchronized (this) {
+            loadedClassCount++;
+            Map<List<Object>, WeakReference<Class<?>>> classes = cachedClasses.get(classLoader);
+            if (classes != null) {
+                classes.put(key, new WeakReference<Class<?>>(c));
+            }
         }
         return c.asSubclass(scriptBaseClass);
     }
+
+    /**
+     * Returns the number of scripts which have been compiled, because they were not found in the persistent cache.
+     */
+    public synchronized int getCompiledScriptCount() {
+        return compiledScriptCount;
+    }
+
+    /**
+     * Returns the total time spent compiling scripts, in milliseconds.
+     */
+    public synchronized long getCompileTime() {
+        return compileTime;
+    }
+
+    /**
+     * Returns the number of script classes which have been loaded from the persistent cache.
+     */
+    public synchronized int getLoadedClassCount() {
+        return loadedClassCount;
+    }
+
+    /**
+     * Returns the number of times a script class has been reused, rather than loaded again.
+     */
+    public synchronized int getCachedClassCount() {
+        return cachedClassCount;
+    }
+
+    /**
+     * Logs the statistics kept since they were last logged, and resets them.
+     */
+    public synchronized void logStatistics() {
+        LOGGER.info("Compiled {} scripts in {} ms, loaded {} script classes and reused loaded script classes {} times.",
+                new Object[]{compiledScriptCount, compileTime, loadedClassCount, cachedClassCount});
+        compiledScriptCount = 0;
+        compileTime = 0;
+        loadedClassCount = 0;
+        cachedClassCount = 0;
+    }
 }
@@ -18,16 +18,27 @@ package org.gradle.groovy.scripts;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.PersistentCache;
 import org.gradle.util.HashUtil;
+import org.gradle.util.MultiParentClassLoader;
 import org.gradle.util.ReflectionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.util.HashMap;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 /**
+ * Compiles scripts into a content-addressed cache. The compiled classes for a script are keyed by a hash of the script
+ * text, the script's file name and class name, the transformer, the script base class and the class path of the class
+ * loader which the script is compiled against. This means that compiled classes are shared by all uses of the same
+ * script, such as a script applied using {@code apply from:} by several projects, and by later builds.
+ *
  * @author Hans Dockter
  */
 public class DefaultScriptCompilerFactory implements ScriptCompilerFactory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultScriptCompilerFactory.class);
     private final ScriptCompilationHandler scriptCompilationHandler;
     private final CacheRepository cacheRepository;
     private final ScriptRunnerFactory scriptRunnerFactory;
@@ -73,20 +84,12 @@ public class DefaultScriptCompilerFactory implements ScriptCompilerFactory {
         }
 
         private <T extends Script> T loadViaCache(ClassLoader classLoader, Class<T> scriptBaseClass) {
-            Map<String, Object> properties = new HashMap<String, Object>();
-            properties.put("source.filename", source.getFileName());
-            properties.put("source.hash", HashUtil.createHash(source.getResource().getText()));
-
-            PersistentCache cache = cacheRepository.cache(String.format("scripts/%s", source.getClassName())).withProperties(properties).open();
-            File classesDir;
-            if (transformer != null) {
-                String subdirName = String.format("%s_%s", transformer.getId(), scriptBaseClass.getSimpleName());
-                classesDir = new File(cache.getBaseDir(), subdirName);
-            } else {
-                classesDir = new File(cache.getBaseDir(), scriptBaseClass.getSimpleName());
-            }
+            String key = createKey(classLoader, scriptBaseClass);
+            PersistentCache cache = cacheRepository.cache(String.format("scripts/%s", key)).open();
+            File classesDir = new File(cache.getBaseDir(), "classes");
 
             if (!cache.isValid() || !classesDir.exists()) {
+                LOGGER.debug("No compiled classes found in cache for {}.", source.getDisplayName());
                 scriptCompilationHandler.compileToDir(source, classLoader, classesDir, transformer, scriptBaseClass);
                 cache.markValid();
             }
@@ -94,5 +97,37 @@ public class DefaultScriptCompilerFactory implements ScriptCompilerFactory {
                     scriptBaseClass);
             return scriptBaseClass.cast(ReflectionUtil.newInstance(scriptClass, new Object[0]));
         }
+
+        private String createKey(ClassLoader classLoader, Class<?> scriptBaseClass) {
+            StringBuilder key = new StringBuilder();
+            // The file name is compiled into the debug info of the classes, so is part of the key
+            key.append(source.getFileName()).append('\n');
+            key.append(source.getClassName()).append('\n');
+            key.append(transformer == null ? "" : transformer.getId()).append('\n');
+            key.append(scriptBaseClass.getName()).append('\n');
+            appendClassPath(classLoader, key, new IdentityHashMap<ClassLoader, Boolean>());
+            key.append('\n');
+            String text = source.getResource().getText();
+            key.append(text == null ? "" : text);
+            return HashUtil.createHash(key.toString());
+        }
+
+        private void appendClassPath(ClassLoader classLoader, StringBuilder key, Map<ClassLoader, Boolean> visited) {
+            if (classLoader == null || visited.put(classLoader, Boolean.TRUE) != null) {
+                return;
+            }
+            if (classLoader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                    key.append(url).append(';');
+                }
+            }
+            if (classLoader instanceof MultiParentClassLoader) {
+                for (ClassLoader parent : ((MultiParentClassLoader) classLoader).getParents()) {
+                    appendClassPath(parent, key, visited);
+                }
+            } else {
+                appendClassPath(classLoader.getParent(), key, visited);
+            }
+        }
     }
 }
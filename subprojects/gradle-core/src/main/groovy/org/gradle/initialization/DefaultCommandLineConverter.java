@@ -58,6 +58,8 @@ public class DefaultCommandLineConverter extends AbstractCommandLineConverter<St
     private static final String NO_OPT = "no-opt";
     private static final String EXCLUDE_TASK = "x";
     private static final String PROFILE = "profile";
+    private static final String PARALLEL_THREADS = "parallel-threads";
+    private static final String EXPORT_PLAN = "export-plan";
 
     private static BiMap<String, StartParameter.ShowStacktrace> showStacktraceMap = HashBiMap.create();
     private final CommandLineConverter<LoggingConfiguration> loggingConfigurationCommandLineConverter = new LoggingCommandLineConverter();
@@ -95,13 +97,20 @@ public class DefaultCommandLineConverter extends AbstractCommandLineConverter<St
         parser.option(NO_OPT).hasDescription("Ignore any task optimization.");
         parser.option(EXCLUDE_TASK, "exclude-task").hasArguments().hasDescription("Specify a task to be excluded from execution.");
         parser.option(PROFILE).hasDescription("Profiles build execution time and generates a report in the <build_dir>/reports/profile directory.");
+        parser.option(PARALLEL_THREADS).hasArgument().hasDescription("Executes independent tasks in parallel, using the given number of worker threads.");
+        parser.option(EXPORT_PLAN).hasArgument().hasDescription("Writes the task execution plan, with estimated task durations and the critical path, to the given file in DOT format.");
     }
 
     public StartParameter convert(ParsedCommandLine args) throws CommandLineArgumentException {
         return convert(args, new StartParameter());
     }
 
+    /**
+     * Converts the given options into the given start parameter. Relative paths are resolved against the current
+     * directory of the start parameter.
+     */
     public StartParameter convert(ParsedCommandLine options, StartParameter startParameter) throws CommandLineArgumentException {
+        File currentDir = startParameter.getCurrentDir();
         LoggingConfiguration loggingConfiguration = loggingConfigurationCommandLineConverter.convert(options);
         startParameter.setLogLevel(loggingConfiguration.getLogLevel());
         startParameter.setColorOutput(loggingConfiguration.isColorOutput());
@@ -121,20 +130,20 @@ public class DefaultCommandLineConverter extends AbstractCommandLineConverter<St
         }
 
         if (options.hasOption(PROJECT_DIR)) {
-            startParameter.setProjectDir(new File(options.option(PROJECT_DIR).getValue()));
+            startParameter.setProjectDir(resolve(currentDir, options.option(PROJECT_DIR).getValue()));
         }
         if (options.hasOption(GRADLE_USER_HOME)) {
-            startParameter.setGradleUserHomeDir(new File(options.option(GRADLE_USER_HOME).getValue()));
+            startParameter.setGradleUserHomeDir(resolve(currentDir, options.option(GRADLE_USER_HOME).getValue()));
         }
         if (options.hasOption(BUILD_FILE)) {
-            startParameter.setBuildFile(new File(options.option(BUILD_FILE).getValue()));
+            startParameter.setBuildFile(resolve(currentDir, options.option(BUILD_FILE).getValue()));
         }
         if (options.hasOption(SETTINGS_FILE)) {
-            startParameter.setSettingsFile(new File(options.option(SETTINGS_FILE).getValue()));
+            startParameter.setSettingsFile(resolve(currentDir, options.option(SETTINGS_FILE).getValue()));
         }
 
         for (String script : options.option(INIT_SCRIPT).getValues()) {
-            startParameter.addInitScript(new File(script));
+            startParameter.addInitScript(resolve(currentDir, script));
         }
 
         if (options.hasOption(CACHE)) {
@@ -203,9 +212,28 @@ public class DefaultCommandLineConverter extends AbstractCommandLineConverter<St
             startParameter.setProfile(true);
         }
 
+        if (options.hasOption(PARALLEL_THREADS)) {
+            String value = options.option(PARALLEL_THREADS).getValue();
+            try {
+                startParameter.setParallelThreadCount(Integer.parseInt(value));
+            } catch (NumberFormatException e) {
+                throw new CommandLineArgumentException(String.format(
+                        "Error: The --%s option requires a number of threads, but was '%s'.", PARALLEL_THREADS, value));
+            }
+        }
+
+        if (options.hasOption(EXPORT_PLAN)) {
+            startParameter.setPlanExportFile(resolve(currentDir, options.option(EXPORT_PLAN).getValue()));
+        }
+
         return startParameter;
     }
 
+    private File resolve(File currentDir, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(currentDir, path);
+    }
+
     /**
      * This returns the stack trace level object represented by the command line argument
      *
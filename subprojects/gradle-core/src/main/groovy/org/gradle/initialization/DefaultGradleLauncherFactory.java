@@ -27,6 +27,9 @@ import org.gradle.api.logging.Logging;
 import org.gradle.api.logging.StandardOutputListener;
 import org.gradle.cache.CacheRepository;
 import org.gradle.configuration.BuildConfigurer;
+import org.gradle.execution.TaskDurationHistory;
+import org.gradle.execution.TaskPlanDotExporter;
+import org.gradle.groovy.scripts.CachingScriptCompilationHandler;
 import org.gradle.invocation.DefaultGradle;
 import org.gradle.listener.ListenerManager;
 import org.gradle.logging.LoggingManagerInternal;
@@ -93,6 +96,8 @@ public class DefaultGradleLauncherFactory implements GradleLauncherFactory {
         listenerManager.useLogger(new TaskExecutionLogger(serviceRegistry.get(ProgressLoggerFactory.class)));
         if (tracker.getCurrentBuild() == null) {
             listenerManager.useLogger(new BuildLogger(Logging.getLogger(BuildLogger.class), serviceRegistry.get(StyledTextOutputFactory.class), buildClock, startParameter));
+            listenerManager.addListener(new ScriptCacheStatisticsListener(sharedServices.get(
+                    CachingScriptCompilationHandler.class)));
         }
         listenerManager.addListener(tracker);
         listenerManager.addListener(new BuildCleanupListener(serviceRegistry));
@@ -100,6 +105,13 @@ public class DefaultGradleLauncherFactory implements GradleLauncherFactory {
         if (startParameter.isProfile()) {
             listenerManager.addListener(new ProfileListener(buildClock.getTimeInMs()));
         }
+        if (startParameter.getParallelThreadCount() > 1 || startParameter.getPlanExportFile() != null) {
+            listenerManager.addListener(serviceRegistry.get(TaskDurationHistory.class));
+        }
+        if (startParameter.getPlanExportFile() != null) {
+            listenerManager.addListener(new TaskPlanDotExporter(startParameter.getPlanExportFile(),
+                    serviceRegistry.get(TaskDurationHistory.class)));
+        }
 
         DefaultGradle gradle = new DefaultGradle(
                 tracker.getCurrentBuild(),
@@ -132,6 +144,19 @@ public class DefaultGradleLauncherFactory implements GradleLauncherFactory {
         this.commandLineConverter = commandLineConverter;
     }
 
+    private static class ScriptCacheStatisticsListener extends BuildAdapter {
+        private final CachingScriptCompilationHandler handler;
+
+        private ScriptCacheStatisticsListener(CachingScriptCompilationHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void buildFinished(BuildResult result) {
+            handler.logStatistics();
+        }
+    }
+
     private static class BuildCleanupListener extends BuildAdapter {
         private final TopLevelBuildServiceRegistry services;
 
@@ -16,6 +16,7 @@
 package org.gradle.profile;
 
 import org.gradle.api.Project;
+import org.gradle.api.internal.tasks.compile.CompilationStatistics;
 import org.gradle.api.invocation.Gradle;
 
 import java.util.*;
@@ -38,6 +39,7 @@ import java.util.*;
 public class BuildProfile {
     private Gradle gradle;
     Map<Project, ProjectProfile> projects = new HashMap<Project, ProjectProfile>();
+    private final List<CompilationStatistics> compilations = new ArrayList<CompilationStatistics>();
     long profilingStarted;
     long buildStarted;
     long settingsEvaluated;
@@ -76,7 +78,7 @@ public class BuildProfile {
      * @param project to look up
      * @return
      */
-    public ProjectProfile getProjectProfile(Project project) {
+    public synchronized ProjectProfile getProjectProfile(Project project) {
         ProjectProfile result = projects.get(project);
         if (result == null) {
             result = new ProjectProfile(project);
@@ -89,10 +91,26 @@ public class BuildProfile {
      * Get a list of the profiling containers for all projects
      * @return list
      */
-    public List<ProjectProfile> getProjects() {
+    public synchronized List<ProjectProfile> getProjects() {
         return new ArrayList<ProjectProfile>(projects.values());
     }
 
+    /**
+     * Records the statistics of a compilation which happened during the build.
+     * @param statistics
+     */
+    public synchronized void addCompilation(CompilationStatistics statistics) {
+        compilations.add(statistics);
+    }
+
+    /**
+     * Get the statistics of the compilations which happened during the build, in the order they finished.
+     * @return list
+     */
+    public synchronized List<CompilationStatistics> getCompilations() {
+        return new ArrayList<CompilationStatistics>(compilations);
+    }
+
     /**
      * Should be set with a time as soon as possible after startup.
      * @param profilingStarted
@@ -20,6 +20,8 @@ import org.gradle.BuildResult;
 import org.gradle.api.*;
 import org.gradle.api.execution.TaskExecutionListener;
 import org.gradle.api.initialization.Settings;
+import org.gradle.api.internal.tasks.compile.CompilationListener;
+import org.gradle.api.internal.tasks.compile.CompilationStatistics;
 import org.gradle.api.invocation.Gradle;
 import org.gradle.api.tasks.TaskState;
 
@@ -30,7 +32,8 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
-public class ProfileListener implements BuildListener, ProjectEvaluationListener, TaskExecutionListener {
+public class ProfileListener implements BuildListener, ProjectEvaluationListener, TaskExecutionListener,
+        CompilationListener {
     private BuildProfile buildProfile;
     private Map<Project, ProjectProfile> projects = new HashMap<Project, ProjectProfile>();
     private static final SimpleDateFormat FILE_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss");
@@ -100,5 +103,10 @@ public class ProfileListener implements BuildListener, ProjectEvaluationListener
         taskProfile.setFinish(System.currentTimeMillis());
         taskProfile.setState(state);
     }
+
+    // CompilationListener
+    public void compilationFinished(CompilationStatistics statistics) {
+        buildProfile.addCompilation(statistics);
+    }
 }
 
@@ -39,7 +39,7 @@ public class ProjectProfile {
      * @param task
      * @return
      */
-    public TaskProfile getTaskProfile(Task task) {
+    public synchronized TaskProfile getTaskProfile(Task task) {
         TaskProfile result = tasks.get(task);
         if (result == null) {
             result = new TaskProfile(task);
@@ -52,7 +52,7 @@ public class ProjectProfile {
      * Gets the list of task profiling containers.
      * @return
      */
-    public List<TaskProfile> getTaskProfiles() {
+    public synchronized List<TaskProfile> getTaskProfiles() {
         return new ArrayList<TaskProfile>(tasks.values());
     }
 
@@ -24,11 +24,19 @@ import java.io.File;
 import java.io.InputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * @author Hans Dockter
  */
 public class HashUtil {
+    /**
+     * Files at least this large are hashed through a memory-mapped view of the file, rather than read into a buffer.
+     */
+    static final long MAPPED_HASH_THRESHOLD = 1024 * 1024;
+    private static final long MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+
     public static String createHash(String scriptText) {
         MessageDigest messageDigest;
         try {
@@ -48,15 +56,14 @@ public class HashUtil {
             throw UncheckedException.asUncheckedException(e);
         }
         try {
-            byte[] buffer = new byte[4096];
-            InputStream instr = new FileInputStream(file);
+            FileInputStream instr = new FileInputStream(file);
             try {
-                while (true) {
-                    int nread = instr.read(buffer);
-                    if (nread < 0) {
-                        break;
-                    }
-                    messageDigest.update(buffer, 0, nread);
+                // A mapped file cannot be deleted on Windows until the mapping is garbage collected, so only map
+                // large files elsewhere
+                if (file.length() >= MAPPED_HASH_THRESHOLD && !OperatingSystem.current().isWindows()) {
+                    hashMapped(instr.getChannel(), messageDigest);
+                } else {
+                    hashStream(instr, messageDigest);
                 }
             } finally {
                 instr.close();
@@ -66,4 +73,24 @@ public class HashUtil {
         }
         return messageDigest.digest();
     }
+
+    private static void hashStream(InputStream instr, MessageDigest messageDigest) throws IOException {
+        byte[] buffer = new byte[4096];
+        while (true) {
+            int nread = instr.read(buffer);
+            if (nread < 0) {
+                break;
+            }
+            messageDigest.update(buffer, 0, nread);
+        }
+    }
+
+    private static void hashMapped(FileChannel channel, MessageDigest messageDigest) throws IOException {
+        long size = channel.size();
+        for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_REGION_SIZE,
+                    size - position));
+            messageDigest.update(region);
+        }
+    }
 }
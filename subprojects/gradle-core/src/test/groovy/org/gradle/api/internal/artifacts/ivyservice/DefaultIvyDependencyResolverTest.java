@@ -239,6 +239,65 @@ public class DefaultIvyDependencyResolverTest {
         assertEquals(true, ivyDependencyResolver.resolve(configurationStub, ivyStub, moduleDescriptor).hasError());
     }
 
+    @Test
+    public void testResolveUsesCachedResultWithoutInvokingIvy() {
+        final ResolvedConfigurationCache cache = context.mock(ResolvedConfigurationCache.class);
+        final IvyConversionResult conversionResultStub = context.mock(IvyConversionResult.class);
+        final ResolvedArtifact resolvedArtifactDummy = context.mock(ResolvedArtifact.class);
+        final ModuleDescriptor moduleDescriptor = createAnonymousModuleDescriptor();
+        context.checking(new Expectations() {{
+            one(cache).getKey(configurationStub, ivyStub, moduleDescriptor);
+            will(returnValue("key"));
+            one(cache).load("key", configurationStub, ivyStub);
+            will(returnValue(conversionResultStub));
+            allowing(conversionResultStub).getResolvedArtifacts();
+            will(returnValue(toSet(resolvedArtifactDummy)));
+        }});
+
+        ResolvedConfiguration configuration = new DefaultIvyDependencyResolver(ivyReportConverterStub, cache).resolve(
+                configurationStub, ivyStub, moduleDescriptor);
+        assertFalse(configuration.hasError());
+        assertThat(configuration.getResolvedArtifacts(), equalTo(toSet(resolvedArtifactDummy)));
+    }
+
+    @Test
+    public void testResolveStoresResultInCacheWhenNotCached() throws IOException, ParseException {
+        final ResolvedConfigurationCache cache = context.mock(ResolvedConfigurationCache.class);
+        final IvyConversionResult conversionResultStub = context.mock(IvyConversionResult.class);
+        final ModuleDescriptor moduleDescriptor = createAnonymousModuleDescriptor();
+        prepareTestsThatRetrieveDependencies(moduleDescriptor);
+        prepareResolveReport();
+        context.checking(new Expectations() {{
+            one(cache).getKey(configurationStub, ivyStub, moduleDescriptor);
+            will(returnValue("key"));
+            one(cache).load("key", configurationStub, ivyStub);
+            will(returnValue(null));
+            allowing(ivyReportConverterStub).convertReport(resolveReportMock, configurationStub);
+            will(returnValue(conversionResultStub));
+            one(cache).store("key", configurationStub, ivyStub, resolveReportMock, conversionResultStub);
+        }});
+
+        new DefaultIvyDependencyResolver(ivyReportConverterStub, cache).resolve(configurationStub, ivyStub,
+                moduleDescriptor);
+    }
+
+    @Test
+    public void testResolveDoesNotCacheFailedResult() throws IOException, ParseException {
+        final ResolvedConfigurationCache cache = context.mock(ResolvedConfigurationCache.class);
+        final ModuleDescriptor moduleDescriptor = createAnonymousModuleDescriptor();
+        prepareTestsThatRetrieveDependencies(moduleDescriptor);
+        prepareResolveReportWithError();
+        context.checking(new Expectations() {{
+            one(cache).getKey(configurationStub, ivyStub, moduleDescriptor);
+            will(returnValue("key"));
+            one(cache).load("key", configurationStub, ivyStub);
+            will(returnValue(null));
+        }});
+
+        assertTrue(new DefaultIvyDependencyResolver(ivyReportConverterStub, cache).resolve(configurationStub, ivyStub,
+                moduleDescriptor).hasError());
+    }
+
     private ModuleDescriptor createAnonymousModuleDescriptor() {
         return DefaultModuleDescriptor.newDefaultInstance(
                 ModuleRevisionId.newInstance("org", "name", "1.0", new HashMap()));
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.artifacts.ivyservice
+
+import org.apache.ivy.Ivy
+import org.apache.ivy.core.cache.DefaultRepositoryCacheManager
+import org.apache.ivy.core.module.descriptor.Artifact
+import org.apache.ivy.core.module.descriptor.DefaultArtifact
+import org.apache.ivy.core.module.id.ModuleRevisionId
+import org.apache.ivy.plugins.resolver.FileSystemResolver
+import org.gradle.api.internal.artifacts.DefaultResolvedArtifact
+import org.gradle.logging.ProgressLogger
+import org.gradle.logging.ProgressLoggerFactory
+import org.gradle.messaging.concurrent.DefaultExecutorFactory
+import org.gradle.util.TemporaryFolder
+import org.gradle.util.TestFile
+import org.junit.Rule
+import spock.lang.Specification
+
+class ParallelArtifactFetcherTest extends Specification {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+    private final DefaultExecutorFactory executorFactory = new DefaultExecutorFactory()
+    private final ProgressLoggerFactory progressLoggerFactory = Mock()
+    private final ProgressLogger progressLogger = Mock()
+    private final ParallelArtifactFetcher fetcher = new ParallelArtifactFetcher(executorFactory, progressLoggerFactory, 2, 1)
+    private final Object resolverLock = new Object()
+    private Ivy ivy
+
+    def setup() {
+        progressLoggerFactory.start(_, _) >> progressLogger
+        ivy = Ivy.newInstance(new DefaultSettingsConverter(progressLoggerFactory).convertForResolve(
+                [resolver('repo', tmpDir.dir.file('repo'))], tmpDir.dir.file('home'),
+                resolver('internal', tmpDir.dir.file('internal')), [:]))
+    }
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def copiesArtifactsIntoIvyCache() {
+        Artifact a = artifact('a')
+        Artifact b = artifact('b')
+        Artifact c = artifact('c')
+
+        when:
+        fetcher.fetch(ivy, [resolved(a), resolved(b), resolved(c)], resolverLock)
+
+        then:
+        cacheFile(a).text == 'content of a'
+        cacheFile(b).text == 'content of b'
+        cacheFile(c).text == 'content of c'
+        cacheFile(a).parentFile.list() as List == ['a-1.0.jar']
+    }
+
+    def reportsProgressOfAllDownloadsThroughOneProgressLogger() {
+        ProgressLogger logger = Mock()
+
+        when:
+        fetcher.fetch(ivy, [resolved(artifact('a')), resolved(artifact('b'))], resolverLock)
+
+        then:
+        1 * progressLoggerFactory.start(ParallelArtifactFetcher.class.name, 'Download 2 artifacts') >> logger
+        1 * logger.progress({ it.startsWith('1/2 artifacts') })
+        1 * logger.progress({ it.startsWith('2/2 artifacts') })
+        1 * logger.completed()
+    }
+
+    def doesNotDownloadArtifactsWhichAreAlreadyCached() {
+        Artifact a = artifact('a')
+        Artifact b = artifact('b')
+        Artifact c = artifact('c')
+        TestFile cached = cacheFile(a)
+        cached.write('cached a')
+
+        when:
+        fetcher.fetch(ivy, [resolved(a), resolved(b), resolved(c)], resolverLock)
+
+        then:
+        cached.text == 'cached a'
+        cacheFile(b).text == 'content of b'
+        cacheFile(c).text == 'content of c'
+    }
+
+    def doesNothingWhenOnlyOneArtifactIsMissing() {
+        Artifact a = artifact('a')
+        Artifact b = artifact('b')
+        cacheFile(a).write('cached a')
+
+        when:
+        fetcher.fetch(ivy, [resolved(a), resolved(b)], resolverLock)
+
+        then:
+        !cacheFile(b).exists()
+        0 * progressLoggerFactory._
+    }
+
+    def leavesArtifactsWhichCannotBeLocatedToIvy() {
+        Artifact a = artifact('a')
+        Artifact b = artifact('b')
+        Artifact missing = new DefaultArtifact(ModuleRevisionId.newInstance('group', 'missing', '1.0'), null,
+                'missing', 'jar', 'jar')
+
+        when:
+        fetcher.fetch(ivy, [resolved(a), resolved(b), resolved(missing)], resolverLock)
+
+        then:
+        cacheFile(a).text == 'content of a'
+        cacheFile(b).text == 'content of b'
+        !cacheFile(missing).exists()
+    }
+
+    def doesNotCopyArtifactsOfResolversWhichUseOrigin() {
+        DefaultRepositoryCacheManager cacheManager = new DefaultRepositoryCacheManager()
+        cacheManager.name = 'flat'
+        cacheManager.basedir = tmpDir.dir.file('flat-cache')
+        cacheManager.useOrigin = true
+        FileSystemResolver flatResolver = resolver('flat', tmpDir.dir.file('repo'))
+        flatResolver.repositoryCacheManager = cacheManager
+        ivy = Ivy.newInstance(new DefaultSettingsConverter(progressLoggerFactory).convertForResolve(
+                [flatResolver], tmpDir.dir.file('home'), resolver('internal', tmpDir.dir.file('internal')), [:]))
+
+        Artifact a = artifact('a')
+        Artifact b = artifact('b')
+
+        when:
+        fetcher.fetch(ivy, [resolved(a), resolved(b)], resolverLock)
+
+        then:
+        !cacheFile(a).exists()
+        !cacheFile(b).exists()
+        !tmpDir.dir.file('flat-cache').exists()
+        0 * progressLoggerFactory._
+    }
+
+    private FileSystemResolver resolver(String name, File dir) {
+        FileSystemResolver resolver = new FileSystemResolver()
+        resolver.name = name
+        resolver.addArtifactPattern("$dir.absolutePath/[organisation]/[module]/[artifact]-[revision].[ext]")
+        return resolver
+    }
+
+    private Artifact artifact(String name) {
+        tmpDir.dir.file("repo/group/$name/$name-1.0.jar").write("content of $name")
+        return new DefaultArtifact(ModuleRevisionId.newInstance('group', name, '1.0'), null, name, 'jar', 'jar')
+    }
+
+    private DefaultResolvedArtifact resolved(Artifact artifact) {
+        return new DefaultResolvedArtifact(artifact, ivy.resolveEngine)
+    }
+
+    private TestFile cacheFile(Artifact artifact) {
+        return new TestFile(ivy.settings.defaultRepositoryCacheManager.getArchiveFileInCache(artifact))
+    }
+}
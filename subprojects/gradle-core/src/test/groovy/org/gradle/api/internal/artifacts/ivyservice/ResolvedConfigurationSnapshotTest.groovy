@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.artifacts.ivyservice
+
+import org.apache.ivy.core.module.descriptor.DefaultArtifact
+import org.apache.ivy.core.module.id.ModuleRevisionId
+import org.apache.ivy.core.resolve.ResolveEngine
+import org.gradle.api.artifacts.ModuleDependency
+import org.gradle.api.artifacts.ResolvedArtifact
+import org.gradle.api.internal.artifacts.DefaultResolvedArtifact
+import org.gradle.api.internal.artifacts.DefaultResolvedDependency
+import org.gradle.util.TemporaryFolder
+import org.gradle.util.TestFile
+import org.junit.Rule
+import spock.lang.Specification
+
+class ResolvedConfigurationSnapshotTest extends Specification {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+    private final ResolveEngine resolveEngine = Mock()
+    private final ModuleDependency dependency1 = Mock()
+    private final ModuleDependency dependency2 = Mock()
+
+    def restoresResolvedDependencyGraph() {
+        DefaultResolvedDependency root = dependency('root')
+        DefaultResolvedDependency a = dependency('a')
+        DefaultResolvedDependency b = dependency('b')
+        DefaultResolvedDependency c = dependency('c')
+        root.addChild(a)
+        root.addChild(b)
+        a.addChild(c)
+        b.addChild(c)
+        ResolvedArtifact aJar = artifact(a, 'a')
+        ResolvedArtifact cJar = artifact(c, 'c')
+        ResolvedArtifact bSources = artifact(b, 'b-sources')
+        b.addParentSpecificArtifacts(root, [bSources] as Set)
+        def result = new DefaultIvyConversionResult(root, [(dependency1): [a] as Set, (dependency2): [b] as Set],
+                [aJar, bSources, cJar] as Set)
+
+        when:
+        def snapshot = serialize(ResolvedConfigurationSnapshot.create(result, [dependency1, dependency2], []))
+        def restored = snapshot.restore([dependency1, dependency2], resolveEngine)
+
+        then:
+        restored.root.name == 'root'
+        restored.root.children*.name == ['a', 'b']
+        restored.firstLevelResolvedDependencies[dependency1]*.name == ['a']
+        restored.firstLevelResolvedDependencies[dependency2]*.name == ['b']
+        restored.resolvedArtifacts*.name == ['a', 'b-sources', 'c']
+
+        def restoredA = restored.firstLevelResolvedDependencies[dependency1].iterator().next()
+        def restoredB = restored.firstLevelResolvedDependencies[dependency2].iterator().next()
+        restoredA.moduleArtifacts*.name == ['a']
+        restoredA.moduleArtifacts.iterator().next().resolvedDependency.is(restoredA)
+        restoredB.getParentArtifacts(restored.root)*.name == ['b-sources']
+        restoredA.children.iterator().next().is(restoredB.children.iterator().next())
+        restoredA.children.iterator().next().parents*.name == ['a', 'b']
+    }
+
+    def isOutOfDateWhenModuleDescriptorInIvyCacheChanges() {
+        TestFile ivyFile = tmpDir.file('ivy.xml')
+        ivyFile.write('content')
+        def result = new DefaultIvyConversionResult(dependency('root'), [:], [] as Set)
+
+        when:
+        def snapshot = serialize(ResolvedConfigurationSnapshot.create(result, [], [ivyFile]))
+
+        then:
+        snapshot.upToDate
+
+        when:
+        ivyFile.setLastModified(ivyFile.lastModified() - 10000)
+
+        then:
+        !snapshot.upToDate
+
+        when:
+        ivyFile.delete()
+
+        then:
+        !snapshot.upToDate
+    }
+
+    private DefaultResolvedDependency dependency(String name) {
+        return new DefaultResolvedDependency('group', name, '1.0', 'default', new LinkedHashSet<ResolvedArtifact>())
+    }
+
+    private ResolvedArtifact artifact(DefaultResolvedDependency owner, String name) {
+        def artifact = new DefaultArtifact(ModuleRevisionId.newInstance('group', owner.moduleName, '1.0'), null, name,
+                'jar', 'jar')
+        def resolvedArtifact = new DefaultResolvedArtifact(artifact, resolveEngine)
+        resolvedArtifact.resolvedDependency = owner
+        if (!name.endsWith('-sources')) {
+            owner.moduleArtifacts << resolvedArtifact
+        }
+        return resolvedArtifact
+    }
+
+    private ResolvedConfigurationSnapshot serialize(ResolvedConfigurationSnapshot snapshot) {
+        def outstr = new ByteArrayOutputStream()
+        new ObjectOutputStream(outstr).writeObject(snapshot)
+        return new ObjectInputStream(new ByteArrayInputStream(outstr.toByteArray())).readObject()
+    }
+}
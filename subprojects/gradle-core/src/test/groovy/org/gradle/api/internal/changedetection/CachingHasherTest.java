@@ -19,6 +19,7 @@ import org.gradle.cache.*;
 
 import static org.gradle.util.Matchers.*;
 import org.gradle.util.TemporaryFolder;
+import static org.gradle.util.WrapUtil.*;
 import static org.hamcrest.Matchers.*;
 import org.jmock.Expectations;
 import org.jmock.integration.junit4.JMock;
@@ -30,6 +31,9 @@ import org.junit.Before;
 import org.junit.runner.RunWith;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 @RunWith(JMock.class)
 public class CachingHasherTest {
@@ -65,52 +69,96 @@ public class CachingHasherTest {
     @Test
     public void hashesFileWhenHashNotCached() {
         context.checking(new Expectations() {{
-            one(cache).get(file);
-            will(returnValue(null));
-            one(delegate).hash(file);
-            will(returnValue(hash));
-            one(cache).put(with(equalTo(file)), with(reflectionEquals(new CachingHasher.FileInfo(hash, file.length(),
-                    file.lastModified()))));
+            one(cache).getAll(toList(file));
+            will(returnValue(Collections.emptyMap()));
+            one(delegate).hashAll(toLinkedSet(file));
+            will(returnValue(toMap(file, hash)));
         }});
 
         assertThat(hasher.hash(file), sameInstance(hash));
+
+        expectEntryWrittenOnClose();
+        hasher.close();
     }
 
     @Test
     public void hashesFileWhenLengthHasChanged() {
         context.checking(new Expectations() {{
-            one(cache).get(file);
-            will(returnValue(new CachingHasher.FileInfo(hash, 1078, file.lastModified())));
-            one(delegate).hash(file);
-            will(returnValue(hash));
-            one(cache).put(with(equalTo(file)), with(reflectionEquals(new CachingHasher.FileInfo(hash, file.length(),
-                    file.lastModified()))));
+            one(cache).getAll(toList(file));
+            will(returnValue(toMap(file, new CachingHasher.FileInfo(hash, 1078, file.lastModified()))));
+            one(delegate).hashAll(toLinkedSet(file));
+            will(returnValue(toMap(file, hash)));
         }});
 
         assertThat(hasher.hash(file), sameInstance(hash));
+
+        expectEntryWrittenOnClose();
+        hasher.close();
     }
 
     @Test
     public void hashesFileWhenTimestampHasChanged() {
         context.checking(new Expectations() {{
-            one(cache).get(file);
-            will(returnValue(new CachingHasher.FileInfo(hash, file.length(), 12)));
-            one(delegate).hash(file);
-            will(returnValue(hash));
-            one(cache).put(with(equalTo(file)), with(reflectionEquals(new CachingHasher.FileInfo(hash, file.length(),
-                    file.lastModified()))));
+            one(cache).getAll(toList(file));
+            will(returnValue(toMap(file, new CachingHasher.FileInfo(hash, file.length(), 12))));
+            one(delegate).hashAll(toLinkedSet(file));
+            will(returnValue(toMap(file, hash)));
         }});
 
         assertThat(hasher.hash(file), sameInstance(hash));
+
+        expectEntryWrittenOnClose();
+        hasher.close();
     }
 
     @Test
     public void doesNotHashFileWhenTimestampAndLengthHaveNotChanged() {
         context.checking(new Expectations() {{
-            one(cache).get(file);
-            will(returnValue(new CachingHasher.FileInfo(hash, file.length(), file.lastModified())));
+            one(cache).getAll(toList(file));
+            will(returnValue(toMap(file, new CachingHasher.FileInfo(hash, file.length(), file.lastModified()))));
+        }});
+
+        assertThat(hasher.hash(file), sameInstance(hash));
+
+        hasher.close();
+    }
+
+    @Test
+    public void loadsEachEntryFromCacheOnlyOnce() {
+        final File other = tmpDir.createFile("other").write("other");
+        context.checking(new Expectations() {{
+            one(cache).getAll(toList(file));
+            will(returnValue(toMap(file, new CachingHasher.FileInfo(hash, file.length(), file.lastModified()))));
+            one(cache).getAll(toList(other));
+            will(returnValue(toMap(other, new CachingHasher.FileInfo(hash, other.length(), other.lastModified()))));
+        }});
+
+        Map<File, byte[]> expected = new HashMap<File, byte[]>();
+        expected.put(file, hash);
+        expected.put(other, hash);
+
+        assertThat(hasher.hash(file), sameInstance(hash));
+        assertThat(hasher.hashAll(toList(file, other)), equalTo(expected));
+        assertThat(hasher.hash(other), sameInstance(hash));
+    }
+
+    @Test
+    public void usesHashCalculatedEarlierInBuildWhenFileHasNotChanged() {
+        context.checking(new Expectations() {{
+            one(cache).getAll(toList(file));
+            will(returnValue(Collections.emptyMap()));
+            one(delegate).hashAll(toLinkedSet(file));
+            will(returnValue(toMap(file, hash)));
         }});
 
         assertThat(hasher.hash(file), sameInstance(hash));
+        assertThat(hasher.hash(file), sameInstance(hash));
+    }
+
+    private void expectEntryWrittenOnClose() {
+        context.checking(new Expectations() {{
+            one(cache).putAll(with(hasEntry(equalTo(file), reflectionEquals(new CachingHasher.FileInfo(hash,
+                    file.length(), file.lastModified())))));
+        }});
     }
 }
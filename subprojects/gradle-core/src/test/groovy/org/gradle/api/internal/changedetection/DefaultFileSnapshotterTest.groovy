@@ -29,6 +29,7 @@ import org.gradle.util.TestFile
 import org.gradle.api.file.FileCollection
 import org.gradle.util.ChangeListener
 import org.gradle.api.file.FileTree
+import org.gradle.messaging.concurrent.DefaultExecutorFactory
 
 @RunWith(JMock.class)
 public class DefaultFileSnapshotterTest {
@@ -316,6 +317,100 @@ public class DefaultFileSnapshotterTest {
         target.changesSince(snapshotter.snapshot(), listener)
     }
 
+    @Test
+    public void parallelSnapshotIsTheSameAsSerialSnapshot() {
+        List<File> files = []
+        100.times { i ->
+            files << tmpDir.file("file$i").write("content $i")
+        }
+        files << tmpDir.createDir('dir')
+        files << tmpDir.file('missing')
+        DefaultExecutorFactory executorFactory = new DefaultExecutorFactory()
+        DefaultFileSnapshotter parallelSnapshotter = new DefaultFileSnapshotter(hasher, executorFactory, 4)
+
+        try {
+            FileCollectionSnapshot serial = snapshotter.snapshot(files(files as File[]))
+            FileCollectionSnapshot parallel = parallelSnapshotter.snapshot(files(files as File[]))
+
+            assertThat(parallel.files.files, equalTo(serial.files.files))
+            parallel.changesSince(serial, listener)
+        } finally {
+            executorFactory.stop()
+        }
+    }
+
+    @Test
+    public void snapshotIsTheSameAfterSerialization() {
+        TestFile file1 = tmpDir.createFile('dir/file1').write('content 1')
+        TestFile file2 = tmpDir.createFile('dir/file2').write('content 2')
+        TestFile dir = tmpDir.createDir('dir/sub')
+        TestFile missing = tmpDir.file('dir/missing')
+
+        FileCollectionSnapshot snapshot = snapshotter.snapshot(files(file2, dir, file1, missing))
+        FileCollectionSnapshot copy = serializeAndDeserialize(snapshot)
+
+        assertThat(copy.files.files, equalTo([file1, file2] as Set))
+        snapshotter.snapshot(files(file1, file2, dir, missing)).changesSince(copy, listener)
+        file1.write('new content')
+
+        context.checking {
+            one(listener).changed(file1)
+        }
+        snapshotter.snapshot(files(file1, file2, dir, missing)).changesSince(copy, listener)
+    }
+
+    @Test
+    public void snapshotIsTheSameAfterWritingWithSerializer() {
+        TestFile file1 = tmpDir.createFile('dir/file1').write('content 1')
+        TestFile file2 = tmpDir.createFile('dir/file2').write('content 2')
+        TestFile dir = tmpDir.createDir('dir/sub')
+        TestFile missing = tmpDir.file('dir/missing')
+
+        FileCollectionSnapshot snapshot = snapshotter.snapshot(files(file2, dir, file1, missing))
+        ByteArrayOutputStream outstr = new ByteArrayOutputStream()
+        snapshotter.serializer.write(outstr, snapshot)
+        FileCollectionSnapshot copy = snapshotter.serializer.read(new ByteArrayInputStream(outstr.toByteArray()))
+
+        assertThat(copy.files.files, equalTo([file1, file2] as Set))
+        snapshotter.snapshot(files(file1, file2, dir, missing)).changesSince(copy, listener)
+        file2.write('new content')
+
+        context.checking {
+            one(listener).changed(file2)
+        }
+        snapshotter.snapshot(files(file1, file2, dir, missing)).changesSince(copy, listener)
+    }
+
+    @Test
+    public void notifiesListenerOfChangesBetweenSnapshotsWithSharedPathPrefixes() {
+        List<File> original = []
+        20.times { i ->
+            original << tmpDir.file("a/b${i % 3}/c/file$i").write("content $i")
+        }
+        FileCollectionSnapshot snapshot = serializeAndDeserialize(snapshotter.snapshot(files(original as File[])))
+
+        List<File> modified = new ArrayList<File>(original)
+        File removed = modified.remove(7)
+        File added = tmpDir.file('a/b1/c/file7a').write('added')
+        modified << added
+        File changed = modified[12].write('changed')
+
+        context.checking {
+            one(listener).added(added)
+            one(listener).removed(removed)
+            one(listener).changed(changed)
+        }
+        snapshotter.snapshot(files(modified as File[])).changesSince(snapshot, listener)
+    }
+
+    private FileCollectionSnapshot serializeAndDeserialize(FileCollectionSnapshot snapshot) {
+        ByteArrayOutputStream outstr = new ByteArrayOutputStream()
+        ObjectOutputStream objectOutstr = new ObjectOutputStream(outstr)
+        objectOutstr.writeObject(snapshot)
+        objectOutstr.close()
+        return new ObjectInputStream(new ByteArrayInputStream(outstr.toByteArray())).readObject()
+    }
+
     private FileCollection files(File... files) {
         FileTree collection = context.mock(FileTree.class)
         context.checking {
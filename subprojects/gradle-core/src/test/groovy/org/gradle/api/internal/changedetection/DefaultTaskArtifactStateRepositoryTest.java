@@ -24,9 +24,12 @@ import org.gradle.cache.CacheBuilder;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.Serializer;
 import org.gradle.util.*;
 import org.hamcrest.Matcher;
 import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
 import org.jmock.integration.junit4.JMock;
 import org.jmock.integration.junit4.JUnit4Mockery;
 import org.junit.Before;
@@ -34,7 +37,10 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.ObjectOutputStream;
 import java.util.*;
 
 import static org.gradle.util.Matchers.*;
@@ -65,6 +71,7 @@ public class DefaultTaskArtifactStateRepositoryTest {
     private final Set<TestFile> createFiles = toSet(outputFile, outputDirFile, outputDirFile2);
     private final PersistentCache persistentCache = context.mock(PersistentCache.class);
     private DefaultTaskArtifactStateRepository repository;
+    private TestIndexedCache taskHistoryCache;
 
     @Before
     public void setup() {
@@ -77,7 +84,7 @@ public class DefaultTaskArtifactStateRepositoryTest {
             one(builder).open();
             will(returnValue(persistentCache));
 
-            one(persistentCache).openIndexedCache();
+            one(persistentCache).openIndexedCache(with(notNullValue(Serializer.class)));
             will(returnValue(new TestIndexedCache()));
         }});
 
@@ -518,6 +525,23 @@ public class DefaultTaskArtifactStateRepositoryTest {
         assertThat(state.getOutputFiles(), isEmpty());
     }
 
+    @Test
+    public void artifactsAreNotUpToDateWhenTaskHistoryWasWrittenInAnotherFormat() throws Exception {
+        execute();
+
+        ByteArrayOutputStream outstr = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutstr = new ObjectOutputStream(outstr);
+        objectOutstr.writeInt(1);
+        objectOutstr.writeUTF(TaskInternal.class.getName());
+        objectOutstr.close();
+        assertThat(taskHistoryCache.entries.size(), equalTo(1));
+        Object key = taskHistoryCache.entries.keySet().iterator().next();
+        taskHistoryCache.entries.put(key, outstr.toByteArray());
+
+        TaskArtifactState state = repository.getStateFor(task());
+        assertFalse(state.isUpToDate());
+    }
+
     @Test
     public void artifactsAreUpToDateWhenTaskHasNoInputFiles() {
         TaskInternal task = builder().withInputFiles().task();
@@ -581,8 +605,13 @@ public class DefaultTaskArtifactStateRepositoryTest {
             one(builder).open();
             will(returnValue(persistentCache));
             
-            one(persistentCache).openIndexedCache();
-            will(returnValue(new TestIndexedCache()));
+            one(persistentCache).openIndexedCache(with(notNullValue(Serializer.class)));
+            will(new CustomAction("open indexed cache") {
+                public Object invoke(Invocation invocation) throws Throwable {
+                    taskHistoryCache = new TestIndexedCache((Serializer<Object>) invocation.getParameter(0));
+                    return taskHistoryCache;
+                }
+            });
         }});
     }
 
@@ -671,17 +700,63 @@ public class DefaultTaskArtifactStateRepositoryTest {
 
     public static class TestIndexedCache implements PersistentIndexedCache<Object, Object> {
         Map<Object, Object> entries = new HashMap<Object, Object>();
+        final Serializer<Object> serializer;
+
+        public TestIndexedCache() {
+            this(null);
+        }
+
+        /**
+         * Creates a cache which stores each value in serialized form, to simulate reading the value from disk.
+         */
+        public TestIndexedCache(Serializer<Object> serializer) {
+            this.serializer = serializer;
+        }
 
         public Object get(Object key) {
-            return entries.get(key);
+            Object value = entries.get(key);
+            if (serializer == null || value == null) {
+                return value;
+            }
+            try {
+                return serializer.read(new ByteArrayInputStream((byte[]) value));
+            } catch (Exception e) {
+                throw UncheckedException.asUncheckedException(e);
+            }
         }
 
         public void put(Object key, Object value) {
-            entries.put(key, value);
+            if (serializer == null) {
+                entries.put(key, value);
+                return;
+            }
+            ByteArrayOutputStream outstr = new ByteArrayOutputStream();
+            try {
+                serializer.write(outstr, value);
+            } catch (Exception e) {
+                throw UncheckedException.asUncheckedException(e);
+            }
+            entries.put(key, outstr.toByteArray());
         }
 
         public void remove(Object key) {
             entries.remove(key);
         }
+
+        public Map<Object, Object> getAll(Collection<?> keys) {
+            Map<Object, Object> values = new HashMap<Object, Object>();
+            for (Object key : keys) {
+                if (entries.containsKey(key)) {
+                    values.put(key, get(key));
+                }
+            }
+            return values;
+        }
+
+        public void putAll(Map<?, ?> entries) {
+            for (Map.Entry<?, ?> entry : entries.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
     }
 }
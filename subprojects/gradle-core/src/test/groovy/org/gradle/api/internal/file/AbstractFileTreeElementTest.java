@@ -15,11 +15,13 @@
  */
 package org.gradle.api.internal.file;
 
+import org.gradle.api.GradleException;
 import org.gradle.api.file.RelativePath;
 import org.gradle.util.TestFile;
 import org.gradle.util.TemporaryFolder;
 import org.gradle.util.GFileUtils;
 
+import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.*;
 
 import org.junit.Rule;
@@ -51,6 +53,32 @@ public class AbstractFileTreeElementTest {
         assertTrue(element.needsCopy(dest));
     }
 
+    @Test
+    public void doesNotCreateDestinationFileWhenSourceIsMissing() {
+        TestFile source = tmpDir.getDir().file("missing");
+        TestFile dest = tmpDir.getDir().file("dir/dest");
+
+        TestFileTreeElement element = new TestFileTreeElement(source);
+
+        try {
+            element.copyTo(dest);
+            fail();
+        } catch (GradleException e) {
+            assertThat(e.getMessage(), equalTo(String.format("Could not copy display name to '%s'.", dest)));
+        }
+        dest.assertDoesNotExist();
+    }
+
+    @Test
+    public void createsMissingParentDirectoryOfDestinationFile() {
+        TestFile source = tmpDir.getDir().file("src").write("content");
+        TestFile dest = tmpDir.getDir().file("dir/subdir/dest");
+
+        assertTrue(new TestFileTreeElement(source).copyTo(dest));
+
+        dest.assertContents(equalTo("content"));
+    }
+
     private class TestFileTreeElement extends AbstractFileTreeElement {
         private final TestFile file;
 
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file
+
+import org.gradle.api.file.FileVisitDetails
+import org.gradle.api.file.FileVisitor
+import org.gradle.api.tasks.util.PatternSet
+import org.gradle.messaging.concurrent.DefaultExecutorFactory
+import org.gradle.util.TemporaryFolder
+import org.gradle.util.TestFile
+import org.junit.Rule
+import spock.lang.Specification
+
+class ParallelDirectoryWalkerTest extends Specification {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+    private final DefaultExecutorFactory executorFactory = new DefaultExecutorFactory()
+    private TestFile root
+
+    def setup() {
+        root = tmpDir.createDir('root')
+        ['a', 'b/c', 'b/d/e', 'f/g', '.svn'].each { path ->
+            TestFile dir = root.createDir(path)
+            dir.createFile('1.java')
+            dir.createFile('2.txt')
+        }
+        root.createFile('3.java')
+    }
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def visitsFilesAndDirsInSameOrderAsDefaultWalker() {
+        expect:
+        visit(new ParallelDirectoryWalker(visitor, executorFactory, 4)) == visit(new DefaultDirectoryWalker(visitor))
+        visited.contains('b/d/e/1.java')
+    }
+
+    def visitsFilesAndDirsInSameOrderAsDefaultWalkerWhenDepthFirst() {
+        expect:
+        visit(new ParallelDirectoryWalker(visitor, executorFactory, 4).depthFirst()) == visit(new DefaultDirectoryWalker(visitor).depthFirst())
+    }
+
+    def visitsOnlyMatchingFilesAndDirs() {
+        PatternSet patterns = new PatternSet()
+        patterns.include('b/**/*.java')
+
+        expect:
+        visit(new ParallelDirectoryWalker(visitor, executorFactory, 4).match(patterns)) as Set == ['b/', 'b/c/', 'b/c/1.java', 'b/d/', 'b/d/e/', 'b/d/e/1.java'] as Set
+    }
+
+    def canStopVisiting() {
+        FileVisitor visitor = Mock()
+
+        when:
+        new ParallelDirectoryWalker(visitor, executorFactory, 4).start(root)
+
+        then:
+        1 * visitor.visitFile(_) >> { FileVisitDetails details -> details.stopVisiting() }
+        0 * visitor._
+    }
+
+    private List<String> visited = []
+
+    private final FileVisitor visitor = [
+            visitDir: { FileVisitDetails details -> visited << details.path + '/' },
+            visitFile: { FileVisitDetails details -> visited << details.path }
+    ] as FileVisitor
+
+    private List<String> visit(DirectoryWalker walker) {
+        visited = []
+        walker.start(root)
+        return visited
+    }
+}
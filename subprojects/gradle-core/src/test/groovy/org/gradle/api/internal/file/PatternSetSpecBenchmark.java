@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.pattern.PatternMatcherFactory;
+import org.gradle.api.specs.Spec;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Measures the time taken to match the elements of a synthetic tree of 500k files against the include and exclude
+ * patterns of a typical source set, including the global excludes. The tree is walked the way {@link
+ * DefaultDirectoryWalker} walks a directory, but in memory, so that only the cost of matching is measured. Compares
+ * matching using a separate matcher per pattern with matching using a {@link PatternSetSpec}, with and without the
+ * match state of the parent directory. Run using {@code gradle core:benchmarkPatternMatching}.
+ */
+public class PatternSetSpecBenchmark {
+    private static final int FILES = 500000;
+    private static final int FILES_PER_DIR = 20;
+    private static final int DIRS_PER_DIR = 4;
+    private static final int ITERATIONS = 5;
+    private static final List<String> INCLUDES = Arrays.asList("**/*.java", "**/*.groovy", "org/gradle/**/*.properties");
+    private static final List<String> EXCLUDES = Arrays.asList("**/internal/**/*Test.java", "**/generated/**");
+
+    public static void main(String[] args) {
+        Dir root = createTree();
+        List<String> excludes = new ArrayList<String>(EXCLUDES);
+        excludes.addAll(Arrays.asList(DirectoryScanner.getDefaultExcludes()));
+        List<Spec<FileTreeElement>> none = Collections.emptyList();
+
+        final PatternSetSpec spec = new PatternSetSpec(true, INCLUDES, none, excludes, none);
+        Spec<FileTreeElement> compiled = new Spec<FileTreeElement>() {
+            public boolean isSatisfiedBy(FileTreeElement element) {
+                return spec.isSatisfiedBy(element);
+            }
+        };
+        Spec<FileTreeElement> perPattern = perPatternSpec(INCLUDES, excludes);
+
+        int expected = run("matcher per pattern", root, perPattern);
+        check(expected, run("compiled patterns", root, compiled));
+        check(expected, run("compiled patterns, parent state", root, spec));
+    }
+
+    private static void check(int expected, int actual) {
+        if (actual != expected) {
+            throw new AssertionError(String.format("Expected %s matching files, found %s.", expected, actual));
+        }
+    }
+
+    private static int run(String name, Dir root, Spec<FileTreeElement> spec) {
+        long best = Long.MAX_VALUE;
+        int matched = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            PathMatchingSpec.MatchState state = spec instanceof PathMatchingSpec ? ((PathMatchingSpec) spec).getRootState() : null;
+            matched = walk(root, new RelativePath(false), state, spec);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%s: %s files, %s matched, best of %s runs %sms", name, FILES, matched,
+                ITERATIONS, best / 1000000));
+        return matched;
+    }
+
+    private static int walk(Dir dir, RelativePath path, PathMatchingSpec.MatchState state, Spec<FileTreeElement> spec) {
+        int matched = 0;
+        for (String file : dir.files) {
+            FileTreeElement element = new DefaultFileTreeElement(null, path.append(true, file));
+            if (state != null ? state.isSatisfiedBy(element) : spec.isSatisfiedBy(element)) {
+                matched++;
+            }
+        }
+        for (Map.Entry<String, Dir> entry : dir.dirs.entrySet()) {
+            FileTreeElement element = new DefaultFileTreeElement(null, path.append(false, entry.getKey()));
+            PathMatchingSpec.MatchState childState = null;
+            if (state != null) {
+                childState = state.getChildState(element);
+                if (childState == null) {
+                    continue;
+                }
+            } else if (!spec.isSatisfiedBy(element)) {
+                continue;
+            }
+            matched += walk(entry.getValue(), element.getRelativePath(), childState, spec);
+        }
+        return matched;
+    }
+
+    private static Spec<FileTreeElement> perPatternSpec(List<String> includes, List<String> excludes) {
+        final List<Spec<RelativePath>> includeMatchers = new ArrayList<Spec<RelativePath>>();
+        for (String include : includes) {
+            includeMatchers.add(PatternMatcherFactory.getPatternMatcher(true, true, include));
+        }
+        final List<Spec<RelativePath>> excludeMatchers = new ArrayList<Spec<RelativePath>>();
+        for (String exclude : excludes) {
+            excludeMatchers.add(PatternMatcherFactory.getPatternMatcher(false, true, exclude));
+        }
+        return new Spec<FileTreeElement>() {
+            public boolean isSatisfiedBy(FileTreeElement element) {
+                RelativePath path = element.getRelativePath();
+                return anySatisfied(includeMatchers, path) && !anySatisfied(excludeMatchers, path);
+            }
+        };
+    }
+
+    private static boolean anySatisfied(List<Spec<RelativePath>> matchers, RelativePath path) {
+        for (Spec<RelativePath> matcher : matchers) {
+            if (matcher.isSatisfiedBy(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Dir createTree() {
+        String[] packages = {"org", "gradle", "api", "internal", "util", "generated", "impl", ".svn", "CVS", "tasks"};
+        String[] extensions = {".java", ".groovy", ".properties", ".txt", ".xml"};
+        Random random = new Random(FILES);
+        Dir root = new Dir();
+        List<Dir> dirs = new ArrayList<Dir>();
+        dirs.add(root);
+        int files = 0;
+        for (int i = 0; files < FILES; i++) {
+            Dir dir = dirs.get(i);
+            while (dir.dirs.size() < DIRS_PER_DIR) {
+                String name = packages[random.nextInt(packages.length)];
+                if (!dir.dirs.containsKey(name)) {
+                    Dir child = new Dir();
+                    dir.dirs.put(name, child);
+                    dirs.add(child);
+                }
+            }
+            for (int j = 0; j < FILES_PER_DIR && files < FILES; j++, files++) {
+                String name = String.format("Some%sClass%s", j, random.nextBoolean() ? "Test" : "");
+                dir.files.add(name + extensions[random.nextInt(extensions.length)]);
+            }
+        }
+        return root;
+    }
+
+    private static class Dir {
+        final List<String> files = new ArrayList<String>();
+        final Map<String, Dir> dirs = new LinkedHashMap<String, Dir>();
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file.archive;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.tools.zip.UnixStat;
+import org.apache.tools.zip.ZipEntry;
+import org.apache.tools.zip.ZipFile;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+import org.gradle.messaging.concurrent.DefaultExecutorFactory;
+import org.gradle.util.TemporaryFolder;
+import org.gradle.util.TestFile;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class ParallelZipWriterTest {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder();
+    private final TestFile zipFile = tmpDir.getDir().file("test.zip");
+
+    @Test
+    public void writesDirectoriesAndFiles() throws IOException {
+        ParallelZipWriter writer = new ParallelZipWriter(zipFile, null, 1);
+        writer.putDirectory("dir/", 1000L, UnixStat.DIR_FLAG | 0755);
+        writer.putFile("dir/file1", 1000L, UnixStat.FILE_FLAG | 0644).write("content1".getBytes());
+        writer.putFile("file2", 1000L, UnixStat.FILE_FLAG | 0600).write("content2".getBytes());
+        writer.close();
+
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            ZipEntry dir = zip.getEntry("dir/");
+            assertTrue(dir.isDirectory());
+            assertThat(dir.getUnixMode(), equalTo(UnixStat.DIR_FLAG | 0755));
+            ZipEntry file1 = zip.getEntry("dir/file1");
+            assertThat(file1.getUnixMode(), equalTo(UnixStat.FILE_FLAG | 0644));
+            assertThat(IOUtils.toString(zip.getInputStream(file1)), equalTo("content1"));
+            assertThat(IOUtils.toString(zip.getInputStream(zip.getEntry("file2"))), equalTo("content2"));
+        } finally {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void writesSameFileWhenDeflatingInParallel() throws IOException {
+        TestFile serialZipFile = tmpDir.getDir().file("serial.zip");
+        writeFiles(new ParallelZipWriter(serialZipFile, null, 1));
+        writeFiles(new ParallelZipWriter(zipFile, new DefaultExecutorFactory(), 4));
+
+        assertTrue(Arrays.equals(FileUtils.readFileToByteArray(zipFile), FileUtils.readFileToByteArray(serialZipFile)));
+    }
+
+    @Test
+    public void deflatesEntryTooLargeToBufferWhileWritingIt() throws IOException {
+        byte[] content = new byte[ParallelZipWriter.MAX_BUFFERED_ENTRY_SIZE + 100];
+        Arrays.fill(content, (byte) 'a');
+        ParallelZipWriter writer = new ParallelZipWriter(zipFile, new DefaultExecutorFactory(), 4);
+        writer.putFile("small", 1000L, UnixStat.FILE_FLAG | 0644).write("content".getBytes());
+        writer.putFile("large", 1000L, UnixStat.FILE_FLAG | 0644).write(content);
+        writer.close();
+
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            assertThat(IOUtils.toString(zip.getInputStream(zip.getEntry("small"))), equalTo("content"));
+            assertTrue(Arrays.equals(IOUtils.toByteArray(zip.getInputStream(zip.getEntry("large"))), content));
+        } finally {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void copiesDeflatedContentFromZipFileTree() throws IOException {
+        TestFile sourceZipFile = tmpDir.getDir().file("source.zip");
+        writeFiles(new ParallelZipWriter(sourceZipFile, null, 1));
+
+        final ParallelZipWriter writer = new ParallelZipWriter(zipFile, null, 1);
+        new ZipFileTree(sourceZipFile, tmpDir.getDir().file("expanded")).visit(new FileVisitor() {
+            public void visitDir(FileVisitDetails dirDetails) {
+            }
+
+            public void visitFile(FileVisitDetails fileDetails) {
+                DeflatedContent content = ((DeflatedContentSource) fileDetails).getDeflatedContent();
+                assertThat(content, notNullValue());
+                try {
+                    writer.putDeflatedFile(fileDetails.getPath(), fileDetails.getLastModified(),
+                            UnixStat.FILE_FLAG | 0644, content);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        writer.close();
+
+        assertTrue(Arrays.equals(FileUtils.readFileToByteArray(zipFile), FileUtils.readFileToByteArray(sourceZipFile)));
+    }
+
+    @Test
+    public void reusesDeflatedContentOfUnchangedEntriesOfPreviousFile() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            content.append(i % 97);
+        }
+        java.util.zip.ZipOutputStream previous = new java.util.zip.ZipOutputStream(new FileOutputStream(zipFile));
+        previous.setLevel(Deflater.BEST_SPEED);
+        previous.putNextEntry(new java.util.zip.ZipEntry("unchanged"));
+        previous.write(content.toString().getBytes());
+        previous.putNextEntry(new java.util.zip.ZipEntry("changed"));
+        previous.write(content.toString().getBytes());
+        previous.close();
+        long previousSize = getCompressedSize("unchanged");
+
+        ParallelZipWriter writer = new ParallelZipWriter(zipFile, true, new DefaultExecutorFactory(), 4);
+        writer.putFile("unchanged", 1000L, UnixStat.FILE_FLAG | 0644).write(content.toString().getBytes());
+        writer.putFile("changed", 1000L, UnixStat.FILE_FLAG | 0644).write("changed".getBytes());
+        writer.close();
+
+        assertThat(getCompressedSize("unchanged"), equalTo(previousSize));
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            assertThat(IOUtils.toString(zip.getInputStream(zip.getEntry("unchanged"))), equalTo(content.toString()));
+            assertThat(IOUtils.toString(zip.getInputStream(zip.getEntry("changed"))), equalTo("changed"));
+        } finally {
+            zip.close();
+        }
+        zipFile.getParentFile().file("test.zip.tmp").assertDoesNotExist();
+    }
+
+    @Test
+    public void deflatesEntriesWhoseSizeAndCrcMatchButContentDiffersFromPreviousFile() throws IOException {
+        byte[] previousContent = "previous content".getBytes();
+        byte[] content = "changed content!".getBytes();
+        java.util.zip.ZipOutputStream previous = new java.util.zip.ZipOutputStream(new FileOutputStream(zipFile));
+        previous.putNextEntry(new java.util.zip.ZipEntry("file"));
+        previous.write(previousContent);
+        previous.close();
+        // Make the previous entry look like it has the CRC-32 of the new content
+        byte[] zipBytes = FileUtils.readFileToByteArray(zipFile);
+        replaceAll(zipBytes, toBytes(crc(previousContent)), toBytes(crc(content)));
+        FileUtils.writeByteArrayToFile(zipFile, zipBytes);
+
+        ParallelZipWriter writer = new ParallelZipWriter(zipFile, true, null, 1);
+        writer.putFile("file", 1000L, UnixStat.FILE_FLAG | 0644).write(content);
+        writer.close();
+
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            assertThat(IOUtils.toString(zip.getInputStream(zip.getEntry("file"))), equalTo("changed content!"));
+        } finally {
+            zip.close();
+        }
+    }
+
+    private long getCompressedSize(String name) throws IOException {
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            return zip.getEntry(name).getCompressedSize();
+        } finally {
+            zip.close();
+        }
+    }
+
+    private void writeFiles(ParallelZipWriter writer) throws IOException {
+        for (int i = 0; i < 50; i++) {
+            StringBuilder content = new StringBuilder();
+            for (int j = 0; j < i * 100; j++) {
+                content.append(j % (i + 1));
+            }
+            OutputStream outstr = writer.putFile(String.format("file%s.txt", i), 1000L * i, UnixStat.FILE_FLAG | 0644);
+            outstr.write(content.toString().getBytes());
+        }
+        writer.close();
+    }
+
+    private static int crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] toBytes(int value) {
+        return new byte[]{(byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24)};
+    }
+
+    private static void replaceAll(byte[] bytes, byte[] from, byte[] to) {
+        for (int i = 0; i + from.length <= bytes.length; i++) {
+            boolean matches = true;
+            for (int j = 0; matches && j < from.length; j++) {
+                matches = bytes[i + j] == from[j];
+            }
+            if (matches) {
+                System.arraycopy(to, 0, bytes, i, to.length);
+            }
+        }
+    }
+}
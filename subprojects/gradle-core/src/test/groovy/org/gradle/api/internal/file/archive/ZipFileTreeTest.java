@@ -27,6 +27,19 @@ import static org.gradle.api.tasks.AntBuilderAwareUtil.*;
 import static org.gradle.api.file.FileVisitorUtil.*;
 import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.GradleException;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.tools.zip.ZipEntry;
+import org.apache.tools.zip.ZipOutputStream;
 
 import static java.util.Collections.*;
 
@@ -53,6 +66,69 @@ public class ZipFileTreeTest {
         assertSetContainsForAllTypes(tree, toList("subdir/file1.txt", "subdir2/file2.txt"));
     }
 
+    @Test
+    public void visitsContentsOfZipFileWithoutExtractingThem() {
+        rootDir.file("subdir/file1.txt").write("content");
+        rootDir.zipTo(zipFile);
+
+        final ByteArrayOutputStream outstr = new ByteArrayOutputStream();
+        tree.visit(new FileVisitor() {
+            public void visitDir(FileVisitDetails dirDetails) {
+            }
+
+            public void visitFile(FileVisitDetails fileDetails) {
+                fileDetails.copyTo(outstr);
+            }
+        });
+
+        assertThat(outstr.toString(), equalTo("content"));
+        expandDir.assertDoesNotExist();
+    }
+
+    @Test
+    public void reusesExtractedContentsUntilZipFileChanges() {
+        rootDir.file("file1.txt").write("content");
+        rootDir.zipTo(zipFile);
+
+        TestFile extracted = new TestFile(tree.getFiles().iterator().next());
+        extracted.write("modified");
+
+        assertThat(new ZipFileTree(zipFile, expandDir).getFiles(), equalTo(toSet((File) extracted)));
+        extracted.assertContents(equalTo("modified"));
+
+        rootDir.file("file1.txt").write("new content");
+        zipFile.delete();
+        rootDir.zipTo(zipFile);
+
+        TestFile changed = new TestFile(tree.getFiles().iterator().next());
+        assertThat(changed, not(equalTo(extracted)));
+        changed.assertContents(equalTo("new content"));
+        extracted.assertDoesNotExist();
+    }
+
+    @Test
+    public void visitsContentsOfZipFileWithEntryNamesWhichAreNotUtf8Encoded() throws IOException {
+        ZipOutputStream outstr = new ZipOutputStream(new FileOutputStream(zipFile));
+        try {
+            outstr.setEncoding("ISO-8859-1");
+            writeEntry(outstr, "file1.txt", "content 1");
+            writeEntry(outstr, "file\u00e92.txt", "content 2");
+            writeEntry(outstr, "file3.txt", "content 3");
+        } finally {
+            outstr.close();
+        }
+
+        assertThat(visitContents(), equalTo(toList("content 1", "content 2", "content 3")));
+    }
+
+    @Test
+    public void visitsContentsOfZipFileWithStoredEntriesWhichHaveADataDescriptor() throws IOException {
+        writeStoredZipWithDataDescriptor("file1.txt", "content");
+
+        assertThat(visitContents(), equalTo(toList("content")));
+        new TestFile(tree.getFiles().iterator().next()).assertContents(equalTo("content"));
+    }
+
     @Test
     public void canStopVisitingFiles() {
         rootDir.file("subdir/file1.txt").write("content");
@@ -91,4 +167,100 @@ public class ZipFileTreeTest {
             assertThat(e.getMessage(), equalTo("Could not expand ZIP '" + zipFile + "'."));
         }
     }
+
+    private List<String> visitContents() {
+        final List<String> contents = new ArrayList<String>();
+        tree.visit(new FileVisitor() {
+            public void visitDir(FileVisitDetails dirDetails) {
+            }
+
+            public void visitFile(FileVisitDetails fileDetails) {
+                ByteArrayOutputStream outstr = new ByteArrayOutputStream();
+                fileDetails.copyTo(outstr);
+                contents.add(outstr.toString());
+            }
+        });
+        return contents;
+    }
+
+    private void writeEntry(ZipOutputStream outstr, String name, String content) throws IOException {
+        outstr.putNextEntry(new ZipEntry(name));
+        outstr.write(content.getBytes());
+        outstr.closeEntry();
+    }
+
+    /**
+     * Writes a ZIP file containing a single STORED entry whose sizes and CRC are in a data descriptor after its
+     * content, rather than in its local header. Neither ZipOutputStream implementation writes these.
+     */
+    private void writeStoredZipWithDataDescriptor(String name, String content) throws IOException {
+        byte[] nameBytes = name.getBytes("UTF-8");
+        byte[] data = content.getBytes("UTF-8");
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ByteArrayOutputStream outstr = new ByteArrayOutputStream();
+        writeInt(outstr, 0x04034b50);
+        writeShort(outstr, 10);
+        writeShort(outstr, 8);
+        writeShort(outstr, 0);
+        writeInt(outstr, 0);
+        writeInt(outstr, 0);
+        writeInt(outstr, 0);
+        writeInt(outstr, 0);
+        writeShort(outstr, nameBytes.length);
+        writeShort(outstr, 0);
+        outstr.write(nameBytes);
+        outstr.write(data);
+        writeInt(outstr, 0x08074b50);
+        writeInt(outstr, (int) crc.getValue());
+        writeInt(outstr, data.length);
+        writeInt(outstr, data.length);
+
+        int centralDirectoryOffset = outstr.size();
+        writeInt(outstr, 0x02014b50);
+        writeShort(outstr, 20);
+        writeShort(outstr, 10);
+        writeShort(outstr, 8);
+        writeShort(outstr, 0);
+        writeInt(outstr, 0);
+        writeInt(outstr, (int) crc.getValue());
+        writeInt(outstr, data.length);
+        writeInt(outstr, data.length);
+        writeShort(outstr, nameBytes.length);
+        writeShort(outstr, 0);
+        writeShort(outstr, 0);
+        writeShort(outstr, 0);
+        writeShort(outstr, 0);
+        writeInt(outstr, 0);
+        writeInt(outstr, 0);
+        outstr.write(nameBytes);
+        int centralDirectorySize = outstr.size() - centralDirectoryOffset;
+
+        writeInt(outstr, 0x06054b50);
+        writeShort(outstr, 0);
+        writeShort(outstr, 0);
+        writeShort(outstr, 1);
+        writeShort(outstr, 1);
+        writeInt(outstr, centralDirectorySize);
+        writeInt(outstr, centralDirectoryOffset);
+        writeShort(outstr, 0);
+
+        FileOutputStream fileOutputStream = new FileOutputStream(zipFile);
+        try {
+            fileOutputStream.write(outstr.toByteArray());
+        } finally {
+            fileOutputStream.close();
+        }
+    }
+
+    private static void writeShort(ByteArrayOutputStream outstr, int value) {
+        outstr.write(value & 0xff);
+        outstr.write((value >>> 8) & 0xff);
+    }
+
+    private static void writeInt(ByteArrayOutputStream outstr, int value) {
+        writeShort(outstr, value & 0xffff);
+        writeShort(outstr, (value >>> 16) & 0xffff);
+    }
 }
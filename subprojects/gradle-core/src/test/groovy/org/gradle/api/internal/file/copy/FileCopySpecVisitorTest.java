@@ -19,6 +19,10 @@ package org.gradle.api.internal.file.copy;
 import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.DefaultFileTreeElement;
+import org.gradle.messaging.concurrent.DefaultExecutorFactory;
+import org.gradle.messaging.concurrent.ExecutorFactory;
+import org.gradle.util.OperatingSystem;
 import org.gradle.util.TestFile;
 import org.gradle.util.TemporaryFolder;
 import org.jmock.Expectations;
@@ -74,20 +78,200 @@ public class FileCopySpecVisitorTest {
         }
     }
 
+    @Test
+    public void copiesFileWhenTimestampDiffers() {
+        TestFile source = sourceDir.file("file.txt").write("content");
+        TestFile target = new TestFile(destDir, "file.txt");
+
+        visitor.startVisit(action(destDir));
+        visitor.copyFile(new DefaultFileTreeElement(source, new RelativePath(true, "file.txt")), target);
+        visitor.copyFile(new DefaultFileTreeElement(source, new RelativePath(true, "file.txt")), target);
+
+        target.assertContents(equalTo("content"));
+        assertTrue(visitor.getDidWork());
+        assertThat(visitor.getFilesCopied(), equalTo(1L));
+        assertThat(visitor.getBytesCopied(), equalTo(7L));
+        assertThat(visitor.getFilesSkipped(), equalTo(1L));
+        assertThat(visitor.getBytesSkipped(), equalTo(7L));
+    }
+
+    @Test
+    public void doesNotCopyFileWithSameContentWhenComparingContent() {
+        TestFile source = sourceDir.file("file.txt").write("content");
+        TestFile target = new TestFile(destDir, "file.txt").write("content");
+        target.setLastModified(source.lastModified() - 10000);
+        long lastModified = target.lastModified();
+
+        visitor.startVisit(action(destDir, false, true));
+        visitor.copyFile(new DefaultFileTreeElement(source, new RelativePath(true, "file.txt")), target);
+
+        assertThat(target.lastModified(), equalTo(lastModified));
+        assertFalse(visitor.getDidWork());
+        assertThat(visitor.getFilesCopied(), equalTo(0L));
+        assertThat(visitor.getFilesSkipped(), equalTo(1L));
+        assertThat(visitor.getBytesSkipped(), equalTo(7L));
+    }
+
+    @Test
+    public void copiesFileWithDifferentContentAndSameTimestampWhenComparingContent() {
+        TestFile source = sourceDir.file("file.txt").write("content");
+        TestFile target = new TestFile(destDir, "file.txt").write("other!!");
+        target.setLastModified(source.lastModified());
+
+        visitor.startVisit(action(destDir, false, true));
+        visitor.copyFile(new DefaultFileTreeElement(source, new RelativePath(true, "file.txt")), target);
+
+        target.assertContents(equalTo("content"));
+        assertTrue(visitor.getDidWork());
+        assertThat(visitor.getFilesCopied(), equalTo(1L));
+    }
+
+    @Test
+    public void hardLinksFileWhenUsingHardLinks() {
+        if (OperatingSystem.current().isWindows()) {
+            return;
+        }
+        TestFile source = sourceDir.file("file.txt").write("content");
+        TestFile target = new TestFile(destDir, "file.txt");
+
+        visitor.startVisit(action(destDir, true, false));
+        visitor.copyFile(new DefaultFileTreeElement(source, new RelativePath(true, "file.txt")), target);
+
+        target.assertContents(equalTo("content"));
+        assertTrue(visitor.getDidWork());
+        assertThat(visitor.getFilesLinked(), equalTo(1L));
+        assertThat(visitor.getBytesLinked(), equalTo(7L));
+
+        source.write("changed");
+        target.assertContents(equalTo("changed"));
+    }
+
+    @Test
+    public void replacesExistingDestinationFileWhenHardLinking() {
+        if (OperatingSystem.current().isWindows()) {
+            return;
+        }
+        TestFile source = sourceDir.file("file.txt").write("content");
+        TestFile target = new TestFile(destDir, "file.txt").write("old content");
+        target.setLastModified(source.lastModified() - 10000);
+
+        visitor.startVisit(action(destDir, true, false));
+        visitor.copyFile(new DefaultFileTreeElement(source, new RelativePath(true, "file.txt")), target);
+
+        target.assertContents(equalTo("content"));
+        assertThat(visitor.getFilesLinked(), equalTo(1L));
+
+        source.write("changed");
+        target.assertContents(equalTo("changed"));
+    }
+
+    @Test
+    public void copiesFilesUsingWorkerThreads() {
+        DefaultExecutorFactory executorFactory = new DefaultExecutorFactory();
+        FileCopySpecVisitor visitor = new FileCopySpecVisitor(executorFactory);
+        try {
+            visitor.startVisit(action(destDir, false, false, 4));
+            for (int i = 0; i < 20; i++) {
+                String path = String.format("dir%s/file%s.txt", i % 3, i);
+                visitor.visitFile(file(sourceDir.file(path).write("content " + i), path));
+            }
+            visitor.endVisit();
+        } finally {
+            executorFactory.stop();
+        }
+
+        for (int i = 0; i < 20; i++) {
+            new TestFile(destDir, String.format("dir%s/file%s.txt", i % 3, i)).assertContents(equalTo("content " + i));
+        }
+        assertTrue(visitor.getDidWork());
+        assertThat(visitor.getFilesCopied(), equalTo(20L));
+    }
+
+    @Test
+    public void copiesFilesWhileVisitingWhenUsingOneCopyThread() {
+        final ExecutorFactory executorFactory = context.mock(ExecutorFactory.class);
+        context.checking(new Expectations(){{
+            never(executorFactory).create(with(any(String.class)));
+        }});
+        FileCopySpecVisitor visitor = new FileCopySpecVisitor(executorFactory);
+
+        visitor.startVisit(action(destDir));
+        visitor.visitFile(file(sourceDir.file("file.txt").write("content"), "file.txt"));
+
+        new TestFile(destDir, "file.txt").assertContents(equalTo("content"));
+        visitor.endVisit();
+        assertThat(visitor.getFilesCopied(), equalTo(1L));
+        assertThat(visitor.getBytesCopied(), equalTo(7L));
+    }
+
+    @Test
+    public void lastCopyWinsWhenFileIsCopiedMoreThanOnceUsingWorkerThreads() {
+        TestFile first = sourceDir.file("a/file.txt").write("first");
+        TestFile second = sourceDir.file("b/file.txt").write("second");
+        second.setLastModified(first.lastModified() - 10000);
+
+        DefaultExecutorFactory executorFactory = new DefaultExecutorFactory();
+        FileCopySpecVisitor visitor = new FileCopySpecVisitor(executorFactory);
+        try {
+            visitor.startVisit(action(destDir, false, false, 4));
+            visitor.visitFile(file(first, "file.txt"));
+            visitor.visitFile(file(second, "file.txt"));
+            visitor.endVisit();
+        } finally {
+            executorFactory.stop();
+        }
+
+        new TestFile(destDir, "file.txt").assertContents(equalTo("second"));
+    }
+
+    @Test
+    public void copiesFileWithoutBackingFileWhileVisitingWhenUsingWorkerThreads() {
+        DefaultExecutorFactory executorFactory = new DefaultExecutorFactory();
+        FileCopySpecVisitor visitor = new FileCopySpecVisitor(executorFactory);
+        try {
+            visitor.startVisit(action(destDir, false, false, 4));
+            visitor.visitFile(file(new RelativePath(true, "rootfile.txt"), new File(destDir, "rootfile.txt")));
+            visitor.endVisit();
+        } finally {
+            executorFactory.stop();
+        }
+    }
+
     private FileCopyAction action(final File destDir) {
+        return action(destDir, false, false);
+    }
+
+    private FileCopyAction action(final File destDir, final boolean useHardLinks, final boolean compareContent) {
+        return action(destDir, useHardLinks, compareContent, 1);
+    }
+
+    private FileCopyAction action(final File destDir, final boolean useHardLinks, final boolean compareContent,
+                                  final int copyThreads) {
         final FileCopyAction action = context.mock(FileCopyAction.class);
         context.checking(new Expectations(){{
             allowing(action).getDestinationDir();
             will(returnValue(destDir));
+            allowing(action).isUseHardLinks();
+            will(returnValue(useHardLinks));
+            allowing(action).isCompareContent();
+            will(returnValue(compareContent));
+            allowing(action).getCopyThreads();
+            will(returnValue(copyThreads));
         }});
         return action;
     }
 
+    private FileVisitDetails file(File file, String path) {
+        return new FileVisitDetailsImpl(file, RelativePath.parse(true, path));
+    }
+
     private FileVisitDetails file(final RelativePath relativePath) {
         final FileVisitDetails details = context.mock(FileVisitDetails.class, relativePath.getPathString());
         context.checking(new Expectations(){{
             allowing(details).getRelativePath();
             will(returnValue(relativePath));
+            allowing(details).getSize();
+            will(returnValue(0L));
         }});
         return details;
     }
@@ -99,4 +283,13 @@ public class FileCopySpecVisitorTest {
         }});
         return details;
     }
+
+    private static class FileVisitDetailsImpl extends DefaultFileTreeElement implements FileVisitDetails {
+        private FileVisitDetailsImpl(File file, RelativePath relativePath) {
+            super(file, relativePath);
+        }
+
+        public void stopVisiting() {
+        }
+    }
 }
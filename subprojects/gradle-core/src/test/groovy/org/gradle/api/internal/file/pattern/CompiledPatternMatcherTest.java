@@ -0,0 +1,137 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.file.pattern;
+
+import org.gradle.api.file.RelativePath;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CompiledPatternMatcherTest {
+    private CompiledPatternMatcher matcher;
+
+    @Test public void matchesLiteralAndWildcardSteps() {
+        matcher = matcher(false, true, "a/b/c", "a/*.java", "b/?x");
+
+        assertTrue(matches(true, "a", "b", "c"));
+        assertTrue(matches(false, "a", "b", "c"));
+        assertTrue(matches(true, "a", "Some.java"));
+        assertTrue(matches(true, "b", "ax"));
+        assertFalse(matches(true, "a", "b"));
+        assertFalse(matches(true, "a", "b", "c", "d"));
+        assertFalse(matches(true, "a", "c"));
+        assertFalse(matches(true, "a", "b", "Some.java"));
+        assertFalse(matches(true, "b", "abx"));
+    }
+
+    @Test public void greedyStepMatchesZeroOrMoreSegments() {
+        matcher = matcher(false, true, "a/**/b", "c/**");
+
+        assertTrue(matches(true, "a", "b"));
+        assertTrue(matches(true, "a", "x", "b"));
+        assertTrue(matches(true, "a", "x", "b", "y", "b"));
+        assertFalse(matches(true, "a", "x", "b", "y"));
+        assertTrue(matches(false, "c"));
+        assertTrue(matches(true, "c"));
+        assertTrue(matches(true, "c", "x", "y"));
+    }
+
+    @Test public void matchesSegmentsAfterRepeatedGreedySteps() {
+        matcher = matcher(false, true, "**/*/*", "d/**/**");
+
+        assertTrue(matches(true, "a", "b"));
+        assertTrue(matches(true, "a", "b", "c", "e"));
+        assertFalse(matches(true, "a"));
+        assertTrue(matches(false, "d"));
+    }
+
+    @Test public void trailingSlashMatchesEverythingBelowDirectory() {
+        matcher = matcher(false, true, "a/", "b\\");
+
+        assertTrue(matches(false, "a"));
+        assertTrue(matches(true, "a", "b", "c"));
+        assertTrue(matches(true, "b", "c"));
+        assertFalse(matches(true, "c"));
+    }
+
+    @Test public void nameOnlyPatternMatchesFilesOnly() {
+        matcher = matcher(false, true, "**/CVS", "**/.svn/**");
+
+        assertTrue(matches(true, "CVS"));
+        assertTrue(matches(true, "a", "b", "CVS"));
+        assertFalse(matches(false, "a", "CVS"));
+        assertTrue(matches(false, "a", ".svn"));
+        assertTrue(matches(true, "a", ".svn", "entries"));
+    }
+
+    @Test public void partialMatchesDirectoriesWhichContainMatches() {
+        matcher = matcher(true, true, "a/b/*.java", "c/**/d");
+
+        assertTrue(matches(false, "a"));
+        assertTrue(matches(false, "a", "b"));
+        assertFalse(matches(false, "b"));
+        assertFalse(matches(false, "a", "c"));
+        assertFalse(matches(false, "a", "b", "c"));
+        assertFalse(matches(true, "a"));
+        assertTrue(matches(false, "c", "x", "y"));
+        assertTrue(matches(true, "c", "x", "y", "d"));
+        assertFalse(matches(true, "c", "x", "y"));
+    }
+
+    @Test public void emptyPatternMatchesEmptyPathOnly() {
+        matcher = matcher(true, true, "");
+
+        assertTrue(matches(true));
+        assertFalse(matches(true, "a"));
+        assertFalse(matches(false, "a"));
+    }
+
+    @Test public void canMatchCaseInsensitively() {
+        matcher = matcher(false, false, "a/B/c*");
+
+        assertTrue(matches(true, "A", "b", "CD"));
+        assertTrue(matches(true, "a", "B", "cd"));
+        assertFalse(matches(true, "a", "b", "d"));
+
+        matcher = matcher(false, true, "a/B/c*");
+
+        assertTrue(matches(true, "a", "B", "cd"));
+        assertFalse(matches(true, "A", "b", "CD"));
+    }
+
+    @Test public void canMatchChildrenUsingStateOfParent() {
+        matcher = matcher(true, true, "a/**/*.java");
+
+        CompiledPatternMatcher.State a = matcher.getStartState().step("a");
+        assertTrue(a.isSatisfiedBy(false));
+        assertTrue(a.step("b").step("C.java").isSatisfiedBy(true));
+        assertFalse(a.step("b").step("C.txt").isSatisfiedBy(true));
+
+        CompiledPatternMatcher.State b = matcher.getStartState().step("b");
+        assertTrue(b.isDead());
+        assertFalse(b.isSatisfiedBy(false));
+    }
+
+    private CompiledPatternMatcher matcher(boolean partialMatchDirs, boolean caseSensitive, String... patterns) {
+        return new CompiledPatternMatcher(partialMatchDirs, caseSensitive, Arrays.asList(patterns));
+    }
+
+    private boolean matches(boolean isFile, String... segments) {
+        return matcher.isSatisfiedBy(new RelativePath(isFile, segments));
+    }
+}
@@ -37,4 +37,20 @@ public class PatternStepFactoryTest {
         step = PatternStepFactory.getStep("*.jsp", true, false);
         assertTrue(step.matches("fred.JSP", true));
     }
+
+    @Test public void testSuffix() {
+        PatternStep step = PatternStepFactory.getStep("*.jsp", true, true);
+        assertTrue(step instanceof SuffixPatternStep);
+        assertTrue(step.matches(".jsp", true));
+        assertFalse(step.matches("jsp", true));
+        assertFalse(step.matches("fred.jspx", true));
+
+        step = PatternStepFactory.getStep("*", true, true);
+        assertTrue(step instanceof SuffixPatternStep);
+        assertTrue(step.matches("", true));
+        assertTrue(step.matches("anything", true));
+
+        assertTrue(PatternStepFactory.getStep("*.j?p", true, true) instanceof RegExpPatternStep);
+        assertTrue(PatternStepFactory.getStep("*.*", true, true) instanceof RegExpPatternStep);
+    }
 }
@@ -17,6 +17,7 @@ package org.gradle.api.internal.project;
 
 import org.gradle.api.internal.Factory;
 import org.jmock.Expectations;
+import org.jmock.Sequence;
 import org.jmock.integration.junit4.JMock;
 import org.jmock.integration.junit4.JUnit4Mockery;
 import org.junit.Test;
@@ -210,6 +211,24 @@ public class DefaultServiceRegistryTest {
         registry.close();
     }
 
+    @Test
+    public void closeClosesServicesInReverseOrderOfCreation() {
+        final TestCloseService first = context.mock(TestCloseService.class);
+        final TestStopService second = context.mock(TestStopService.class);
+        registry.add(TestCloseService.class, first);
+        registry.add(TestStopService.class, second);
+
+        context.checking(new Expectations() {{
+            Sequence sequence = context.sequence("close");
+            one(second).stop();
+            inSequence(sequence);
+            one(first).close();
+            inSequence(sequence);
+        }});
+
+        registry.close();
+    }
+
     @Test
     public void closeIgnoresServiceWithNoCloseOrStopMethod() {
         registry.add(String.class, "service");
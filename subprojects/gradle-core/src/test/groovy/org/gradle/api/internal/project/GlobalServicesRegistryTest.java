@@ -22,6 +22,8 @@ import org.gradle.api.internal.DefaultClassPathRegistry;
 import org.gradle.api.internal.GradleDistributionLocator;
 import org.gradle.cache.AutoCloseCacheFactory;
 import org.gradle.cache.CacheFactory;
+import org.gradle.groovy.scripts.CachingScriptCompilationHandler;
+import org.gradle.groovy.scripts.ScriptCompilationHandler;
 import org.gradle.initialization.ClassLoaderFactory;
 import org.gradle.initialization.CommandLineConverter;
 import org.gradle.initialization.DefaultClassLoaderFactory;
@@ -55,6 +57,12 @@ public class GlobalServicesRegistryTest {
         assertThat(registry.get(ClassPathRegistry.class), instanceOf(DefaultClassPathRegistry.class));
     }
 
+    @Test
+    public void providesAScriptCompilationHandler() {
+        assertThat(registry.get(ScriptCompilationHandler.class), instanceOf(CachingScriptCompilationHandler.class));
+        assertThat(registry.get(ScriptCompilationHandler.class), sameInstance(registry.get(ScriptCompilationHandler.class)));
+    }
+
     @Test
     public void providesAClassLoaderFactory() {
         assertThat(registry.get(ClassLoaderFactory.class), instanceOf(DefaultClassLoaderFactory.class));
@@ -27,6 +27,7 @@ import org.gradle.api.internal.artifacts.dsl.DefaultRepositoryHandlerFactory;
 import org.gradle.api.internal.artifacts.dsl.PublishArtifactFactory;
 import org.gradle.api.internal.tasks.ExecuteAtMostOnceTaskExecuter;
 import org.gradle.api.internal.tasks.TaskExecuter;
+import org.gradle.api.internal.tasks.compile.JavaCompilerPool;
 import org.gradle.cache.CacheFactory;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.DefaultCacheRepository;
@@ -35,6 +36,7 @@ import org.gradle.configuration.DefaultBuildConfigurer;
 import org.gradle.configuration.DefaultScriptPluginFactory;
 import org.gradle.configuration.ScriptPluginFactory;
 import org.gradle.groovy.scripts.DefaultScriptCompilerFactory;
+import org.gradle.groovy.scripts.ScriptCompilationHandler;
 import org.gradle.groovy.scripts.ScriptCompilerFactory;
 import org.gradle.initialization.*;
 import org.gradle.listener.DefaultListenerManager;
@@ -76,6 +78,7 @@ public class TopLevelBuildServiceRegistryTest {
     private final ClassLoaderFactory classLoaderFactory = context.mock(ClassLoaderFactory.class);
     private final Factory<LoggingManagerInternal> loggingManagerFactory = context.mock(Factory.class);
     private final ProgressLoggerFactory progressLoggerFactory = context.mock(ProgressLoggerFactory.class);
+    private final ScriptCompilationHandler scriptCompilationHandler = context.mock(ScriptCompilationHandler.class);
 
     @Before
     public void setUp() {
@@ -91,6 +94,8 @@ public class TopLevelBuildServiceRegistryTest {
             will(returnValue(loggingManagerFactory));
             allowing(parent).get(ProgressLoggerFactory.class);
             will(returnValue(progressLoggerFactory));
+            allowing(parent).get(ScriptCompilationHandler.class);
+            will(returnValue(scriptCompilationHandler));
         }});
     }
     
@@ -221,6 +226,12 @@ public class TopLevelBuildServiceRegistryTest {
         assertThat(factory.get(BuildConfigurer.class), sameInstance(factory.get(BuildConfigurer.class)));
     }
 
+    @Test
+    public void providesAJavaCompilerPool() {
+        assertThat(factory.get(JavaCompilerPool.class), instanceOf(JavaCompilerPool.class));
+        assertThat(factory.get(JavaCompilerPool.class), sameInstance(factory.get(JavaCompilerPool.class)));
+    }
+
     private ListenerManager expectListenerManagerCreated() {
         final ListenerManager listenerManager = new DefaultListenerManager();
         context.checking(new Expectations(){{
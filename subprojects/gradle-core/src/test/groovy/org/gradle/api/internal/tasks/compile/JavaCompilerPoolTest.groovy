@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile
+
+import java.nio.charset.Charset
+import javax.tools.JavaCompiler
+import javax.tools.StandardJavaFileManager
+import org.gradle.util.TemporaryFolder
+import org.gradle.util.TestFile
+import org.junit.Rule
+import spock.lang.Specification
+
+class JavaCompilerPoolTest extends Specification {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+    private final JavaCompiler compiler = Mock()
+    private final JavaCompilerPool pool = new JavaCompilerPool(compiler, 2)
+    private final Charset charset = Charset.forName('UTF-8')
+
+    def createsFileManagerWhenNoneAreIdle() {
+        StandardJavaFileManager fileManager = Mock()
+
+        when:
+        def pooled = pool.acquire(charset, [])
+
+        then:
+        pooled.fileManager == fileManager
+        !pooled.warm
+        1 * compiler.getStandardFileManager(null, null, charset) >> fileManager
+    }
+
+    def reusesFileManagerWhichHasBeenReleased() {
+        StandardJavaFileManager fileManager = Mock()
+        compiler.getStandardFileManager(null, null, charset) >> fileManager
+        pool.release(pool.acquire(charset, []))
+
+        when:
+        def pooled = pool.acquire(charset, [])
+
+        then:
+        pooled.fileManager == fileManager
+        pooled.warm
+        0 * compiler._
+    }
+
+    def createsFileManagerWhenAllAreInUse() {
+        StandardJavaFileManager fileManager1 = Mock()
+        StandardJavaFileManager fileManager2 = Mock()
+        compiler.getStandardFileManager(null, null, charset) >>> [fileManager1, fileManager2]
+
+        expect:
+        pool.acquire(charset, []).fileManager == fileManager1
+        pool.acquire(charset, []).fileManager == fileManager2
+    }
+
+    def doesNotReuseFileManagerWithDifferentCharset() {
+        StandardJavaFileManager fileManager1 = Mock()
+        StandardJavaFileManager fileManager2 = Mock()
+        Charset otherCharset = Charset.forName('ISO-8859-1')
+        compiler.getStandardFileManager(null, null, charset) >> fileManager1
+        compiler.getStandardFileManager(null, null, otherCharset) >> fileManager2
+        pool.release(pool.acquire(charset, []))
+
+        expect:
+        pool.acquire(otherCharset, []).fileManager == fileManager2
+        pool.acquire(charset, []).fileManager == fileManager1
+    }
+
+    def discardsFileManagerWhenAJarItHasOpenedHasChanged() {
+        StandardJavaFileManager fileManager1 = Mock()
+        StandardJavaFileManager fileManager2 = Mock()
+        compiler.getStandardFileManager(null, null, charset) >>> [fileManager1, fileManager2]
+        TestFile jar = tmpDir.file('lib.jar')
+        jar.write('content')
+        pool.release(pool.acquire(charset, [jar]))
+        jar.write('changed content')
+
+        when:
+        def pooled = pool.acquire(charset, [jar])
+
+        then:
+        pooled.fileManager == fileManager2
+        !pooled.warm
+        1 * fileManager1.close()
+    }
+
+    def reusesFileManagerForDifferentJars() {
+        StandardJavaFileManager fileManager = Mock()
+        compiler.getStandardFileManager(null, null, charset) >> fileManager
+        TestFile jar1 = tmpDir.file('lib1.jar')
+        TestFile jar2 = tmpDir.file('lib2.jar')
+        jar1.write('content')
+        jar2.write('content')
+        pool.release(pool.acquire(charset, [jar1]))
+
+        when:
+        def pooled = pool.acquire(charset, [jar1, jar2])
+
+        then:
+        pooled.fileManager == fileManager
+        pooled.warm
+    }
+
+    def closesFileManagerWhenTooManyAreIdle() {
+        StandardJavaFileManager fileManager1 = Mock()
+        StandardJavaFileManager fileManager2 = Mock()
+        StandardJavaFileManager fileManager3 = Mock()
+        compiler.getStandardFileManager(null, null, charset) >>> [fileManager1, fileManager2, fileManager3]
+        def pooled1 = pool.acquire(charset, [])
+        def pooled2 = pool.acquire(charset, [])
+        def pooled3 = pool.acquire(charset, [])
+        pool.release(pooled1)
+        pool.release(pooled2)
+
+        when:
+        pool.release(pooled3)
+
+        then:
+        1 * fileManager3.flush()
+        1 * fileManager3.close()
+        0 * fileManager1._
+        0 * fileManager2._
+    }
+
+    def closesIdleFileManagersWhenStopped() {
+        StandardJavaFileManager fileManager1 = Mock()
+        StandardJavaFileManager fileManager2 = Mock()
+        compiler.getStandardFileManager(null, null, charset) >>> [fileManager1, fileManager2]
+        def pooled1 = pool.acquire(charset, [])
+        def pooled2 = pool.acquire(charset, [])
+        pool.release(pooled1)
+
+        when:
+        pool.stop()
+
+        then:
+        1 * fileManager1.close()
+        0 * fileManager2._
+
+        when:
+        pool.release(pooled2)
+
+        then:
+        1 * fileManager2.flush()
+        1 * fileManager2.close()
+    }
+}
@@ -41,4 +41,8 @@ class ZipTest extends AbstractArchiveTaskTest {
         assertEquals(Zip.ZIP_EXTENSION, zip.extension)
         checkConstructor()
     }
+
+    @Test public void testIsNotIncrementalByDefault() {
+        assertFalse(zip.incremental)
+    }
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ package org.gradle.api.tasks.util
 
 import org.gradle.api.file.FileTreeElement
 import org.gradle.api.file.RelativePath
+import org.gradle.api.internal.file.PathMatchingSpec
 import org.gradle.api.specs.Spec
 import org.junit.Test
 import static org.gradle.util.Matchers.*
@@ -216,6 +217,23 @@ class PatternSetTest extends AbstractTestForPatternSet {
         assertFalse(spec.isSatisfiedBy(element(true, '132')))
     }
 
+    @Test public void specMatchesChildrenUsingStateOfParentDirectory() {
+        patternSet.include 'a/**/*.java'
+        patternSet.exclude '**/b/**'
+        PathMatchingSpec.MatchState root = (patternSet.asSpec as PathMatchingSpec).rootState
+
+        PathMatchingSpec.MatchState a = root.getChildState(element(false, 'a'))
+        assertThat(a, notNullValue())
+        assertThat(root.getChildState(element(false, 'c')), nullValue())
+        assertThat(root.getChildState(element(false, '.svn')), nullValue())
+        assertThat(a.getChildState(element(false, 'a', 'b')), nullValue())
+
+        PathMatchingSpec.MatchState c = a.getChildState(element(false, 'a', 'c'))
+        assertTrue(c.isSatisfiedBy(element(true, 'a', 'c', 'Some.java')))
+        assertFalse(c.isSatisfiedBy(element(true, 'a', 'c', 'Some.groovy')))
+        assertFalse(c.isSatisfiedBy(element(true, 'a', 'c', '.cvsignore')))
+    }
+
     @Test public void addsGlobalExcludesToExcludePatterns() {
         Spec<FileTreeElement> spec = patternSet.asSpec
 
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.btree;
+
+import org.gradle.cache.DefaultSerializer;
+import org.gradle.cache.PersistentCache;
+import org.gradle.util.GFileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+
+/**
+ * Measures the throughput of a {@link BTreePersistentIndexedCache} for a mix of puts and gets, when each change is
+ * written to the cache file, when changes are grouped using the write-ahead log, and when the cache file is also
+ * memory mapped. Run using {@code gradle core:benchmarkBTreeCache}.
+ */
+public class BTreePersistentIndexedCacheBenchmark {
+    private static final int KEYS = 5000;
+    private static final int OPERATIONS = 50000;
+    private static final int ITERATIONS = 3;
+
+    public static void main(String[] args) throws IOException {
+        run("flush per change", 0, false);
+        run("write-ahead log", BTreePersistentIndexedCache.DEFAULT_COMMIT_INTERVAL, false);
+        run("write-ahead log, mapped file", BTreePersistentIndexedCache.DEFAULT_COMMIT_INTERVAL, true);
+    }
+
+    private static void run(String name, int commitInterval, boolean mapFile) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            File baseDir = File.createTempFile("cache", "benchmark");
+            baseDir.delete();
+            baseDir.mkdirs();
+            try {
+                BTreePersistentIndexedCache<String, String> cache = new BTreePersistentIndexedCache<String, String>(
+                        backingCache(baseDir), new DefaultSerializer<String>(), (short) 512, 512, commitInterval, mapFile);
+                long start = System.nanoTime();
+                Random random = new Random(i);
+                for (int j = 0; j < OPERATIONS; j++) {
+                    String key = String.format("/some/project/src/main/java/Class%s.java", random.nextInt(KEYS));
+                    if (random.nextInt(4) == 0) {
+                        cache.put(key, String.format("%08x", random.nextInt()));
+                    } else {
+                        cache.get(key);
+                    }
+                }
+                cache.close();
+                best = Math.min(best, System.nanoTime() - start);
+            } finally {
+                GFileUtils.deleteDirectory(baseDir);
+            }
+        }
+        System.out.println(String.format("%s: %s operations, best of %s runs %sms (%.0f operations/s)", name,
+                OPERATIONS, ITERATIONS, best / 1000000, OPERATIONS * 1e9 / best));
+    }
+
+    private static PersistentCache backingCache(final File baseDir) {
+        return (PersistentCache) Proxy.newProxyInstance(PersistentCache.class.getClassLoader(),
+                new Class<?>[]{PersistentCache.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("getBaseDir")) {
+                            return baseDir;
+                        }
+                        if (method.getName().equals("toString")) {
+                            return baseDir.toString();
+                        }
+                        return null;
+                    }
+                });
+    }
+}
@@ -28,10 +28,12 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
@@ -249,6 +251,340 @@ public class BTreePersistentIndexedCacheTest {
         cache.verify();
     }
 
+    @Test
+    public void persistsEntriesAddedAsBatch() {
+        Map<String, Integer> entries = new HashMap<String, Integer>();
+        for (int i = 0; i < 100; i++) {
+            entries.put(String.format("key_%d", i), i);
+        }
+
+        cache.putAll(entries);
+        cache.verify();
+
+        cache.reset();
+
+        for (Map.Entry<String, Integer> entry : entries.entrySet()) {
+            assertThat(cache.get(entry.getKey()), equalTo(entry.getValue()));
+        }
+        cache.verify();
+    }
+
+    @Test
+    public void getAllReturnsExistingEntries() {
+        checkAdds(1, 2, 3, 4, 5);
+
+        Map<String, Integer> values = cache.getAll(Arrays.asList("key_1", "key_3", "unknown", "key_5"));
+
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        expected.put("key_1", 1);
+        expected.put("key_3", 3);
+        expected.put("key_5", 5);
+        assertThat(values, equalTo(expected));
+    }
+
+    @Test
+    public void persistsEntriesWhenUsingWriteAheadLog() {
+        cache = new BTreePersistentIndexedCache<String, Integer>(backingCache, serializer, (short) 4, 100, 3);
+
+        checkAdds(3, 2, 11, 5, 7, 1, 10, 8, 9, 4, 6, 0);
+        cache.remove("key_7");
+        cache.put("key_1", 100);
+        cache.reset();
+
+        assertNull(cache.get("key_7"));
+        assertThat(cache.get("key_1"), equalTo(100));
+        assertThat(cache.get("key_11"), equalTo(11));
+        assertThat(tmpDir.getDir().file("cache.log").length(), equalTo(0L));
+        cache.verify();
+    }
+
+    @Test
+    public void recoversCommittedChangesFromWriteAheadLog() {
+        cache = new BTreePersistentIndexedCache<String, Integer>(backingCache, serializer, (short) 4, 100, 2);
+        for (int i = 0; i < 10; i++) {
+            cache.put(String.format("key_%d", i), i);
+        }
+        cache.remove("key_3");
+        cache.put("key_20", 20);
+
+        // Simulate a crash by opening a copy of the cache files, without closing the cache
+        BTreePersistentIndexedCache<String, Integer> recovered = openCopyOfCacheFiles();
+
+        for (int i = 0; i < 10; i++) {
+            if (i != 3) {
+                assertThat(recovered.get(String.format("key_%d", i)), equalTo(i));
+            }
+        }
+        assertNull(recovered.get("key_3"));
+        assertThat(recovered.get("key_20"), equalTo(20));
+        recovered.verify();
+        recovered.close();
+    }
+
+    @Test
+    public void doesNotRecoverChangesWhichHaveNotBeenCommitted() {
+        cache = new BTreePersistentIndexedCache<String, Integer>(backingCache, serializer, (short) 4, 100, 5);
+        for (int i = 0; i < 7; i++) {
+            cache.put(String.format("key_%d", i), i);
+        }
+
+        BTreePersistentIndexedCache<String, Integer> recovered = openCopyOfCacheFiles();
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(recovered.get(String.format("key_%d", i)), equalTo(i));
+        }
+        assertNull(recovered.get("key_5"));
+        assertNull(recovered.get("key_6"));
+        recovered.close();
+    }
+
+    @Test
+    public void discardsPartlyWrittenRecordAtEndOfWriteAheadLog() throws IOException {
+        cache = new BTreePersistentIndexedCache<String, Integer>(backingCache, serializer, (short) 4, 100, 1);
+        cache.put("key_1", 1);
+        cache.put("key_2", 2);
+
+        TestFile logFile = tmpDir.getDir().file("cache.log");
+        RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+
+        BTreePersistentIndexedCache<String, Integer> recovered = openCopyOfCacheFiles();
+
+        assertThat(recovered.get("key_1"), equalTo(1));
+        assertNull(recovered.get("key_2"));
+        recovered.close();
+    }
+
+    @Test
+    public void persistsEntriesWhenUsingMappedFile() {
+        cache = new BTreePersistentIndexedCache<String, Integer>(backingCache, serializer, (short) 4, 100, 3, true);
+
+        checkAdds(3, 2, 11, 5, 7, 1, 10, 8, 9, 4, 6, 0);
+        cache.remove("key_7");
+        cache.close();
+
+        cache = new BTreePersistentIndexedCache<String, Integer>(backingCache, serializer, (short) 4, 100);
+        assertNull(cache.get("key_7"));
+        assertThat(cache.get("key_11"), equalTo(11));
+        cache.verify();
+    }
+
+    @Test
+    public void handlesKeysWithTheSameHash() {
+        cache = new CollidingCache<Integer>(serializer);
+
+        checkAdds(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11);
+        cache.remove("key_5");
+        cache.remove("key_1");
+        cache.remove("key_9");
+        cache.put("key_3", 300);
+        cache.put("key_12", 12);
+
+        cache.reset();
+        assertNull(cache.get("key_1"));
+        assertNull(cache.get("key_5"));
+        assertNull(cache.get("key_9"));
+        assertThat(cache.get("key_2"), equalTo(2));
+        assertThat(cache.get("key_3"), equalTo(300));
+        assertThat(cache.get("key_8"), equalTo(8));
+        assertThat(cache.get("key_12"), equalTo(12));
+        cache.verify();
+    }
+
+    @Test
+    public void persistsInlinedValues() {
+        BTreePersistentIndexedCache<String, Integer> cache = new BTreePersistentIndexedCache<String, Integer>(
+                backingCache, new SmallIntegerSerializer(), (short) 4, 100);
+
+        for (int i = 0; i < 20; i++) {
+            cache.put(String.format("key_%d", i), i);
+        }
+        cache.put("key_3", 300);
+        cache.remove("key_7");
+
+        cache.reset();
+        assertThat(cache.get("key_0"), equalTo(0));
+        assertThat(cache.get("key_3"), equalTo(300));
+        assertNull(cache.get("key_7"));
+        assertThat(cache.get("key_19"), equalTo(19));
+        cache.verify();
+    }
+
+    @Test
+    public void handlesInlinedValuesForKeysWithTheSameHash() {
+        BTreePersistentIndexedCache<String, Integer> cache = new CollidingCache<Integer>(new SmallIntegerSerializer());
+
+        cache.put("key_1", 1);
+        cache.put("key_2", 2);
+        cache.put("key_3", 3);
+        assertThat(cache.get("key_1"), equalTo(1));
+        assertThat(cache.get("key_2"), equalTo(2));
+        assertThat(cache.get("key_3"), equalTo(3));
+
+        cache.remove("key_1");
+        cache.put("key_3", 30);
+        cache.reset();
+
+        assertNull(cache.get("key_1"));
+        assertThat(cache.get("key_2"), equalTo(2));
+        assertThat(cache.get("key_3"), equalTo(30));
+        cache.verify();
+
+        cache.remove("key_2");
+        cache.remove("key_3");
+        assertNull(cache.get("key_2"));
+        assertNull(cache.get("key_3"));
+        cache.verify();
+    }
+
+    @Test
+    public void handlesSmallValuesForLongKeysWithTheSameHash() {
+        BTreePersistentIndexedCache<String, Integer> cache = new CollidingCache<Integer>(new SmallIntegerSerializer());
+        String key1 = "a key which is too long to be stored in the index 1";
+        String key2 = "a key which is too long to be stored in the index 2";
+
+        cache.put(key1, 1);
+        cache.put(key2, 2);
+        cache.put("key_3", 3);
+        cache.reset();
+
+        assertThat(cache.get(key1), equalTo(1));
+        assertThat(cache.get(key2), equalTo(2));
+        assertThat(cache.get("key_3"), equalTo(3));
+        assertNull(cache.get("a key which is too long to be stored in the index 3"));
+        cache.verify();
+
+        cache.remove(key1);
+        assertNull(cache.get(key1));
+        assertThat(cache.get(key2), equalTo(2));
+        cache.verify();
+    }
+
+    @Test
+    public void inlinesSmallValuesForKeysWhichAreFilePaths() {
+        BTreePersistentIndexedCache<String, Integer> cache = new BTreePersistentIndexedCache<String, Integer>(
+                backingCache, new SmallIntegerSerializer(), (short) 4, 100);
+        TestFile dir = tmpDir.getDir().file(
+                "some-project/subprojects/some-subproject/build/classes/main/org/gradle/api/internal/changedetection");
+
+        long keyLength = 0;
+        for (int i = 0; i < 100; i++) {
+            String key = dir.file(String.format("SomeGeneratedClassName%d.class", i)).getAbsolutePath();
+            keyLength += key.length();
+            cache.put(key, i);
+        }
+
+        cache.reset();
+        for (int i = 0; i < 100; i++) {
+            String key = dir.file(String.format("SomeGeneratedClassName%d.class", i)).getAbsolutePath();
+            assertThat(cache.get(key), equalTo(i));
+        }
+        assertNull(cache.get(dir.file("SomeGeneratedClassName100.class").getAbsolutePath()));
+        cache.verify();
+
+        // The values are stored in the index, without the keys
+        assertThat(tmpDir.getDir().file("cache.bin").length(), lessThan(keyLength));
+    }
+
+    @Test
+    public void canReadAndWriteEntriesFromMultipleThreads() throws Exception {
+        cache = new BTreePersistentIndexedCache<String, Integer>(backingCache, serializer, (short) 4, 100, 10);
+        checkConcurrentReadsAndWrites();
+    }
+
+    @Test
+    public void canReadAndWriteEntriesFromMultipleThreadsWhenUsingMappedFile() throws Exception {
+        cache = new BTreePersistentIndexedCache<String, Integer>(backingCache, serializer, (short) 4, 100, 10, true);
+        checkConcurrentReadsAndWrites();
+    }
+
+    private void checkConcurrentReadsAndWrites() throws Exception {
+        final int threadCount = 8;
+        final int entriesPerThread = 300;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<?>> results = new ArrayList<Future<?>>();
+        for (int i = 0; i < threadCount; i++) {
+            final int thread = i;
+            results.add(executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    Random random = new Random(thread);
+                    for (int j = 0; j < entriesPerThread; j++) {
+                        String key = String.format("key_%d_%d", thread, j);
+                        cache.put(key, thread * 10000 + j);
+                        assertThat(cache.get(key), equalTo(thread * 10000 + j));
+                        if (j % 10 == 0) {
+                            cache.remove(key);
+                            assertNull(cache.get(key));
+                        }
+
+                        // Read an entry written by another thread, which may or may not have been written yet
+                        int other = random.nextInt(threadCount);
+                        int otherEntry = random.nextInt(entriesPerThread);
+                        Integer value = cache.get(String.format("key_%d_%d", other, otherEntry));
+                        assertThat(value, anyOf(nullValue(), equalTo(other * 10000 + otherEntry)));
+                    }
+                    return null;
+                }
+            }));
+        }
+        executor.shutdown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+
+        cache.verify();
+        cache.reset();
+        for (int i = 0; i < threadCount; i++) {
+            for (int j = 0; j < entriesPerThread; j++) {
+                String key = String.format("key_%d_%d", i, j);
+                if (j % 10 == 0) {
+                    assertNull(cache.get(key));
+                } else {
+                    assertThat(cache.get(key), equalTo(i * 10000 + j));
+                }
+            }
+        }
+    }
+
+    /**
+     * A cache which uses the same hash for every key of the same length.
+     */
+    private class CollidingCache<V> extends BTreePersistentIndexedCache<String, V> {
+        public CollidingCache(Serializer<V> serializer) {
+            super(backingCache, serializer, (short) 4, 100);
+        }
+
+        @Override
+        long hash(String keyString) {
+            return keyString.length();
+        }
+    }
+
+    private static class SmallIntegerSerializer implements Serializer<Integer> {
+        public Integer read(InputStream instr) throws Exception {
+            return new DataInputStream(instr).readInt();
+        }
+
+        public void write(OutputStream outstr, Integer value) throws Exception {
+            new DataOutputStream(outstr).writeInt(value);
+        }
+    }
+
+    private BTreePersistentIndexedCache<String, Integer> openCopyOfCacheFiles() {
+        final TestFile copyDir = tmpDir.getDir().file("copy").createDir();
+        tmpDir.getDir().file("cache.bin").copyTo(copyDir.file("cache.bin"));
+        tmpDir.getDir().file("cache.log").copyTo(copyDir.file("cache.log"));
+
+        final PersistentCache copyCache = context.mock(PersistentCache.class, "copy");
+        context.checking(new Expectations(){{
+            allowing(copyCache).getBaseDir();
+            will(returnValue(copyDir));
+            allowing(copyCache).markValid();
+        }});
+        return new BTreePersistentIndexedCache<String, Integer>(copyCache, serializer, (short) 4, 100, 1);
+    }
+
     @Test
     public void canUseFileAsKey() {
 
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.cache.btree;
+
+import org.gradle.util.TemporaryFolder;
+import org.gradle.util.TestFile;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class CacheFileLockTest {
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+    private final TestFile lockFile = tmpDir.getDir().file("cache.lock");
+
+    @Test
+    public void lockIsSharedWithinProcess() throws Exception {
+        CacheFileLock lock1 = CacheFileLock.lock(lockFile, 0);
+        CacheFileLock lock2 = CacheFileLock.lock(lockFile, 0);
+        assertThat(lock1, sameInstance(lock2));
+
+        lock1.release();
+        assertTrue(isLocked());
+
+        lock2.release();
+        assertFalse(isLocked());
+    }
+
+    @Test
+    public void returnsNullWhenLockIsNotReleasedWithinTimeout() throws Exception {
+        RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+        try {
+            file.getChannel().lock();
+            long start = System.currentTimeMillis();
+            assertThat(CacheFileLock.lock(lockFile, 300), nullValue());
+            assertThat(System.currentTimeMillis() - start, greaterThanOrEqualTo(300L));
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void waitsForLockToBeReleased() throws Exception {
+        final RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+        file.getChannel().lock();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                    file.close();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        thread.start();
+
+        CacheFileLock lock = CacheFileLock.lock(lockFile, 20000);
+        assertThat(lock, notNullValue());
+        lock.release();
+        thread.join();
+    }
+
+    private boolean isLocked() throws Exception {
+        RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+        try {
+            FileLock lock = file.getChannel().tryLock();
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } finally {
+            file.close();
+        }
+    }
+}
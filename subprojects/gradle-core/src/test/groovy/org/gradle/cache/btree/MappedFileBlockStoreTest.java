@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.cache.btree;
+
+import org.gradle.util.TemporaryFolder;
+import org.gradle.util.TestFile;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class MappedFileBlockStoreTest {
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+    private final TestFile cacheFile = tmpDir.getDir().file("cache.bin");
+    private final BlockStore.Factory factory = new BlockStore.Factory() {
+        public Object create(Class<? extends BlockPayload> type) {
+            return new TestBlock();
+        }
+    };
+    private final Runnable initAction = new Runnable() {
+        public void run() {
+        }
+    };
+
+    @Test
+    public void canReadBlocksWhichHaveBeenWritten() {
+        MappedFileBlockStore store = new MappedFileBlockStore(cacheFile, 256);
+        store.open(initAction, factory);
+        List<BlockPointer> positions = writeBlocks(store, 100);
+
+        for (int i = 0; i < positions.size(); i++) {
+            assertThat(store.read(positions.get(i), TestBlock.class).value, equalTo(value(i)));
+        }
+        store.close();
+    }
+
+    @Test
+    public void trimsPaddingFromFileWhenClosed() {
+        MappedFileBlockStore store = new MappedFileBlockStore(cacheFile, 4096);
+        store.open(initAction, factory);
+        List<BlockPointer> positions = writeBlocks(store, 3);
+        TestBlock last = store.read(positions.get(2), TestBlock.class);
+        long end = last.getNextPos().getPos();
+        store.close();
+
+        assertThat(cacheFile.length(), equalTo(end));
+    }
+
+    @Test
+    public void usesTheSameFileFormatAsFileBackedBlockStore() {
+        MappedFileBlockStore store = new MappedFileBlockStore(cacheFile, 256);
+        store.open(initAction, factory);
+        List<BlockPointer> positions = writeBlocks(store, 20);
+        store.close();
+
+        FileBackedBlockStore fileStore = new FileBackedBlockStore(cacheFile);
+        fileStore.open(initAction, factory);
+        for (int i = 0; i < positions.size(); i++) {
+            assertThat(fileStore.read(positions.get(i), TestBlock.class).value, equalTo(value(i)));
+        }
+        BlockPointer pos = write(fileStore, "written by file store");
+        fileStore.close();
+
+        store = new MappedFileBlockStore(cacheFile, 256);
+        store.open(initAction, factory);
+        assertThat(store.read(pos, TestBlock.class).value, equalTo("written by file store"));
+        assertThat(store.read(positions.get(10), TestBlock.class).value, equalTo(value(10)));
+        store.close();
+    }
+
+    @Test
+    public void detectsCorruptedBlock() throws Exception {
+        MappedFileBlockStore store = new MappedFileBlockStore(cacheFile, 256);
+        store.open(initAction, factory);
+        BlockPointer pos = write(store, "some value");
+        store.close();
+
+        RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+        file.seek(file.length() - 1);
+        int checksumByte = file.read();
+        file.seek(file.length() - 1);
+        file.write(checksumByte ^ 0xFF);
+        file.close();
+
+        store.open(initAction, factory);
+        try {
+            store.read(pos, TestBlock.class);
+            fail();
+        } catch (CorruptedCacheException e) {
+            // expected
+        }
+        store.close();
+    }
+
+    private List<BlockPointer> writeBlocks(BlockStore store, int count) {
+        List<BlockPointer> positions = new ArrayList<BlockPointer>();
+        for (int i = 0; i < count; i++) {
+            positions.add(write(store, value(i)));
+        }
+        return positions;
+    }
+
+    private BlockPointer write(BlockStore store, String value) {
+        TestBlock block = new TestBlock();
+        block.value = value;
+        store.attach(block);
+        store.write(block);
+        return block.getPos();
+    }
+
+    private String value(int i) {
+        return String.format("value %s", i);
+    }
+
+    private static class TestBlock extends BlockPayload {
+        private String value;
+
+        @Override
+        protected int getSize() {
+            return 2 + value.length();
+        }
+
+        @Override
+        protected int getType() {
+            return 0x77;
+        }
+
+        @Override
+        protected void read(DataInputStream inputStream) throws Exception {
+            value = inputStream.readUTF();
+        }
+
+        @Override
+        protected void write(DataOutputStream outputStream) throws Exception {
+            outputStream.writeUTF(value);
+        }
+    }
+}
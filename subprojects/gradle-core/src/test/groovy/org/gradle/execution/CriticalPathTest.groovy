@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution
+
+import org.gradle.api.Project
+import org.gradle.api.Task
+import org.gradle.util.HelperUtil
+import spock.lang.Specification
+
+class CriticalPathTest extends Specification {
+    private final Project project = HelperUtil.createRootProject()
+    private final Map<String, Long> durations = [:]
+    private final TaskDurationHistory history = { Task task -> durations[task.name] } as TaskDurationHistory
+
+    def calculatesLongestPathThroughTasks() {
+        Task a = task('a', 10)
+        Task b = task('b', 100)
+        Task c = task('c', 5)
+        Task d = task('d', 1)
+
+        when:
+        CriticalPath path = new CriticalPath([a, b, c, d], [(c): [a, b] as Set, (d): [c] as Set], history)
+
+        then:
+        path.tasks == [b, c, d]
+        path.totalTime == 106
+        path.getRemainingTime(a) == 16
+        path.getRemainingTime(b) == 106
+        path.getRemainingTime(d) == 1
+    }
+
+    def usesMeanDurationForTasksWithNoHistory() {
+        Task a = task('a', 10)
+        Task b = task('b', 30)
+        Task c = task('c')
+
+        when:
+        CriticalPath path = new CriticalPath([a, b, c], [:], history)
+
+        then:
+        path.getDuration(c) == 20
+    }
+
+    def usesZeroDurationWhenNoTaskHasHistory() {
+        Task a = task('a')
+        Task b = task('b')
+
+        when:
+        CriticalPath path = new CriticalPath([a, b], [(b): [a] as Set], history)
+
+        then:
+        path.totalTime == 0
+        path.tasks == [a, b]
+    }
+
+    def ordersTasksLongestPathFirst() {
+        Task a = task('a', 10)
+        Task b = task('b', 100)
+        Task c = task('c', 10)
+        CriticalPath path = new CriticalPath([a, b, c], [:], history)
+        Comparator<Task> byName = { Task t1, Task t2 -> t1.name.compareTo(t2.name) } as Comparator
+
+        expect:
+        [a, c, b].sort(path.longestPathFirst(byName)) == [b, a, c]
+    }
+
+    def handlesEmptyPlan() {
+        when:
+        CriticalPath path = new CriticalPath([], [:], history)
+
+        then:
+        path.tasks.empty
+        path.totalTime == 0
+    }
+
+    private Task task(String name, Long duration = null) {
+        durations[name] = duration
+        return project.task(name)
+    }
+}
@@ -30,6 +30,7 @@ import org.gradle.api.tasks.TaskExecutionException;
 import org.gradle.api.tasks.TaskState;
 import org.gradle.listener.ListenerBroadcast;
 import org.gradle.listener.ListenerManager;
+import org.gradle.messaging.concurrent.DefaultExecutorFactory;
 import org.gradle.util.TestClosure;
 import org.jmock.Expectations;
 import org.jmock.integration.junit4.JMock;
@@ -135,6 +136,33 @@ public class DefaultTaskGraphExecuterTest {
         assertThat(executedTasks, equalTo(toList(a, b, c, d, e)));
     }
 
+    @Test
+    public void testExecutesTasksInDependencyOrderAndBatchesInOrderAddedWhenParallel() {
+        context.checking(new Expectations(){{
+            one(listenerManager).createAnonymousBroadcaster(TaskExecutionGraphListener.class);
+            will(returnValue(new ListenerBroadcast<TaskExecutionGraphListener>(TaskExecutionGraphListener.class)));
+            one(listenerManager).createAnonymousBroadcaster(TaskExecutionListener.class);
+            will(returnValue(new ListenerBroadcast<TaskExecutionListener>(TaskExecutionListener.class)));
+        }});
+        DefaultExecutorFactory executorFactory = new DefaultExecutorFactory();
+        taskExecuter = new DefaultTaskGraphExecuter(listenerManager, new ParallelTaskPlanExecuter(executorFactory, 4));
+
+        Task a = createTask("a");
+        Task b = createTask("b", a);
+        Task c = createTask("c", b);
+        Task d = createTask("d");
+
+        try {
+            taskExecuter.addTasks(toList(c));
+            taskExecuter.addTasks(toList(d));
+            taskExecuter.execute();
+        } finally {
+            executorFactory.stop();
+        }
+
+        assertThat(executedTasks, equalTo(toList(a, b, c, d)));
+    }
+
     @Test
     public void testAddTasksAddsDependencies() {
         Task a = createTask("a");
@@ -237,7 +265,8 @@ public class DefaultTaskGraphExecuterTest {
             taskExecuter.addTasks(toList(c));
             fail();
         } catch (CircularReferenceException e) {
-            // Expected
+            assertThat(e.getMessage(), equalTo(
+                    "Circular dependency between tasks. Cycle includes [task ':c' -> task ':b' -> task ':a' -> task ':c']."));
         }
     }
 
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import org.gradle.api.Action
+import org.gradle.api.Project
+import org.gradle.api.Task
+import org.gradle.messaging.concurrent.DefaultExecutorFactory
+import org.gradle.util.HelperUtil
+import spock.lang.Specification
+
+class ParallelTaskPlanExecuterTest extends Specification {
+    private final DefaultExecutorFactory executorFactory = new DefaultExecutorFactory()
+    private final ParallelTaskPlanExecuter executer = new ParallelTaskPlanExecuter(executorFactory, 3)
+    private final List<Task> executed = new CopyOnWriteArrayList<Task>()
+    private final Project project = HelperUtil.createRootProject()
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def executesEachTaskAfterItsDependencies() {
+        Task a = task('a')
+        Task b = task('b')
+        Task c = task('c')
+        Task d = task('d')
+
+        when:
+        executer.execute([a, b, c, d], [(c): [a, b] as Set, (d): [c] as Set], recordingAction())
+
+        then:
+        executed.size() == 4
+        executed.indexOf(c) > executed.indexOf(a)
+        executed.indexOf(c) > executed.indexOf(b)
+        executed.indexOf(d) > executed.indexOf(c)
+    }
+
+    def executesIndependentTasksConcurrently() {
+        Task a = task('a')
+        Task b = task('b')
+        CountDownLatch bothStarted = new CountDownLatch(2)
+        Action<Task> action = { Task task ->
+            bothStarted.countDown()
+            assert bothStarted.await(20, TimeUnit.SECONDS)
+            executed << task
+        } as Action
+
+        when:
+        executer.execute([a, b], [:], action)
+
+        then:
+        executed as Set == [a, b] as Set
+    }
+
+    def ignoresDependenciesWhichAreNotPartOfThePlan() {
+        Task a = task('a')
+        Task b = task('b')
+
+        when:
+        executer.execute([b], [(b): [a] as Set], recordingAction())
+
+        then:
+        executed == [b]
+    }
+
+    def doesNotStartDependentTasksWhenTaskFails() {
+        Task a = task('a')
+        Task b = task('b')
+        RuntimeException failure = new RuntimeException('broken')
+        Action<Task> action = { Task task ->
+            executed << task
+            if (task == a) {
+                throw failure
+            }
+        } as Action
+
+        when:
+        executer.execute([a, b], [(b): [a] as Set], action)
+
+        then:
+        RuntimeException e = thrown()
+        e == failure
+        executed == [a]
+    }
+
+    def reportsStatisticsForEachWorker() {
+        Task a = task('a')
+        Task b = task('b')
+
+        when:
+        def statistics = executer.execute([a, b], [:], recordingAction())
+
+        then:
+        statistics.size() == 3
+        statistics.collect { it.worker } == [1, 2, 3]
+        statistics.inject(0) { count, worker -> count + worker.taskCount } == 2
+    }
+
+    def cannotCreateExecuterWithNoWorkers() {
+        when:
+        new ParallelTaskPlanExecuter(executorFactory, 0)
+
+        then:
+        IllegalArgumentException e = thrown()
+        e.message == 'Cannot use 0 worker threads.'
+    }
+
+    private Action<Task> recordingAction() {
+        return { Task task -> executed << task } as Action
+    }
+
+    private Task task(String name) {
+        return project.task(name)
+    }
+}
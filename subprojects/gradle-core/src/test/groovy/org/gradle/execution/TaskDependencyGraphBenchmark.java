@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution;
+
+import org.gradle.api.Task;
+import org.gradle.api.specs.Specs;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+/**
+ * Measures the time taken to build an execution plan for synthetic task graphs of between 10k and 200k tasks. Each
+ * task depends on up to 4 randomly chosen tasks with a lower index, which gives a wide, shallow graph similar to a
+ * large multi-project build. Run using {@code gradle core:benchmarkTaskGraph}.
+ */
+public class TaskDependencyGraphBenchmark {
+    private static final int[] SIZES = {10000, 50000, 100000, 200000};
+    private static final int MAX_DEPENDENCIES = 4;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) {
+        for (int size : SIZES) {
+            final Map<Task, List<Task>> dependencies = createGraph(size);
+            TaskDependencyGraph.DependencyResolver resolver = new TaskDependencyGraph.DependencyResolver() {
+                public Collection<? extends Task> getDependencies(Task task) {
+                    return dependencies.get(task);
+                }
+            };
+
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < ITERATIONS; i++) {
+                Set<Task> plan = new LinkedHashSet<Task>();
+                long start = System.nanoTime();
+                new TaskDependencyGraph(resolver, Specs.satisfyAll()).addToPlan(dependencies.keySet(), plan);
+                best = Math.min(best, System.nanoTime() - start);
+                if (plan.size() != size) {
+                    throw new AssertionError(String.format("Expected %s tasks in plan, found %s.", size, plan.size()));
+                }
+            }
+            System.out.println(String.format("%s tasks: best of %s runs %sms", size, ITERATIONS, best / 1000000));
+        }
+    }
+
+    private static Map<Task, List<Task>> createGraph(int size) {
+        Random random = new Random(size);
+        List<Task> tasks = new ArrayList<Task>(size);
+        Map<Task, List<Task>> dependencies = new LinkedHashMap<Task, List<Task>>();
+        for (int i = 0; i < size; i++) {
+            Task task = syntheticTask(String.format(":project%s:task%s", i / 20, i % 20));
+            List<Task> taskDependencies = new ArrayList<Task>();
+            for (int j = random.nextInt(MAX_DEPENDENCIES + 1); j > 0 && i > 0; j--) {
+                Task dependency = tasks.get(random.nextInt(i));
+                if (!taskDependencies.contains(dependency)) {
+                    taskDependencies.add(dependency);
+                }
+            }
+            tasks.add(task);
+            dependencies.put(task, taskDependencies);
+        }
+        return dependencies;
+    }
+
+    private static Task syntheticTask(final String path) {
+        return (Task) Proxy.newProxyInstance(Task.class.getClassLoader(), new Class<?>[]{Task.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if (name.equals("getPath") || name.equals("toString")) {
+                            return path;
+                        }
+                        if (name.equals("compareTo")) {
+                            return path.compareTo(((Task) args[0]).getPath());
+                        }
+                        if (name.equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        if (name.equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+}
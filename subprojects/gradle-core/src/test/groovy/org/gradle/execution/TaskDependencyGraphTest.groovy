@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution
+
+import org.gradle.api.CircularReferenceException
+import org.gradle.api.Task
+import org.gradle.api.specs.Spec
+import org.gradle.api.specs.Specs
+import org.gradle.util.HelperUtil
+import spock.lang.Specification
+
+class TaskDependencyGraphTest extends Specification {
+    private final def project = HelperUtil.createRootProject()
+    private final Map<Task, List<Task>> dependencies = [:]
+    private final TaskDependencyGraph.DependencyResolver resolver = { Task task -> dependencies[task] ?: [] } as TaskDependencyGraph.DependencyResolver
+    private final Set<Task> plan = new LinkedHashSet<Task>()
+
+    def addsTasksAfterTheirDependenciesInTaskOrder() {
+        Task a = task('a')
+        Task b = task('b')
+        Task c = task('c', b, a)
+        Task d = task('d', c)
+
+        when:
+        graph().addToPlan([d], plan)
+
+        then:
+        plan as List == [a, b, c, d]
+    }
+
+    def doesNotAddTasksWhichAreAlreadyInPlan() {
+        Task a = task('a')
+        Task b = task('b', a)
+        plan << a
+
+        when:
+        graph().addToPlan([b, a], plan)
+
+        then:
+        plan as List == [a, b]
+    }
+
+    def doesNotAddFilteredTasksOrTheirDependencies() {
+        Task a = task('a')
+        Task b = task('b', a)
+        Task c = task('c', b)
+
+        when:
+        TaskDependencyGraph graph = graph({ it != b } as Spec)
+        graph.addToPlan([c], plan)
+
+        then:
+        plan as List == [c]
+        graph.getDependencies(c).empty
+    }
+
+    def providesDependenciesOfTasksInPlan() {
+        Task a = task('a')
+        Task b = task('b')
+        Task c = task('c', b, a)
+
+        when:
+        TaskDependencyGraph graph = graph()
+        graph.addToPlan([c], plan)
+
+        then:
+        graph.getDependencies(c) as List == [a, b]
+        graph.getDependencies(a).empty
+        graph.size() == 3
+    }
+
+    def reportsFullPathOfDependencyCycle() {
+        Task a = task('a')
+        Task b = task('b', a)
+        Task c = task('c', b)
+        Task d = task('d', c)
+        dependencies[a] = [c]
+
+        when:
+        graph().addToPlan([d], plan)
+
+        then:
+        CircularReferenceException e = thrown()
+        e.message == "Circular dependency between tasks. Cycle includes [task ':c' -> task ':b' -> task ':a' -> task ':c']."
+    }
+
+    def reportsTaskWhichDependsOnItself() {
+        Task a = task('a')
+        dependencies[a] = [a]
+
+        when:
+        graph().addToPlan([a], plan)
+
+        then:
+        CircularReferenceException e = thrown()
+        e.message == "Circular dependency between tasks. Cycle includes [task ':a' -> task ':a']."
+    }
+
+    def canHandleDeepChainsOfDependencies() {
+        List<Task> tasks = []
+        Task previous = null
+        1000.times { i ->
+            previous = previous == null ? task("task$i") : task("task$i", previous)
+            tasks << previous
+        }
+
+        when:
+        graph().addToPlan([previous], plan)
+
+        then:
+        plan as List == tasks
+    }
+
+    private TaskDependencyGraph graph(Spec<? super Task> filter = Specs.satisfyAll()) {
+        return new TaskDependencyGraph(resolver, filter)
+    }
+
+    private Task task(String name, Task... dependsOn) {
+        Task task = project.task(name)
+        dependencies[task] = dependsOn as List
+        return task
+    }
+}
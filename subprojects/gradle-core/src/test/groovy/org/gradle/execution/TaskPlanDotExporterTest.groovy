@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution
+
+import org.gradle.api.Project
+import org.gradle.api.Task
+import org.gradle.api.execution.TaskExecutionGraph
+import org.gradle.util.HelperUtil
+import org.gradle.util.TemporaryFolder
+import org.junit.Rule
+import spock.lang.Specification
+
+class TaskPlanDotExporterTest extends Specification {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+    private final Project project = HelperUtil.createRootProject()
+    private final TaskDurationHistory history = { Task task -> task.name == 'a' ? 20L : 5L } as TaskDurationHistory
+
+    def writesPlanWithCriticalPathWhenGraphIsPopulated() {
+        Task a = project.task('a')
+        Task b = project.task('b')
+        Task c = project.task('c', dependsOn: [a, b])
+        TaskExecutionGraph graph = Mock()
+        _ * graph.allTasks >> [a, b, c]
+        File destination = tmpDir.file('reports/plan.dot')
+
+        when:
+        new TaskPlanDotExporter(destination, history).graphPopulated(graph)
+
+        then:
+        String dot = destination.text
+        dot.startsWith('digraph "task execution plan" {')
+        dot.contains('// 3 tasks, critical path 2 tasks, estimated 25ms')
+        dot.contains('":a" [label=":a\\n20ms (path 25ms)", style=filled, fillcolor=salmon];')
+        dot.contains('":b" [label=":b\\n5ms (path 10ms)"];')
+        dot.contains('":a" -> ":c" [color=red];')
+        dot.contains('":b" -> ":c";')
+    }
+}
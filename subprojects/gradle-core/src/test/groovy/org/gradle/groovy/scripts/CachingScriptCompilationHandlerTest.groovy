@@ -82,6 +82,40 @@ class CachingScriptCompilationHandlerTest extends Specification {
         1 * target.loadFromDir(script1, parentClassLoader1, cacheDir, Script.class) >> Script.class
         1 * target.loadFromDir(script2, parentClassLoader2, cacheDir, Script.class) >> Script.class
     }
+
+    def keepsStatisticsAboutCompiledAndLoadedScripts() {
+        ScriptSource script = scriptSource('script')
+        ClassLoader parentClassLoader = Mock()
+        File cacheDir = new File('cacheDir')
+
+        when:
+        handler.compileToDir(script, parentClassLoader, cacheDir, null, Script.class)
+        handler.loadFromDir(script, parentClassLoader, cacheDir, Script.class)
+        handler.loadFromDir(script, parentClassLoader, cacheDir, Script.class)
+
+        then:
+        1 * target.compileToDir(script, parentClassLoader, cacheDir, null, Script.class)
+        1 * target.loadFromDir(script, parentClassLoader, cacheDir, Script.class) >> Script.class
+        handler.compiledScriptCount == 1
+        handler.loadedClassCount == 1
+        handler.cachedClassCount == 1
+    }
+
+    def resetsStatisticsWhenTheyAreLogged() {
+        ScriptSource script = scriptSource('script')
+        ClassLoader parentClassLoader = Mock()
+        File cacheDir = new File('cacheDir')
+        handler.compileToDir(script, parentClassLoader, cacheDir, null, Script.class)
+
+        when:
+        handler.logStatistics()
+
+        then:
+        handler.compiledScriptCount == 0
+        handler.compileTime == 0
+        handler.loadedClassCount == 0
+        handler.cachedClassCount == 0
+    }
     
     def scriptSource(String className = 'script') {
         ScriptSource script = Mock()
@@ -22,8 +22,6 @@ import org.gradle.logging.StandardOutputCapture;
 import org.gradle.cache.CacheBuilder;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.PersistentCache;
-import org.gradle.util.GUtil;
-import org.gradle.util.HashUtil;
 import org.gradle.util.TemporaryFolder;
 import org.gradle.util.TestFile;
 import org.jmock.Expectations;
@@ -40,7 +38,6 @@ import org.junit.runner.RunWith;
 import java.io.File;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.Map;
 
 import static org.gradle.util.Matchers.*;
 import static org.hamcrest.Matchers.*;
@@ -70,7 +67,6 @@ public class DefaultScriptCompilerFactoryTest {
     Mockery context = new JUnit4Mockery();
 
     Class expectedScriptBaseClass = groovy.lang.Script.class;
-    Map<String, Object> expectedCacheProperties;
 
     ScriptSource source;
     ScriptSource expectedSource;
@@ -90,7 +86,7 @@ public class DefaultScriptCompilerFactoryTest {
         testClassLoader = new URLClassLoader(new URL[0]);
         testScriptFile = new File(tmpDir.getDir(), "script/mybuild.craidle");
         cacheDir = new File(tmpDir.getDir(), "cache");
-        expectedScriptCacheDir = new TestFile(cacheDir, "Script").createDir();
+        expectedScriptCacheDir = new TestFile(cacheDir, "classes").createDir();
         expectedScriptRunner = context.mock(ScriptRunner.class);
         scriptProcessor = new DefaultScriptCompilerFactory(scriptCompilationHandlerMock, scriptRunnerFactoryMock, cacheRepositoryMock);
         source = context.mock(ScriptSource.class);
@@ -115,8 +111,6 @@ public class DefaultScriptCompilerFactoryTest {
         }});
 
         expectedSource = new CachingScriptSource(source);
-        String expectedHash = HashUtil.createHash(TEST_SCRIPT_TEXT);
-        expectedCacheProperties = GUtil.map("source.filename", "file-name", "source.hash", expectedHash);
 
         originalClassLoader = Thread.currentThread().getContextClassLoader();
         Thread.currentThread().setContextClassLoader(testClassLoader);
@@ -132,10 +126,7 @@ public class DefaultScriptCompilerFactoryTest {
         final Collector<TestScript> collector = collector();
 
         context.checking(new Expectations() {{
-            one(cacheRepositoryMock).cache("scripts/class-name");
-            will(returnValue(cacheBuilder));
-
-            one(cacheBuilder).withProperties(expectedCacheProperties);
+            one(cacheRepositoryMock).cache(with(startsWith("scripts/")));
             will(returnValue(cacheBuilder));
 
             one(cacheBuilder).open();
@@ -167,10 +158,7 @@ public class DefaultScriptCompilerFactoryTest {
         final Collector<TestScript> collector = collector();
 
         context.checking(new Expectations() {{
-            one(cacheRepositoryMock).cache("scripts/class-name");
-            will(returnValue(cacheBuilder));
-
-            one(cacheBuilder).withProperties(expectedCacheProperties);
+            one(cacheRepositoryMock).cache(with(startsWith("scripts/")));
             will(returnValue(cacheBuilder));
 
             one(cacheBuilder).open();
@@ -198,10 +186,7 @@ public class DefaultScriptCompilerFactoryTest {
         };
 
         context.checking(new Expectations(){{
-            one(cacheRepositoryMock).cache("scripts/class-name");
-            will(returnValue(cacheBuilder));
-
-            one(cacheBuilder).withProperties(expectedCacheProperties);
+            one(cacheRepositoryMock).cache(with(startsWith("scripts/")));
             will(returnValue(cacheBuilder));
 
             one(cacheBuilder).open();
@@ -223,35 +208,45 @@ public class DefaultScriptCompilerFactoryTest {
     }
 
     @Test
-    public void testUsesSuppliedTransformerToDetermineCacheDirName() {
+    public void testUsesSameCacheForSameScriptAndDifferentCacheForDifferentTransformer() {
         final Transformer transformer = context.mock(Transformer.class);
-        final File expectedCacheDir = new TestFile(expectedScriptCacheDir.getParentFile(), "transformer_Script").createDir();
+        final Collector<String> cacheName1 = collector();
+        final Collector<String> cacheName2 = collector();
+        final Collector<String> cacheName3 = collector();
 
         context.checking(new Expectations(){{
             allowing(transformer).getId();
             will(returnValue("transformer"));
 
-            one(cacheRepositoryMock).cache("scripts/class-name");
-            will(returnValue(cacheBuilder));
+            one(cacheRepositoryMock).cache(with(startsWith("scripts/")));
+            will(collectTo(cacheName1).then(returnValue(cacheBuilder)));
 
-            one(cacheBuilder).withProperties(expectedCacheProperties);
-            will(returnValue(cacheBuilder));
+            one(cacheRepositoryMock).cache(with(startsWith("scripts/")));
+            will(collectTo(cacheName2).then(returnValue(cacheBuilder)));
 
-            one(cacheBuilder).open();
+            one(cacheRepositoryMock).cache(with(startsWith("scripts/")));
+            will(collectTo(cacheName3).then(returnValue(cacheBuilder)));
+
+            allowing(cacheBuilder).open();
             will(returnValue(cacheMock));
 
             allowing(cacheMock).isValid();
             will(returnValue(true));
 
-            one(scriptCompilationHandlerMock).loadFromDir(expectedSource, testClassLoader, expectedCacheDir,
+            allowing(scriptCompilationHandlerMock).loadFromDir(expectedSource, testClassLoader, expectedScriptCacheDir,
                     expectedScriptBaseClass);
             will(returnValue(TestScript.class));
 
-            one(scriptRunnerFactoryMock).create(with(notNullValue(TestScript.class)));
+            allowing(scriptRunnerFactoryMock).create(with(notNullValue(TestScript.class)));
             will(returnValue(expectedScriptRunner));
         }});
 
-        assertSame(expectedScriptRunner, scriptProcessor.createCompiler(source).setTransformer(transformer).compile(expectedScriptBaseClass));
+        scriptProcessor.createCompiler(source).compile(expectedScriptBaseClass);
+        scriptProcessor.createCompiler(source).compile(expectedScriptBaseClass);
+        scriptProcessor.createCompiler(source).setTransformer(transformer).compile(expectedScriptBaseClass);
+
+        assertThat(cacheName2.get(), equalTo(cacheName1.get()));
+        assertThat(cacheName3.get(), not(equalTo(cacheName1.get())));
     }
 
     public static class TestScript extends Script {
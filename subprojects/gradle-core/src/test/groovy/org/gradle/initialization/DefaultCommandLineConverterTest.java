@@ -38,6 +38,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 /**
  * @author Hans Dockter
@@ -62,6 +63,8 @@ public class DefaultCommandLineConverterTest {
     private boolean expectedColorOutput = true;
     private StartParameter actualStartParameter;
     private boolean expectedProfile;
+    private int expectedParallelThreadCount;
+    private File expectedPlanExportFile;
 
     @Rule
     public TemporaryFolder testDir = new TemporaryFolder();
@@ -100,6 +103,8 @@ public class DefaultCommandLineConverterTest {
         assertEquals(expectedExcludedTasks, startParameter.getExcludedTaskNames());
         assertEquals(expectedInitScripts, startParameter.getInitScripts());
         assertEquals(expectedProfile, startParameter.isProfile());
+        assertEquals(expectedParallelThreadCount, startParameter.getParallelThreadCount());
+        assertEquals(expectedPlanExportFile, startParameter.getPlanExportFile());
     }
 
     private void checkConversion(final boolean embedded, String... args) {
@@ -327,11 +332,11 @@ public class DefaultCommandLineConverterTest {
 
     @Test
     public void withInitScripts() {
-        File script1 = new File("init1.gradle");
+        File script1 = new File(expectedProjectDir, "init1.gradle");
         expectedInitScripts.add(script1);
         checkConversion("-Iinit1.gradle");
 
-        File script2 = new File("init2.gradle");
+        File script2 = new File(expectedProjectDir, "init2.gradle");
         expectedInitScripts.add(script2);
         checkConversion("-Iinit1.gradle", "-Iinit2.gradle");
     }
@@ -342,6 +347,43 @@ public class DefaultCommandLineConverterTest {
         checkConversion("--profile");
     }
 
+    @Test
+    public void withParallelThreads() {
+        expectedParallelThreadCount = 4;
+        checkConversion("--parallel-threads", "4");
+    }
+
+    @Test
+    public void withNonNumericParallelThreads() {
+        try {
+            checkConversion("--parallel-threads", "many");
+            fail();
+        } catch (CommandLineArgumentException e) {
+            assertThat(e.getMessage(), equalTo(
+                    "Error: The --parallel-threads option requires a number of threads, but was 'many'."));
+        }
+    }
+
+    @Test
+    public void withExportPlan() {
+        expectedPlanExportFile = new File(expectedProjectDir, "plan.dot");
+        checkConversion("--export-plan", "plan.dot");
+    }
+
+    @Test
+    public void resolvesRelativePathsAgainstCurrentDirOfStartParameter() {
+        StartParameter startParameter = new StartParameter();
+        startParameter.setCurrentDir(testDir.getDir());
+        File currentDir = startParameter.getCurrentDir();
+        CommandLineParser parser = new CommandLineParser();
+        commandLineConverter.configure(parser);
+
+        commandLineConverter.convert(parser.parse(toList("-bsub/build.gradle", "-Iinit.gradle")), startParameter);
+
+        assertThat(startParameter.getBuildFile(), equalTo(new File(currentDir, "sub/build.gradle")));
+        assertThat(startParameter.getInitScripts(), equalTo(toList(new File(currentDir, "init.gradle"))));
+    }
+
     @Test(expected = CommandLineArgumentException.class)
     public void withUnknownOption() {
         checkConversion("--unknown");
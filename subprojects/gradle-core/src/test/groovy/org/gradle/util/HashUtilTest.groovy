@@ -0,0 +1,53 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.util
+
+import java.security.MessageDigest
+import org.junit.Rule
+import spock.lang.Specification
+
+class HashUtilTest extends Specification {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+
+    def hashesSmallFile() {
+        TestFile file = tmpDir.file('small.txt').write('some content')
+
+        expect:
+        HashUtil.createHash(file) == md5(file.bytes)
+    }
+
+    def hashesLargeFileWhichIsLargerThanMappingThreshold() {
+        TestFile file = tmpDir.file('large.bin')
+        byte[] content = new byte[(int) HashUtil.MAPPED_HASH_THRESHOLD + 12345]
+        new Random(12).nextBytes(content)
+        file.bytes = content
+
+        expect:
+        HashUtil.createHash(file) == md5(content)
+    }
+
+    def hashesEmptyFile() {
+        TestFile file = tmpDir.file('empty.txt').write('')
+
+        expect:
+        HashUtil.createHash(file) == md5(new byte[0])
+    }
+
+    private byte[] md5(byte[] content) {
+        return MessageDigest.getInstance('MD5').digest(content)
+    }
+}
@@ -17,14 +17,17 @@ package org.gradle.launcher;
 
 import org.gradle.*;
 import org.gradle.api.internal.project.ServiceRegistry;
+import org.gradle.api.GradleException;
 import org.gradle.configuration.GradleLauncherMetaData;
 import org.gradle.gradleplugin.userinterface.swing.standalone.BlockingApplication;
 import org.gradle.initialization.*;
 import org.gradle.logging.LoggingConfiguration;
 import org.gradle.logging.LoggingManagerInternal;
 import org.gradle.logging.LoggingServiceRegistry;
+import org.gradle.logging.internal.OutputEventListener;
 import org.gradle.util.GradleVersion;
 
+import java.io.File;
 import java.io.PrintStream;
 import java.util.List;
 
@@ -35,6 +38,8 @@ public class CommandLineActionFactory {
     private static final String HELP = "h";
     private static final String GUI = "gui";
     private static final String VERSION = "v";
+    static final String DAEMON = "daemon";
+    private static final String STOP = "stop";
     private final BuildCompleter buildCompleter;
 
     public CommandLineActionFactory(BuildCompleter buildCompleter) {
@@ -58,6 +63,8 @@ public class CommandLineActionFactory {
         parser.option(HELP, "?", "help").hasDescription("Shows this help message");
         parser.option(VERSION, "version").hasDescription("Print version info.");
         parser.option(GUI).hasDescription("Launches a GUI application");
+        parser.option(DAEMON).hasDescription("Runs the build in the Gradle daemon, starting the daemon if it is not running.");
+        parser.option(STOP).hasDescription("Stops the Gradle daemon, if it is running.");
 
         LoggingConfiguration loggingConfiguration = new LoggingConfiguration();
         ServiceRegistry loggingServices = createLoggingServices();
@@ -67,7 +74,7 @@ public class CommandLineActionFactory {
             ParsedCommandLine commandLine = parser.parse(args);
             CommandLineConverter<LoggingConfiguration> loggingConfigurationConverter = loggingServices.get(CommandLineConverter.class);
             loggingConfiguration = loggingConfigurationConverter.convert(commandLine);
-            action = createAction(parser, commandLine, startParameterConverter, loggingServices);
+            action = createAction(parser, commandLine, args, startParameterConverter, loggingServices);
         } catch (CommandLineArgumentException e) {
             action = new CommandLineParseFailureAction(parser, e);
         }
@@ -87,7 +94,12 @@ public class CommandLineActionFactory {
         return new DefaultGradleLauncherFactory(loggingServices);
     }
 
-    private Runnable createAction(CommandLineParser parser, ParsedCommandLine commandLine, CommandLineConverter<StartParameter> startParameterConverter, ServiceRegistry loggingServices) {
+    DaemonClient createDaemonClient(StartParameter startParameter, ServiceRegistry loggingServices) {
+        DaemonRegistry registry = new DaemonRegistry(startParameter.getGradleUserHomeDir());
+        return new DaemonClient(new DaemonConnector(registry), loggingServices.get(OutputEventListener.class));
+    }
+
+    private Runnable createAction(CommandLineParser parser, ParsedCommandLine commandLine, List<String> args, CommandLineConverter<StartParameter> startParameterConverter, ServiceRegistry loggingServices) {
         if (commandLine.hasOption(HELP)) {
             return new ShowUsageAction(parser);
         }
@@ -99,6 +111,12 @@ public class CommandLineActionFactory {
         }
 
         StartParameter startParameter = startParameterConverter.convert(commandLine);
+        if (commandLine.hasOption(STOP)) {
+            return new StopDaemonAction(createDaemonClient(startParameter, loggingServices));
+        }
+        if (commandLine.hasOption(DAEMON)) {
+            return new DaemonBuildAction(createDaemonClient(startParameter, loggingServices), args);
+        }
         return new RunBuildAction(startParameter, loggingServices);
     }
 
@@ -173,6 +191,36 @@ public class CommandLineActionFactory {
         }
     }
 
+    private class DaemonBuildAction implements Runnable {
+        private final DaemonClient client;
+        private final List<String> args;
+
+        public DaemonBuildAction(DaemonClient client, List<String> args) {
+            this.client = client;
+            this.args = args;
+        }
+
+        public void run() {
+            boolean successful = client.execute(args, new File(System.getProperty("user.dir")));
+            buildCompleter.exit(successful ? null : new GradleException("Build failed in the Gradle daemon."));
+        }
+    }
+
+    private class StopDaemonAction implements Runnable {
+        private final DaemonClient client;
+
+        public StopDaemonAction(DaemonClient client) {
+            this.client = client;
+        }
+
+        public void run() {
+            if (!client.stop()) {
+                System.out.println("No Gradle daemon is running.");
+            }
+            buildCompleter.exit(null);
+        }
+    }
+
     class WithLoggingAction implements Runnable {
         private final LoggingConfiguration loggingConfiguration;
         private final ServiceRegistry loggingServices;
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.launcher;
+
+import org.gradle.logging.internal.OutputEvent;
+
+/**
+ * The messages which a daemon sends to a client while it runs a build for the client.
+ */
+public interface DaemonBuildListener {
+    void onOutput(OutputEvent event);
+
+    /**
+     * Called when the build has finished. This is the last message for the build.
+     */
+    void buildFinished(boolean successful);
+}
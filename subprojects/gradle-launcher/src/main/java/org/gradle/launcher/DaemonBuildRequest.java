@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.launcher;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request to run a build in a daemon.
+ */
+public class DaemonBuildRequest implements Serializable {
+    private final List<String> args;
+    private final File currentDir;
+
+    /**
+     * @param args The command-line arguments of the build.
+     * @param currentDir The working directory of the client, which relative paths in the arguments are resolved
+     * against.
+     */
+    public DaemonBuildRequest(List<String> args, File currentDir) {
+        this.args = new ArrayList<String>(args);
+        this.currentDir = currentDir;
+    }
+
+    public List<String> getArgs() {
+        return args;
+    }
+
+    public File getCurrentDir() {
+        return currentDir;
+    }
+}
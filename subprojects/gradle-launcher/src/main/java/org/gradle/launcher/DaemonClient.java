@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.launcher;
+
+import org.gradle.logging.internal.OutputEvent;
+import org.gradle.logging.internal.OutputEventListener;
+import org.gradle.messaging.remote.MessagingClient;
+import org.gradle.messaging.remote.ObjectConnection;
+import org.gradle.util.UncheckedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs builds in the daemon on behalf of the command-line client. The output of a build is passed to the given
+ * listener as it is generated by the daemon. While waiting for a build to finish, the client checks every so often that
+ * the daemon is still alive, and fails the build when it is not.
+ */
+public class DaemonClient {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonClient.class);
+    private static final long CHECK_INTERVAL = 1000;
+    private final DaemonConnector connector;
+    private final OutputEventListener outputEventListener;
+
+    public DaemonClient(DaemonConnector connector, OutputEventListener outputEventListener) {
+        this.connector = connector;
+        this.outputEventListener = outputEventListener;
+    }
+
+    /**
+     * Runs a build in the daemon, starting the daemon if it is not running. Blocks until the build has finished.
+     *
+     * @param args The command-line arguments of the build.
+     * @param currentDir The directory to resolve relative paths in the arguments against.
+     * @return true if the build was successful.
+     */
+    public boolean execute(List<String> args, File currentDir) {
+        MessagingClient client = connector.connect();
+        try {
+            ObjectConnection connection = client.getConnection();
+            BuildListenerImpl listener = new BuildListenerImpl();
+            DaemonServer server = connection.addOutgoing(DaemonServer.class);
+            connection.addIncoming(DaemonBuildListener.class, listener);
+            server.build(new DaemonBuildRequest(args, currentDir));
+            return listener.waitForResult(connection.getRemoteAddress());
+        } finally {
+            client.stop();
+        }
+    }
+
+    /**
+     * Stops the daemon, if it is running.
+     *
+     * @return true if the daemon was running.
+     */
+    public boolean stop() {
+        MessagingClient client = connector.maybeConnect();
+        if (client == null) {
+            return false;
+        }
+        try {
+            client.getConnection().addOutgoing(DaemonServer.class).stop();
+        } finally {
+            client.stop();
+        }
+        return true;
+    }
+
+    private class BuildListenerImpl implements DaemonBuildListener {
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile boolean successful;
+
+        public void onOutput(OutputEvent event) {
+            outputEventListener.onOutput(event);
+        }
+
+        public void buildFinished(boolean successful) {
+            this.successful = successful;
+            finished.countDown();
+        }
+
+        boolean waitForResult(URI address) {
+            try {
+                while (!finished.await(CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    if (!connector.isRunning(address)) {
+                        // Allow for a result which the daemon sent just before it stopped
+                        if (finished.await(CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+                            break;
+                        }
+                        LOGGER.error(String.format(
+                                "The Gradle daemon stopped before the build finished. See '%s' for details.",
+                                connector.getLogFile()));
+                        return false;
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new UncheckedException(e);
+            }
+            return successful;
+        }
+    }
+}
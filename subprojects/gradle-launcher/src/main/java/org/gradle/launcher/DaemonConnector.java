@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.launcher;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.internal.DefaultClassPathRegistry;
+import org.gradle.messaging.remote.MessagingClient;
+import org.gradle.messaging.remote.internal.TcpMessagingClient;
+import org.gradle.util.GUtil;
+import org.gradle.util.Jvm;
+import org.gradle.util.UncheckedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connects to the daemon for a Gradle user home directory, starting the daemon when it is not running.
+ */
+public class DaemonConnector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonConnector.class);
+    private static final int START_TIMEOUT = 30000;
+    private final DaemonRegistry registry;
+
+    public DaemonConnector(DaemonRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Connects to the daemon, if it is running.
+     *
+     * @return The connection, or null if the daemon is not running.
+     */
+    public MessagingClient maybeConnect() {
+        URI address = registry.getAddress();
+        if (address == null) {
+            return null;
+        }
+        try {
+            return new TcpMessagingClient(getClass().getClassLoader(), address);
+        } catch (GradleException e) {
+            // The daemon has crashed or been killed
+            LOGGER.debug(String.format("Could not connect to daemon at %s.", address), e);
+            return null;
+        }
+    }
+
+    /**
+     * Connects to the daemon, starting it if it is not running.
+     *
+     * @return The connection. Never returns null.
+     */
+    public MessagingClient connect() {
+        MessagingClient client = maybeConnect();
+        if (client != null) {
+            return client;
+        }
+
+        startDaemon();
+        long expiry = System.currentTimeMillis() + START_TIMEOUT;
+        do {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new UncheckedException(e);
+            }
+            client = maybeConnect();
+            if (client != null) {
+                return client;
+            }
+        } while (System.currentTimeMillis() < expiry);
+
+        throw new GradleException(String.format("Timeout waiting to connect to the Gradle daemon. See '%s' for details.",
+                registry.getLogFile()));
+    }
+
+    /**
+     * Returns true if the daemon with the given address is still alive.
+     */
+    public boolean isRunning(URI address) {
+        return registry.isRunning(address);
+    }
+
+    /**
+     * Returns the file which the daemon writes its output to.
+     */
+    public File getLogFile() {
+        return registry.getLogFile();
+    }
+
+    void startDaemon() {
+        List<String> command = new ArrayList<String>();
+        command.add(Jvm.current().getJavaExecutable().getAbsolutePath());
+        for (String property : new String[]{"gradle.home", "gradle.user.home", DaemonMain.IDLE_TIMEOUT_PROPERTY, DaemonMain.MAX_HEAP_USAGE_PROPERTY}) {
+            String value = System.getProperty(property);
+            if (value != null) {
+                command.add(String.format("-D%s=%s", property, value));
+            }
+        }
+        command.add("-cp");
+        command.add(GUtil.join(new DefaultClassPathRegistry().getClassPathFiles("GRADLE_RUNTIME"), File.pathSeparator));
+        command.add(DaemonMain.class.getName());
+        command.add(registry.getUserHomeDir().getAbsolutePath());
+
+        LOGGER.info("Starting Gradle daemon. See '{}' for its output.", registry.getLogFile());
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            // The daemon writes its output to its log file, and must outlive this process
+            process.getOutputStream().close();
+            process.getInputStream().close();
+        } catch (IOException e) {
+            throw new GradleException("Could not start the Gradle daemon.", e);
+        }
+    }
+}
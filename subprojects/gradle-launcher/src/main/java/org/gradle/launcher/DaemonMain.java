@@ -0,0 +1,245 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.launcher;
+
+import org.gradle.BuildExceptionReporter;
+import org.gradle.BuildResult;
+import org.gradle.GradleLauncherFactory;
+import org.gradle.StartParameter;
+import org.gradle.api.Action;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.initialization.CommandLineParser;
+import org.gradle.initialization.DefaultCommandLineConverter;
+import org.gradle.initialization.DefaultGradleLauncherFactory;
+import org.gradle.logging.LoggingServiceRegistry;
+import org.gradle.logging.StyledTextOutputFactory;
+import org.gradle.logging.internal.OutputEvent;
+import org.gradle.logging.internal.OutputEventListener;
+import org.gradle.logging.internal.OutputEventRenderer;
+import org.gradle.messaging.remote.ConnectEvent;
+import org.gradle.messaging.remote.ObjectConnection;
+import org.gradle.messaging.remote.internal.TcpMessagingServer;
+import org.gradle.util.UncheckedException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.URI;
+
+/**
+ * <p>The entry point for a daemon process, which runs builds on behalf of command-line clients. The daemon runs one
+ * build at a time. It keeps its global services, and so its loaded classes and caches, between builds.</p>
+ *
+ * <p>The daemon stops when it has been idle for longer than its idle timeout, when a client requests that it stop, or
+ * when the heap is still nearly full after a build.</p>
+ */
+public class DaemonMain implements Runnable {
+    /**
+     * The system property which specifies the idle timeout of the daemon, in milliseconds.
+     */
+    public static final String IDLE_TIMEOUT_PROPERTY = "org.gradle.daemon.idletimeout";
+    /**
+     * The system property which specifies the percentage of the maximum heap size which may be in use after a build.
+     */
+    public static final String MAX_HEAP_USAGE_PROPERTY = "org.gradle.daemon.maxheapusage";
+    private static final Logger LOGGER = Logging.getLogger(DaemonMain.class);
+    private static final long DEFAULT_IDLE_TIMEOUT = 3 * 60 * 60 * 1000L;
+    private static final int DEFAULT_MAX_HEAP_USAGE = 85;
+    private final DaemonRegistry registry;
+    private final long idleTimeout;
+    private final int maxHeapUsage;
+    private final LoggingServiceRegistry loggingServices;
+    private final GradleLauncherFactory launcherFactory;
+    private final Object lock = new Object();
+    private final Object buildLock = new Object();
+    private long lastActivity = System.currentTimeMillis();
+    private boolean building;
+    private boolean stopRequested;
+
+    public DaemonMain(DaemonRegistry registry, long idleTimeout, int maxHeapUsage) {
+        this.registry = registry;
+        this.idleTimeout = idleTimeout;
+        this.maxHeapUsage = maxHeapUsage;
+        loggingServices = new LoggingServiceRegistry();
+        launcherFactory = new DefaultGradleLauncherFactory(loggingServices);
+    }
+
+    public static void main(String[] args) {
+        DaemonRegistry registry = new DaemonRegistry(new File(args[0]));
+        try {
+            registry.getDaemonDir().mkdirs();
+            PrintStream output = new PrintStream(new FileOutputStream(registry.getLogFile(), true), true);
+            System.setOut(output);
+            System.setErr(output);
+        } catch (IOException e) {
+            throw UncheckedException.asUncheckedException(e);
+        }
+
+        try {
+            new DaemonMain(registry, Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT),
+                    Integer.getInteger(MAX_HEAP_USAGE_PROPERTY, DEFAULT_MAX_HEAP_USAGE)).run();
+            System.exit(0);
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    public void run() {
+        TcpMessagingServer server = new TcpMessagingServer(getClass().getClassLoader());
+        URI address = server.accept(new Action<ConnectEvent<ObjectConnection>>() {
+            public void execute(ConnectEvent<ObjectConnection> event) {
+                ObjectConnection connection = event.getConnection();
+                DaemonBuildListener client = connection.addOutgoing(DaemonBuildListener.class);
+                connection.addIncoming(DaemonServer.class, new DaemonServerImpl(client));
+            }
+        });
+        registry.register(address);
+        LOGGER.lifecycle("Gradle daemon started, listening on {}.", address);
+        try {
+            waitForStop();
+        } finally {
+            registry.unregister(address);
+        }
+        // Don't stop the server, as that waits for clients to disconnect. The connections are closed when the
+        // process exits
+        LOGGER.lifecycle("Gradle daemon stopped.");
+    }
+
+    private void waitForStop() {
+        synchronized (lock) {
+            while (!stopRequested) {
+                long idleTime = System.currentTimeMillis() - lastActivity;
+                if (!building && idleTime >= idleTimeout) {
+                    LOGGER.lifecycle("Gradle daemon has been idle for {} ms, stopping.", idleTime);
+                    return;
+                }
+                try {
+                    lock.wait(building ? idleTimeout : idleTimeout - idleTime);
+                } catch (InterruptedException e) {
+                    throw new UncheckedException(e);
+                }
+            }
+        }
+    }
+
+    private void requestStop() {
+        synchronized (lock) {
+            stopRequested = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void build(DaemonBuildRequest request, final DaemonBuildListener client) {
+        synchronized (buildLock) {
+            synchronized (lock) {
+                if (stopRequested) {
+                    LOGGER.lifecycle("Gradle daemon is stopping, not running build.");
+                    client.buildFinished(false);
+                    return;
+                }
+                building = true;
+            }
+            boolean expire = false;
+            try {
+                expire = runBuild(request, client);
+                if (!expire) {
+                    expire = isHeapExhausted();
+                }
+            } finally {
+                synchronized (lock) {
+                    building = false;
+                    lastActivity = System.currentTimeMillis();
+                    lock.notifyAll();
+                }
+            }
+            if (expire) {
+                requestStop();
+            }
+        }
+    }
+
+    /**
+     * Runs the build and notifies the client of its output and result.
+     *
+     * @return true if the daemon is no longer healthy.
+     */
+    private boolean runBuild(DaemonBuildRequest request, final DaemonBuildListener client) {
+        OutputEventRenderer renderer = loggingServices.get(OutputEventRenderer.class);
+        OutputEventListener outputForwarder = new OutputEventListener() {
+            public void onOutput(OutputEvent event) {
+                client.onOutput(event);
+            }
+        };
+        renderer.addOutputEventListener(outputForwarder);
+        Throwable failure;
+        try {
+            StartParameter startParameter = new StartParameter();
+            startParameter.setCurrentDir(request.getCurrentDir());
+            DefaultCommandLineConverter converter = new DefaultCommandLineConverter();
+            CommandLineParser parser = new CommandLineParser();
+            converter.configure(parser);
+            parser.option(CommandLineActionFactory.DAEMON);
+            converter.convert(parser.parse(request.getArgs()), startParameter);
+
+            BuildResult result = launcherFactory.newInstance(startParameter).run();
+            failure = result.getFailure();
+        } catch (Throwable throwable) {
+            new BuildExceptionReporter(loggingServices.get(StyledTextOutputFactory.class), new StartParameter()).reportException(throwable);
+            failure = throwable;
+        } finally {
+            renderer.removeOutputEventListener(outputForwarder);
+        }
+        client.buildFinished(failure == null);
+
+        if (failure instanceof VirtualMachineError) {
+            LOGGER.lifecycle("Gradle daemon failed with {}, stopping.", failure);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isHeapExhausted() {
+        System.gc();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        if (heap.getMax() > 0 && heap.getUsed() * 100 > heap.getMax() * maxHeapUsage) {
+            LOGGER.lifecycle("Gradle daemon is using {} of {} bytes of heap after build, stopping.", heap.getUsed(),
+                    heap.getMax());
+            return true;
+        }
+        return false;
+    }
+
+    private class DaemonServerImpl implements DaemonServer {
+        private final DaemonBuildListener client;
+
+        public DaemonServerImpl(DaemonBuildListener client) {
+            this.client = client;
+        }
+
+        public void build(DaemonBuildRequest request) {
+            DaemonMain.this.build(request, client);
+        }
+
+        public void stop() {
+            requestStop();
+        }
+    }
+}
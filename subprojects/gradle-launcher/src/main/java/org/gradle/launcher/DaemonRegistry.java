@@ -0,0 +1,171 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.launcher;
+
+import org.gradle.api.UncheckedIOException;
+import org.gradle.util.GFileUtils;
+import org.gradle.util.GradleVersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * Keeps track of the daemon for a Gradle user home directory and Gradle version. A running daemon writes its address
+ * to a file in the daemon directory, where clients can find it. The daemon also holds a lock on a file in the daemon
+ * directory for as long as it is registered. The operating system releases the lock when the daemon process dies, so
+ * clients can tell whether the daemon is still alive.
+ */
+public class DaemonRegistry {
+    private final File userHomeDir;
+    private final File daemonDir;
+    private RandomAccessFile lockFile;
+
+    public DaemonRegistry(File userHomeDir) {
+        this.userHomeDir = userHomeDir;
+        daemonDir = new File(userHomeDir, "daemon/" + new GradleVersion().getVersion());
+    }
+
+    public File getUserHomeDir() {
+        return userHomeDir;
+    }
+
+    public File getDaemonDir() {
+        return daemonDir;
+    }
+
+    /**
+     * Returns the file which the daemon writes its output to.
+     */
+    public File getLogFile() {
+        return new File(daemonDir, "daemon.log");
+    }
+
+    /**
+     * Returns the address of the daemon, or null if no daemon is registered. A daemon which has crashed may still be
+     * registered.
+     */
+    public URI getAddress() {
+        File addressFile = getAddressFile();
+        if (!addressFile.isFile()) {
+            return null;
+        }
+        try {
+            return new URI(GFileUtils.readFileToString(addressFile).trim());
+        } catch (UncheckedIOException e) {
+            // The daemon has just unregistered
+            return null;
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if the daemon with the given address is still registered and its process is alive.
+     */
+    public boolean isRunning(URI address) {
+        if (!address.equals(getAddress())) {
+            return false;
+        }
+        try {
+            RandomAccessFile file = new RandomAccessFile(getLockFile(), "rw");
+            try {
+                FileLock lock = file.getChannel().tryLock();
+                if (lock == null) {
+                    // Held by the daemon process
+                    return true;
+                }
+                lock.release();
+                return false;
+            } catch (OverlappingFileLockException e) {
+                // Held by this process
+                return true;
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized void register(URI address) {
+        daemonDir.mkdirs();
+        if (lockFile == null) {
+            lockFile = lock();
+        }
+        // Write to a temporary file first, so that a client never reads a partially written address
+        File tmpFile = new File(daemonDir, "daemon.address.tmp");
+        GFileUtils.writeStringToFile(tmpFile, address.toString());
+        File addressFile = getAddressFile();
+        addressFile.delete();
+        if (!tmpFile.renameTo(addressFile)) {
+            throw new UncheckedIOException(String.format("Could not register daemon address in '%s'.", addressFile));
+        }
+    }
+
+    /**
+     * Removes the given address, unless another daemon has registered since.
+     */
+    public synchronized void unregister(URI address) {
+        if (address.equals(getAddress())) {
+            getAddressFile().delete();
+        }
+        if (lockFile != null) {
+            try {
+                // Closing the file releases the lock
+                lockFile.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lockFile = null;
+            }
+        }
+    }
+
+    private RandomAccessFile lock() {
+        File file = getLockFile();
+        try {
+            RandomAccessFile lockFile = new RandomAccessFile(file, "rw");
+            try {
+                if (lockFile.getChannel().tryLock() == null) {
+                    throw new UncheckedIOException(String.format(
+                            "Could not lock '%s', as another daemon holds the lock.", file));
+                }
+            } catch (IOException e) {
+                lockFile.close();
+                throw e;
+            } catch (RuntimeException e) {
+                lockFile.close();
+                throw e;
+            }
+            return lockFile;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private File getAddressFile() {
+        return new File(daemonDir, "daemon.address");
+    }
+
+    private File getLockFile() {
+        return new File(daemonDir, "daemon.lock");
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.launcher;
+
+/**
+ * The messages which a client sends to a daemon.
+ */
+public interface DaemonServer {
+    /**
+     * Runs the given build. The daemon runs one build at a time, so this build may wait for other builds to finish.
+     * The daemon notifies the client of the output and result of the build.
+     */
+    void build(DaemonBuildRequest request);
+
+    /**
+     * Requests that the daemon stop.
+     */
+    void stop();
+}
@@ -26,6 +26,7 @@ import org.gradle.api.internal.project.ServiceRegistry
 import org.gradle.logging.LoggingConfiguration
 import org.gradle.logging.LoggingManagerInternal
 import org.gradle.api.internal.Factory
+import org.gradle.api.GradleException
 
 class CommandLineActionFactoryTest extends Specification {
     @Rule
@@ -40,6 +41,7 @@ class CommandLineActionFactoryTest extends Specification {
     final ServiceRegistry loggingServices = Mock()
     final CommandLineConverter<LoggingConfiguration> loggingConfigurationConverter = Mock()
     final LoggingManagerInternal loggingManager = Mock()
+    final DaemonClient daemonClient = Mock()
     final CommandLineActionFactory factory = new CommandLineActionFactory(buildCompleter) {
         @Override
         ServiceRegistry createLoggingServices() {
@@ -55,6 +57,11 @@ class CommandLineActionFactoryTest extends Specification {
         GradleLauncherFactory createGradleLauncherFactory(ServiceRegistry loggingServices) {
             return gradleLauncherFactory
         }
+
+        @Override
+        DaemonClient createDaemonClient(StartParameter startParameter, ServiceRegistry loggingServices) {
+            return daemonClient
+        }
     }
 
     def setup() {
@@ -179,4 +186,58 @@ class CommandLineActionFactoryTest extends Specification {
         1 * buildResult.failure >> failure
         1 * buildCompleter.exit(failure)
     }
+
+    def executesBuildInDaemon() {
+        def startParameter = new StartParameter();
+
+        when:
+        def action = factory.convert(['--daemon', 'args'])
+
+        then:
+        1 * startParameterConverter.convert(!null) >> startParameter
+
+        when:
+        action.run()
+
+        then:
+        1 * loggingManager.start()
+        1 * daemonClient.execute(['--daemon', 'args'], new File(System.getProperty('user.dir'))) >> true
+        0 * gradleLauncherFactory._
+        1 * buildCompleter.exit(null)
+    }
+
+    def executesFailedBuildInDaemon() {
+        def startParameter = new StartParameter();
+
+        when:
+        def action = factory.convert(['--daemon', 'args'])
+
+        then:
+        1 * startParameterConverter.convert(!null) >> startParameter
+
+        when:
+        action.run()
+
+        then:
+        1 * daemonClient.execute(['--daemon', 'args'], !null) >> false
+        1 * buildCompleter.exit({ it instanceof GradleException })
+    }
+
+    def stopsDaemon() {
+        def startParameter = new StartParameter();
+
+        when:
+        def action = factory.convert(['--stop'])
+
+        then:
+        1 * startParameterConverter.convert(!null) >> startParameter
+
+        when:
+        action.run()
+
+        then:
+        1 * daemonClient.stop() >> false
+        outputs.stdOut.contains('No Gradle daemon is running.')
+        1 * buildCompleter.exit(null)
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.launcher
+
+import org.gradle.logging.internal.OutputEventListener
+import org.gradle.messaging.remote.MessagingClient
+import org.gradle.messaging.remote.ObjectConnection
+import spock.lang.Specification
+
+class DaemonClientTest extends Specification {
+    final DaemonConnector connector = Mock()
+    final OutputEventListener outputEventListener = Mock()
+    final MessagingClient messagingClient = Mock()
+    final ObjectConnection connection = Mock()
+    final DaemonServer server = Mock()
+    final URI address = new URI('tcp://localhost:1234')
+    final DaemonClient client = new DaemonClient(connector, outputEventListener)
+
+    def setup() {
+        _ * connector.connect() >> messagingClient
+        _ * messagingClient.connection >> connection
+        _ * connection.remoteAddress >> address
+        _ * connection.addOutgoing(DaemonServer) >> server
+        _ * connector.logFile >> new File('daemon.log')
+    }
+
+    def returnsResultOfBuild() {
+        DaemonBuildListener listener
+        _ * connection.addIncoming(DaemonBuildListener, _) >> { listener = it[1] }
+        _ * server.build(_) >> { listener.buildFinished(true) }
+
+        expect:
+        client.execute(['build'], new File('.'))
+    }
+
+    def failsBuildWhenDaemonDiesBeforeBuildFinishes() {
+        when:
+        def successful = client.execute(['build'], new File('.'))
+
+        then:
+        !successful
+        1 * server.build(_)
+        (1.._) * connector.isRunning(address) >>> [true, false]
+        1 * messagingClient.stop()
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.launcher
+
+import org.gradle.util.TemporaryFolder
+import org.junit.Rule
+import spock.lang.Specification
+
+class DaemonRegistryTest extends Specification {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+    private DaemonRegistry registry
+
+    def setup() {
+        registry = new DaemonRegistry(tmpDir.dir)
+    }
+
+    def hasNoAddressWhenNoDaemonIsRegistered() {
+        expect:
+        registry.address == null
+    }
+
+    def hasAddressOfRegisteredDaemon() {
+        def address = new URI('tcp://localhost:1234')
+
+        when:
+        registry.register(address)
+
+        then:
+        registry.address == address
+    }
+
+    def hasNoAddressWhenDaemonIsUnregistered() {
+        def address = new URI('tcp://localhost:1234')
+        registry.register(address)
+
+        when:
+        registry.unregister(address)
+
+        then:
+        registry.address == null
+    }
+
+    def doesNotUnregisterAnotherDaemon() {
+        def address = new URI('tcp://localhost:1234')
+        registry.register(address)
+
+        when:
+        registry.unregister(new URI('tcp://localhost:5678'))
+
+        then:
+        registry.address == address
+    }
+
+    def isRunningWhileDaemonIsRegistered() {
+        def address = new URI('tcp://localhost:1234')
+
+        when:
+        registry.register(address)
+
+        then:
+        registry.isRunning(address)
+        !registry.isRunning(new URI('tcp://localhost:5678'))
+
+        when:
+        registry.unregister(address)
+
+        then:
+        !registry.isRunning(address)
+    }
+
+    def isNotRunningWhenRegisteredDaemonNoLongerHoldsItsLock() {
+        def address = new URI('tcp://localhost:1234')
+        registry.register(address)
+
+        when:
+        // Releases the lock but leaves the address, as for a daemon which has been killed
+        registry.unregister(new URI('tcp://localhost:5678'))
+
+        then:
+        registry.address == address
+        !registry.isRunning(address)
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile;
+
+import java.util.Set;
+
+/**
+ * The details of a compiled class which are used to decide what to recompile when the class changes.
+ */
+public class ClassAnalysis {
+    private final String className;
+    private final byte[] abiHash;
+    private final boolean declaresConstants;
+    private final Set<String> superTypes;
+    private final Set<String> dependencies;
+    private final String sourceFileName;
+
+    public ClassAnalysis(String className, byte[] abiHash, boolean declaresConstants, Set<String> superTypes,
+                         Set<String> dependencies) {
+        this(className, abiHash, declaresConstants, superTypes, dependencies, null);
+    }
+
+    public ClassAnalysis(String className, byte[] abiHash, boolean declaresConstants, Set<String> superTypes,
+                         Set<String> dependencies, String sourceFileName) {
+        this.className = className;
+        this.abiHash = abiHash;
+        this.declaresConstants = declaresConstants;
+        this.superTypes = superTypes;
+        this.dependencies = dependencies;
+        this.sourceFileName = sourceFileName;
+    }
+
+    /**
+     * Returns the binary name of this class, for example {@code org.gradle.Outer$Inner}.
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Returns a hash of the parts of this class which other classes can compile against: the class declaration and
+     * its non-private fields and methods. Method bodies and private members do not contribute to the hash.
+     */
+    public byte[] getAbiHash() {
+        return abiHash;
+    }
+
+    /**
+     * Returns true if this class declares any non-private constant fields. The Java compiler copies the values of
+     * these fields into the classes which use them, so those classes do not necessarily refer to this class.
+     */
+    public boolean isDeclaresConstants() {
+        return declaresConstants;
+    }
+
+    /**
+     * Returns the binary names of the direct superclass and interfaces of this class.
+     */
+    public Set<String> getSuperTypes() {
+        return superTypes;
+    }
+
+    /**
+     * Returns the binary names of the classes which this class refers to. Does not include this class.
+     */
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Returns the name of the source file this class was compiled from, without its directory, for example {@code
+     * Outer.java}. Returns null when the class file does not record its source file.
+     */
+    public String getSourceFileName() {
+        return sourceFileName;
+    }
+}
@@ -0,0 +1,579 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile;
+
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.internal.TaskOutputsInternal;
+import org.gradle.api.internal.changedetection.FileCollectionSnapshot;
+import org.gradle.api.internal.changedetection.FileSnapshotter;
+import org.gradle.api.internal.file.SimpleFileCollection;
+import org.gradle.cache.CacheRepository;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentStateCache;
+import org.gradle.cache.Serializer;
+import org.gradle.util.ChangeListener;
+import org.gradle.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A {@link StaleClassCleaner} which uses the bytecode of the compiled classes to find the classes which are out of
+ * date. The cleaner keeps an index of the classes in the destination directory, which maps each class to the classes
+ * which depend on it and to its subtypes, in a cache in the dependency cache directory.
+ *
+ * <p>Each time it runs, the cleaner snapshots the source files and the classes in the destination directory, and uses
+ * the differences from the previous snapshot to bring the index up to date with the classes written by the previous
+ * compilation, and to find the source files which have changed. The classes compiled from a changed or removed source
+ * file are deleted, along with the classes which depend on them or on one of their subtypes. An added source file is
+ * treated as changed. As it can declare a class which hides a class of the same name in another package, the classes
+ * which depend on a class with the same simple name as an added source file are deleted too. When the closure option
+ * is set, the classes which depend on the deleted classes are deleted too, and so on. A compiler which compiles the
+ * source files whose classes are missing or older than the source file, such as Ant's javac task, then compiles only
+ * the affected source files.</p>
+ *
+ * <p>All classes are deleted when there is no previous snapshot, when the compile options or the classpath have
+ * changed, or when a class which declares constants is out of date.</p>
+ *
+ * <p>When the useCache option is set, the cleaner also writes the dependencies of the remaining classes to
+ * {@code dependencies.txt} in the dependency cache directory, in the format of the cache of Ant's depend task.</p>
+ */
+public class ClassDependencyStaleClassCleaner extends StaleClassCleaner {
+    private static final String CLASS_NAME_PREFIX = "||:";
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassDependencyStaleClassCleaner.class);
+    private final FileSnapshotter snapshotter;
+    private final CacheRepository cacheRepository;
+    private final TaskOutputsInternal taskOutputs;
+    private final ClassFileAnalyser analyser = new ClassFileAnalyser();
+    private File dependencyCacheDir;
+    private Iterable<File> classpath = Collections.emptyList();
+    private String sourceCompatibility;
+    private String targetCompatibility;
+
+    public ClassDependencyStaleClassCleaner(FileSnapshotter snapshotter, CacheRepository cacheRepository,
+                                            TaskOutputsInternal taskOutputs) {
+        this.snapshotter = snapshotter;
+        this.cacheRepository = cacheRepository;
+        this.taskOutputs = taskOutputs;
+    }
+
+    public void setDependencyCacheDir(File dependencyCacheDir) {
+        this.dependencyCacheDir = dependencyCacheDir;
+    }
+
+    public void setClasspath(Iterable<File> classpath) {
+        this.classpath = classpath;
+    }
+
+    public void setSourceCompatibility(String sourceCompatibility) {
+        this.sourceCompatibility = sourceCompatibility;
+    }
+
+    public void setTargetCompatibility(String targetCompatibility) {
+        this.targetCompatibility = targetCompatibility;
+    }
+
+    @Override
+    public void execute() {
+        PersistentCache cache = cacheRepository.cache("classDependencies").forObject(dependencyCacheDir)
+                .withProperties(Collections.singletonMap("compile.state", createFingerprint())).open();
+        PersistentStateCache<FileCollectionSnapshot> snapshotCache = cache.openStateCache();
+        ClassIndex index = new ClassIndex(cache.<String, ClassInfo>openIndexedCache(new ClassInfoSerializer()));
+
+        FileCollectionSnapshot previous = snapshotCache.get();
+        FileCollectionSnapshot current = snapshot();
+        ChangeCollector changes = new ChangeCollector();
+        current.changesSince(previous == null ? snapshotter.snapshot() : previous, changes);
+        Map<String, List<String>> classesByPackage = getClassesByPackage(current);
+
+        index.update(changes.changedClasses, changes.removedClasses, classesByPackage);
+
+        Set<String> staleClasses = null;
+        if (previous == null) {
+            LOGGER.info("No previous class dependency information found. Deleting all classes.");
+        } else {
+            staleClasses = index.findStaleClasses(changes.changedSources, changes.addedSources, classesByPackage,
+                    getCompileOptions().getDependOptions().isClosure());
+        }
+
+        if (staleClasses == null) {
+            SimpleStaleClassCleaner cleaner = new SimpleStaleClassCleaner(taskOutputs);
+            cleaner.setDestinationDir(getDestinationDir());
+            cleaner.execute();
+        } else {
+            LOGGER.info("{} source files have changed since the previous compilation, of which {} have been added. "
+                    + "Deleting {} out of date classes.", new Object[]{changes.changedSources.size(),
+                    changes.addedSources.size(), staleClasses.size()});
+            for (String className : staleClasses) {
+                if (getCompileOptions().getDependOptions().isDump()) {
+                    LOGGER.info("Deleting out of date class {}", className);
+                }
+                getClassFile(className).delete();
+            }
+        }
+
+        index.flush();
+        snapshotCache.set(snapshot());
+
+        if (getCompileOptions().getDependOptions().isUseCache()) {
+            writeDependencies(index, classesByPackage, staleClasses);
+        }
+    }
+
+    /**
+     * Writes the dependencies of the classes which have not been deleted in the format of Ant's depend task.
+     */
+    private void writeDependencies(ClassIndex index, Map<String, List<String>> classesByPackage,
+                                   Set<String> deletedClasses) {
+        File file = new File(dependencyCacheDir, "dependencies.txt");
+        try {
+            file.getParentFile().mkdirs();
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            try {
+                if (deletedClasses == null) {
+                    return;
+                }
+                for (List<String> classes : classesByPackage.values()) {
+                    for (String className : classes) {
+                        ClassInfo info = index.get(className);
+                        if (info == null || deletedClasses.contains(className)) {
+                            continue;
+                        }
+                        writer.write(CLASS_NAME_PREFIX + className);
+                        writer.newLine();
+                        for (String dependency : info.dependencies) {
+                            writer.write(dependency);
+                            writer.newLine();
+                        }
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private FileCollectionSnapshot snapshot() {
+        List<File> files = new ArrayList<File>(getSource().getFiles());
+        files.add(getDestinationDir());
+        return snapshotter.snapshot(new SimpleFileCollection(files));
+    }
+
+    /**
+     * Creates a fingerprint of the compile options and the contents of the classpath. All classes are deleted when
+     * this changes.
+     */
+    private String createFingerprint() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(sourceCompatibility).append('\n');
+        builder.append(targetCompatibility).append('\n');
+        builder.append(new TreeMap<Object, Object>(getCompileOptions().optionMap())).append('\n');
+        builder.append(getCompileOptions().getCompilerArgs()).append('\n');
+        for (File file : classpath) {
+            builder.append(file.getPath()).append('\n');
+            appendFileState(file, builder);
+        }
+        return HashUtil.createHash(builder.toString());
+    }
+
+    private void appendFileState(File file, StringBuilder builder) {
+        if (file.isFile()) {
+            builder.append(file.getPath()).append(' ').append(file.length()).append(' ').append(file.lastModified());
+            builder.append('\n');
+        } else if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null) {
+                return;
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                appendFileState(child, builder);
+            }
+        }
+    }
+
+    /**
+     * Groups the classes in the destination directory by the directory of their package, for example {@code org/gradle}.
+     */
+    private Map<String, List<String>> getClassesByPackage(FileCollectionSnapshot snapshot) {
+        Map<String, List<String>> classes = new HashMap<String, List<String>>();
+        for (File file : snapshot.getFiles()) {
+            String className = toClassName(file);
+            if (className == null) {
+                continue;
+            }
+            String packageDir = getPackageDir(className);
+            List<String> packageClasses = classes.get(packageDir);
+            if (packageClasses == null) {
+                packageClasses = new ArrayList<String>();
+                classes.put(packageDir, packageClasses);
+            }
+            packageClasses.add(className);
+        }
+        return classes;
+    }
+
+    private static String getPackageDir(String className) {
+        int index = className.lastIndexOf('.');
+        return index < 0 ? "" : className.substring(0, index).replace('.', '/');
+    }
+
+    /**
+     * Returns the name of the class in the given file, or null if the file is not a class file in the destination
+     * directory.
+     */
+    private String toClassName(File file) {
+        String path = file.getAbsolutePath();
+        if (!isInDestinationDir(file) || !path.endsWith(".class")) {
+            return null;
+        }
+        int start = getDestinationDir().getAbsolutePath().length() + 1;
+        return path.substring(start, path.length() - ".class".length()).replace(File.separatorChar, '.');
+    }
+
+    private boolean isInDestinationDir(File file) {
+        return file.getAbsolutePath().startsWith(getDestinationDir().getAbsolutePath() + File.separator);
+    }
+
+    private File getClassFile(String className) {
+        return new File(getDestinationDir(), className.replace('.', File.separatorChar) + ".class");
+    }
+
+    /**
+     * Collects the class files in the destination directory which have been written or deleted, and the source files
+     * which have changed or been removed. Added source files are collected as changed source files too.
+     */
+    private class ChangeCollector implements ChangeListener<File> {
+        private final Set<File> changedClasses = new LinkedHashSet<File>();
+        private final Set<String> removedClasses = new LinkedHashSet<String>();
+        private final Set<File> changedSources = new LinkedHashSet<File>();
+        private final Set<File> addedSources = new LinkedHashSet<File>();
+
+        public void added(File element) {
+            if (toClassName(element) != null) {
+                changedClasses.add(element);
+            } else if (!isInDestinationDir(element)) {
+                changedSources.add(element);
+                addedSources.add(element);
+            }
+        }
+
+        public void removed(File element) {
+            String className = toClassName(element);
+            if (className != null) {
+                removedClasses.add(className);
+            } else if (!isInDestinationDir(element)) {
+                changedSources.add(element);
+            }
+        }
+
+        public void changed(File element) {
+            if (toClassName(element) != null) {
+                changedClasses.add(element);
+            } else if (!isInDestinationDir(element)) {
+                changedSources.add(element);
+            }
+        }
+    }
+
+    /**
+     * The persistent index of the classes in the destination directory. Entries which are read or changed are held in
+     * memory until the index is flushed.
+     */
+    private class ClassIndex {
+        private final PersistentIndexedCache<String, ClassInfo> cache;
+        private final Map<String, ClassInfo> entries = new HashMap<String, ClassInfo>();
+        private final Set<String> modified = new HashSet<String>();
+
+        private ClassIndex(PersistentIndexedCache<String, ClassInfo> cache) {
+            this.cache = cache;
+        }
+
+        private ClassInfo get(String className) {
+            if (entries.containsKey(className)) {
+                return entries.get(className);
+            }
+            ClassInfo info = cache.get(className);
+            entries.put(className, info);
+            return info;
+        }
+
+        private ClassInfo getForUpdate(String className) {
+            ClassInfo info = get(className);
+            if (info == null) {
+                info = new ClassInfo();
+                entries.put(className, info);
+            }
+            modified.add(className);
+            return info;
+        }
+
+        /**
+         * Brings the index up to date with the classes which have been written or deleted since the index was last
+         * updated.
+         */
+        public void update(Collection<File> changedClassFiles, Collection<String> removedClasses,
+                           Map<String, List<String>> classesByPackage) {
+            Set<String> compiledClasses = new HashSet<String>();
+            for (List<String> classes : classesByPackage.values()) {
+                compiledClasses.addAll(classes);
+            }
+            for (String className : removedClasses) {
+                if (get(className) != null) {
+                    unlink(className, getForUpdate(className));
+                }
+            }
+            for (File classFile : changedClassFiles) {
+                ClassAnalysis analysis = analyser.analyse(classFile);
+                String className = analysis.getClassName();
+                ClassInfo info = getForUpdate(className);
+                unlink(className, info);
+                info.sourceName = getSourceName(analysis);
+                info.declaresConstants = analysis.isDeclaresConstants();
+                info.superTypes.addAll(analysis.getSuperTypes());
+                info.superTypes.retainAll(compiledClasses);
+                info.dependencies.addAll(analysis.getDependencies());
+                info.dependencies.retainAll(compiledClasses);
+                for (String superType : info.superTypes) {
+                    getForUpdate(superType).subTypes.add(className);
+                }
+                for (String dependency : info.dependencies) {
+                    getForUpdate(dependency).dependents.add(className);
+                }
+            }
+        }
+
+        /**
+         * Removes the given class from the index, but keeps the classes which refer to it.
+         */
+        private void unlink(String className, ClassInfo info) {
+            for (String superType : info.superTypes) {
+                getForUpdate(superType).subTypes.remove(className);
+            }
+            for (String dependency : info.dependencies) {
+                getForUpdate(dependency).dependents.remove(className);
+            }
+            info.sourceName = null;
+            info.declaresConstants = false;
+            info.superTypes.clear();
+            info.dependencies.clear();
+        }
+
+        private String getSourceName(ClassAnalysis analysis) {
+            String fileName = analysis.getSourceFileName();
+            String className = analysis.getClassName();
+            if (fileName == null) {
+                String outerName = className.substring(className.lastIndexOf('.') + 1);
+                int index = outerName.indexOf('$');
+                fileName = (index < 0 ? outerName : outerName.substring(0, index)) + ".java";
+            }
+            String packageDir = getPackageDir(className);
+            return packageDir.length() == 0 ? fileName : packageDir + "/" + fileName;
+        }
+
+        /**
+         * Returns the classes which are out of date because the given source files have changed, or null when all
+         * classes are out of date. The added source files must be included in the changed source files.
+         */
+        public Set<String> findStaleClasses(Collection<File> changedSources, Collection<File> addedSources,
+                                            Map<String, List<String>> classesByPackage, boolean closure) {
+            Set<String> changedClasses = new HashSet<String>();
+            for (File source : changedSources) {
+                changedClasses.addAll(getClassesOfSource(source, classesByPackage));
+            }
+            for (String className : changedClasses) {
+                if (get(className).declaresConstants) {
+                    LOGGER.info("{}, which declares constants, is out of date. Deleting all classes.", className);
+                    return null;
+                }
+            }
+
+            // The classes which depend on a class that an added source file may hide
+            Set<String> hidingDependents = new HashSet<String>();
+            for (File source : addedSources) {
+                for (String className : getClassesHiddenBy(source, classesByPackage)) {
+                    hidingDependents.addAll(get(className).dependents);
+                }
+            }
+
+            Set<String> staleClasses = new HashSet<String>();
+            Set<String> outOfDate = changedClasses;
+            while (!outOfDate.isEmpty() || !hidingDependents.isEmpty()) {
+                Set<String> affected = new HashSet<String>();
+                LinkedList<String> queue = new LinkedList<String>(outOfDate);
+                while (!queue.isEmpty()) {
+                    String className = queue.removeFirst();
+                    ClassInfo info = get(className);
+                    if (affected.add(className) && info != null) {
+                        queue.addAll(info.subTypes);
+                    }
+                }
+                Set<String> dependents = new HashSet<String>();
+                for (String className : affected) {
+                    ClassInfo info = get(className);
+                    if (info != null) {
+                        dependents.addAll(info.dependents);
+                    }
+                }
+                dependents.addAll(affected);
+                dependents.addAll(hidingDependents);
+                hidingDependents = Collections.emptySet();
+
+                outOfDate = new HashSet<String>();
+                for (String className : dependents) {
+                    ClassInfo info = get(className);
+                    if (info == null || info.sourceName == null) {
+                        continue;
+                    }
+                    // Delete all the classes of the source file, so that the compiler compiles it again
+                    for (String sourceClass : getClassesOfSource(info.sourceName, classesByPackage)) {
+                        if (staleClasses.add(sourceClass)) {
+                            outOfDate.add(sourceClass);
+                        }
+                    }
+                }
+                if (!closure) {
+                    break;
+                }
+            }
+            return staleClasses;
+        }
+
+        /**
+         * Returns the classes compiled from the given source file. The source file's path relative to its source
+         * directory is matched against the source names of the classes.
+         */
+        private Set<String> getClassesOfSource(File source, Map<String, List<String>> classesByPackage) {
+            String path = source.getAbsolutePath().replace(File.separatorChar, '/');
+            Set<String> classes = new HashSet<String>();
+            for (int index = path.lastIndexOf('/'); index >= 0; index = path.lastIndexOf('/', index - 1)) {
+                classes.addAll(getClassesOfSource(path.substring(index + 1), classesByPackage));
+            }
+            return classes;
+        }
+
+        /**
+         * Returns the top level classes in the destination directory which have the same simple name as the given
+         * source file.
+         */
+        private Set<String> getClassesHiddenBy(File source, Map<String, List<String>> classesByPackage) {
+            String fileName = source.getName();
+            String simpleName = fileName.endsWith(".java") ? fileName.substring(0, fileName.length() - ".java".length())
+                    : fileName;
+            Set<String> classes = new HashSet<String>();
+            for (List<String> packageClasses : classesByPackage.values()) {
+                for (String className : packageClasses) {
+                    String classSimpleName = className.substring(className.lastIndexOf('.') + 1);
+                    if (classSimpleName.equals(simpleName) && get(className) != null) {
+                        classes.add(className);
+                    }
+                }
+            }
+            return classes;
+        }
+
+        private Set<String> getClassesOfSource(String sourceName, Map<String, List<String>> classesByPackage) {
+            int index = sourceName.lastIndexOf('/');
+            List<String> candidates = classesByPackage.get(index < 0 ? "" : sourceName.substring(0, index));
+            if (candidates == null) {
+                return Collections.emptySet();
+            }
+            Set<String> classes = new HashSet<String>();
+            for (String className : candidates) {
+                ClassInfo info = get(className);
+                if (info != null && sourceName.equals(info.sourceName)) {
+                    classes.add(className);
+                }
+            }
+            return classes;
+        }
+
+        public void flush() {
+            for (String className : modified) {
+                ClassInfo info = entries.get(className);
+                if (info.sourceName == null && info.subTypes.isEmpty() && info.dependents.isEmpty()) {
+                    cache.remove(className);
+                } else {
+                    cache.put(className, info);
+                }
+            }
+            modified.clear();
+        }
+    }
+
+    /**
+     * An entry of the index. Holds the details of a class in the destination directory, and the classes in the
+     * destination directory which refer to the class. A class which has been deleted keeps its entry for as long as
+     * other classes refer to it.
+     */
+    private static class ClassInfo {
+        private String sourceName;
+        private boolean declaresConstants;
+        private final Set<String> superTypes = new HashSet<String>();
+        private final Set<String> dependencies = new HashSet<String>();
+        private final Set<String> subTypes = new HashSet<String>();
+        private final Set<String> dependents = new HashSet<String>();
+    }
+
+    private static class ClassInfoSerializer implements Serializer<ClassInfo> {
+        public ClassInfo read(InputStream instr) throws Exception {
+            DataInputStream input = new DataInputStream(instr);
+            ClassInfo info = new ClassInfo();
+            if (input.readBoolean()) {
+                info.sourceName = input.readUTF();
+            }
+            info.declaresConstants = input.readBoolean();
+            readNames(input, info.superTypes);
+            readNames(input, info.dependencies);
+            readNames(input, info.subTypes);
+            readNames(input, info.dependents);
+            return info;
+        }
+
+        private void readNames(DataInputStream input, Set<String> names) throws IOException {
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                names.add(input.readUTF());
+            }
+        }
+
+        public void write(OutputStream outstr, ClassInfo value) throws Exception {
+            DataOutputStream output = new DataOutputStream(outstr);
+            output.writeBoolean(value.sourceName != null);
+            if (value.sourceName != null) {
+                output.writeUTF(value.sourceName);
+            }
+            output.writeBoolean(value.declaresConstants);
+            writeNames(output, value.superTypes);
+            writeNames(output, value.dependencies);
+            writeNames(output, value.subTypes);
+            writeNames(output, value.dependents);
+            output.flush();
+        }
+
+        private void writeNames(DataOutputStream output, Set<String> names) throws IOException {
+            output.writeInt(names.size());
+            for (String name : names) {
+                output.writeUTF(name);
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile;
+
+import org.gradle.api.UncheckedIOException;
+import org.gradle.util.UncheckedException;
+import org.objectweb.asm.*;
+import org.objectweb.asm.commons.EmptyVisitor;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureWriter;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Reads a class file and produces a {@link ClassAnalysis} for it.
+ */
+public class ClassFileAnalyser {
+    public ClassAnalysis analyse(File classFile) {
+        try {
+            InputStream instr = new BufferedInputStream(new FileInputStream(classFile));
+            try {
+                return analyse(instr);
+            } finally {
+                instr.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not read class file '%s'.", classFile), e);
+        }
+    }
+
+    public ClassAnalysis analyse(InputStream instr) throws IOException {
+        AnalysingVisitor visitor = new AnalysingVisitor();
+        new ClassReader(instr).accept(visitor, ClassReader.SKIP_FRAMES);
+        return visitor.getAnalysis();
+    }
+
+    private static class AnalysingVisitor extends EmptyVisitor {
+        private final List<String> abi = new ArrayList<String>();
+        private final Set<String> superTypes = new HashSet<String>();
+        private final Set<String> dependencies = new HashSet<String>();
+        private String className;
+        private String sourceFileName;
+        private boolean declaresConstants;
+
+        public ClassAnalysis getAnalysis() {
+            Collections.sort(abi);
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw UncheckedException.asUncheckedException(e);
+            }
+            for (String member : abi) {
+                try {
+                    digest.update(member.getBytes("UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw UncheckedException.asUncheckedException(e);
+                }
+                digest.update((byte) '\n');
+            }
+            dependencies.remove(className);
+            return new ClassAnalysis(className, digest.digest(), declaresConstants, superTypes, dependencies,
+                    sourceFileName);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName,
+                          String[] interfaces) {
+            className = toClassName(name);
+            StringBuilder header = new StringBuilder();
+            header.append("class ").append(access).append(' ').append(name).append(' ').append(signature);
+            if (superName != null) {
+                header.append(" extends ").append(superName);
+                addSuperType(superName);
+            }
+            if (interfaces != null) {
+                String[] sortedInterfaces = interfaces.clone();
+                Arrays.sort(sortedInterfaces);
+                for (String interfaceName : sortedInterfaces) {
+                    header.append(" implements ").append(interfaceName);
+                    addSuperType(interfaceName);
+                }
+            }
+            abi.add(header.toString());
+            addSignature(signature);
+        }
+
+        @Override
+        public void visitSource(String source, String debug) {
+            sourceFileName = source;
+        }
+
+        @Override
+        public void visitOuterClass(String owner, String name, String desc) {
+            addType(owner);
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            if (toClassName(name).equals(className)) {
+                // The access flags of a nested class are only recorded in the InnerClasses attribute
+                abi.add("nested " + access);
+            }
+            addType(name);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            if (isVisible(access)) {
+                abi.add(String.format("field %s %s %s %s %s", access, name, desc, signature, value));
+                declaresConstants |= value != null;
+            }
+            addDescriptor(desc);
+            addSignature(signature);
+            return this;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            if (isVisible(access) && !name.equals("<clinit>")) {
+                String[] sortedExceptions = exceptions == null ? new String[0] : exceptions.clone();
+                Arrays.sort(sortedExceptions);
+                abi.add(String.format("method %s %s %s %s %s", access, name, desc, signature, Arrays.asList(
+                        sortedExceptions)));
+            }
+            addMethodDescriptor(desc);
+            addSignature(signature);
+            if (exceptions != null) {
+                for (String exception : exceptions) {
+                    addType(exception);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            addDescriptor(desc);
+            return this;
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+            addDescriptor(desc);
+            return this;
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            if (value instanceof Type) {
+                addDescriptor(((Type) value).getDescriptor());
+            }
+        }
+
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            addDescriptor(desc);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+            addDescriptor(desc);
+            return this;
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            addType(type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+            addType(owner);
+            addDescriptor(desc);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+            addType(owner);
+            addMethodDescriptor(desc);
+        }
+
+        @Override
+        public void visitLdcInsn(Object cst) {
+            if (cst instanceof Type) {
+                addDescriptor(((Type) cst).getDescriptor());
+            }
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String desc, int dims) {
+            addDescriptor(desc);
+        }
+
+        @Override
+        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+            if (type != null) {
+                addType(type);
+            }
+        }
+
+        @Override
+        public void visitLocalVariable(String name, String desc, String signature, Label start, Label end,
+                                       int index) {
+            addDescriptor(desc);
+            addSignature(signature);
+        }
+
+        private boolean isVisible(int access) {
+            return (access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_SYNTHETIC)) == 0;
+        }
+
+        private String toClassName(String internalName) {
+            return internalName.replace('/', '.');
+        }
+
+        private void addSuperType(String internalName) {
+            superTypes.add(toClassName(internalName));
+            addType(internalName);
+        }
+
+        private void addType(String internalName) {
+            if (internalName.startsWith("[")) {
+                addDescriptor(internalName);
+            } else {
+                dependencies.add(toClassName(internalName));
+            }
+        }
+
+        private void addType(Type type) {
+            if (type.getSort() == Type.ARRAY) {
+                addType(type.getElementType());
+            } else if (type.getSort() == Type.OBJECT) {
+                dependencies.add(type.getClassName());
+            }
+        }
+
+        private void addDescriptor(String desc) {
+            addType(Type.getType(desc));
+        }
+
+        private void addMethodDescriptor(String desc) {
+            addType(Type.getReturnType(desc));
+            for (Type type : Type.getArgumentTypes(desc)) {
+                addType(type);
+            }
+        }
+
+        private void addSignature(String signature) {
+            if (signature == null) {
+                return;
+            }
+            new SignatureReader(signature).accept(new SignatureWriter() {
+                @Override
+                public void visitClassType(String name) {
+                    addType(name);
+                    super.visitClassType(name);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,740 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.internal.TaskOutputsInternal;
+import org.gradle.api.internal.changedetection.FileCollectionSnapshot;
+import org.gradle.api.internal.changedetection.FileSnapshotter;
+import org.gradle.api.internal.file.SimpleFileCollection;
+import org.gradle.api.tasks.WorkResult;
+import org.gradle.api.tasks.compile.CompileOptions;
+import org.gradle.cache.CacheRepository;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentStateCache;
+import org.gradle.cache.Serializer;
+import org.gradle.util.ChangeListener;
+import org.gradle.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.tools.*;
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * A {@link JavaCompiler} which compiles using the system Java compiler, through the {@code javax.tools} API, inside the
+ * build process.
+ *
+ * <p>Compilation is incremental. For each source file, the compiler records a hash of the source file and, for each
+ * class compiled from it, a {@link ClassAnalysis} containing a hash of the class's ABI and the classes it depends on.
+ * These are kept in a cache in the dependency cache directory. On the next compile, only the source files which have
+ * changed are compiled. When this changes the ABI of a class, the source files which depend on the class, or on one
+ * of its subtypes, are compiled too, and so on until no more ABIs change.</p>
+ *
+ * <p>Everything is compiled when the classpath or the compiler options change, or when the ABI of a class which
+ * declares constants changes, as the classes which use a constant do not necessarily refer to the class which declares
+ * it. Changes to the contents of the classpath are found using the build's {@link FileSnapshotter}, which shares its
+ * file hashes with the up-to-date checks of the tasks.</p>
+ *
+ * <p>The compiler takes its file managers from the build's {@link JavaCompilerPool}, so that compilations which share
+ * jars do not open and index them again, and compilations of different tasks can run concurrently. The diagnostics of
+ * the compiler are collected and logged once the compilation has finished, so that the output of concurrent
+ * compilations is not interleaved. The statistics of each compilation are passed to the given {@link
+ * CompilationListener}.</p>
+ *
+ * <p>Delegates to the given compiler when the compile options do not ask for incremental compilation, or ask for a
+ * forked or specific compiler, or for the class dependency analysis, or when the system Java compiler is not
+ * available.</p>
+ */
+public class InProcessJavaCompiler implements JavaCompiler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InProcessJavaCompiler.class);
+    private static final String COMPILE_FAILED = "Compile failed; see the compiler error output for details.";
+    private final JavaCompiler fallback;
+    private final CacheRepository cacheRepository;
+    private final FileSnapshotter snapshotter;
+    private final TaskOutputsInternal taskOutputs;
+    private final JavaCompilerPool compilerPool;
+    private final CompilationListener listener;
+    private final String displayName;
+    private final ClassFileAnalyser analyser = new ClassFileAnalyser();
+    private FileCollection source;
+    private File destinationDir;
+    private Iterable<File> classpath;
+    private File dependencyCacheDir;
+    private String sourceCompatibility;
+    private String targetCompatibility;
+
+    public InProcessJavaCompiler(JavaCompiler fallback, CacheRepository cacheRepository, FileSnapshotter snapshotter,
+                                 TaskOutputsInternal taskOutputs, JavaCompilerPool compilerPool,
+                                 CompilationListener listener, String displayName) {
+        this.fallback = fallback;
+        this.cacheRepository = cacheRepository;
+        this.snapshotter = snapshotter;
+        this.taskOutputs = taskOutputs;
+        this.compilerPool = compilerPool;
+        this.listener = listener;
+        this.displayName = displayName;
+    }
+
+    public CompileOptions getCompileOptions() {
+        return fallback.getCompileOptions();
+    }
+
+    public void setSource(FileCollection source) {
+        this.source = source;
+        fallback.setSource(source);
+    }
+
+    public void setDestinationDir(File destinationDir) {
+        this.destinationDir = destinationDir;
+        fallback.setDestinationDir(destinationDir);
+    }
+
+    public void setClasspath(Iterable<File> classpath) {
+        this.classpath = classpath;
+        fallback.setClasspath(classpath);
+    }
+
+    public void setDependencyCacheDir(File dir) {
+        this.dependencyCacheDir = dir;
+        fallback.setDependencyCacheDir(dir);
+    }
+
+    public void setSourceCompatibility(String sourceCompatibility) {
+        this.sourceCompatibility = sourceCompatibility;
+        fallback.setSourceCompatibility(sourceCompatibility);
+    }
+
+    public void setTargetCompatibility(String targetCompatibility) {
+        this.targetCompatibility = targetCompatibility;
+        fallback.setTargetCompatibility(targetCompatibility);
+    }
+
+    public WorkResult execute() {
+        javax.tools.JavaCompiler compiler = canCompileInProcess() ? compilerPool.getCompiler() : null;
+        if (compiler == null) {
+            return fallback.execute();
+        }
+
+        List<String> options = createOptions();
+        PersistentCache cache = cacheRepository.cache("javaCompile").forObject(dependencyCacheDir).withProperties(
+                Collections.singletonMap("compile.state", createFingerprint(options))).open();
+        PersistentStateCache<FileCollectionSnapshot> classpathState = cacheRepository.cache("javaCompileClasspath")
+                .forObject(dependencyCacheDir).open().openStateCache();
+        FileCollectionSnapshot classpathSnapshot = snapshotter.snapshot(new SimpleFileCollection(classpath));
+        boolean classpathChanged = hasChanged(classpathSnapshot, classpathState.get());
+        final boolean didWork = new Compilation(compiler, options, cache, classpathChanged).execute();
+        classpathState.set(classpathSnapshot);
+        return new WorkResult() {
+            public boolean getDidWork() {
+                return didWork;
+            }
+        };
+    }
+
+    private boolean canCompileInProcess() {
+        CompileOptions options = getCompileOptions();
+        return options.isIncremental() && dependencyCacheDir != null && !options.isFork() && !options.isUseDepend()
+                && options.getCompiler() == null && !options.isIncludeJavaRuntime();
+    }
+
+    /**
+     * Creates the options to pass to the compiler. The destination directory, classpath, source path and encoding are
+     * given to the file manager instead.
+     */
+    private List<String> createOptions() {
+        CompileOptions compileOptions = getCompileOptions();
+        List<String> options = new ArrayList<String>();
+        if (sourceCompatibility != null) {
+            options.add("-source");
+            options.add(sourceCompatibility);
+        }
+        if (targetCompatibility != null) {
+            options.add("-target");
+            options.add(targetCompatibility);
+        }
+        if (!compileOptions.isDebug()) {
+            options.add("-g:none");
+        } else if (compileOptions.getDebugOptions().getDebugLevel() != null) {
+            options.add("-g:" + compileOptions.getDebugOptions().getDebugLevel());
+        } else {
+            options.add("-g");
+        }
+        if (compileOptions.isDeprecation()) {
+            options.add("-deprecation");
+        }
+        if (!compileOptions.isWarnings()) {
+            options.add("-nowarn");
+        }
+        if (compileOptions.isVerbose()) {
+            options.add("-verbose");
+        }
+        if (compileOptions.getBootClasspath() != null) {
+            options.add("-bootclasspath");
+            options.add(compileOptions.getBootClasspath());
+        }
+        if (compileOptions.getExtensionDirs() != null) {
+            options.add("-extdirs");
+            options.add(compileOptions.getExtensionDirs());
+        }
+        for (Object arg : compileOptions.getCompilerArgs()) {
+            options.add(arg.toString());
+        }
+        return options;
+    }
+
+    /**
+     * Creates a fingerprint of the options and the classpath. Everything is compiled when this changes.
+     */
+    private String createFingerprint(List<String> options) {
+        StringBuilder builder = new StringBuilder();
+        for (String option : options) {
+            builder.append(option).append('\n');
+        }
+        builder.append(destinationDir.getPath()).append('\n');
+        builder.append(getCompileOptions().getEncoding()).append('\n');
+        for (File file : classpath) {
+            builder.append(file.getPath()).append('\n');
+        }
+        return HashUtil.createHash(builder.toString());
+    }
+
+    private static boolean hasChanged(FileCollectionSnapshot current, FileCollectionSnapshot previous) {
+        if (previous == null) {
+            return true;
+        }
+        final boolean[] changed = new boolean[1];
+        current.changesSince(previous, new ChangeListener<File>() {
+            public void added(File element) {
+                changed[0] = true;
+            }
+
+            public void removed(File element) {
+                changed[0] = true;
+            }
+
+            public void changed(File element) {
+                changed[0] = true;
+            }
+        });
+        return changed[0];
+    }
+
+    private File getClassFile(String className) {
+        return new File(destinationDir, className.replace('.', File.separatorChar) + ".class");
+    }
+
+    private class Compilation {
+        private final javax.tools.JavaCompiler compiler;
+        private final List<String> options;
+        private final PersistentIndexedCache<String, SourceInfo> sourceInfos;
+        private final PersistentStateCache<HashSet<String>> sourceList;
+        private final Map<String, File> sources = new LinkedHashMap<String, File>();
+        private final Map<String, byte[]> sourceHashes = new HashMap<String, byte[]>();
+        private final Set<String> touched = new HashSet<String>();
+        private final boolean classpathChanged;
+        private boolean failed;
+        private boolean incremental;
+        private int sourceFilesCompiled;
+        private int invocations;
+        private int warmInvocations;
+        private long compileTime;
+
+        private Compilation(javax.tools.JavaCompiler compiler, List<String> options, PersistentCache cache,
+                            boolean classpathChanged) {
+            this.compiler = compiler;
+            this.options = options;
+            this.classpathChanged = classpathChanged;
+            sourceInfos = cache.openIndexedCache(new SourceInfoSerializer());
+            sourceList = cache.openStateCache();
+        }
+
+        public boolean execute() {
+            long start = System.currentTimeMillis();
+            try {
+                return doExecute();
+            } finally {
+                CompilationStatistics statistics = new CompilationStatistics(displayName, incremental,
+                        sourceFilesCompiled, invocations, invocations > 0 && warmInvocations == invocations,
+                        compileTime, System.currentTimeMillis() - start);
+                LOGGER.debug("{}", statistics);
+                listener.compilationFinished(statistics);
+            }
+        }
+
+        private boolean doExecute() {
+            for (File file : source.getFiles()) {
+                sources.put(file.getAbsolutePath(), file);
+                sourceHashes.put(file.getAbsolutePath(), HashUtil.createHash(file));
+            }
+
+            HashSet<String> previousSources = sourceList.get();
+            Map<String, SourceInfo> previous = new HashMap<String, SourceInfo>();
+            Set<String> removed = new LinkedHashSet<String>();
+            Set<String> changed = new LinkedHashSet<String>();
+            boolean compileAll = previousSources == null;
+            if (compileAll) {
+                LOGGER.info("No previous compilation state found. Compiling all source files.");
+            } else {
+                previous.putAll(sourceInfos.getAll(previousSources));
+                for (String path : previousSources) {
+                    if (!sources.containsKey(path)) {
+                        removed.add(path);
+                    }
+                }
+                if (classpathChanged) {
+                    LOGGER.info("The classpath has changed. Compiling all source files.");
+                    compileAll = true;
+                } else {
+                    for (String path : sources.keySet()) {
+                        SourceInfo info = previous.get(path);
+                        if (info == null || !Arrays.equals(info.hash, sourceHashes.get(path)) || !outputsExist(info)) {
+                            changed.add(path);
+                        }
+                    }
+                    if (changed.isEmpty() && removed.isEmpty()) {
+                        return false;
+                    }
+                }
+            }
+
+            Map<String, SourceInfo> compiled = new HashMap<String, SourceInfo>();
+            try {
+                if (!compileAll) {
+                    incremental = true;
+                    compileAll = !compileChanges(previous, changed, removed, compiled);
+                }
+                if (compileAll) {
+                    incremental = false;
+                    SimpleStaleClassCleaner cleaner = new SimpleStaleClassCleaner(taskOutputs);
+                    cleaner.setDestinationDir(destinationDir);
+                    cleaner.execute();
+                    for (SourceInfo info : previous.values()) {
+                        deleteOutputs(info);
+                    }
+                    compiled.clear();
+                    compiled.putAll(compile(sources.keySet()));
+                }
+            } catch (RuntimeException e) {
+                recordFailure(compileAll, previous);
+                throw e;
+            }
+            if (failed) {
+                recordFailure(compileAll, previous);
+                return true;
+            }
+
+            for (String path : removed) {
+                sourceInfos.remove(path);
+            }
+            sourceInfos.putAll(compiled);
+            sourceList.set(new HashSet<String>(sources.keySet()));
+            return true;
+        }
+
+        /**
+         * Records the state after a failed compilation, so that the next compilation starts from the state of the last
+         * successful one. The source files touched by this compilation are marked as changed, but keep their previous
+         * ABI, so that their dependents are compiled again if their ABI turns out to have changed.
+         */
+        private void recordFailure(boolean compileAll, Map<String, SourceInfo> previous) {
+            if (compileAll) {
+                sourceList.set(null);
+                return;
+            }
+            for (String path : touched) {
+                SourceInfo info = previous.get(path);
+                if (info != null) {
+                    sourceInfos.put(path, new SourceInfo(path, new byte[0], info.classes));
+                }
+            }
+        }
+
+        /**
+         * Compiles the changed source files, and then the source files affected by any ABI changes.
+         *
+         * @return false when everything needs to be compiled instead.
+         */
+        private boolean compileChanges(Map<String, SourceInfo> previous, Set<String> changed, Set<String> removed,
+                                       Map<String, SourceInfo> compiled) {
+            LOGGER.info("{} source files have changed and {} have been removed since the previous compilation.",
+                    changed.size(), removed.size());
+            DependentsIndex dependentsIndex = new DependentsIndex(previous.values());
+            Set<String> affected = new HashSet<String>(removed);
+            for (String path : removed) {
+                touched.add(path);
+                deleteOutputs(previous.get(path));
+            }
+
+            Set<String> toCompile = changed;
+            while (true) {
+                for (String path : toCompile) {
+                    touched.add(path);
+                    deleteOutputs(previous.get(path));
+                }
+                compiled.putAll(compile(toCompile));
+                affected.addAll(toCompile);
+
+                Set<String> changedClasses = new HashSet<String>();
+                for (String path : affected) {
+                    if (!findAbiChanges(previous.get(path), compiled.get(path), changedClasses)) {
+                        return false;
+                    }
+                }
+                affected.clear();
+
+                toCompile = new LinkedHashSet<String>();
+                for (String path : dependentsIndex.getDependents(changedClasses)) {
+                    if (sources.containsKey(path) && !compiled.containsKey(path)) {
+                        toCompile.add(path);
+                    }
+                }
+                if (toCompile.isEmpty()) {
+                    return true;
+                }
+                LOGGER.info("Compiling {} source files which depend on changed classes {}.", toCompile.size(),
+                        changedClasses);
+            }
+        }
+
+        /**
+         * Adds the classes whose ABI has changed to the given set.
+         *
+         * @return false when a class which declares constants has changed.
+         */
+        private boolean findAbiChanges(SourceInfo before, SourceInfo after, Set<String> changedClasses) {
+            if (before == null) {
+                return true;
+            }
+            for (ClassAnalysis oldClass : before.classes) {
+                ClassAnalysis newClass = after == null ? null : after.getClass(oldClass.getClassName());
+                if (newClass != null && Arrays.equals(oldClass.getAbiHash(), newClass.getAbiHash())) {
+                    continue;
+                }
+                if (oldClass.isDeclaresConstants()) {
+                    LOGGER.info("The ABI of {}, which declares constants, has changed. Compiling all source files.",
+                            oldClass.getClassName());
+                    return false;
+                }
+                changedClasses.add(oldClass.getClassName());
+            }
+            return true;
+        }
+
+        private Map<String, SourceInfo> compile(Collection<String> paths) {
+            Map<URI, String> pathsByUri = new HashMap<URI, String>();
+            List<File> files = new ArrayList<File>();
+            for (String path : paths) {
+                File file = sources.get(path);
+                files.add(file);
+                pathsByUri.put(file.getAbsoluteFile().toURI().normalize(), path);
+                if (getCompileOptions().isListFiles()) {
+                    LOGGER.info("Compiling {}", file);
+                }
+            }
+
+            Map<String, URI> outputClasses = files.isEmpty() ? Collections.<String, URI>emptyMap() : invokeCompiler(
+                    files);
+
+            Map<String, SourceInfo> compiled = new HashMap<String, SourceInfo>();
+            for (String path : paths) {
+                compiled.put(path, new SourceInfo(path, sourceHashes.get(path), new ArrayList<ClassAnalysis>()));
+            }
+            for (Map.Entry<String, URI> entry : outputClasses.entrySet()) {
+                String path = pathsByUri.get(entry.getValue().normalize());
+                File classFile = getClassFile(entry.getKey());
+                if (path == null || !classFile.isFile()) {
+                    continue;
+                }
+                ClassAnalysis analysis = analyser.analyse(classFile);
+                compiled.get(path).classes.add(new ClassAnalysis(analysis.getClassName(), analysis.getAbiHash(),
+                        analysis.isDeclaresConstants(), retainCompiledClasses(analysis.getSuperTypes()),
+                        retainCompiledClasses(analysis.getDependencies())));
+            }
+            return compiled;
+        }
+
+        private Map<String, URI> invokeCompiler(List<File> files) {
+            String encoding = getCompileOptions().getEncoding();
+            Charset charset = encoding == null ? null : Charset.forName(encoding);
+            JavaCompilerPool.PooledFileManager pooledFileManager = compilerPool.acquire(charset, classpath);
+            StandardJavaFileManager standardFileManager = pooledFileManager.getFileManager();
+            if (handlesAnyOption(standardFileManager)) {
+                // These options change the file manager, so don't share it with other compilations
+                compilerPool.release(pooledFileManager);
+                pooledFileManager = null;
+                standardFileManager = compiler.getStandardFileManager(null, null, charset);
+            } else if (pooledFileManager.isWarm()) {
+                warmInvocations++;
+            }
+            OutputRecordingFileManager fileManager = new OutputRecordingFileManager(standardFileManager);
+            StringWriter output = new StringWriter();
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+            long start = System.currentTimeMillis();
+            try {
+                setLocations(standardFileManager);
+                Iterable<? extends JavaFileObject> compilationUnits = standardFileManager.getJavaFileObjectsFromFiles(
+                        files);
+                boolean success = compiler.getTask(output, fileManager, diagnostics, options, null,
+                        compilationUnits).call();
+                if (!success) {
+                    if (getCompileOptions().isFailOnError()) {
+                        throw new GradleException(COMPILE_FAILED);
+                    }
+                    LOGGER.warn(COMPILE_FAILED);
+                    failed = true;
+                }
+            } finally {
+                compileTime += System.currentTimeMillis() - start;
+                invocations++;
+                sourceFilesCompiled += files.size();
+                logOutput(output, diagnostics);
+                if (pooledFileManager != null) {
+                    compilerPool.release(pooledFileManager);
+                } else {
+                    try {
+                        fileManager.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+            return fileManager.outputClasses;
+        }
+
+        private void logOutput(StringWriter output, DiagnosticCollector<JavaFileObject> diagnostics) {
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    LOGGER.error("{}", diagnostic);
+                } else {
+                    LOGGER.warn("{}", diagnostic);
+                }
+            }
+            if (output.getBuffer().length() > 0) {
+                LOGGER.warn("{}", output.toString().trim());
+            }
+        }
+
+        private boolean handlesAnyOption(StandardJavaFileManager fileManager) {
+            for (String option : options) {
+                if (fileManager.isSupportedOption(option) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void setLocations(StandardJavaFileManager fileManager) {
+            List<File> compileClasspath = new ArrayList<File>();
+            compileClasspath.add(destinationDir);
+            for (File file : classpath) {
+                compileClasspath.add(file);
+            }
+            try {
+                fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singleton(destinationDir));
+                fileManager.setLocation(StandardLocation.CLASS_PATH, compileClasspath);
+                fileManager.setLocation(StandardLocation.SOURCE_PATH, Collections.<File>emptyList());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Removes the classes which were not compiled from the destination directory. These are classes from the
+         * classpath, which are taken care of by the fingerprint.
+         */
+        private Set<String> retainCompiledClasses(Set<String> classNames) {
+            Set<String> retained = new HashSet<String>();
+            for (String className : classNames) {
+                if (getClassFile(className).isFile()) {
+                    retained.add(className);
+                }
+            }
+            return retained;
+        }
+
+        private boolean outputsExist(SourceInfo info) {
+            for (ClassAnalysis analysis : info.classes) {
+                if (!getClassFile(analysis.getClassName()).isFile()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void deleteOutputs(SourceInfo info) {
+            if (info == null) {
+                return;
+            }
+            for (ClassAnalysis analysis : info.classes) {
+                getClassFile(analysis.getClassName()).delete();
+            }
+        }
+    }
+
+    /**
+     * Maps each class to the source files which depend on it, and to its subtypes, as of the previous compilation.
+     */
+    private static class DependentsIndex {
+        private final Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+        private final Map<String, Set<String>> subTypes = new HashMap<String, Set<String>>();
+
+        private DependentsIndex(Collection<SourceInfo> sourceInfos) {
+            for (SourceInfo info : sourceInfos) {
+                for (ClassAnalysis analysis : info.classes) {
+                    for (String dependency : analysis.getDependencies()) {
+                        get(dependents, dependency).add(info.path);
+                    }
+                    for (String superType : analysis.getSuperTypes()) {
+                        get(subTypes, superType).add(analysis.getClassName());
+                    }
+                }
+            }
+        }
+
+        private static Set<String> get(Map<String, Set<String>> map, String key) {
+            Set<String> values = map.get(key);
+            if (values == null) {
+                values = new HashSet<String>();
+                map.put(key, values);
+            }
+            return values;
+        }
+
+        /**
+         * Returns the source files which depend on the given classes, or on any of their subtypes, whose inherited
+         * ABI changes along with the ABI of the classes.
+         */
+        public Set<String> getDependents(Set<String> classNames) {
+            Set<String> affectedClasses = new HashSet<String>();
+            LinkedList<String> queue = new LinkedList<String>(classNames);
+            while (!queue.isEmpty()) {
+                String className = queue.removeFirst();
+                if (affectedClasses.add(className) && subTypes.containsKey(className)) {
+                    queue.addAll(subTypes.get(className));
+                }
+            }
+            Set<String> result = new HashSet<String>();
+            for (String className : affectedClasses) {
+                if (dependents.containsKey(className)) {
+                    result.addAll(dependents.get(className));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Records the source file of each class written by the compiler.
+     */
+    private static class OutputRecordingFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, URI> outputClasses = new HashMap<String, URI>();
+
+        private OutputRecordingFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                   FileObject sibling) throws IOException {
+            if (kind == JavaFileObject.Kind.CLASS && sibling != null) {
+                outputClasses.put(className, sibling.toUri());
+            }
+            return super.getJavaFileForOutput(location, className, kind, sibling);
+        }
+    }
+
+    private static class SourceInfo {
+        private final String path;
+        private final byte[] hash;
+        private final List<ClassAnalysis> classes;
+
+        private SourceInfo(String path, byte[] hash, List<ClassAnalysis> classes) {
+            this.path = path;
+            this.hash = hash;
+            this.classes = classes;
+        }
+
+        public ClassAnalysis getClass(String className) {
+            for (ClassAnalysis analysis : classes) {
+                if (analysis.getClassName().equals(className)) {
+                    return analysis;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class SourceInfoSerializer implements Serializer<SourceInfo> {
+        public SourceInfo read(InputStream instr) throws Exception {
+            DataInputStream input = new DataInputStream(instr);
+            String path = input.readUTF();
+            byte[] hash = new byte[input.readInt()];
+            input.readFully(hash);
+            int classCount = input.readInt();
+            List<ClassAnalysis> classes = new ArrayList<ClassAnalysis>(classCount);
+            for (int i = 0; i < classCount; i++) {
+                String className = input.readUTF();
+                byte[] abiHash = new byte[input.readInt()];
+                input.readFully(abiHash);
+                boolean declaresConstants = input.readBoolean();
+                Set<String> superTypes = readNames(input);
+                Set<String> dependencies = readNames(input);
+                classes.add(new ClassAnalysis(className, abiHash, declaresConstants, superTypes, dependencies));
+            }
+            return new SourceInfo(path, hash, classes);
+        }
+
+        private Set<String> readNames(DataInputStream input) throws IOException {
+            int count = input.readInt();
+            Set<String> names = new HashSet<String>(count);
+            for (int i = 0; i < count; i++) {
+                names.add(input.readUTF());
+            }
+            return names;
+        }
+
+        public void write(OutputStream outstr, SourceInfo value) throws Exception {
+            DataOutputStream output = new DataOutputStream(outstr);
+            output.writeUTF(value.path);
+            output.writeInt(value.hash.length);
+            output.write(value.hash);
+            output.writeInt(value.classes.size());
+            for (ClassAnalysis analysis : value.classes) {
+                output.writeUTF(analysis.getClassName());
+                output.writeInt(analysis.getAbiHash().length);
+                output.write(analysis.getAbiHash());
+                output.writeBoolean(analysis.isDeclaresConstants());
+                writeNames(output, analysis.getSuperTypes());
+                writeNames(output, analysis.getDependencies());
+            }
+            output.flush();
+        }
+
+        private void writeNames(DataOutputStream output, Set<String> names) throws IOException {
+            output.writeInt(names.size());
+            for (String name : names) {
+                output.writeUTF(name);
+            }
+        }
+    }
+}
@@ -15,21 +15,26 @@
  */
 package org.gradle.api.internal.tasks.compile;
 
-import org.gradle.api.AntBuilder;
-import org.gradle.api.internal.Factory;
 import org.gradle.api.internal.TaskOutputsInternal;
+import org.gradle.api.internal.changedetection.FileSnapshotter;
+import org.gradle.cache.CacheRepository;
 
 import java.io.File;
 
 public class IncrementalJavaCompiler extends IncrementalJavaSourceCompiler<JavaCompiler> implements JavaCompiler {
-    private final Factory<? extends AntBuilder> antBuilderFactory;
+    private final FileSnapshotter snapshotter;
+    private final CacheRepository cacheRepository;
     private final TaskOutputsInternal taskOutputs;
     private File dependencyCacheDir;
+    private Iterable<File> classpath;
+    private String sourceCompatibility;
+    private String targetCompatibility;
 
-    public IncrementalJavaCompiler(JavaCompiler compiler, Factory<? extends AntBuilder> antBuilderFactory,
-                                    TaskOutputsInternal taskOutputs) {
+    public IncrementalJavaCompiler(JavaCompiler compiler, FileSnapshotter snapshotter, CacheRepository cacheRepository,
+                                   TaskOutputsInternal taskOutputs) {
         super(compiler);
-        this.antBuilderFactory = antBuilderFactory;
+        this.snapshotter = snapshotter;
+        this.cacheRepository = cacheRepository;
         this.taskOutputs = taskOutputs;
     }
 
@@ -38,10 +43,32 @@ public class IncrementalJavaCompiler extends IncrementalJavaSourceCompiler<JavaC
         getCompiler().setDependencyCacheDir(dir);
     }
 
+    @Override
+    public void setClasspath(Iterable<File> classpath) {
+        this.classpath = classpath;
+        super.setClasspath(classpath);
+    }
+
+    @Override
+    public void setSourceCompatibility(String sourceCompatibility) {
+        this.sourceCompatibility = sourceCompatibility;
+        super.setSourceCompatibility(sourceCompatibility);
+    }
+
+    @Override
+    public void setTargetCompatibility(String targetCompatibility) {
+        this.targetCompatibility = targetCompatibility;
+        super.setTargetCompatibility(targetCompatibility);
+    }
+
     protected StaleClassCleaner createCleaner() {
         if (getCompileOptions().isUseDepend()) {
-            AntDependsStaleClassCleaner cleaner = new AntDependsStaleClassCleaner((Factory) antBuilderFactory);
+            ClassDependencyStaleClassCleaner cleaner = new ClassDependencyStaleClassCleaner(snapshotter,
+                    cacheRepository, taskOutputs);
             cleaner.setDependencyCacheDir(dependencyCacheDir);
+            cleaner.setClasspath(classpath);
+            cleaner.setSourceCompatibility(sourceCompatibility);
+            cleaner.setTargetCompatibility(targetCompatibility);
             return cleaner;
         } else {
             return new SimpleStaleClassCleaner(taskOutputs);
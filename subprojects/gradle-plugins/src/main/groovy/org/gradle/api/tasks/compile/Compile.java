@@ -18,18 +18,33 @@ package org.gradle.api.tasks.compile;
 
 import org.gradle.api.AntBuilder;
 import org.gradle.api.internal.Factory;
+import org.gradle.api.internal.changedetection.FileSnapshotter;
 import org.gradle.api.internal.tasks.compile.AntJavaCompiler;
+import org.gradle.api.internal.tasks.compile.CompilationListener;
+import org.gradle.api.internal.tasks.compile.InProcessJavaCompiler;
 import org.gradle.api.internal.tasks.compile.IncrementalJavaCompiler;
 import org.gradle.api.internal.tasks.compile.JavaCompiler;
+import org.gradle.api.internal.tasks.compile.JavaCompilerPool;
 import org.gradle.api.tasks.Nested;
 import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.api.tasks.WorkResult;
+import org.gradle.cache.CacheRepository;
+import org.gradle.listener.ListenerManager;
 
 import java.io.File;
 
 /**
  * Compiles Java source files.
+ *
+ * <p>When the {@link CompileOptions#isIncremental() incremental} option is set, and no forked compiler is requested,
+ * the source files are compiled inside the build process, and only those source files which have changed since the
+ * previous compilation, along with the source files affected by the change, are compiled. The compilers of the build
+ * share a pool of warm file managers, so that tasks which run concurrently can compile concurrently.</p>
+ *
+ * <p>Otherwise, all source files are compiled, unless the {@link CompileOptions#depend(java.util.Map) depend} option is
+ * set. With the depend option, the classes which are out of date are found using the bytecode of the previously
+ * compiled classes, and only the source files of those classes are compiled.</p>
  * 
  * @author Hans Dockter
  */
@@ -41,7 +56,28 @@ public class Compile extends AbstractCompile {
 
     public Compile() {
         Factory<? extends AntBuilder> antBuilderFactory = getServices().getFactory(AntBuilder.class);
-        javaCompiler = new IncrementalJavaCompiler(new AntJavaCompiler((Factory) antBuilderFactory), antBuilderFactory, getOutputs());
+        JavaCompiler antCompiler = new IncrementalJavaCompiler(new AntJavaCompiler((Factory) antBuilderFactory),
+                getServices().get(FileSnapshotter.class), getServices().get(CacheRepository.class), getOutputs());
+        if (isJavaCompilerApiAvailable()) {
+            javaCompiler = new InProcessJavaCompiler(antCompiler, getServices().get(CacheRepository.class),
+                    getServices().get(FileSnapshotter.class), getOutputs(), getServices().get(JavaCompilerPool.class),
+                    getServices().get(ListenerManager.class).getBroadcaster(CompilationListener.class), getPath());
+        } else {
+            javaCompiler = antCompiler;
+        }
+    }
+
+    /**
+     * Returns true if the {@code javax.tools} API, which the in-process compiler and its pool are built on, is
+     * available. It is not available before Java 6, and the in-process compiler classes cannot be loaded without it.
+     */
+    private static boolean isJavaCompilerApiAvailable() {
+        try {
+            Class.forName("javax.tools.ToolProvider");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
     }
 
     @TaskAction
@@ -43,6 +43,13 @@ class CompileOptions extends AbstractOptions {
     ForkOptions forkOptions = new ForkOptions()
     boolean useDepend = false
     DependOptions dependOptions = new DependOptions()
+    /**
+     * Whether to compile inside the build process using the system Java compiler, and to compile only the source files
+     * which have changed since the previous compilation along with the source files affected by the change. Ignored
+     * when a forked or specific compiler, or the depend option, is used, or when the system Java compiler is not
+     * available.
+     */
+    boolean incremental = false
     @Input @Optional
     String compiler = null
     @Input
@@ -69,7 +76,7 @@ class CompileOptions extends AbstractOptions {
     /**
      * Set the dependency options from a map.  See  {@link DependOptions}  for
      * a list of valid properties.  Calling this method will enable use
-     * of the depend task during a compile.
+     * of the class dependency analysis during a compile.
      */
     CompileOptions depend(Map dependArgs) {
         useDepend = true
@@ -78,7 +85,7 @@ class CompileOptions extends AbstractOptions {
     }
 
     List excludedFieldsFromOptionMap() {
-        ['debugOptions', 'forkOptions', 'compilerArgs', 'dependOptions', 'useDepend']
+        ['debugOptions', 'forkOptions', 'compilerArgs', 'dependOptions', 'useDepend', 'incremental']
     }
 
     Map fieldName2AntMap() {
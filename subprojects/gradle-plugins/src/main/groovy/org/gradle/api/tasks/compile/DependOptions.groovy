@@ -18,24 +18,19 @@ package org.gradle.api.tasks.compile
 
 
 /**
- * <p>Options to send to Ant's depend task.  Depends will delete out of date class files before compiling.
- * This is not fool-proof, but will cut down on the frequency of having to do a clean build.  This may or may
- * not be faster than a clean build.</p>
- * See the <a href="http://ant.apache.org/manual/OptionalTasks/depend.html" target="_blank">Ant Reference</a>
- * for more information.</p>
- * <h2>Ant Options</h2>
+ * <p>Options for the class dependency analysis, which deletes out of date class files before compiling. The analysis
+ * reads the bytecode of the compiled classes to find the classes which depend on the classes compiled from changed
+ * source files, and keeps an index of these dependencies in the dependency cache directory. This is not fool-proof,
+ * but will cut down on the frequency of having to do a clean build.</p>
+ * <h2>Options</h2>
  * <ul>
- *      <li>srcDir  - <b>IGNORED</b> - set automatically</li>
- *      <li>destDir - <b>IGNORED</b> - set automatically</li>
- *      <li>cache - <b>IGNORED</b> - set automatically</li>
  *      <li>closure - boolean controlling depth of dependency graph traversal</li>
- *      <li>dump - dump dependency information to log</li>
- *      <li>classpath - extra classes to check</li>
- *      <li>warnOnRmiStubs - disables warnings for rmi stubs with no source</li>
+ *      <li>dump - log each class which is deleted</li>
+ *      <li>classpath - <b>IGNORED</b> - changes to the compile classpath cause all classes to be compiled</li>
+ *      <li>warnOnRmiStubs - <b>IGNORED</b></li>
+ *      <li>useCache - write the dependency information to dependencies.txt in the dependency cache directory, in the
+ *      format of the cache of Ant's depend task</li>
  * </ul>
- * <p>
- * There is an additional "useCache" boolean option to enable/disable caching of dependency information.  It is true
- * by default.</p>
  * @author Steve Appling
  */
 public class DependOptions extends AbstractOptions {
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile
+
+import javax.tools.ToolProvider
+import org.gradle.CacheUsage
+import org.gradle.api.internal.TaskOutputsInternal
+import org.gradle.api.internal.changedetection.DefaultFileSnapshotter
+import org.gradle.api.internal.changedetection.DefaultHasher
+import org.gradle.api.internal.file.SimpleFileCollection
+import org.gradle.api.tasks.compile.CompileOptions
+import org.gradle.cache.AutoCloseCacheFactory
+import org.gradle.cache.DefaultCacheFactory
+import org.gradle.cache.DefaultCacheRepository
+import org.gradle.util.TemporaryFolder
+import org.gradle.util.TestFile
+import org.junit.Rule
+import spock.lang.Specification
+
+class ClassDependencyStaleClassCleanerTest extends Specification {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+    private final AutoCloseCacheFactory cacheFactory = new AutoCloseCacheFactory(new DefaultCacheFactory())
+    private final CompileOptions options = new CompileOptions()
+    private final TaskOutputsInternal taskOutputs = Mock()
+    private List<File> classpath = []
+    private TestFile srcDir
+    private TestFile destDir
+
+    def setup() {
+        srcDir = tmpDir.dir.createDir('src')
+        destDir = tmpDir.dir.createDir('classes')
+        taskOutputs.previousFiles >> { new SimpleFileCollection(classFiles) }
+    }
+
+    def cleanup() {
+        cacheFactory.close()
+    }
+
+    def deletesAllClassesOnFirstRun() {
+        source('p/A.java', 'package p; public class A { }')
+        compile()
+
+        when:
+        clean()
+
+        then:
+        classes.empty
+    }
+
+    def deletesNothingWhenNoSourceFilesHaveChanged() {
+        source('p/A.java', 'package p; public class A { }')
+        source('p/B.java', 'package p; public class B { A a; }')
+        cleanAndCompile()
+
+        when:
+        clean()
+
+        then:
+        classes == ['p.A', 'p.B'] as Set
+    }
+
+    def deletesClassesOfChangedSourceFileAndTheirDependents() {
+        source('p/A.java', 'package p; public class A { public int a() { return 1; } class Inner { } }')
+        source('p/B.java', 'package p; public class B { int b() { return new A().a(); } }')
+        source('p/C.java', 'package p; public class C extends A { }')
+        source('p/D.java', 'package p; public class D { int d() { return new C().a(); } class Inner { } }')
+        source('p/E.java', 'package p; public class E { }')
+        source('p/F.java', 'package p; public class F { int f() { return new B().b(); } }')
+        cleanAndCompile()
+
+        when:
+        source('p/A.java', 'package p; public class A { public long a() { return 1; } class Inner { } }')
+        clean()
+
+        then:
+        classes == ['p.E', 'p.F'] as Set
+    }
+
+    def deletesDependentsOfDependentsWhenClosureIsEnabled() {
+        options.dependOptions.closure = true
+        source('p/A.java', 'package p; public class A { public int a() { return 1; } }')
+        source('p/B.java', 'package p; public class B { int b() { return new A().a(); } }')
+        source('p/C.java', 'package p; public class C { int c() { return new B().b(); } }')
+        source('p/D.java', 'package p; public class D { }')
+        cleanAndCompile()
+
+        when:
+        source('p/A.java', 'package p; public class A { public long a() { return 1; } }')
+        clean()
+
+        then:
+        classes == ['p.D'] as Set
+    }
+
+    def deletesClassesOfRemovedSourceFileAndTheirDependents() {
+        source('p/A.java', 'package p; public class A { class Inner { } }')
+        source('p/B.java', 'package p; public class B { A a; }')
+        source('p/C.java', 'package p; public class C { }')
+        cleanAndCompile()
+
+        when:
+        srcDir.file('p/A.java').delete()
+        clean()
+
+        then:
+        classes == ['p.C'] as Set
+    }
+
+    def deletesDependentsOfClassHiddenByAddedSourceFile() {
+        source('q/A.java', 'package q; public class A { }')
+        source('p/B.java', 'package p; import q.*; public class B { A a; }')
+        source('p/C.java', 'package p; public class C { }')
+        cleanAndCompile()
+
+        when:
+        source('p/A.java', 'package p; public class A { }')
+        clean()
+
+        then:
+        classes == ['q.A', 'p.C'] as Set
+    }
+
+    def usesIndexUpdatedFromPreviousCompilation() {
+        source('p/A.java', 'package p; public class A { }')
+        source('p/B.java', 'package p; public class B { }')
+        cleanAndCompile()
+        source('p/B.java', 'package p; public class B { A a; }')
+        cleanAndCompile()
+
+        when:
+        source('p/A.java', 'package p; public class A { int a; }')
+        clean()
+
+        then:
+        classes.empty
+    }
+
+    def deletesAllClassesWhenClassWhichDeclaresConstantsChanges() {
+        source('p/A.java', 'package p; public class A { public static final int VALUE = 1; }')
+        source('p/B.java', 'package p; public class B { int b() { return A.VALUE; } }')
+        source('p/C.java', 'package p; public class C { }')
+        cleanAndCompile()
+
+        when:
+        source('p/A.java', 'package p; public class A { public static final int VALUE = 2; }')
+        clean()
+
+        then:
+        classes.empty
+    }
+
+    def deletesAllClassesWhenClasspathChanges() {
+        TestFile jar = tmpDir.file('lib.jar')
+        jar.write('content')
+        classpath = [jar]
+        source('p/A.java', 'package p; public class A { }')
+        cleanAndCompile()
+
+        when:
+        jar.write('changed content')
+        clean()
+
+        then:
+        classes.empty
+    }
+
+    def writesDependenciesOfRemainingClassesWhenUsingCache() {
+        source('p/A.java', 'package p; public class A { }')
+        source('p/B.java', 'package p; public class B { A a; }')
+        cleanAndCompile()
+
+        when:
+        clean()
+
+        then:
+        def lines = tmpDir.file('dependency-cache/dependencies.txt').readLines()
+        lines.containsAll(['||:p.A', '||:p.B', 'p.A'])
+    }
+
+    def doesNotWriteDependenciesWhenNotUsingCache() {
+        options.dependOptions.useCache = false
+        source('p/A.java', 'package p; public class A { }')
+        cleanAndCompile()
+
+        when:
+        clean()
+
+        then:
+        !tmpDir.file('dependency-cache/dependencies.txt').exists()
+    }
+
+    private void source(String path, String text) {
+        srcDir.file(path).write(text)
+    }
+
+    private void cleanAndCompile() {
+        clean()
+        compile()
+    }
+
+    private void clean() {
+        def sourceFiles = []
+        srcDir.eachFileRecurse { if (it.name.endsWith('.java')) { sourceFiles << it } }
+
+        def cacheRepository = new DefaultCacheRepository(tmpDir.dir.file('home'), CacheUsage.ON, cacheFactory)
+        ClassDependencyStaleClassCleaner cleaner = new ClassDependencyStaleClassCleaner(
+                new DefaultFileSnapshotter(new DefaultHasher()), cacheRepository, taskOutputs)
+        cleaner.source = new SimpleFileCollection(sourceFiles)
+        cleaner.destinationDir = destDir
+        cleaner.compileOptions = options
+        cleaner.classpath = classpath
+        cleaner.dependencyCacheDir = tmpDir.dir.file('dependency-cache')
+        try {
+            cleaner.execute()
+        } finally {
+            // Each clean is a separate build
+            cacheFactory.close()
+        }
+    }
+
+    private void compile() {
+        def args = ['-d', destDir.path, '-sourcepath', srcDir.path]
+        srcDir.eachFileRecurse { if (it.name.endsWith('.java')) { args << it.path } }
+        assert ToolProvider.systemJavaCompiler.run(null, null, null, args as String[]) == 0
+    }
+
+    private List<File> getClassFiles() {
+        def files = []
+        destDir.eachFileRecurse { if (it.file) { files << it } }
+        return files
+    }
+
+    private Set<String> getClasses() {
+        int prefix = destDir.path.length() + 1
+        return classFiles.collect { it.path.substring(prefix) }.findAll { !it.contains('$') }.collect {
+            it.replace(File.separator, '.') - '.class'
+        } as Set
+    }
+}
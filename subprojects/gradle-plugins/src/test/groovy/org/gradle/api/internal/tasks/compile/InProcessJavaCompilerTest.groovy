@@ -0,0 +1,282 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.compile
+
+import org.gradle.CacheUsage
+import org.gradle.api.internal.TaskOutputsInternal
+import org.gradle.api.internal.changedetection.DefaultFileSnapshotter
+import org.gradle.api.internal.changedetection.DefaultHasher
+import org.gradle.api.internal.file.SimpleFileCollection
+import org.gradle.api.tasks.WorkResult
+import org.gradle.api.tasks.compile.CompileOptions
+import org.gradle.cache.AutoCloseCacheFactory
+import org.gradle.cache.DefaultCacheFactory
+import org.gradle.cache.DefaultCacheRepository
+import org.gradle.util.TemporaryFolder
+import org.gradle.util.TestFile
+import org.junit.Rule
+import spock.lang.Specification
+
+class InProcessJavaCompilerTest extends Specification {
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder()
+    private final AutoCloseCacheFactory cacheFactory = new AutoCloseCacheFactory(new DefaultCacheFactory())
+    private final CompileOptions options = new CompileOptions()
+    private final JavaCompiler fallback = Mock()
+    private final TaskOutputsInternal taskOutputs = Mock()
+    private final CompilationListener listener = Mock()
+    private final JavaCompilerPool compilerPool = new JavaCompilerPool()
+    private List<File> classpath = []
+    private TestFile srcDir
+    private TestFile destDir
+
+    def setup() {
+        srcDir = tmpDir.dir.createDir('src')
+        destDir = tmpDir.dir.createDir('classes')
+        options.incremental = true
+        fallback.compileOptions >> options
+        taskOutputs.previousFiles >> new SimpleFileCollection()
+    }
+
+    def cleanup() {
+        compilerPool.stop()
+        cacheFactory.close()
+    }
+
+    def compilesAllSourceFilesOnFirstCompile() {
+        source('p/A.java', 'package p; public class A { }')
+        source('p/B.java', 'package p; public class B { class Inner { } }')
+
+        when:
+        def result = compile()
+
+        then:
+        result.didWork
+        compiledClasses == ['A.class', 'B$Inner.class', 'B.class'] as Set
+    }
+
+    def doesNotCompileAnythingWhenNoSourceFilesHaveChanged() {
+        source('p/A.java', 'package p; public class A { }')
+        compile()
+
+        when:
+        def result = compile()
+
+        then:
+        !result.didWork
+        compiledClasses.empty
+    }
+
+    def compilesOnlyChangedSourceFileWhenItsAbiDoesNotChange() {
+        source('p/A.java', 'package p; public class A { public int a() { return 1; } private void b() { } }')
+        source('p/B.java', 'package p; public class B { int b() { return new A().a(); } }')
+        compile()
+
+        when:
+        source('p/A.java', 'package p; public class A { public int a() { return 2; } private int b() { return 1; } }')
+        compile()
+
+        then:
+        compiledClasses == ['A.class'] as Set
+    }
+
+    def compilesDependentsWhenAbiChanges() {
+        source('p/A.java', 'package p; public class A { public int a() { return 1; } }')
+        source('p/B.java', 'package p; public class B { long b() { return new A().a(); } }')
+        source('p/C.java', 'package p; public class C extends A { }')
+        source('p/D.java', 'package p; public class D { long d() { return new C().a(); } }')
+        source('p/E.java', 'package p; public class E { }')
+        compile()
+
+        when:
+        source('p/A.java', 'package p; public class A { public long a() { return 1; } }')
+        compile()
+
+        then:
+        compiledClasses == ['A.class', 'B.class', 'C.class', 'D.class'] as Set
+    }
+
+    def compilesAllSourceFilesWhenClassWhichDeclaresConstantsChanges() {
+        source('p/A.java', 'package p; public class A { public static final int VALUE = 1; }')
+        source('p/B.java', 'package p; public class B { int b() { return A.VALUE; } }')
+        source('p/C.java', 'package p; public class C { }')
+        compile()
+
+        when:
+        source('p/A.java', 'package p; public class A { public static final int VALUE = 2; }')
+        compile()
+
+        then:
+        compiledClasses == ['A.class', 'B.class', 'C.class'] as Set
+    }
+
+    def deletesClassesOfRemovedSourceFiles() {
+        source('p/A.java', 'package p; public class A { class Inner { } }')
+        source('p/B.java', 'package p; public class B { }')
+        compile()
+
+        when:
+        srcDir.file('p/A.java').delete()
+        def result = compile()
+
+        then:
+        result.didWork
+        !destDir.file('p/A.class').exists()
+        !destDir.file('p/A$Inner.class').exists()
+        destDir.file('p/B.class').exists()
+    }
+
+    def compilesAllSourceFilesWhenContentOfClasspathDirectoryChanges() {
+        TestFile libDir = tmpDir.dir.createDir('lib')
+        libDir.file('q/resource.txt').write('content')
+        classpath = [libDir]
+        source('p/A.java', 'package p; public class A { }')
+        source('p/B.java', 'package p; public class B { }')
+        compile()
+
+        when:
+        libDir.file('q/resource.txt').write('changed content')
+        compile()
+
+        then:
+        compiledClasses == ['A.class', 'B.class'] as Set
+    }
+
+    def doesNotCompileAnythingWhenClasspathHasNotChanged() {
+        TestFile libDir = tmpDir.dir.createDir('lib')
+        libDir.file('q/resource.txt').write('content')
+        classpath = [libDir]
+        source('p/A.java', 'package p; public class A { }')
+        compile()
+
+        when:
+        def result = compile()
+
+        then:
+        !result.didWork
+        compiledClasses.empty
+    }
+
+    def compilesSourceFileWhoseClassesHaveBeenDeleted() {
+        source('p/A.java', 'package p; public class A { }')
+        source('p/B.java', 'package p; public class B { }')
+        compile()
+
+        when:
+        destDir.file('p/A.class').delete()
+        compile()
+
+        then:
+        compiledClasses == ['A.class'] as Set
+    }
+
+    def compilesDependentsAfterFailedCompileIsFixed() {
+        source('p/A.java', 'package p; public class A { public int a() { return 1; } }')
+        source('p/B.java', 'package p; public class B { int b() { return new A().a(); } }')
+        compile()
+        source('p/A.java', 'package p; public class A { }')
+
+        when:
+        compile()
+
+        then:
+        thrown(org.gradle.api.GradleException)
+
+        when:
+        source('p/A.java', 'package p; public class A { public int a() { return 1; } }')
+        compile()
+
+        then:
+        compiledClasses == ['A.class', 'B.class'] as Set
+    }
+
+    def notifiesListenerOfCompilationStatistics() {
+        source('p/A.java', 'package p; public class A { }')
+        source('p/B.java', 'package p; public class B { }')
+        compile()
+
+        when:
+        source('p/A.java', 'package p; public class A { void a() { } }')
+        compile()
+
+        then:
+        1 * listener.compilationFinished({ CompilationStatistics statistics ->
+            statistics.path == ':compile' && statistics.incremental && statistics.sourceFilesCompiled == 1 &&
+                    statistics.compilerInvocations == 1 && statistics.warm
+        })
+    }
+
+    def compilesWithOwnFileManagerWhenOptionsChangeFileManager() {
+        source('p/A.java', 'package p; public class A { }')
+        options.compilerArgs = ['-encoding', 'UTF-8']
+
+        when:
+        compile()
+
+        then:
+        compiledClasses == ['A.class'] as Set
+        1 * listener.compilationFinished({ !it.warm })
+    }
+
+    def usesFallbackCompilerWhenForkedCompilerIsRequired() {
+        WorkResult result = Mock()
+        options.fork = true
+
+        when:
+        def r = compile()
+
+        then:
+        r == result
+        1 * fallback.execute() >> result
+    }
+
+    def usesFallbackCompilerWhenIncrementalCompilationIsNotRequested() {
+        WorkResult result = Mock()
+        options.incremental = false
+
+        when:
+        def r = compile()
+
+        then:
+        r == result
+        1 * fallback.execute() >> result
+    }
+
+    private void source(String path, String text) {
+        srcDir.file(path).write(text)
+    }
+
+    private WorkResult compile() {
+        destDir.eachFileRecurse { it.setLastModified(0) }
+        def sourceFiles = []
+        srcDir.eachFileRecurse { if (it.name.endsWith('.java')) { sourceFiles << it } }
+
+        def cacheRepository = new DefaultCacheRepository(tmpDir.dir.file('home'), CacheUsage.ON, cacheFactory)
+        InProcessJavaCompiler compiler = new InProcessJavaCompiler(fallback, cacheRepository,
+                new DefaultFileSnapshotter(new DefaultHasher()), taskOutputs, compilerPool, listener, ':compile')
+        compiler.source = new SimpleFileCollection(sourceFiles)
+        compiler.destinationDir = destDir
+        compiler.classpath = classpath
+        compiler.dependencyCacheDir = tmpDir.dir.file('dependency-cache')
+        return compiler.execute()
+    }
+
+    private Set<String> getCompiledClasses() {
+        def classes = [] as Set
+        destDir.eachFileRecurse { if (it.file && it.lastModified() != 0) { classes << it.name } }
+        return classes
+    }
+}
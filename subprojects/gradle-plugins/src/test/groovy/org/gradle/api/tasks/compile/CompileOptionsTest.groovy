@@ -48,6 +48,7 @@ class CompileOptionsTest {
         assertFalse(compileOptions.listFiles)
         assertFalse(compileOptions.verbose)
         assertFalse(compileOptions.fork)
+        assertFalse(compileOptions.incremental)
 
         assertThat(compileOptions.compilerArgs, isEmpty())
         assertNull(compileOptions.encoding)
@@ -65,6 +66,11 @@ class CompileOptionsTest {
         assertEquals(optionMap.subMap(TEST_FORK_OPTION_MAP.keySet()), TEST_FORK_OPTION_MAP)
     }
 
+    @Test public void testOptionMapDoesNotContainIncremental() {
+        compileOptions.incremental = true
+        assertFalse(compileOptions.optionMap().containsKey('incremental'))
+    }
+
     @Test public void testOptionMapWithNullables() {
         Map optionMap = compileOptions.optionMap()
         Map nullables = [